@@ -0,0 +1,98 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.io.object.Deserializer;
+import org.red5.io.object.Input;
+import org.red5.io.object.Output;
+import org.red5.io.object.Serializer;
+
+/**
+ * Serialization and deserialization of a metadata style object graph with the AMF0 and AMF3 {@link Input} and {@link Output}
+ * implementations.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AMFBenchmark {
+
+    @Param({ "amf0", "amf3" })
+    public String encoding;
+
+    private Map<String, Object> value;
+
+    private IoBuffer out;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        value = new HashMap<>();
+        value.put("duration", 596.48);
+        value.put("width", 1280);
+        value.put("height", 720);
+        value.put("videocodecid", "avc1");
+        value.put("audiocodecid", "mp4a");
+        value.put("canSeekToEnd", Boolean.TRUE);
+        List<Object> keyframes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> keyframe = new HashMap<>();
+            keyframe.put("time", i * 2.0);
+            keyframe.put("offset", i * 65536);
+            keyframes.add(keyframe);
+        }
+        value.put("keyframes", keyframes);
+        out = IoBuffer.allocate(8192).setAutoExpand(true);
+        encoded = new byte[serialize().remaining()];
+        out.get(encoded);
+    }
+
+    @Benchmark
+    public IoBuffer serialize() {
+        out.clear();
+        Serializer.serialize(output(out), value);
+        return out.flip();
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return Deserializer.deserialize(input(IoBuffer.wrap(encoded)), Object.class);
+    }
+
+    private Output output(IoBuffer buf) {
+        return "amf3".equals(encoding) ? new org.red5.io.amf3.Output(buf) : new org.red5.io.amf.Output(buf);
+    }
+
+    private Input input(IoBuffer buf) {
+        return "amf3".equals(encoding) ? new org.red5.io.amf3.Input(buf) : new org.red5.io.amf.Input(buf);
+    }
+
+}
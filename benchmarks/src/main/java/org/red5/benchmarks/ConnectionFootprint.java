@@ -0,0 +1,127 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.red5.server.net.rtmp.IRTMPHandler;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.event.Ping;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Heap footprint of idle RTMP connections. Creates connections in the state of a connected client without streams - control channels in
+ * use and one message received - and reports the retained heap and the number of live threads per connection. This is not a JMH
+ * benchmark, as JMH measures time and allocation rates rather than retained size.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.red5.benchmarks.ConnectionFootprint [connections=10000] [lean=false]
+ * </pre>
+ *
+ * @author The Red5 Project
+ */
+public class ConnectionFootprint {
+
+    public static void main(String... args) throws Exception {
+        int count = 10000;
+        boolean lean = false;
+        for (String arg : args) {
+            if (arg.startsWith("connections=")) {
+                count = Integer.parseInt(arg.substring(12));
+            } else if (arg.startsWith("lean=")) {
+                lean = Boolean.parseBoolean(arg.substring(5));
+            }
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(4);
+        executor.setDaemon(true);
+        executor.initialize();
+        IRTMPHandler handler = new NoopHandler();
+        // load and initialize everything once, so the measurement only holds the connections
+        createConnection(lean, executor, handler);
+        awaitIdle(executor);
+        long heapBefore = usedHeap();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        List<RTMPMinaConnection> connections = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            connections.add(createConnection(lean, executor, handler));
+        }
+        awaitIdle(executor);
+        long heapAfter = usedHeap();
+        int threadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+        System.out.printf("%d idle connections, lean: %s%n", count, lean);
+        System.out.printf("heap: %d bytes per connection%n", (heapAfter - heapBefore) / count);
+        System.out.printf("threads: %.2f per connection (%d in total)%n", (threadsAfter - threadsBefore) / (double) count, threadsAfter);
+        Reference.reachabilityFence(connections);
+        System.exit(0);
+    }
+
+    private static RTMPMinaConnection createConnection(boolean lean, ThreadPoolTaskExecutor executor, IRTMPHandler handler) {
+        RTMPMinaConnection conn = new RTMPMinaConnection();
+        conn.setLean(lean);
+        conn.setExecutor(executor);
+        conn.setHandler(handler);
+        conn.setStateCode(RTMP.STATE_CONNECTED);
+        conn.getChannel(2);
+        conn.getChannel(3);
+        Header header = new Header();
+        header.setChannelId(2);
+        header.setDataType(Ping.TYPE_PING);
+        conn.getState().setLastReadHeader(2, header);
+        conn.getState().setLastWriteHeader(2, header);
+        conn.handleMessageReceived(new Packet(header, new Ping(Ping.PONG_SERVER, 0)));
+        return conn;
+    }
+
+    private static void awaitIdle(ThreadPoolTaskExecutor executor) throws InterruptedException {
+        do {
+            Thread.sleep(500L);
+        } while (executor.getActiveCount() > 0 || !executor.getThreadPoolExecutor().getQueue().isEmpty());
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // settle on the lowest reading, a single gc call is only a hint
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(200L);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static final class NoopHandler implements IRTMPHandler {
+
+        @Override
+        public void connectionOpened(RTMPConnection conn) {
+        }
+
+        @Override
+        public void messageReceived(RTMPConnection conn, Packet packet) {
+        }
+
+        @Override
+        public void messageSent(RTMPConnection conn, Packet packet) {
+        }
+
+        @Override
+        public void connectionClosed(RTMPConnection conn) {
+        }
+
+    }
+
+}
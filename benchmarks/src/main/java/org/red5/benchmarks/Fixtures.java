@@ -0,0 +1,47 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Media files packaged with the benchmarks, which are copied from the io module test fixtures.
+ *
+ * @author The Red5 Project
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Copies a packaged media file to a temporary file, since the readers only work on files.
+     *
+     * @param name
+     *            file name
+     * @return temporary file, deleted on exit
+     * @throws IOException
+     *             if the file is not packaged or cannot be copied
+     */
+    static File copy(String name) throws IOException {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IOException("Fixture not found: " + name);
+            }
+            File file = File.createTempFile("red5-benchmark-", name.substring(name.lastIndexOf('.')));
+            file.deleteOnExit();
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return file;
+        }
+    }
+
+}
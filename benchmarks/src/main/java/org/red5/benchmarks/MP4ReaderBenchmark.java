@@ -0,0 +1,73 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.io.ITag;
+import org.red5.io.mp4.impl.MP4Reader;
+
+/**
+ * {@link MP4Reader} parsing of the movie box and sample tables, which happens each time a file is opened for playback, and sequential
+ * {@link MP4Reader#readTag()} afterwards. The reader is reopened when the file is exhausted.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MP4ReaderBenchmark {
+
+    private File file;
+
+    private MP4Reader reader;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Fixtures.copy("sample.mp4");
+        reader = new MP4Reader(file);
+    }
+
+    @TearDown
+    public void tearDown() {
+        reader.close();
+    }
+
+    @Benchmark
+    public MP4Reader open() throws IOException {
+        MP4Reader opened = new MP4Reader(file);
+        opened.close();
+        return opened;
+    }
+
+    @Benchmark
+    public ITag readTag() throws IOException {
+        if (!reader.hasMoreTags()) {
+            reader.close();
+            reader = new MP4Reader(file);
+        }
+        return reader.readTag();
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.red5.server.messaging.IMessage;
+import org.red5.server.messaging.IMessageComponent;
+import org.red5.server.messaging.IPipe;
+import org.red5.server.messaging.IPushableConsumer;
+import org.red5.server.messaging.InMemoryPushPushPipe;
+import org.red5.server.messaging.OOBControlMessage;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.stream.message.RTMPMessage;
+
+/**
+ * Delivery of one live video message through an {@link InMemoryPushPushPipe} to all of its consumers, as done for every frame of a broadcast
+ * stream.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipeFanOutBenchmark {
+
+    @Param({ "1", "100", "1000" })
+    public int consumers;
+
+    private InMemoryPushPushPipe pipe;
+
+    private RTMPMessage message;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        pipe = new InMemoryPushPushPipe();
+        for (int i = 0; i < consumers; i++) {
+            pipe.subscribe(new Consumer(blackhole), null);
+        }
+        VideoData video = new VideoData(IoBuffer.wrap(new byte[4096]));
+        video.setTimestamp(33);
+        message = RTMPMessage.build(video);
+    }
+
+    @Benchmark
+    public void pushMessage() throws IOException {
+        pipe.pushMessage(message);
+    }
+
+    private static final class Consumer implements IPushableConsumer {
+
+        private final Blackhole blackhole;
+
+        Consumer(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void pushMessage(IPipe pipe, IMessage message) throws IOException {
+            blackhole.consume(((RTMPMessage) message).getBody().getTimestamp());
+        }
+
+        @Override
+        public void onOOBControlMessage(IMessageComponent source, IPipe pipe, OOBControlMessage oobCtrlMsg) {
+        }
+
+    }
+
+}
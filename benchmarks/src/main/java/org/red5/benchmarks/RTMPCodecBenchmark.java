@@ -0,0 +1,176 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.codec.RTMPProtocolDecoder;
+import org.red5.server.net.rtmp.codec.RTMPProtocolEncoder;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Invoke;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.net.rtmp.status.Status;
+import org.red5.server.service.PendingCall;
+
+/**
+ * Chunking and de-chunking of RTMP packets: {@link RTMPProtocolEncoder#encodePacket(Packet)} and
+ * {@link RTMPProtocolDecoder#decodeBuffer(RTMPConnection, IoBuffer)} for video data of the given size and for a status invoke.
+ *
+ * @author The Red5 Project
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RTMPCodecBenchmark {
+
+    @Benchmark
+    public IoBuffer encodeVideo(VideoState state) {
+        return state.encoder.encodePacket(state.videoPacket());
+    }
+
+    @Benchmark
+    public List<Object> decodeVideo(VideoState state) {
+        return state.decoder.decodeBuffer(state.conn, IoBuffer.wrap(state.encoded));
+    }
+
+    @Benchmark
+    public IoBuffer encodeInvoke(InvokeState state) {
+        return state.encoder.encodePacket(state.invokePacket());
+    }
+
+    @Benchmark
+    public List<Object> decodeInvoke(InvokeState state) {
+        return state.decoder.decodeBuffer(state.conn, IoBuffer.wrap(state.encoded));
+    }
+
+    /**
+     * Encoder, decoder and connection state for one chunk size.
+     */
+    @State(Scope.Thread)
+    public static class CodecState {
+
+        @Param({ "128", "4096" })
+        public int chunkSize;
+
+        RTMPProtocolEncoder encoder;
+
+        RTMPProtocolDecoder decoder;
+
+        RTMPConnection conn;
+
+        byte[] encoded;
+
+        @Setup
+        public void setUpConnection() {
+            encoder = new RTMPProtocolEncoder();
+            decoder = new RTMPProtocolDecoder();
+            conn = new RTMPMinaConnection();
+            conn.getState().setState(RTMP.STATE_CONNECTED);
+            conn.getState().setWriteChunkSize(chunkSize);
+            conn.getState().setReadChunkSize(chunkSize);
+            Red5.setConnectionLocal(conn);
+        }
+
+        @TearDown
+        public void tearDown() {
+            Red5.setConnectionLocal(null);
+        }
+
+        static Packet packet(int channelId, byte dataType, IRTMPEvent event) {
+            Header header = new Header();
+            header.setChannelId(channelId);
+            header.setDataType(dataType);
+            header.setStreamId(1);
+            header.setTimer(event.getTimestamp());
+            return new Packet(header, event);
+        }
+
+        static byte[] toArray(IoBuffer buf) {
+            byte[] array = new byte[buf.remaining()];
+            buf.get(array);
+            return array;
+        }
+
+    }
+
+    /**
+     * Video data of the given size.
+     */
+    public static class VideoState extends CodecState {
+
+        @Param({ "1024", "65536" })
+        public int payloadSize;
+
+        private byte[] payload;
+
+        private int timestamp;
+
+        // runs after the connection set up of the super class
+        @Setup
+        public void setUpPayload() {
+            payload = new byte[payloadSize];
+            new Random(42).nextBytes(payload);
+            // keyframe marker so the payload reads as avc video
+            payload[0] = 0x17;
+            encoded = toArray(encoder.encodePacket(videoPacket()));
+        }
+
+        Packet videoPacket() {
+            VideoData video = new VideoData(IoBuffer.wrap(payload));
+            // a new timestamp each time so the encoder writes delta headers as it does for a live stream
+            video.setTimestamp(timestamp += 33);
+            return packet(6, Constants.TYPE_VIDEO_DATA, video);
+        }
+
+    }
+
+    /**
+     * NetStream.Play.Start status command.
+     */
+    public static class InvokeState extends CodecState {
+
+        @Setup
+        public void setUpInvoke() {
+            encoded = toArray(encoder.encodePacket(invokePacket()));
+        }
+
+        Packet invokePacket() {
+            Status status = new Status("NetStream.Play.Start", Status.STATUS, "Started playing stream1.");
+            status.setClientid(1);
+            status.setDetails("stream1");
+            Invoke invoke = new Invoke(new PendingCall(null, "onStatus", new Object[] { status }));
+            return packet(3, Constants.TYPE_INVOKE, invoke);
+        }
+
+    }
+
+}
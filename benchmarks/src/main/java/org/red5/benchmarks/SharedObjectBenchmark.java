@@ -0,0 +1,68 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.persistence.RamPersistence;
+import org.red5.server.so.SharedObject;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+/**
+ * Attribute updates of a {@link SharedObject}: a single update, and a batch of ten updates in one begin/end update block, which sends one
+ * set of changes.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedObjectBenchmark {
+
+    private static final String[] NAMES = { "a0", "a1", "a2", "a3", "a4", "a5", "a6", "a7", "a8", "a9" };
+
+    private SharedObject so;
+
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        so = new SharedObject("benchmark", "/app", false, new RamPersistence((ResourcePatternResolver) null));
+    }
+
+    @Benchmark
+    public boolean setAttribute() {
+        return so.setAttribute("counter", counter++);
+    }
+
+    @Benchmark
+    public void setAttributeBatch() {
+        so.beginUpdate();
+        try {
+            for (String name : NAMES) {
+                so.setAttribute(name, counter++);
+            }
+        } finally {
+            so.endUpdate();
+        }
+    }
+
+}
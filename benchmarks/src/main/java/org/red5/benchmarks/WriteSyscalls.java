@@ -0,0 +1,259 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.red5.server.net.IConnectionManager;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.codec.RTMPMinaProtocolDecoder;
+import org.red5.server.net.rtmp.codec.RTMPMinaProtocolEncoder;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Write system calls of RTMP viewers with and without write coalescing. Streams 20 ms AAC frames, and optionally 30 fps video, in real
+ * time over loopback sockets to a number of viewers and reports the write system calls of the process per second, read from
+ * <code>/proc/self/io</code>, along with the write requests handed to MINA. This is not a JMH benchmark, as JMH measures time rather than
+ * system calls.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.red5.benchmarks.WriteSyscalls [viewers=100] [seconds=10] [video=false] [live=true]
+ *     [coalescing=false] [maxBytes=8192] [delay=5]
+ * </pre>
+ *
+ * @author The Red5 Project
+ */
+public class WriteSyscalls {
+
+    private static final Path PROC_IO = Paths.get("/proc/self/io");
+
+    public static void main(String... args) throws Exception {
+        int viewers = 100, seconds = 10, maxBytes = 8192;
+        long delay = 5L;
+        boolean video = false, live = true, coalescing = false;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("viewers=")) {
+                viewers = Integer.parseInt(value);
+            } else if (arg.startsWith("seconds=")) {
+                seconds = Integer.parseInt(value);
+            } else if (arg.startsWith("video=")) {
+                video = Boolean.parseBoolean(value);
+            } else if (arg.startsWith("live=")) {
+                live = Boolean.parseBoolean(value);
+            } else if (arg.startsWith("coalescing=")) {
+                coalescing = Boolean.parseBoolean(value);
+            } else if (arg.startsWith("maxBytes=")) {
+                maxBytes = Integer.parseInt(value);
+            } else if (arg.startsWith("delay=")) {
+                delay = Long.parseLong(value);
+            }
+        }
+        if (!Files.isReadable(PROC_IO)) {
+            System.out.println("System calls are read from /proc/self/io, which this system does not have");
+            System.exit(1);
+        }
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        // viewers which read and discard everything they are sent
+        ServerSocket server = new ServerSocket(0, viewers, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> accept(server), "Viewers");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        Connections manager = new Connections();
+        NioSocketConnector connector = new NioSocketConnector();
+        connector.getFilterChain().addLast("protocolFilter", new ProtocolCodecFilter(new RTMPMinaProtocolEncoder(), new RTMPMinaProtocolDecoder()));
+        connector.setHandler(new IoHandlerAdapter());
+        List<RTMPMinaConnection> connections = new ArrayList<>(viewers);
+        for (int i = 0; i < viewers; i++) {
+            RTMPMinaConnection conn = new RTMPMinaConnection();
+            conn.setScheduler(scheduler);
+            conn.setWriteCoalescing(coalescing);
+            conn.setWriteCoalescingMaxBytes(maxBytes);
+            conn.setWriteCoalescingLiveDelay(delay);
+            conn.setWriteCoalescingVodDelay(delay);
+            conn.setStateCode(RTMP.STATE_CONNECTED);
+            manager.connections.put(conn.getSessionId(), conn);
+            ConnectFuture future = connector.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()));
+            IoSession session = future.awaitUninterruptibly().getSession();
+            session.setAttribute(RTMPConnection.RTMP_SESSION_ID, conn.getSessionId());
+            session.setAttribute(RTMPConnection.RTMP_CONN_MANAGER, new WeakReference<>(manager));
+            conn.setIoSession(session);
+            connections.add(conn);
+        }
+        byte sourceType = live ? Constants.SOURCE_TYPE_LIVE : Constants.SOURCE_TYPE_VOD;
+        // one second to settle, then the measured run
+        stream(connections, 1, video, sourceType);
+        long syscallsBefore = writeSyscalls();
+        long requestsBefore = connections.stream().mapToLong(RTMPMinaConnection::getWriteRequests).sum();
+        long start = System.nanoTime();
+        int messages = stream(connections, seconds, video, sourceType);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long syscalls = writeSyscalls() - syscallsBefore;
+        long requests = connections.stream().mapToLong(RTMPMinaConnection::getWriteRequests).sum() - requestsBefore;
+        System.out.printf("%d viewers, video: %s, live: %s, coalescing: %s (max bytes: %d, delay: %d ms)%n", viewers, video, live, coalescing, maxBytes, delay);
+        System.out.printf("messages: %.0f/s%n", messages * viewers / elapsed);
+        System.out.printf("write requests: %.0f/s%n", requests / elapsed);
+        System.out.printf("write syscalls: %.0f/s (%.2f per message)%n", syscalls / elapsed, syscalls / (double) (messages * viewers));
+        System.exit(0);
+    }
+
+    /**
+     * Writes the frames of a stream to every viewer in real time.
+     *
+     * @return number of messages written to each viewer
+     */
+    private static int stream(List<RTMPMinaConnection> connections, int seconds, boolean video, byte sourceType) throws InterruptedException {
+        long start = System.nanoTime();
+        int messages = 0;
+        int audioFrame = 0, videoFrame = 0;
+        while (audioFrame * 20 < seconds * 1000) {
+            int audioTime = audioFrame * 20, videoTime = video ? videoFrame * 1000 / 30 : Integer.MAX_VALUE;
+            int timestamp = Math.min(audioTime, videoTime);
+            long wait = start + TimeUnit.MILLISECONDS.toNanos(timestamp) - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            boolean audio = audioTime <= videoTime;
+            for (RTMPMinaConnection conn : connections) {
+                IRTMPEvent event;
+                if (audio) {
+                    // 128 kbit/s AAC
+                    event = new AudioData(IoBuffer.wrap(new byte[320]));
+                } else {
+                    // 1 Mbit/s video, a keyframe every 2 seconds
+                    byte[] body = new byte[videoFrame % 60 == 0 ? 16384 : 3800];
+                    body[0] = (byte) (videoFrame % 60 == 0 ? 0x17 : 0x27);
+                    body[1] = 1;
+                    event = new VideoData(IoBuffer.wrap(body));
+                }
+                event.setTimestamp(timestamp);
+                event.setSourceType(sourceType);
+                Header header = new Header();
+                header.setChannelId(audio ? 5 : 6);
+                header.setStreamId(1);
+                header.setDataType(event.getDataType());
+                header.setTimer(timestamp);
+                conn.write(new Packet(header, event));
+            }
+            messages++;
+            if (audio) {
+                audioFrame++;
+            } else {
+                videoFrame++;
+            }
+        }
+        return messages;
+    }
+
+    private static long writeSyscalls() throws IOException {
+        for (String line : Files.readAllLines(PROC_IO)) {
+            if (line.startsWith("syscw:")) {
+                return Long.parseLong(line.substring(6).trim());
+            }
+        }
+        return 0L;
+    }
+
+    private static void accept(ServerSocket server) {
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                Thread reader = new Thread(() -> {
+                    byte[] buf = new byte[65536];
+                    try (InputStream in = socket.getInputStream()) {
+                        while (in.read(buf) >= 0) {
+                        }
+                    } catch (IOException e) {
+                    }
+                }, "Viewer");
+                reader.setDaemon(true);
+                reader.start();
+            }
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * Lookup of the connections by session id, as the encoder does it.
+     */
+    private static final class Connections implements IConnectionManager<RTMPConnection> {
+
+        final Map<String, RTMPConnection> connections = new ConcurrentHashMap<>();
+
+        @Override
+        public RTMPConnection getConnectionBySessionId(String sessionId) {
+            return connections.get(sessionId);
+        }
+
+        @Override
+        public Collection<RTMPConnection> getAllConnections() {
+            return connections.values();
+        }
+
+        @Override
+        public RTMPConnection createConnection(Class<?> connCls) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RTMPConnection createConnection(Class<?> connCls, String sessionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RTMPConnection removeConnection(RTMPConnection conn) {
+            return connections.remove(conn.getSessionId());
+        }
+
+        @Override
+        public RTMPConnection removeConnection(String sessionId) {
+            return connections.remove(sessionId);
+        }
+
+        @Override
+        public Collection<RTMPConnection> removeConnections() {
+            List<RTMPConnection> removed = new ArrayList<>(connections.values());
+            connections.clear();
+            return removed;
+        }
+
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.client.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.ITag;
+import org.red5.io.flv.impl.FLVReader;
+import org.red5.server.net.rtmp.message.Constants;
+
+/**
+ * Frames sent by the simulated publishers. The frames are read once and shared by all publishers, which loop over them: the headers
+ * (metadata and decoder configurations) are sent when publishing starts and the media frames are repeated with increasing timestamps.
+ *
+ * @author The Red5 Project
+ */
+public class FrameSource {
+
+    // H.264 high profile 1280x720 sequence and picture parameter sets
+    private static final byte[] SPS = { 0x67, 0x64, 0x00, 0x1f, (byte) 0xac, (byte) 0xd9, 0x40, 0x50, 0x05, (byte) 0xbb, 0x01, 0x10, 0x00, 0x00, 0x03, 0x00, 0x10, 0x00, 0x00, 0x03, 0x03, (byte) 0xc0, (byte) 0xf1, (byte) 0x83, 0x19, 0x60 };
+
+    private static final byte[] PPS = { 0x68, (byte) 0xeb, (byte) 0xe3, (byte) 0xcb, 0x22, (byte) 0xc0 };
+
+    // AAC LC, 44.1 kHz, stereo
+    private static final byte[] AAC_CONFIG = { (byte) 0xaf, 0x00, 0x12, 0x10 };
+
+    private static final int AUDIO_SAMPLE_RATE = 44100;
+
+    private static final int AUDIO_BITRATE = 128000;
+
+    private final List<Frame> headers;
+
+    private final List<Frame> frames;
+
+    private final int duration;
+
+    private FrameSource(List<Frame> headers, List<Frame> frames, int duration) {
+        this.headers = Collections.unmodifiableList(headers);
+        this.frames = Collections.unmodifiableList(frames);
+        this.duration = duration;
+    }
+
+    /**
+     * Creates a source of generated H.264 and AAC frames. One keyframe interval is generated; keyframes are five times the size of the
+     * inter frames and the audio is 128 kbit/s.
+     *
+     * @param videoBitrate
+     *            video bitrate in kbit/s
+     * @param fps
+     *            frames per second
+     * @param keyframeInterval
+     *            milliseconds between keyframes
+     * @return frame source
+     */
+    public static FrameSource synthetic(int videoBitrate, int fps, int keyframeInterval) {
+        Random random = new Random(42);
+        List<Frame> headers = new ArrayList<>();
+        IoBuffer config = IoBuffer.allocate(16 + SPS.length + PPS.length);
+        config.put(new byte[] { 0x17, 0x00, 0x00, 0x00, 0x00, 0x01, SPS[1], SPS[2], SPS[3], (byte) 0xff, (byte) 0xe1 });
+        config.putShort((short) SPS.length).put(SPS).put((byte) 1).putShort((short) PPS.length).put(PPS);
+        headers.add(new Frame(Constants.TYPE_VIDEO_DATA, 0, toArray(config.flip())));
+        headers.add(new Frame(Constants.TYPE_AUDIO_DATA, 0, AAC_CONFIG));
+        List<Frame> frames = new ArrayList<>();
+        int gop = Math.max(1, fps * keyframeInterval / 1000);
+        int duration = gop * 1000 / fps;
+        // keyframe plus inter frames add up to the bitrate over the interval
+        int averageSize = videoBitrate * 1000 / 8 / fps;
+        int interSize = Math.max(16, gop * averageSize / (gop + 4));
+        for (int i = 0; i < gop; i++) {
+            boolean keyframe = i == 0;
+            int size = keyframe ? interSize * 5 : interSize;
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            data[0] = (byte) (keyframe ? 0x17 : 0x27);
+            data[1] = 0x01;
+            data[2] = data[3] = data[4] = 0;
+            IoBuffer.wrap(data, 5, 4).putInt(size - 9);
+            data[9] = (byte) (keyframe ? 0x65 : 0x41);
+            frames.add(new Frame(Constants.TYPE_VIDEO_DATA, i * 1000 / fps, data));
+        }
+        int audioSize = AUDIO_BITRATE / 8 * 1024 / AUDIO_SAMPLE_RATE;
+        for (int i = 0, timestamp = 0; timestamp < duration; timestamp = (int) (++i * 1024000L / AUDIO_SAMPLE_RATE)) {
+            byte[] data = new byte[audioSize];
+            random.nextBytes(data);
+            data[0] = (byte) 0xaf;
+            data[1] = 0x01;
+            frames.add(new Frame(Constants.TYPE_AUDIO_DATA, timestamp, data));
+        }
+        frames.sort(Comparator.comparingInt(Frame::getTimestamp));
+        return new FrameSource(headers, frames, duration);
+    }
+
+    /**
+     * Creates a source of the tags of an FLV file, which is read completely into memory.
+     *
+     * @param file
+     *            flv file
+     * @return frame source
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static FrameSource fromFile(File file) throws IOException {
+        List<Frame> headers = new ArrayList<>();
+        List<Frame> frames = new ArrayList<>();
+        FLVReader reader = new FLVReader(file);
+        try {
+            int start = -1;
+            while (reader.hasMoreTags()) {
+                ITag tag = reader.readTag();
+                if (tag == null) {
+                    break;
+                }
+                byte[] data = toArray(tag.getBody());
+                if (isHeader(tag.getDataType(), data)) {
+                    headers.add(new Frame(tag.getDataType(), 0, data));
+                } else if (tag.getDataType() == Constants.TYPE_VIDEO_DATA || tag.getDataType() == Constants.TYPE_AUDIO_DATA) {
+                    if (start == -1) {
+                        start = tag.getTimestamp();
+                    }
+                    frames.add(new Frame(tag.getDataType(), tag.getTimestamp() - start, data));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("No audio or video in " + file);
+        }
+        int last = frames.get(frames.size() - 1).getTimestamp();
+        // one average frame duration after the last frame
+        int duration = last + Math.max(1, last / frames.size());
+        return new FrameSource(headers, frames, duration);
+    }
+
+    private static boolean isHeader(byte dataType, byte[] data) {
+        switch (dataType) {
+            case Constants.TYPE_NOTIFY:
+                return true;
+            case Constants.TYPE_VIDEO_DATA:
+                // avc sequence header
+                return data.length > 1 && (data[0] & 0x0f) == 7 && data[1] == 0;
+            case Constants.TYPE_AUDIO_DATA:
+                // aac sequence header
+                return data.length > 1 && (data[0] & 0xf0) == 0xa0 && data[1] == 0;
+            default:
+                return false;
+        }
+    }
+
+    private static byte[] toArray(IoBuffer buf) {
+        byte[] data = new byte[buf.remaining()];
+        buf.get(data);
+        return data;
+    }
+
+    public List<Frame> getHeaders() {
+        return headers;
+    }
+
+    public List<Frame> getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the duration of one loop over the frames.
+     *
+     * @return duration in milliseconds
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+    /**
+     * One audio, video or data message.
+     */
+    public static final class Frame {
+
+        private final byte dataType;
+
+        private final int timestamp;
+
+        private final byte[] data;
+
+        Frame(byte dataType, int timestamp, byte[] data) {
+            this.dataType = dataType;
+            this.timestamp = timestamp;
+            this.data = data;
+        }
+
+        public byte getDataType() {
+            return dataType;
+        }
+
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Returns the message body, which is shared and must not be modified.
+         *
+         * @return body
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * Whether this is a video frame other than a decoder configuration.
+         *
+         * @return true for video frames
+         */
+        public boolean isVideo() {
+            return dataType == Constants.TYPE_VIDEO_DATA && (data.length < 2 || (data[0] & 0x0f) != 7 || data[1] != 0);
+        }
+
+    }
+
+}
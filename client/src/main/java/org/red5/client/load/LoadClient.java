@@ -0,0 +1,145 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.client.load;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.red5.client.net.rtmp.INetStreamEventHandler;
+import org.red5.client.net.rtmp.RTMPClient;
+import org.red5.io.utils.ObjectMap;
+import org.red5.server.api.service.IServiceCall;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.status.StatusCodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simulated client, which connects with the connector and scheduler shared by all clients of the load generator and creates one stream.
+ *
+ * @author The Red5 Project
+ */
+abstract class LoadClient implements INetStreamEventHandler {
+
+    protected static Logger log = LoggerFactory.getLogger(LoadClient.class);
+
+    protected final LoadGenerator generator;
+
+    protected final LoadStatistics stats;
+
+    protected final String streamName;
+
+    protected final RTMPClient client = new RTMPClient();
+
+    protected volatile Number streamId;
+
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    private volatile boolean connected;
+
+    LoadClient(LoadGenerator generator, String streamName) {
+        this.generator = generator;
+        this.stats = generator.getStatistics();
+        this.streamName = streamName;
+        client.setSocketConnector(generator.getConnector());
+        client.setExecutor(generator.getScheduler());
+        client.setStreamEventHandler(this);
+        client.setExceptionHandler(throwable -> {
+            log.debug("Exception on {}", streamName, throwable);
+            if (!connected) {
+                stats.connectFailures.increment();
+            }
+            stop();
+        });
+        client.setConnectionClosedHandler(() -> {
+            if (!stopped.get()) {
+                log.debug("Connection closed by server: {}", streamName);
+                stats.disconnects.increment();
+                stop();
+            }
+        });
+    }
+
+    /**
+     * Connects and creates the stream, {@link #streamCreated()} is called once it exists.
+     */
+    void start() {
+        long start = System.nanoTime();
+        client.connect(generator.getHost(), generator.getPort(), generator.getApp(), call -> {
+            Object result = call.getResult();
+            String code = result instanceof ObjectMap ? (String) ((ObjectMap<?, ?>) result).get("code") : null;
+            if (StatusCodes.NC_CONNECT_SUCCESS.equals(code)) {
+                connected = true;
+                stats.connected.incrementAndGet();
+                stats.connectLatency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                client.createStream(createCall -> {
+                    if (createCall.getResult() instanceof Number) {
+                        streamId = (Number) createCall.getResult();
+                        streamCreated();
+                    } else {
+                        stats.streamFailures.increment();
+                        stop();
+                    }
+                });
+            } else {
+                log.debug("Connect failed for {}: {}", streamName, result);
+                stats.connectFailures.increment();
+                stop();
+            }
+        });
+    }
+
+    /**
+     * Stops the client and disconnects, once.
+     */
+    void stop() {
+        if (stopped.compareAndSet(false, true)) {
+            stopped();
+            if (connected) {
+                stats.connected.decrementAndGet();
+            }
+            // disconnecting waits for the session to close, which must not happen on the i/o thread handling this client
+            generator.getScheduler().execute(client::disconnect);
+        }
+    }
+
+    boolean isStopped() {
+        return stopped.get();
+    }
+
+    @Override
+    public void onStreamEvent(Notify notify) {
+        IServiceCall call = notify.getCall();
+        if ("onStatus".equals(call.getServiceMethodName()) && call.getArguments().length > 0 && call.getArguments()[0] instanceof ObjectMap) {
+            String code = (String) ((ObjectMap<?, ?>) call.getArguments()[0]).get("code");
+            log.debug("Status for {}: {}", streamName, code);
+            if (code != null) {
+                onStatus(code);
+            }
+        }
+    }
+
+    /**
+     * Called when the stream was created, to publish or play it.
+     */
+    protected abstract void streamCreated();
+
+    /**
+     * Called with the code of each NetStream status.
+     *
+     * @param code
+     *            status code
+     */
+    protected abstract void onStatus(String code);
+
+    /**
+     * Called when the client is stopped, before it disconnects.
+     */
+    protected abstract void stopped();
+
+}
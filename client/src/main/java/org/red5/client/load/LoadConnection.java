@@ -0,0 +1,33 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.client.load;
+
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.message.Packet;
+
+/**
+ * Client connection which handles received messages on the I/O processor thread, instead of queueing them for the receive and task
+ * executors each connection otherwise starts. The load generator handlers only count and time the messages, so they never block the
+ * I/O processor.
+ *
+ * @author The Red5 Project
+ */
+public class LoadConnection extends RTMPMinaConnection {
+
+    @Override
+    public void handleMessageReceived(Packet packet) {
+        // the i/o handler has already set this connection as the connection local
+        try {
+            handler.messageReceived(this, packet);
+            packet.setProcessed(true);
+        } catch (Exception e) {
+            log.warn("Exception handling {} on {}", packet, getSessionId(), e);
+        }
+    }
+
+}
@@ -0,0 +1,313 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.client.load;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.transport.socket.SocketConnector;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.red5.client.net.rtmp.RTMPClientConnManager;
+import org.red5.client.net.rtmp.RTMPMinaIoHandler;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Headless load generator, which simulates live publishers and subscribers against a server and reports connect latency, time to first
+ * frame, publish to play latency and throughput.
+ * <p>
+ * All simulated clients share one socket connector with a fixed number of I/O processors and one scheduler, and their received messages
+ * are handled on the I/O processor threads, so thousands of clients can be run from one process. Publishers send generated H.264 / AAC
+ * frames or the tags of an FLV file in real time; subscriber <i>n</i> plays the stream of publisher <i>n</i> modulo the publisher count.
+ * Publishers and subscribers run in the same process, so the publish to play latency is measured on the same clock.
+ * </p>
+ *
+ * <pre>
+ * java -cp ... org.red5.client.load.LoadGenerator host=localhost port=1935 app=live publishers=10 subscribers=1000 duration=60
+ * </pre>
+ *
+ * @author The Red5 Project
+ */
+public class LoadGenerator {
+
+    private String host = "localhost";
+
+    private int port = 1935;
+
+    private String app = "live";
+
+    private String streamPrefix = "load";
+
+    private int publishers = 10;
+
+    private int subscribers = 100;
+
+    // seconds over which the clients are started
+    private int rampUp = 10;
+
+    // seconds to run after the ramp up
+    private int duration = 60;
+
+    // seconds between reports
+    private int reportInterval = 5;
+
+    // synthetic video bitrate in kbit/s
+    private int videoBitrate = 1000;
+
+    private int fps = 30;
+
+    // milliseconds between synthetic keyframes
+    private int keyframeInterval = 2000;
+
+    // flv file to publish instead of synthetic frames
+    private File file;
+
+    // milliseconds between publisher sends
+    private int sendInterval = 20;
+
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+    private int schedulerThreads = 4;
+
+    private final LoadStatistics statistics = new LoadStatistics();
+
+    private FrameSource frameSource;
+
+    private NioSocketConnector connector;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Runs the load generator, with options given as <code>name=value</code> arguments.
+     *
+     * @param args
+     *            options
+     * @throws Exception
+     *             on failure to start
+     */
+    public static void main(String... args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 1 || !generator.setOption(arg.substring(0, eq), arg.substring(eq + 1))) {
+                System.out.printf("Unknown option: %s%n", arg);
+                System.out.println("Usage: LoadGenerator [host=localhost] [port=1935] [app=live] [prefix=load] [publishers=10] [subscribers=100] [rampup=10] [duration=60] [report=5] [bitrate=1000] [fps=30] [keyframes=2000] [file=<flv file>] [send=20] [iothreads=<cpus>] [threads=4]");
+                System.exit(1);
+            }
+        }
+        generator.run();
+        System.exit(0);
+    }
+
+    private boolean setOption(String name, String value) {
+        switch (name) {
+            case "host":
+                host = value;
+                break;
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            case "app":
+                app = value;
+                break;
+            case "prefix":
+                streamPrefix = value;
+                break;
+            case "publishers":
+                publishers = Integer.parseInt(value);
+                break;
+            case "subscribers":
+                subscribers = Integer.parseInt(value);
+                break;
+            case "rampup":
+                rampUp = Integer.parseInt(value);
+                break;
+            case "duration":
+                duration = Integer.parseInt(value);
+                break;
+            case "report":
+                reportInterval = Integer.parseInt(value);
+                break;
+            case "bitrate":
+                videoBitrate = Integer.parseInt(value);
+                break;
+            case "fps":
+                fps = Integer.parseInt(value);
+                break;
+            case "keyframes":
+                keyframeInterval = Integer.parseInt(value);
+                break;
+            case "file":
+                file = new File(value);
+                break;
+            case "send":
+                sendInterval = Integer.parseInt(value);
+                break;
+            case "iothreads":
+                ioThreads = Integer.parseInt(value);
+                break;
+            case "threads":
+                schedulerThreads = Integer.parseInt(value);
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts the clients over the ramp up period, reports while they run and stops them after the duration.
+     *
+     * @throws Exception
+     *             if the frame source cannot be read or the run is interrupted
+     */
+    public void run() throws Exception {
+        frameSource = file != null ? FrameSource.fromFile(file) : FrameSource.synthetic(videoBitrate, fps, keyframeInterval);
+        scheduler = Executors.newScheduledThreadPool(schedulerThreads, new CustomizableThreadFactory("LoadGenerator-"));
+        connector = new NioSocketConnector(ioThreads);
+        connector.setHandler(new LoadIoHandler());
+        System.out.printf("Starting %d publishers and %d subscribers on rtmp://%s:%d/%s over %ds%n", publishers, subscribers, host, port, app, rampUp);
+        // publishers first, so most subscribers find their stream already published
+        List<LoadClient> clients = new ArrayList<>(publishers + subscribers);
+        for (int i = 0; i < publishers; i++) {
+            clients.add(new LoadPublisher(this, streamPrefix + i));
+        }
+        for (int i = 0; i < subscribers; i++) {
+            clients.add(new LoadSubscriber(this, streamPrefix + (i % Math.max(1, publishers))));
+        }
+        long delay = clients.isEmpty() ? 0 : TimeUnit.SECONDS.toNanos(rampUp) / clients.size();
+        for (int i = 0; i < clients.size(); i++) {
+            scheduler.schedule(clients.get(i)::start, i * delay, TimeUnit.NANOSECONDS);
+        }
+        ScheduledFuture<?> reporter = scheduler.scheduleAtFixedRate(() -> statistics.report(System.out), reportInterval, reportInterval, TimeUnit.SECONDS);
+        try {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(rampUp + duration));
+        } finally {
+            reporter.cancel(false);
+            clients.forEach(LoadClient::stop);
+            statistics.summary(System.out);
+            scheduler.shutdown();
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+            connector.dispose(false);
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getApp() {
+        return app;
+    }
+
+    public void setApp(String app) {
+        this.app = app;
+    }
+
+    public void setStreamPrefix(String streamPrefix) {
+        this.streamPrefix = streamPrefix;
+    }
+
+    public void setPublishers(int publishers) {
+        this.publishers = publishers;
+    }
+
+    public void setSubscribers(int subscribers) {
+        this.subscribers = subscribers;
+    }
+
+    public void setRampUp(int rampUp) {
+        this.rampUp = rampUp;
+    }
+
+    public void setDuration(int duration) {
+        this.duration = duration;
+    }
+
+    public void setReportInterval(int reportInterval) {
+        this.reportInterval = reportInterval;
+    }
+
+    public void setVideoBitrate(int videoBitrate) {
+        this.videoBitrate = videoBitrate;
+    }
+
+    public void setFps(int fps) {
+        this.fps = fps;
+    }
+
+    public void setKeyframeInterval(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    public int getSendInterval() {
+        return sendInterval;
+    }
+
+    public void setSendInterval(int sendInterval) {
+        this.sendInterval = sendInterval;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public void setSchedulerThreads(int schedulerThreads) {
+        this.schedulerThreads = schedulerThreads;
+    }
+
+    public LoadStatistics getStatistics() {
+        return statistics;
+    }
+
+    FrameSource getFrameSource() {
+        return frameSource;
+    }
+
+    SocketConnector getConnector() {
+        return connector;
+    }
+
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * I/O handler shared by all clients, creating connections which handle received messages on the I/O thread.
+     */
+    private static class LoadIoHandler extends RTMPMinaIoHandler {
+
+        @Override
+        protected RTMPMinaConnection createRTMPMinaConnection() {
+            return (RTMPMinaConnection) RTMPClientConnManager.getInstance().createConnection(LoadConnection.class);
+        }
+
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.client.load;
+
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.client.load.FrameSource.Frame;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.stream.message.RTMPMessage;
+
+/**
+ * Simulated publisher, which sends the frames of the frame source in real time from a task on the shared scheduler. The last bytes of each
+ * video frame are replaced with a marker and the time the frame was sent, from which the subscribers compute the publish to play latency.
+ *
+ * @author The Red5 Project
+ */
+class LoadPublisher extends LoadClient {
+
+    /**
+     * Marker preceding the send time in stamped video frames.
+     */
+    static final int STAMP_MAGIC = 0x52354c54;
+
+    /**
+     * Length of the marker and the send time in {@link System#nanoTime()}.
+     */
+    static final int STAMP_LENGTH = 12;
+
+    private final FrameSource source;
+
+    private ScheduledFuture<?> sender;
+
+    private long startTime;
+
+    private int loop;
+
+    private int index;
+
+    private volatile boolean publishing;
+
+    LoadPublisher(LoadGenerator generator, String streamName) {
+        super(generator, streamName);
+        this.source = generator.getFrameSource();
+    }
+
+    @Override
+    protected void streamCreated() {
+        client.publish(streamId, streamName, "live", this);
+    }
+
+    @Override
+    protected void onStatus(String code) {
+        switch (code) {
+            case StatusCodes.NS_PUBLISH_START:
+                publishing = true;
+                stats.publishing.incrementAndGet();
+                startTime = System.nanoTime();
+                for (Frame frame : source.getHeaders()) {
+                    send(frame, 0);
+                }
+                sender = generator.getScheduler().scheduleAtFixedRate(this::sendDue, 0, generator.getSendInterval(), TimeUnit.MILLISECONDS);
+                break;
+            case StatusCodes.NS_PUBLISH_BADNAME:
+            case StatusCodes.NS_FAILED:
+                stats.streamFailures.increment();
+                stop();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    protected synchronized void stopped() {
+        if (sender != null) {
+            sender.cancel(false);
+        }
+        if (publishing) {
+            publishing = false;
+            stats.publishing.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sends the frames whose time has come, looping over the frame source.
+     */
+    private synchronized void sendDue() {
+        if (!publishing) {
+            return;
+        }
+        try {
+            List<Frame> frames = source.getFrames();
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            while (true) {
+                Frame frame = frames.get(index);
+                long timestamp = (long) loop * source.getDuration() + frame.getTimestamp();
+                if (timestamp > elapsed) {
+                    break;
+                }
+                send(frame, (int) timestamp);
+                if (++index == frames.size()) {
+                    index = 0;
+                    loop++;
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Exception publishing {}", streamName, e);
+            stats.streamFailures.increment();
+            stop();
+        }
+    }
+
+    private void send(Frame frame, int timestamp) {
+        byte[] data = frame.getData();
+        IRTMPEvent event;
+        switch (frame.getDataType()) {
+            case Constants.TYPE_VIDEO_DATA:
+                if (frame.isVideo() && data.length >= STAMP_LENGTH + 4) {
+                    data = data.clone();
+                    IoBuffer.wrap(data, data.length - STAMP_LENGTH, STAMP_LENGTH).putInt(STAMP_MAGIC).putLong(System.nanoTime());
+                }
+                event = new VideoData(IoBuffer.wrap(data));
+                break;
+            case Constants.TYPE_AUDIO_DATA:
+                event = new AudioData(IoBuffer.wrap(data));
+                break;
+            default:
+                event = new Notify(IoBuffer.wrap(data));
+                break;
+        }
+        event.setTimestamp(timestamp);
+        client.publishStreamData(streamId, RTMPMessage.build(event));
+        stats.framesSent.increment();
+        stats.bytesSent.add(data.length);
+    }
+
+}
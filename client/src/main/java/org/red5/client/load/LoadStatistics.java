@@ -0,0 +1,107 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.client.load;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms updated by all simulated clients of a load run.
+ *
+ * @author The Red5 Project
+ */
+public class LoadStatistics {
+
+    /**
+     * Time from starting the connect to NetConnection.Connect.Success, in milliseconds.
+     */
+    final LatencyHistogram connectLatency = new LatencyHistogram();
+
+    /**
+     * Time from the play request to the first video frame, in milliseconds.
+     */
+    final LatencyHistogram firstFrameLatency = new LatencyHistogram();
+
+    /**
+     * Time from handing a video frame to the publishing client to its arrival at a subscriber, in microseconds.
+     */
+    final LatencyHistogram playLatency = new LatencyHistogram();
+
+    final AtomicInteger connected = new AtomicInteger();
+
+    final AtomicInteger publishing = new AtomicInteger();
+
+    final AtomicInteger playing = new AtomicInteger();
+
+    final LongAdder connectFailures = new LongAdder();
+
+    final LongAdder streamFailures = new LongAdder();
+
+    final LongAdder disconnects = new LongAdder();
+
+    final LongAdder framesSent = new LongAdder();
+
+    final LongAdder bytesSent = new LongAdder();
+
+    final LongAdder framesReceived = new LongAdder();
+
+    final LongAdder bytesReceived = new LongAdder();
+
+    private final long start = System.nanoTime();
+
+    private long lastReport = start;
+
+    private long lastFramesSent, lastBytesSent, lastFramesReceived, lastBytesReceived;
+
+    /**
+     * Prints the client counts, the throughput since the previous report and the latency percentiles so far.
+     *
+     * @param out
+     *            stream to print to
+     */
+    public synchronized void report(PrintStream out) {
+        long now = System.nanoTime();
+        long sentFrames = framesSent.sum(), sentBytes = bytesSent.sum(), receivedFrames = framesReceived.sum(), receivedBytes = bytesReceived.sum();
+        out.printf("[%6.1fs] connected: %d publishing: %d playing: %d failed connects: %d failed streams: %d disconnects: %d%n", (now - start) / 1000000000d, connected.get(), publishing.get(), playing.get(), connectFailures.sum(), streamFailures.sum(), disconnects.sum());
+        printRates(out, now - lastReport, sentFrames - lastFramesSent, sentBytes - lastBytesSent, receivedFrames - lastFramesReceived, receivedBytes - lastBytesReceived);
+        lastReport = now;
+        lastFramesSent = sentFrames;
+        lastBytesSent = sentBytes;
+        lastFramesReceived = receivedFrames;
+        lastBytesReceived = receivedBytes;
+    }
+
+    /**
+     * Prints the totals and average throughput of the whole run and the latency percentiles.
+     *
+     * @param out
+     *            stream to print to
+     */
+    public synchronized void summary(PrintStream out) {
+        long elapsed = System.nanoTime() - start;
+        out.printf("Summary after %.1fs - failed connects: %d failed streams: %d disconnects: %d%n", elapsed / 1000000000d, connectFailures.sum(), streamFailures.sum(), disconnects.sum());
+        out.printf("          sent: %d frames %d bytes received: %d frames %d bytes%n", framesSent.sum(), bytesSent.sum(), framesReceived.sum(), bytesReceived.sum());
+        printRates(out, elapsed, framesSent.sum(), bytesSent.sum(), framesReceived.sum(), bytesReceived.sum());
+    }
+
+    private void printRates(PrintStream out, long nanos, long sentFrames, long sentBytes, long receivedFrames, long receivedBytes) {
+        double seconds = Math.max(1, nanos) / 1000000000d;
+        out.printf("          sent: %.0f frames/s %.2f Mbit/s received: %.0f frames/s %.2f Mbit/s%n", sentFrames / seconds, sentBytes * 8 / seconds / 1000000d, receivedFrames / seconds, receivedBytes * 8 / seconds / 1000000d);
+        print(out, "connect (ms)", connectLatency, 1);
+        print(out, "first frame (ms)", firstFrameLatency, 1);
+        print(out, "publish to play (ms)", playLatency, 1000);
+    }
+
+    private static void print(PrintStream out, String name, LatencyHistogram histogram, double scale) {
+        if (histogram.getCount() > 0) {
+            out.printf("          %-21s count: %d mean: %.1f p50: %.1f p90: %.1f p99: %.1f p99.9: %.1f max: %.1f%n", name, histogram.getCount(), histogram.getMean() / scale, histogram.getPercentile(50) / scale, histogram.getPercentile(90) / scale, histogram.getPercentile(99) / scale, histogram.getPercentile(99.9) / scale, histogram.getMax() / scale);
+        }
+    }
+
+}
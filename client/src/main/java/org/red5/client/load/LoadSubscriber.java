@@ -0,0 +1,94 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.client.load;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.api.event.IEvent;
+import org.red5.server.api.event.IEventDispatcher;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.status.StatusCodes;
+
+/**
+ * Simulated subscriber, which plays a live stream and records the time to the first video frame and the publish to play latency of the
+ * stamped video frames.
+ *
+ * @author The Red5 Project
+ */
+class LoadSubscriber extends LoadClient implements IEventDispatcher {
+
+    private long playTime;
+
+    private volatile boolean playing;
+
+    private boolean received;
+
+    LoadSubscriber(LoadGenerator generator, String streamName) {
+        super(generator, streamName);
+        client.setStreamEventDispatcher(this);
+    }
+
+    @Override
+    protected void streamCreated() {
+        playTime = System.nanoTime();
+        // live only, waiting for the publisher if it has not started yet
+        client.play(streamId, streamName, -1, -1);
+    }
+
+    @Override
+    protected void onStatus(String code) {
+        switch (code) {
+            case StatusCodes.NS_PLAY_START:
+                if (!playing) {
+                    playing = true;
+                    stats.playing.incrementAndGet();
+                }
+                break;
+            case StatusCodes.NS_PLAY_STREAMNOTFOUND:
+            case StatusCodes.NS_PLAY_FAILED:
+            case StatusCodes.NS_FAILED:
+                stats.streamFailures.increment();
+                stop();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    protected void stopped() {
+        if (playing) {
+            playing = false;
+            stats.playing.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void dispatchEvent(IEvent event) {
+        if (event instanceof VideoData) {
+            long now = System.nanoTime();
+            IoBuffer data = ((VideoData) event).getData();
+            stats.framesReceived.increment();
+            stats.bytesReceived.add(data.remaining());
+            if (!received) {
+                received = true;
+                stats.firstFrameLatency.record(TimeUnit.NANOSECONDS.toMillis(now - playTime));
+            }
+            int stamp = data.limit() - LoadPublisher.STAMP_LENGTH;
+            if (stamp >= data.position() && data.getInt(stamp) == LoadPublisher.STAMP_MAGIC) {
+                stats.playLatency.record(TimeUnit.NANOSECONDS.toMicros(now - data.getLong(stamp + 4)));
+            }
+        } else if (event instanceof AudioData) {
+            stats.framesReceived.increment();
+            stats.bytesReceived.add(((AudioData) event).getData().remaining());
+        }
+    }
+
+}
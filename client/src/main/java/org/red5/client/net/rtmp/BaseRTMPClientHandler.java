@@ -150,6 +150,11 @@ public abstract class BaseRTMPClientHandler extends BaseRTMPHandler implements I
      */
     protected ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
 
+    /**
+     * Whether the executor is shared with other clients and must not be shut down by this one.
+     */
+    private boolean sharedExecutor;
+
     protected BaseRTMPClientHandler() {
     }
 
@@ -567,6 +572,22 @@ public abstract class BaseRTMPClientHandler extends BaseRTMPHandler implements I
         invoke("deleteStream", null, wrapper);
     }
 
+    /**
+     * Deletes the stream with the given id on the server and drops it locally, without waiting for a reply.
+     *
+     * @param streamId
+     *            stream id
+     */
+    public void deleteStream(Number streamId) {
+        log.debug("deleteStream - stream id: {}", streamId);
+        if (conn != null) {
+            final int sid = streamId.intValue();
+            streamDataList.removeIf(s -> s.getStreamId() == sid);
+            conn.removeClientStream(streamId);
+            conn.invoke("deleteStream", new Object[] { streamId }, null);
+        }
+    }
+
     public void subscribe(IPendingServiceCallback callback, Object[] params) {
         log.debug("subscribe - callback: {}", callback);
         IPendingServiceCallback wrapper = new SubscribeStreamCallBack(callback);
@@ -760,8 +781,9 @@ public abstract class BaseRTMPClientHandler extends BaseRTMPHandler implements I
     @Override
     public void connectionClosed(RTMPConnection conn) {
         log.debug("connectionClosed");
-        super.connectionClosed(conn);
+        // the state before it is set to disconnected by the base handler
         byte stateCode = conn.getStateCode();
+        super.connectionClosed(conn);
         // submit close handler only if we're not yet disconnected
         if (stateCode != RTMP.STATE_DISCONNECTED) {
             if (connectionClosedHandler != null) {
@@ -769,7 +791,7 @@ public abstract class BaseRTMPClientHandler extends BaseRTMPHandler implements I
             }
         }
         // shutdown the executor when we're disconnected
-        if (stateCode == RTMP.STATE_DISCONNECTED) {
+        if (conn.getStateCode() == RTMP.STATE_DISCONNECTED && !sharedExecutor) {
             log.debug("Shutting down executor");
             executor.shutdown();
         }
@@ -919,6 +941,18 @@ public abstract class BaseRTMPClientHandler extends BaseRTMPHandler implements I
         }
     }
 
+    /**
+     * Sets an executor shared with other clients, which replaces the executor of this client and is not shut down when it disconnects.
+     *
+     * @param executor
+     *            executor
+     */
+    public void setExecutor(ScheduledExecutorService executor) {
+        this.executor.shutdown();
+        this.executor = executor;
+        sharedExecutor = true;
+    }
+
     /**
      * Returns the connection associated with this client.
      *
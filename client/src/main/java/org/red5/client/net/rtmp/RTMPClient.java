@@ -17,6 +17,7 @@ import org.apache.mina.core.future.IoFutureListener;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.transport.socket.SocketConnector;
 import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.red5.server.net.rtmp.RTMPConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,9 +42,12 @@ public class RTMPClient extends BaseRTMPClientHandler {
     // I/O handler
     protected final RTMPMinaIoHandler ioHandler;
 
-    // Socket connector, disposed on disconnect
+    // Socket connector, disposed on disconnect unless shared
     protected SocketConnector socketConnector;
 
+    // Whether the socket connector is shared with other clients
+    protected boolean sharedConnector;
+
     // ConnectFuture
     protected ConnectFuture future;
 
@@ -70,9 +74,14 @@ public class RTMPClient extends BaseRTMPClientHandler {
     @Override
     protected void startConnector(String server, int port) {
         log.debug("startConnector - server: {} port: {}", server, port);
-        socketConnector = new NioSocketConnector();
-        socketConnector.setHandler(ioHandler);
-        future = socketConnector.connect(new InetSocketAddress(server, port));
+        if (sharedConnector) {
+            // the shared i/o handler finds this client on the session
+            future = socketConnector.connect(new InetSocketAddress(server, port), (session, connectFuture) -> session.setAttribute(RTMPConnection.RTMP_HANDLER, this));
+        } else {
+            socketConnector = new NioSocketConnector();
+            socketConnector.setHandler(ioHandler);
+            future = socketConnector.connect(new InetSocketAddress(server, port));
+        }
         future.addListener(new IoFutureListener<ConnectFuture>() {
             @Override
             public void operationComplete(ConnectFuture future) {
@@ -88,8 +97,10 @@ public class RTMPClient extends BaseRTMPClientHandler {
                 }
             }
         });
-        // Now wait for the connect to be completed
-        future.awaitUninterruptibly(CONNECTOR_WORKER_TIMEOUT);
+        // Now wait for the connect to be completed, clients sharing a connector are not expected to block
+        if (!sharedConnector) {
+            future.awaitUninterruptibly(CONNECTOR_WORKER_TIMEOUT);
+        }
         log.debug("startConnector {} done", Thread.currentThread().getName());
     }
 
@@ -117,12 +128,27 @@ public class RTMPClient extends BaseRTMPClientHandler {
                 log.warn("Exception during disconnect", e);
             } finally {
                 // we can now dispose the connector
-                socketConnector.dispose(false);
+                if (!sharedConnector) {
+                    socketConnector.dispose(false);
+                }
             }
         }
         super.disconnect();
     }
 
+    /**
+     * Sets a socket connector shared with other clients, which is not disposed when this client disconnects. Its handler must be an
+     * {@link RTMPMinaIoHandler}; the events of the sessions it creates for this client are passed to this client. Connecting with a shared
+     * connector does not wait for the connection to be established.
+     *
+     * @param socketConnector
+     *            socket connector
+     */
+    public void setSocketConnector(SocketConnector socketConnector) {
+        this.socketConnector = socketConnector;
+        sharedConnector = true;
+    }
+
     /**
      * Sets the RTMP protocol, the default is "rtmp". If "rtmps" or "rtmpt" are required, the appropriate client type should be selected.
      *
@@ -27,7 +27,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
 /**
- * Handles all RTMP protocol events fired by the MINA framework.
+ * Handles all RTMP protocol events fired by the MINA framework. The events of a session go to the client handler stored in its
+ * {@link RTMPConnection#RTMP_HANDLER} attribute if it was set when the session was initialized, which allows one connector and I/O handler
+ * to be shared by many clients, and otherwise to the handler of this instance.
  */
 public class RTMPMinaIoHandler extends IoHandlerAdapter {
 
@@ -44,6 +46,7 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
     @Override
     public void sessionCreated(IoSession session) throws Exception {
         log.debug("Session created");
+        BaseRTMPClientHandler handler = getHandler(session);
         // add rtmpe filter, rtmp protocol filter is added upon successful handshake
         session.getFilterChain().addFirst("rtmpeFilter", new RTMPEIoFilter());
         // create a connection
@@ -102,7 +105,7 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
             if (conn != null) {
                 conn.sendPendingServiceCallsCloseError();
                 // fire-off closed event
-                handler.connectionClosed(conn);
+                getHandler(session).connectionClosed(conn);
                 // clear any session attributes we may have previously set
                 session.removeAttribute(RTMPConnection.RTMP_HANDLER);
                 session.removeAttribute(RTMPConnection.RTMP_HANDSHAKE);
@@ -140,7 +143,7 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
             String sessionId = (String) session.getAttribute(RTMPConnection.RTMP_SESSION_ID);
             log.trace("Session id: {}", sessionId);
             RTMPMinaConnection conn = (RTMPMinaConnection) getConnectionManager(session).getConnectionBySessionId(sessionId);
-            handler.messageSent(conn, (Packet) message);
+            getHandler(session).messageSent(conn, (Packet) message);
         } else {
             log.trace("messageSent: {}", Hex.encodeHexString(((IoBuffer) message).array()));
         }
@@ -174,6 +177,18 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
         this.enableSwfVerification = enableSwfVerification;
     }
 
+    /**
+     * Returns the client handler for a session.
+     *
+     * @param session
+     *            session
+     * @return handler stored on the session or the handler of this instance
+     */
+    protected BaseRTMPClientHandler getHandler(IoSession session) {
+        Object sessionHandler = session.getAttribute(RTMPConnection.RTMP_HANDLER);
+        return sessionHandler instanceof BaseRTMPClientHandler ? (BaseRTMPClientHandler) sessionHandler : handler;
+    }
+
     protected RTMPMinaConnection createRTMPMinaConnection() {
         return (RTMPMinaConnection) RTMPClientConnManager.getInstance().createConnection(RTMPMinaConnection.class);
     }
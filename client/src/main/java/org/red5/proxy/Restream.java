@@ -0,0 +1,121 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.proxy;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.api.stream.IBroadcastStream;
+import org.red5.server.api.stream.IStreamListener;
+import org.red5.server.api.stream.IStreamPacket;
+import org.red5.server.net.rtmp.event.Aggregate;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.stream.message.RTMPMessage;
+
+/**
+ * Listener of a published stream which sends its packets to all of its destinations. The data of a packet is never copied, audio and video
+ * are wrapped once in a message over a read-only view of the data which is shared by all destinations.
+ *
+ * @author The Red5 Project
+ */
+public class Restream implements IStreamListener {
+
+    private final RestreamEngine engine;
+
+    private final IBroadcastStream stream;
+
+    private final List<RestreamDestination> destinations = new CopyOnWriteArrayList<>();
+
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    Restream(RestreamEngine engine, IBroadcastStream stream) {
+        this.engine = engine;
+        this.stream = stream;
+    }
+
+    @Override
+    public void packetReceived(IBroadcastStream stream, IStreamPacket packet) {
+        IoBuffer data = packet.getData();
+        if (data == null || destinations.isEmpty()) {
+            return;
+        }
+        switch (packet.getDataType()) {
+            case Constants.TYPE_VIDEO_DATA:
+            case Constants.TYPE_AUDIO_DATA:
+                // the consumer of each destination wraps the data of audio and video again, so one message serves all of them
+                IRTMPEvent event = packet.getDataType() == Constants.TYPE_VIDEO_DATA ? new VideoData(data.asReadOnlyBuffer()) : new AudioData(data.asReadOnlyBuffer());
+                RTMPMessage message = RTMPMessage.build(event, packet.getTimestamp());
+                for (RestreamDestination destination : destinations) {
+                    destination.send(stream, message);
+                }
+                break;
+            case Constants.TYPE_AGGREGATE:
+            case Constants.TYPE_NOTIFY:
+                // the encoder reads the data of these directly, so each destination gets its own view
+                for (RestreamDestination destination : destinations) {
+                    IRTMPEvent view = packet.getDataType() == Constants.TYPE_AGGREGATE ? new Aggregate(data.asReadOnlyBuffer()) : new Notify(data.asReadOnlyBuffer());
+                    destination.send(stream, RTMPMessage.build(view, packet.getTimestamp()));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Adds a destination and starts publishing to it, it joins at the next keyframe.
+     *
+     * @param destination
+     *            destination
+     */
+    public void addDestination(RestreamDestination destination) {
+        if (!stopped.get()) {
+            destinations.add(destination);
+            destination.start(engine);
+        }
+    }
+
+    /**
+     * Stops publishing to a destination and removes it.
+     *
+     * @param destination
+     *            destination
+     */
+    public void removeDestination(RestreamDestination destination) {
+        if (destinations.remove(destination)) {
+            destination.stop();
+        }
+    }
+
+    /**
+     * Stops listening to the stream and disconnects from all destinations.
+     */
+    public void stop() {
+        if (stopped.compareAndSet(false, true)) {
+            stream.removeStreamListener(this);
+            destinations.forEach(RestreamDestination::stop);
+            destinations.clear();
+            engine.stopped(this);
+        }
+    }
+
+    public IBroadcastStream getStream() {
+        return stream;
+    }
+
+    public List<RestreamDestination> getDestinations() {
+        return destinations;
+    }
+
+}
@@ -0,0 +1,416 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.proxy;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.client.net.rtmp.INetStreamEventHandler;
+import org.red5.client.net.rtmp.RTMPClient;
+import org.red5.codec.IAudioStreamCodec;
+import org.red5.codec.IStreamCodecInfo;
+import org.red5.codec.IVideoStreamCodec;
+import org.red5.io.utils.ObjectMap;
+import org.red5.server.api.service.IServiceCall;
+import org.red5.server.api.stream.IBroadcastStream;
+import org.red5.server.api.stream.IStreamPacket;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.event.VideoData.FrameType;
+import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.stream.message.RTMPMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Destination of a {@link Restream}, which publishes to one stream on another server over its own connection.
+ * <p>
+ * Frames are only sent while the destination is published, nothing is buffered while it connects. Whenever it starts publishing, the
+ * metadata and decoder configuration of the stream are sent first and frames are dropped until the next keyframe. When more than the
+ * maximum backlog is waiting to be written to the connection, frames are dropped until the next keyframe as well, so a slow destination
+ * neither holds memory nor delays the others. A lost connection is reestablished with an increasing delay.
+ * </p>
+ *
+ * @author The Red5 Project
+ */
+public class RestreamDestination {
+
+    private static Logger log = LoggerFactory.getLogger(RestreamDestination.class);
+
+    private final String host;
+
+    private final int port;
+
+    private final String app;
+
+    private final String publishName;
+
+    private String publishMode = "live";
+
+    // bytes waiting to be written to the connection above which frames are dropped
+    private long maxBacklog = 2 * 1024 * 1024;
+
+    private long reconnectDelay = 1000L;
+
+    private long maxReconnectDelay = 30000L;
+
+    private RestreamEngine engine;
+
+    private volatile StreamState state = StreamState.UNINITIALIZED;
+
+    private volatile boolean stopped;
+
+    private volatile RTMPClient client;
+
+    private volatile Number streamId;
+
+    // metadata and decoder configuration have to be sent before the next frame
+    private volatile boolean resync;
+
+    // frames are dropped until the next keyframe, only accessed by the thread receiving the stream
+    private boolean awaitKeyframe;
+
+    private int attempts;
+
+    private ScheduledFuture<?> reconnect;
+
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    private final AtomicLong framesSent = new AtomicLong();
+
+    private final AtomicLong framesDropped = new AtomicLong();
+
+    private final AtomicInteger reconnects = new AtomicInteger();
+
+    private long lastBytesSent;
+
+    private volatile long bitrate;
+
+    /**
+     * Creates a destination.
+     *
+     * @param host
+     *            server host
+     * @param port
+     *            server port
+     * @param app
+     *            application, such as "live"
+     * @param publishName
+     *            name or key to publish with
+     */
+    public RestreamDestination(String host, int port, String app, String publishName) {
+        this.host = host;
+        this.port = port;
+        this.app = app;
+        this.publishName = publishName;
+    }
+
+    synchronized void start(RestreamEngine engine) {
+        this.engine = engine;
+        connect();
+    }
+
+    /**
+     * Disconnects from the server, the destination is not reconnected.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        state = StreamState.STOPPED;
+        if (reconnect != null) {
+            reconnect.cancel(false);
+        }
+        RTMPClient current = client;
+        if (current != null) {
+            client = null;
+            // disconnecting waits for the session to close, which must not happen on an i/o thread
+            engine.getScheduler().execute(current::disconnect);
+        }
+    }
+
+    private synchronized void connect() {
+        if (stopped) {
+            return;
+        }
+        final RTMPClient current = new RTMPClient();
+        // status events carry no reference to their connection, so each client gets a handler which knows it
+        final INetStreamEventHandler handler = notify -> onStreamEvent(current, notify);
+        current.setSocketConnector(engine.getConnector());
+        current.setExecutor(engine.getScheduler());
+        current.setStreamEventHandler(handler);
+        current.setExceptionHandler(throwable -> {
+            log.debug("Exception on {}", this, throwable);
+            connectionLost(current);
+        });
+        current.setConnectionClosedHandler(() -> connectionLost(current));
+        client = current;
+        streamId = null;
+        state = StreamState.CONNECTING;
+        log.debug("Connecting {}", this);
+        current.connect(host, port, app, call -> {
+            Object result = call.getResult();
+            String code = result instanceof ObjectMap ? (String) ((ObjectMap<?, ?>) result).get("code") : null;
+            if (StatusCodes.NC_CONNECT_SUCCESS.equals(code)) {
+                state = StreamState.STREAM_CREATING;
+                current.createStream(createCall -> {
+                    if (createCall.getResult() instanceof Number) {
+                        streamId = (Number) createCall.getResult();
+                        state = StreamState.PUBLISHING;
+                        current.publish(streamId, publishName, publishMode, handler);
+                    } else {
+                        connectionLost(current);
+                    }
+                });
+            } else {
+                log.warn("Connect failed for {}: {}", this, result);
+                connectionLost(current);
+            }
+        });
+    }
+
+    // reconnects after a delay, unless the client was replaced or the destination was stopped meanwhile
+    private synchronized void connectionLost(RTMPClient lost) {
+        if (lost != client || stopped) {
+            return;
+        }
+        client = null;
+        state = StreamState.CONNECTING;
+        engine.getScheduler().execute(lost::disconnect);
+        long delay = Math.min(reconnectDelay << Math.min(attempts++, 5), maxReconnectDelay);
+        log.info("Connection lost for {}, reconnecting in {} ms", this, delay);
+        reconnects.incrementAndGet();
+        reconnect = engine.getScheduler().schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // status of a stream on the given client, ignored once the client has been replaced
+    private void onStreamEvent(RTMPClient source, Notify notify) {
+        IServiceCall call = notify.getCall();
+        if (source != client) {
+            log.debug("Ignoring status of a replaced connection for {}", this);
+        } else if ("onStatus".equals(call.getServiceMethodName()) && call.getArguments().length > 0 && call.getArguments()[0] instanceof ObjectMap) {
+            String code = (String) ((ObjectMap<?, ?>) call.getArguments()[0]).get("code");
+            log.debug("Status for {}: {}", this, code);
+            if (StatusCodes.NS_PUBLISH_START.equals(code)) {
+                synchronized (this) {
+                    if (source == client) {
+                        attempts = 0;
+                        resync = true;
+                        state = StreamState.PUBLISHED;
+                    }
+                }
+            } else if (StatusCodes.NS_PUBLISH_BADNAME.equals(code) || StatusCodes.NS_FAILED.equals(code) || StatusCodes.NS_UNPUBLISHED_SUCCESS.equals(code)) {
+                connectionLost(source);
+            }
+        }
+    }
+
+    /**
+     * Sends a message of the stream, called by the thread receiving the stream.
+     *
+     * @param stream
+     *            restreamed stream
+     * @param message
+     *            message, whose body must not be modified
+     */
+    void send(IBroadcastStream stream, RTMPMessage message) {
+        RTMPClient current = client;
+        Number sid = streamId;
+        if (state != StreamState.PUBLISHED || current == null || sid == null) {
+            if (!stopped) {
+                framesDropped.incrementAndGet();
+            }
+            return;
+        }
+        IRTMPEvent event = message.getBody();
+        if (resync) {
+            resync = false;
+            awaitKeyframe = true;
+            sendConfiguration(current, sid, stream, event.getTimestamp());
+        }
+        // decoder configuration and metadata always pass, other frames only once the destination is in sync
+        boolean config = event instanceof Notify || (event instanceof VideoData && ((VideoData) event).isConfig()) || (event instanceof AudioData && ((AudioData) event).isConfig());
+        if (awaitKeyframe && !config) {
+            if (!isKeyframe(stream, event)) {
+                framesDropped.incrementAndGet();
+                return;
+            }
+            awaitKeyframe = false;
+        }
+        RTMPConnection conn = current.getConnection();
+        if (conn != null && conn.getPendingBytes() > maxBacklog) {
+            if (!awaitKeyframe) {
+                log.debug("Backlog of {} exceeds {} bytes, dropping frames until the next keyframe", this, maxBacklog);
+                awaitKeyframe = true;
+            }
+            framesDropped.incrementAndGet();
+            return;
+        }
+        IoBuffer data = ((IStreamPacket) event).getData();
+        current.publishStreamData(sid, message);
+        framesSent.incrementAndGet();
+        if (data != null) {
+            bytesSent.addAndGet(data.remaining());
+        }
+    }
+
+    private void sendConfiguration(RTMPClient current, Number sid, IBroadcastStream stream, int timestamp) {
+        Notify metaData = stream.getMetaData();
+        if (metaData != null) {
+            IoBuffer data = metaData.getData();
+            current.publishStreamData(sid, RTMPMessage.build(data != null ? new Notify(data.asReadOnlyBuffer()) : metaData, timestamp));
+        }
+        IStreamCodecInfo codecInfo = stream.getCodecInfo();
+        if (codecInfo != null) {
+            IVideoStreamCodec videoCodec = codecInfo.getVideoCodec();
+            IoBuffer config = videoCodec != null ? videoCodec.getDecoderConfiguration() : null;
+            if (config != null) {
+                current.publishStreamData(sid, RTMPMessage.build(new VideoData(config.asReadOnlyBuffer()), timestamp));
+            }
+            IAudioStreamCodec audioCodec = codecInfo.getAudioCodec();
+            config = audioCodec != null ? audioCodec.getDecoderConfiguration() : null;
+            if (config != null) {
+                current.publishStreamData(sid, RTMPMessage.build(new AudioData(config.asReadOnlyBuffer()), timestamp));
+            }
+        }
+    }
+
+    // a video keyframe, or any audio frame when the stream has no video
+    private static boolean isKeyframe(IBroadcastStream stream, IRTMPEvent event) {
+        if (event instanceof VideoData) {
+            return ((VideoData) event).getFrameType() == FrameType.KEYFRAME;
+        }
+        if (event instanceof AudioData) {
+            IStreamCodecInfo codecInfo = stream.getCodecInfo();
+            return codecInfo == null || !codecInfo.hasVideo();
+        }
+        return false;
+    }
+
+    /**
+     * Updates the bitrate from the bytes sent since the last sample.
+     *
+     * @param interval
+     *            time since the last sample in milliseconds
+     */
+    void sample(long interval) {
+        long bytes = bytesSent.get();
+        bitrate = (bytes - lastBytesSent) * 8000L / interval;
+        lastBytesSent = bytes;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getApp() {
+        return app;
+    }
+
+    public String getPublishName() {
+        return publishName;
+    }
+
+    public String getPublishMode() {
+        return publishMode;
+    }
+
+    public void setPublishMode(String publishMode) {
+        this.publishMode = publishMode;
+    }
+
+    public long getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    /**
+     * Sets the number of bytes waiting to be written to the connection above which frames are dropped.
+     *
+     * @param maxBacklog
+     *            maximum backlog in bytes
+     */
+    public void setMaxBacklog(long maxBacklog) {
+        this.maxBacklog = maxBacklog;
+    }
+
+    public long getReconnectDelay() {
+        return reconnectDelay;
+    }
+
+    /**
+     * Sets the delay before the first reconnect in milliseconds, which doubles with every failed attempt.
+     *
+     * @param reconnectDelay
+     *            delay in milliseconds
+     */
+    public void setReconnectDelay(long reconnectDelay) {
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    public long getMaxReconnectDelay() {
+        return maxReconnectDelay;
+    }
+
+    public void setMaxReconnectDelay(long maxReconnectDelay) {
+        this.maxReconnectDelay = maxReconnectDelay;
+    }
+
+    public StreamState getState() {
+        return state;
+    }
+
+    /**
+     * Returns the bitrate of the audio and video sent during the last second.
+     *
+     * @return bits per second
+     */
+    public long getBitrate() {
+        return bitrate;
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public int getReconnects() {
+        return reconnects.get();
+    }
+
+    /**
+     * Returns the number of bytes waiting to be written to the connection.
+     *
+     * @return backlog in bytes
+     */
+    public long getBacklog() {
+        RTMPClient current = client;
+        RTMPConnection conn = current != null ? current.getConnection() : null;
+        return conn != null ? conn.getPendingBytes() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "RestreamDestination [" + host + ":" + port + "/" + app + "/" + publishName + ", state=" + state + "]";
+    }
+
+}
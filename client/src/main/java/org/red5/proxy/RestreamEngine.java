@@ -0,0 +1,127 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.proxy;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.transport.socket.SocketConnector;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.red5.client.net.rtmp.RTMPMinaIoHandler;
+import org.red5.server.api.stream.IBroadcastStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Restreams published streams to several destinations at once. All outbound connections share one socket connector with a fixed number of
+ * I/O processors and one scheduler, instead of a connector and threads per connection as with {@link StreamingProxy}.
+ *
+ * <pre>
+ * Restream restream = engine.start(stream, Arrays.asList(new RestreamDestination("a.example.com", 1935, "live", "key1"), new RestreamDestination("b.example.com", 1935, "app", "key2")));
+ * ...
+ * restream.stop();
+ * </pre>
+ *
+ * @author The Red5 Project
+ */
+public class RestreamEngine {
+
+    private static Logger log = LoggerFactory.getLogger(RestreamEngine.class);
+
+    // interval at which the bitrates of the destinations are sampled
+    private static final long SAMPLE_INTERVAL = 1000L;
+
+    private final NioSocketConnector connector;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ScheduledFuture<?> sampler;
+
+    private final Set<Restream> restreams = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates an engine with two I/O processors and two scheduler threads.
+     */
+    public RestreamEngine() {
+        this(2, 2);
+    }
+
+    /**
+     * Creates an engine.
+     *
+     * @param ioThreads
+     *            number of I/O processors shared by all outbound connections
+     * @param schedulerThreads
+     *            number of threads for connecting, reconnecting and sampling
+     */
+    public RestreamEngine(int ioThreads, int schedulerThreads) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("Restream-");
+        threadFactory.setDaemon(true);
+        scheduler = Executors.newScheduledThreadPool(schedulerThreads, threadFactory);
+        connector = new NioSocketConnector(ioThreads);
+        connector.setHandler(new RTMPMinaIoHandler());
+        sampler = scheduler.scheduleAtFixedRate(() -> restreams.forEach(restream -> restream.getDestinations().forEach(destination -> destination.sample(SAMPLE_INTERVAL))), SAMPLE_INTERVAL, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts restreaming a stream to the given destinations. The returned restream is registered as a listener of the stream and should be
+     * stopped when the stream is closed, for instance from streamBroadcastClose of the application.
+     *
+     * @param stream
+     *            published stream
+     * @param destinations
+     *            destinations to publish to
+     * @return restream
+     */
+    public Restream start(IBroadcastStream stream, Collection<RestreamDestination> destinations) {
+        log.debug("Restreaming {} to {}", stream.getPublishedName(), destinations);
+        Restream restream = new Restream(this, stream);
+        restreams.add(restream);
+        destinations.forEach(restream::addDestination);
+        stream.addStreamListener(restream);
+        return restream;
+    }
+
+    /**
+     * Stops all restreams and releases the connector and threads.
+     */
+    public void destroy() {
+        restreams.forEach(Restream::stop);
+        sampler.cancel(false);
+        scheduler.shutdown();
+        connector.dispose(false);
+    }
+
+    /**
+     * Returns the running restreams.
+     *
+     * @return restreams
+     */
+    public Set<Restream> getRestreams() {
+        return restreams;
+    }
+
+    void stopped(Restream restream) {
+        restreams.remove(restream);
+    }
+
+    SocketConnector getConnector() {
+        return connector;
+    }
+
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+}
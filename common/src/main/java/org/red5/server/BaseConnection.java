@@ -614,6 +614,15 @@ public abstract class BaseConnection extends AttributeStore implements IConnecti
         return 0;
     }
 
+    /**
+     * Number of outgoing bytes not yet written.
+     *
+     * @return pending bytes
+     */
+    public long getPendingBytes() {
+        return 0;
+    }
+
     /**
      * Count of outgoing video messages not yet written.
      *
@@ -13,6 +13,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.red5.server.api.IConnection;
 import org.red5.server.api.IServer;
@@ -53,6 +54,11 @@ public class Server implements IServer, ApplicationContextAware, InitializingBea
      */
     protected ConcurrentMap<String, String> mapping = new ConcurrentHashMap<String, String>(32, 0.9f, 8);
 
+    /**
+     * Incremented on every change of the mappings
+     */
+    private final AtomicLong mappingGeneration = new AtomicLong();
+
     /**
      * Spring application context
      */
@@ -204,7 +210,11 @@ public class Server implements IServer, ApplicationContextAware, InitializingBea
         log.info("Add mapping global: {} host: {} context: {}", new Object[] { globalName, hostName, contextPath });
         final String key = getKey(hostName, contextPath);
         log.debug("Add mapping: {} => {}", key, globalName);
-        return (mapping.putIfAbsent(key, globalName) == null);
+        if (mapping.putIfAbsent(key, globalName) == null) {
+            mappingGeneration.incrementAndGet();
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -220,7 +230,11 @@ public class Server implements IServer, ApplicationContextAware, InitializingBea
         log.info("Remove mapping host: {} context: {}", hostName, contextPath);
         final String key = getKey(hostName, contextPath);
         log.debug("Remove mapping: {}", key);
-        return (mapping.remove(key) != null);
+        if (mapping.remove(key) != null) {
+            mappingGeneration.incrementAndGet();
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -234,7 +248,11 @@ public class Server implements IServer, ApplicationContextAware, InitializingBea
         log.info("Remove mapping context: {}", contextPath);
         final String key = getKey("", contextPath);
         log.debug("Remove mapping: {}", key);
-        return (mapping.remove(key) != null);
+        if (mapping.remove(key) != null) {
+            mappingGeneration.incrementAndGet();
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -246,6 +264,12 @@ public class Server implements IServer, ApplicationContextAware, InitializingBea
         return mapping;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long getMappingGeneration() {
+        return mappingGeneration.get();
+    }
+
     /**
      * Return global scope names set iterator
      *
@@ -106,6 +106,16 @@ public interface IServer {
      */
     public Map<String, String> getMappingTable();
 
+    /**
+     * Returns a number which changes whenever a mapping is added or removed, so routes resolved through the mappings can tell they may be
+     * stale.
+     *
+     * @return mapping generation
+     */
+    default long getMappingGeneration() {
+        return 0L;
+    }
+
     /**
      * Get list of global scope names.
      *
@@ -186,6 +186,39 @@ public class ServiceUtils {
         scope.dispatchEvent(event);
     }
 
+    /**
+     * Invoke a method on all connections of a scope, serializing the parameters once per object encoding rather than once per connection.
+     * Use this for messages sent to many connections, such as chat or room broadcasts. The parameters must not be changed until the method
+     * returns.
+     *
+     * @param scope
+     *            scope to get connections from
+     * @param method
+     *            name of the method to invoke
+     * @param params
+     *            parameters to pass to the method
+     */
+    public static void broadcastInvoke(IScope scope, String method, Object[] params) {
+        broadcastInvoke(scope, method, params, null);
+    }
+
+    /**
+     * Invoke a method on all connections of a scope and handle results, serializing the parameters once per object encoding rather than
+     * once per connection. The arguments of the calls passed to the callback are the serialized parameters.
+     *
+     * @param scope
+     *            scope to get connections from
+     * @param method
+     *            name of the method to invoke
+     * @param params
+     *            parameters to pass to the method
+     * @param callback
+     *            object to notify when result is received
+     */
+    public static void broadcastInvoke(IScope scope, String method, Object[] params, IPendingServiceCallback callback) {
+        scope.dispatchEvent(ClientInvokeEvent.buildBroadcast(method, params, callback));
+    }
+
     /**
      * Invoke a method on all connections of a client to a given scope.
      *
@@ -340,6 +373,21 @@ public class ServiceUtils {
         scope.dispatchEvent(event);
     }
 
+    /**
+     * Notify a method on all connections of a scope, serializing the parameters once per object encoding rather than once per connection.
+     * The parameters must not be changed until the method returns.
+     *
+     * @param scope
+     *            scope to dispatch event
+     * @param method
+     *            name of the method to notify
+     * @param params
+     *            parameters to pass to the method
+     */
+    public static void broadcastNotify(IScope scope, String method, Object[] params) {
+        scope.dispatchEvent(ClientNotifyEvent.buildBroadcast(method, params));
+    }
+
     /**
      * Notify a method on all connections of a client to a given scope.
      *
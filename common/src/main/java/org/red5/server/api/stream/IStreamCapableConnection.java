@@ -103,4 +103,15 @@ public interface IStreamCapableConnection extends IConnection {
 
     Map<Number, IClientStream> getStreamsMap();
 
+    /**
+     * Marks a stream which drops its own messages when the connection is congested, so the connection leaves them alone.
+     *
+     * @param streamId
+     *            Stream id
+     * @param congestionControlled
+     *            true if the stream drops messages itself
+     */
+    default void setCongestionControlled(Number streamId, boolean congestionControlled) {
+    }
+
 }
@@ -14,4 +14,14 @@ public interface RTMPMinaConnectionMXBean extends RTMPConnectionMXBean {
 
     public void invokeMethod(String method);
 
+    /**
+     * Returns the number of write requests handed to the io session. This is not a count of socket writes; a request may take several
+     * writes and its buffers are written one by one.
+     *
+     * @return write requests
+     */
+    public long getWriteRequests();
+
+    public long getPendingBytes();
+
 }
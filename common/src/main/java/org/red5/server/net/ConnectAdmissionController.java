@@ -0,0 +1,275 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control for client connects, which rejects connects before any scope lookup or application code runs, so a reconnect storm
+ * cannot overwhelm application level authentication. A connect is admitted if
+ * <ul>
+ * <li>the token bucket of its remote address has a token; the bucket refills at <code>addressRate</code> connects per second up to
+ * <code>addressBurst</code></li>
+ * <li>the token bucket of its application, the first segment of the path, has a token; refilled at <code>appRate</code> up to
+ * <code>appBurst</code></li>
+ * <li>fewer than <code>maxConcurrent</code> connects are being handled</li>
+ * </ul>
+ * A rate or limit of 0 disables the check. Admission never waits, since connects are handled on the I/O or shared executor threads; a
+ * connect over a limit is rejected at once. Every admitted connect must be followed by a call to {@link #release()}.
+ * <p>
+ * At most <code>maxTrackedAddresses</code> remote addresses have a bucket. Buckets which have refilled are dropped at most once per second
+ * while the limit is reached. Addresses which find no room share a single bucket with the address rate and burst, so a flood from many
+ * addresses is still limited.
+ *
+ * @author The Red5 Project
+ */
+public class ConnectAdmissionController {
+
+    private static Logger log = LoggerFactory.getLogger(ConnectAdmissionController.class);
+
+    /**
+     * Minimum time between sweeps for idle address buckets.
+     */
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private double appRate;
+
+    private int appBurst = 100;
+
+    private double addressRate;
+
+    private int addressBurst = 5;
+
+    private int maxConcurrent;
+
+    /**
+     * Maximum number of tracked remote addresses.
+     */
+    private int maxTrackedAddresses = 10000;
+
+    /**
+     * Time of the last sweep for idle address buckets.
+     */
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    private final ConcurrentMap<String, TokenBucket> appBuckets = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, TokenBucket> addressBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * Bucket shared by the addresses which find no room in the address buckets.
+     */
+    private volatile TokenBucket overflowBucket;
+
+    private Semaphore slots;
+
+    private final LongAdder admitted = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Decides whether a connect is handled.
+     *
+     * @param path
+     *            path the client connects to
+     * @param address
+     *            remote address of the client
+     * @return true if admitted, in which case {@link #release()} must be called once the connect has been handled, false if it should be
+     *         rejected
+     */
+    public boolean admit(String path, String address) {
+        long now = System.nanoTime();
+        // address first, so a single flooding client does not use up the tokens of the application
+        if (addressRate > 0 && address != null) {
+            TokenBucket bucket = addressBucket(address, now);
+            if (!bucket.tryTake(now)) {
+                return reject("address rate", path, address);
+            }
+        }
+        if (appRate > 0 && path != null) {
+            int slash = path.indexOf('/');
+            String app = slash > 0 ? path.substring(0, slash) : path;
+            if (!appBuckets.computeIfAbsent(app, key -> new TokenBucket(appRate, appBurst, now)).tryTake(now)) {
+                return reject("application rate", path, address);
+            }
+        }
+        if (slots != null && !slots.tryAcquire()) {
+            return reject("pending connects", path, address);
+        }
+        admitted.increment();
+        return true;
+    }
+
+    /**
+     * Releases the slot of an admitted connect.
+     */
+    public void release() {
+        if (slots != null) {
+            slots.release();
+        }
+    }
+
+    /**
+     * Returns the bucket of an address, or the shared overflow bucket when no more addresses can be tracked.
+     */
+    private TokenBucket addressBucket(String address, long now) {
+        TokenBucket bucket = addressBuckets.get(address);
+        if (bucket == null) {
+            if (addressBuckets.size() >= maxTrackedAddresses) {
+                // one caller sweeps per interval, the others do not wait for it
+                long last = lastSweep.get();
+                if (now - last >= SWEEP_INTERVAL && lastSweep.compareAndSet(last, now)) {
+                    addressBuckets.values().removeIf(idle -> idle.isFull(now));
+                }
+                if (addressBuckets.size() >= maxTrackedAddresses) {
+                    return overflowBucket(now);
+                }
+            }
+            bucket = addressBuckets.computeIfAbsent(address, key -> new TokenBucket(addressRate, addressBurst, now));
+        }
+        return bucket;
+    }
+
+    private TokenBucket overflowBucket(long now) {
+        TokenBucket bucket = overflowBucket;
+        if (bucket == null) {
+            synchronized (this) {
+                bucket = overflowBucket;
+                if (bucket == null) {
+                    overflowBucket = bucket = new TokenBucket(addressRate, addressBurst, now);
+                }
+            }
+        }
+        return bucket;
+    }
+
+    private boolean reject(String reason, String path, String address) {
+        rejected.increment();
+        log.debug("Connect to {} from {} rejected, limited by {}", path, address, reason);
+        return false;
+    }
+
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public int getTrackedAddresses() {
+        return addressBuckets.size();
+    }
+
+    public double getAppRate() {
+        return appRate;
+    }
+
+    public void setAppRate(double appRate) {
+        this.appRate = appRate;
+    }
+
+    public int getAppBurst() {
+        return appBurst;
+    }
+
+    public void setAppBurst(int appBurst) {
+        this.appBurst = appBurst;
+    }
+
+    public double getAddressRate() {
+        return addressRate;
+    }
+
+    public void setAddressRate(double addressRate) {
+        this.addressRate = addressRate;
+    }
+
+    public int getAddressBurst() {
+        return addressBurst;
+    }
+
+    public void setAddressBurst(int addressBurst) {
+        this.addressBurst = addressBurst;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Sets the number of connects handled at once; set before use, since admitted connects release into the current slots.
+     *
+     * @param maxConcurrent
+     *            connects handled at once, 0 for no limit
+     */
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+        slots = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+    }
+
+    public int getMaxTrackedAddresses() {
+        return maxTrackedAddresses;
+    }
+
+    public void setMaxTrackedAddresses(int maxTrackedAddresses) {
+        this.maxTrackedAddresses = maxTrackedAddresses;
+    }
+
+    /**
+     * Token bucket refilled continuously at a rate per second up to its burst size.
+     */
+    private static final class TokenBucket {
+
+        private final double tokensPerNano;
+
+        private final double burst;
+
+        private double tokens;
+
+        private long updated;
+
+        TokenBucket(double rate, int burst, long now) {
+            this.tokensPerNano = rate / TimeUnit.SECONDS.toNanos(1);
+            this.burst = Math.max(1, burst);
+            this.tokens = this.burst;
+            this.updated = now;
+        }
+
+        synchronized boolean tryTake(long now) {
+            refill(now);
+            if (tokens >= 1d) {
+                tokens -= 1d;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= burst;
+        }
+
+        private void refill(long now) {
+            if (now > updated) {
+                tokens = Math.min(burst, tokens + (now - updated) * tokensPerNano);
+                updated = now;
+            }
+        }
+
+    }
+
+}
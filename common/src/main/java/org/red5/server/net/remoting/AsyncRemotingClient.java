@@ -0,0 +1,342 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.remoting;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.amf.Input;
+import org.red5.io.amf.Output;
+import org.red5.io.object.Deserializer;
+import org.red5.io.object.RecordSet;
+
+/**
+ * Remoting client which does not block threads while waiting for the server.
+ * <p>
+ * Requests are sent with the JDK HTTP client, which keeps connections alive and reuses them. At most <code>maxRequests</code> requests are
+ * in flight at once; calls made while that many are outstanding wait and are sent together, up to <code>maxBatchSize</code> calls in one
+ * AMF packet, as soon as a request completes. An idle client therefore sends each call right away, and a busy one combines them.
+ * <p>
+ * The blocking and callback methods of {@link RemotingClient} are implemented on top of {@link #invoke(String, Object...)}.
+ *
+ * @author The Red5 Project
+ */
+public class AsyncRemotingClient extends RemotingClient {
+
+    private final HttpClient httpClient;
+
+    private final int timeout;
+
+    private final Queue<PendingCall> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private int maxRequests = 4;
+
+    private int maxBatchSize = 50;
+
+    /**
+     * Create new remoting client for the given url.
+     *
+     * @param url
+     *            URL to connect to
+     */
+    public AsyncRemotingClient(String url) {
+        this(url, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Create new remoting client for the given url and given timeout.
+     *
+     * @param url
+     *            URL to connect to
+     * @param timeout
+     *            Timeout for one request in milliseconds
+     */
+    public AsyncRemotingClient(String url, int timeout) {
+        this.url = url;
+        this.timeout = timeout;
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofMillis(timeout)).build();
+        log.debug("AsyncRemotingClient created - url: {} timeout: {}", url, timeout);
+    }
+
+    /**
+     * Invoke a method on the remoting server.
+     *
+     * @param method
+     *            Method name
+     * @param params
+     *            Parameters passed to method
+     * @return future completed with the result of the method call, or exceptionally with a {@link RemotingCallException} if the server
+     *         reported an error or with an exception if the request failed
+     */
+    public CompletableFuture<Object> invoke(String method, Object... params) {
+        PendingCall call = new PendingCall(method, params);
+        pending.offer(call);
+        sendPending();
+        return call.future;
+    }
+
+    /**
+     * Invoke a method synchronously on the remoting server.
+     *
+     * @param method
+     *            Method name
+     * @param params
+     *            Parameters passed to method
+     * @return the result of the method call, or null if it failed
+     */
+    @Override
+    public Object invokeMethod(String method, Object[] params) {
+        try {
+            return invoke(method, params).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Error while invoking remoting method: {}", method, e.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * Invoke a method asynchronously on the remoting server.
+     *
+     * @param method
+     *            Method name
+     * @param methodParams
+     *            Parameters passed to method
+     * @param callback
+     *            Callback
+     */
+    @Override
+    public void invokeMethod(String method, Object[] methodParams, IRemotingCallback callback) {
+        invoke(method, methodParams).whenComplete((result, error) -> {
+            if (error == null) {
+                callback.resultReceived(this, method, methodParams, result);
+            } else {
+                callback.errorReceived(this, method, methodParams, error);
+            }
+        });
+    }
+
+    /**
+     * Sends waiting calls while fewer than the maximum number of requests are in flight.
+     */
+    private void sendPending() {
+        while (!pending.isEmpty()) {
+            int requests = inFlight.get();
+            if (requests >= maxRequests) {
+                // sent when a request completes
+                return;
+            }
+            if (inFlight.compareAndSet(requests, requests + 1)) {
+                List<PendingCall> batch = new ArrayList<>();
+                PendingCall call;
+                while (batch.size() < maxBatchSize && (call = pending.poll()) != null) {
+                    batch.add(call);
+                }
+                if (batch.isEmpty()) {
+                    inFlight.decrementAndGet();
+                } else {
+                    send(batch);
+                }
+            }
+        }
+    }
+
+    private void send(List<PendingCall> batch) {
+        CompletableFuture<HttpResponse<byte[]>> response;
+        try {
+            IoBuffer data = encodeInvokes(batch);
+            byte[] body = new byte[data.limit()];
+            data.get(body);
+            data.free();
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + appendToUrl)).timeout(Duration.ofMillis(timeout)).header("Content-Type", CONTENT_TYPE).POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+            response = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (Exception e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((resp, error) -> {
+            inFlight.decrementAndGet();
+            try {
+                if (error != null) {
+                    batch.forEach(call -> call.future.completeExceptionally(error));
+                } else if (resp.statusCode() / 100 != 2) {
+                    IOException e = new IOException("Didn't receive success from remoting server: " + resp.statusCode());
+                    batch.forEach(call -> call.future.completeExceptionally(e));
+                } else {
+                    decodeResults(IoBuffer.wrap(resp.body()), batch);
+                }
+            } catch (Exception e) {
+                log.warn("Exception decoding remoting response", e);
+                batch.forEach(call -> call.future.completeExceptionally(e));
+            } finally {
+                sendPending();
+            }
+        });
+    }
+
+    /**
+     * Encode calls into one request, each with the response URI "/n" where n is its position starting at 1.
+     *
+     * @param batch
+     *            calls
+     * @return Byte buffer with data to perform remoting calls
+     */
+    private IoBuffer encodeInvokes(List<PendingCall> batch) {
+        IoBuffer result = IoBuffer.allocate(1024);
+        result.setAutoExpand(true);
+        result.putShort((short) 0);
+        encodeHeaders(result);
+        result.putShort((short) batch.size());
+        IoBuffer tmp = IoBuffer.allocate(1024);
+        tmp.setAutoExpand(true);
+        int index = 1;
+        for (PendingCall call : batch) {
+            Output.putString(result, call.method);
+            Output.putString(result, "/" + index++);
+            tmp.clear();
+            Output tmpOut = new Output(tmp);
+            if (call.params == null) {
+                tmpOut.writeNull();
+            } else {
+                tmpOut.writeArray(call.params);
+            }
+            tmp.flip();
+            result.putInt(tmp.limit());
+            result.put(tmp);
+        }
+        tmp.free();
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Decode the response to a request and complete its calls.
+     *
+     * @param data
+     *            Result data to decode
+     * @param batch
+     *            calls of the request
+     */
+    private void decodeResults(IoBuffer data, List<PendingCall> batch) {
+        processHeaders(data);
+        int count = data.getUnsignedShort();
+        Input input = new Input(data);
+        for (int i = 0; i < count; i++) {
+            // "/n/onResult" or "/n/onStatus"
+            String target = input.getString();
+            input.getString();
+            data.getInt();
+            input.reset();
+            Object result = Deserializer.deserialize(input, Object.class);
+            int end = target.indexOf('/', 1);
+            int index = end > 0 ? Integer.parseInt(target.substring(1, end)) : -1;
+            if (index < 1 || index > batch.size()) {
+                log.warn("Unexpected remoting response target: {}", target);
+                continue;
+            }
+            PendingCall call = batch.get(index - 1);
+            if (target.endsWith("/onStatus")) {
+                call.future.completeExceptionally(new RemotingCallException(call.method, result));
+            } else {
+                if (result instanceof RecordSet) {
+                    // Make sure we can retrieve paged results
+                    ((RecordSet) result).setRemotingClient(this);
+                }
+                call.future.complete(result);
+            }
+        }
+        for (PendingCall call : batch) {
+            if (!call.future.isDone()) {
+                call.future.completeExceptionally(new IOException("No result received for " + call.method));
+            }
+        }
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * Sets the number of requests which may be in flight at once.
+     *
+     * @param maxRequests
+     *            number of requests
+     */
+    public void setMaxRequests(int maxRequests) {
+        this.maxRequests = maxRequests;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Sets the number of waiting calls which may be sent in one request.
+     *
+     * @param maxBatchSize
+     *            number of calls
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    private static final class PendingCall {
+
+        final String method;
+
+        final Object[] params;
+
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        PendingCall(String method, Object[] params) {
+            this.method = method;
+            this.params = params;
+        }
+
+    }
+
+    /**
+     * Error reported by the remoting server for a call.
+     */
+    public static class RemotingCallException extends RuntimeException {
+
+        private static final long serialVersionUID = -2475391406398432610L;
+
+        private final transient Object status;
+
+        public RemotingCallException(String method, Object status) {
+            super(String.format("Remoting call %s failed: %s", method, status));
+            this.status = status;
+        }
+
+        /**
+         * Returns the error object sent by the server, usually a map with code, level and description.
+         *
+         * @return status
+         */
+        public Object getStatus() {
+            return status;
+        }
+
+    }
+
+}
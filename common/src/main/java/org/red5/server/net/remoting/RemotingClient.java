@@ -108,21 +108,12 @@ public class RemotingClient implements IRemotingClient {
     }
 
     /**
-     * Encode the method call.
+     * Encode the headers to send with a request.
      *
-     * @param method
-     *            Remote method being called
-     * @param params
-     *            Method parameters
-     * @return Byte buffer with data to perform remoting call
+     * @param result
+     *            Byte buffer the request is written to
      */
-    private IoBuffer encodeInvoke(String method, Object[] params) {
-        log.debug("RemotingClient encodeInvoke - method: {} params: {}", method, params);
-        IoBuffer result = IoBuffer.allocate(1024);
-        result.setAutoExpand(true);
-        // XXX: which is the correct version?
-        result.putShort((short) 0);
-        // Headers
+    protected void encodeHeaders(IoBuffer result) {
         Collection<RemotingHeader> hdr = headers.values();
         result.putShort((short) hdr.size());
         for (RemotingHeader header : hdr) {
@@ -140,6 +131,24 @@ public class RemotingClient implements IRemotingClient {
             tmp.free();
             tmp = null;
         }
+    }
+
+    /**
+     * Encode the method call.
+     *
+     * @param method
+     *            Remote method being called
+     * @param params
+     *            Method parameters
+     * @return Byte buffer with data to perform remoting call
+     */
+    private IoBuffer encodeInvoke(String method, Object[] params) {
+        log.debug("RemotingClient encodeInvoke - method: {} params: {}", method, params);
+        IoBuffer result = IoBuffer.allocate(1024);
+        result.setAutoExpand(true);
+        // XXX: which is the correct version?
+        result.putShort((short) 0);
+        encodeHeaders(result);
         // One body
         result.putShort((short) 1);
 
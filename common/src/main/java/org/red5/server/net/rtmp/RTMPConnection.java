@@ -13,13 +13,11 @@ import java.time.Instant;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -79,6 +77,7 @@ import org.red5.server.stream.OutputStream;
 import org.red5.server.stream.PlaylistSubscriberStream;
 import org.red5.server.stream.SingleItemSubscriberStream;
 import org.red5.server.stream.StreamService;
+import org.red5.server.util.CopyOnWriteIntMap;
 import org.red5.server.util.ScopeUtils;
 import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -90,6 +89,11 @@ import org.springframework.util.concurrent.ListenableFutureTask;
 /**
  * RTMP connection. Stores information about client streams, data transfer channels, pending RPC calls, bandwidth configuration, AMF
  * encoding type (AMF0/AMF3), connection state (is alive, last ping time and ping result) and session.
+ * <p>
+ * Since 1.3.37 the protected <code>channels</code>, <code>streams</code>, <code>reservedStreams</code>, <code>pendingCalls</code> and
+ * <code>pendingVideos</code> fields are {@link CopyOnWriteIntMap}s keyed by the int id instead of <code>ConcurrentMap</code>s, and
+ * <code>deferredResults</code> is null until first used. Subclasses which use these fields directly have to be updated; the public
+ * accessors such as {@link #getChannel(int)}, {@link #getStreamById(Number)} and {@link #getStreamsMap()} are unchanged.
  */
 public abstract class RTMPConnection extends BaseConnection implements IStreamCapableConnection, IServiceCapableConnection {
 
@@ -146,6 +150,18 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      */
     private static final AtomicIntegerFieldUpdater<RTMPConnection> receivedQueueSizeUpdater = AtomicIntegerFieldUpdater.newUpdater(RTMPConnection.class, "receivedQueueSize");
 
+    /**
+     * Updater for draining field.
+     */
+    private static final AtomicIntegerFieldUpdater<RTMPConnection> drainingUpdater = AtomicIntegerFieldUpdater.newUpdater(RTMPConnection.class, "draining");
+
+    /**
+     * Maximum number of received messages handled by one drain in lean mode, before yielding the executor thread to other connections.
+     */
+    private static final int LEAN_DRAIN_LIMIT = 32;
+
+    // the capacity and concurrency settings below no longer apply to the int keyed maps and are only kept for configuration compatibility
+
     /**
      * Initial channel capacity
      */
@@ -191,19 +207,19 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      *
      * @see org.red5.server.net.rtmp.Channel
      */
-    protected transient ConcurrentMap<Integer, Channel> channels = new ConcurrentHashMap<>(channelsInitalCapacity, 0.9f, channelsConcurrencyLevel);
+    protected transient CopyOnWriteIntMap<Channel> channels = new CopyOnWriteIntMap<>();
 
     /**
-     * Client streams
+     * Client streams, keyed by stream id.
      *
      * @see org.red5.server.api.stream.IClientStream
      */
-    protected transient ConcurrentMap<Number, IClientStream> streams = new ConcurrentHashMap<>(streamsInitalCapacity, 0.9f, streamsConcurrencyLevel);
+    protected transient CopyOnWriteIntMap<IClientStream> streams = new CopyOnWriteIntMap<>();
 
     /**
      * Reserved stream ids. Stream id's directly relate to individual NetStream instances.
      */
-    protected transient Set<Number> reservedStreams = Collections.newSetFromMap(new ConcurrentHashMap<Number, Boolean>(reservedStreamsInitalCapacity, 0.9f, reservedStreamsConcurrencyLevel));
+    protected transient CopyOnWriteIntMap<Boolean> reservedStreams = new CopyOnWriteIntMap<>();
 
     /**
      * Received packet queue size
@@ -218,14 +234,14 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     /**
      * Hash map that stores pending calls and ids as pairs.
      */
-    protected transient ConcurrentMap<Integer, IPendingServiceCall> pendingCalls = new ConcurrentHashMap<>(pendingCallsInitalCapacity, 0.75f, pendingCallsConcurrencyLevel);
+    protected transient CopyOnWriteIntMap<IPendingServiceCall> pendingCalls = new CopyOnWriteIntMap<>();
 
     /**
-     * Deferred results set.
+     * Deferred results set, created on first use.
      *
      * @see org.red5.server.net.rtmp.DeferredResult
      */
-    protected transient CopyOnWriteArraySet<DeferredResult> deferredResults = new CopyOnWriteArraySet<>();
+    protected transient volatile CopyOnWriteArraySet<DeferredResult> deferredResults;
 
     /**
      * Last ping round trip time
@@ -275,7 +291,12 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     /**
      * Map for pending video packets keyed by stream id.
      */
-    protected transient ConcurrentMap<Number, AtomicInteger> pendingVideos = new ConcurrentHashMap<>(1, 0.9f, 1);
+    protected transient CopyOnWriteIntMap<AtomicInteger> pendingVideos = new CopyOnWriteIntMap<>();
+
+    /**
+     * Ids of the streams whose subscriber decides on dropping itself, so the encoder leaves their messages alone.
+     */
+    protected transient Set<Integer> congestionControlledStreams = new CopyOnWriteArraySet<>();
 
     /**
      * Number of (NetStream) streams used.
@@ -285,7 +306,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     /**
      * Remembered stream buffer durations.
      */
-    private transient ConcurrentMap<Number, Integer> streamBuffers = new ConcurrentHashMap<>(1, 0.9f, 1);
+    private transient CopyOnWriteIntMap<Integer> streamBuffers = new CopyOnWriteIntMap<>();
 
     /**
      * Maximum time in milliseconds to wait for a valid handshake.
@@ -362,9 +383,9 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     protected ScheduledFuture<?> keepAliveTask;
 
     /**
-     * Executor for received RTMP messages.
+     * Executor for received RTMP messages, created when the first message is received unless in lean mode.
      */
-    protected transient ExecutorService receivedPacketExecutor = Executors.newSingleThreadExecutor();
+    protected transient ExecutorService receivedPacketExecutor;
 
     /**
      * Future which takes packets from the queue and passes them to the handler.
@@ -376,6 +397,16 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      */
     protected volatile LinkedTransferQueue<Packet> receivedPacketQueue = new LinkedTransferQueue<>();
 
+    /**
+     * Lean mode; received messages are handled in order on the shared message executor instead of a receiving thread per connection.
+     */
+    protected boolean lean;
+
+    /**
+     * Set to 1 while a drain of the received packet queue is scheduled or running, lean mode only.
+     */
+    private volatile int draining;
+
     /**
      * Creates anonymous RTMP connection without scope.
      *
@@ -664,10 +695,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         Channel channel = null;
         // prevent channel retrieve prior to fully connected state
         if (state.getState() > RTMP.STATE_HANDSHAKE) {
-            channel = channels.putIfAbsent(channelId, new Channel(this, channelId));
-            if (channel == null) {
-                channel = channels.get(channelId);
-            }
+            channel = channels.computeIfAbsent(channelId, id -> new Channel(this, id));
         } else {
             log.warn("Channel {} requested before connected", channelId);
         }
@@ -704,14 +732,22 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     }
 
     public Map<Number, IClientStream> getStreamsMap() {
-        return Collections.unmodifiableMap(streams);
+        // snapshot keyed the same way as the stream ids are handed out
+        Map<Number, IClientStream> map = new HashMap<>();
+        for (int streamId : streams.keys()) {
+            IClientStream stream = streams.get(streamId);
+            if (stream != null) {
+                map.put((double) streamId, stream);
+            }
+        }
+        return Collections.unmodifiableMap(map);
     }
 
     /** {@inheritDoc} */
     public Number reserveStreamId() {
         double d = 1.0d;
         for (; d < MAX_RESERVED_STREAMS; d++) {
-            if (reservedStreams.add(d)) {
+            if (reservedStreams.putIfAbsent((int) d, Boolean.TRUE) == null) {
                 break;
             }
         }
@@ -726,7 +762,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         if (isTrace) {
             log.trace("Reserve stream id: {}", streamId);
         }
-        if (reservedStreams.add(streamId.doubleValue())) {
+        if (reservedStreams.putIfAbsent(streamId.intValue(), Boolean.TRUE) == null) {
             return streamId;
         }
         return reserveStreamId();
@@ -744,12 +780,12 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         if (isTrace) {
             log.trace("Checking validation for streamId {}; reservedStreams: {}; streams: {}, connection: {}", new Object[] { d, reservedStreams, streams, sessionId });
         }
-        if (d <= 0 || !reservedStreams.contains(d)) {
+        if (d <= 0 || !reservedStreams.containsKey((int) d)) {
             log.warn("Stream id: {} was not reserved in connection {}", d, sessionId);
             // stream id has not been reserved before
             return false;
         }
-        if (streams.get(d) != null) {
+        if (streams.containsKey((int) d)) {
             // another stream already exists with this id
             log.warn("Another stream already exists with this id in streams {} in connection: {}", streams, sessionId);
             return false;
@@ -844,7 +880,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     }
 
     public void addClientStream(IClientStream stream) {
-        if (reservedStreams.add(stream.getStreamId().doubleValue())) {
+        if (reservedStreams.putIfAbsent(stream.getStreamId().intValue(), Boolean.TRUE) == null) {
             registerStream(stream);
         } else {
             // stream not added to registered? what to do with it?
@@ -867,7 +903,29 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
 
     /** {@inheritDoc} */
     public IClientStream getStreamById(Number streamId) {
-        return streams.get(streamId.doubleValue());
+        return streams.get(streamId.intValue());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setCongestionControlled(Number streamId, boolean congestionControlled) {
+        if (congestionControlled) {
+            congestionControlledStreams.add(streamId.intValue());
+        } else {
+            congestionControlledStreams.remove(streamId.intValue());
+        }
+    }
+
+    /**
+     * Whether the stream on the given channel has a subscriber which decides on dropping itself.
+     *
+     * @param channelId
+     *            Channel id
+     * @return true if the messages on the channel have already been through a congestion controller
+     */
+    public boolean isCongestionControlledChannel(int channelId) {
+        // channels 2 and 3 are "special" and don't have a stream associated
+        return channelId >= 4 && !congestionControlledStreams.isEmpty() && congestionControlledStreams.contains(getStreamIdForChannelId(channelId).intValue());
     }
 
     /**
@@ -953,7 +1011,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      *            Stream
      */
     private void customizeStream(Number streamId, AbstractClientStream stream) {
-        Integer buffer = streamBuffers.get(streamId.doubleValue());
+        Integer buffer = streamBuffers.get(streamId.intValue());
         if (buffer != null) {
             stream.setClientBufferDuration(buffer);
         }
@@ -969,7 +1027,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      * @param stream
      */
     private boolean registerStream(IClientStream stream) {
-        if (streams.putIfAbsent(stream.getStreamId().doubleValue(), stream) == null) {
+        if (streams.putIfAbsent(stream.getStreamId().intValue(), stream) == null) {
             usedStreams.incrementAndGet();
             return true;
         }
@@ -1018,8 +1076,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
             IStreamService streamService = (IStreamService) ScopeUtils.getScopeService(scope, IStreamService.class, StreamService.class);
             if (streamService != null) {
                 //in the end of call streamService.deleteStream we do streams.remove
-                for (Iterator<IClientStream> it = streams.values().iterator(); it.hasNext();) {
-                    IClientStream stream = it.next();
+                for (IClientStream stream : streams.values()) {
                     if (isDebug) {
                         log.debug("Closing stream: {}", stream.getStreamId());
                     }
@@ -1036,7 +1093,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
             channels.clear();
             streams.clear();
             pendingCalls.clear();
-            deferredResults.clear();
+            deferredResults = null;
             pendingVideos.clear();
             streamBuffers.clear();
             if (isTrace) {
@@ -1047,6 +1104,10 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
             if (decoderState != null) {
                 decoderState.stopDecoding();
             }
+            // the receiving thread exits once its loop sees the closed state
+            if (receivedPacketExecutor != null) {
+                receivedPacketExecutor.shutdown();
+            }
         } else if (isDebug) {
             log.debug("Already closing..");
         }
@@ -1067,11 +1128,11 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         switch (event.getType()) {
             case CLIENT_INVOKE:
                 ClientInvokeEvent cie = (ClientInvokeEvent) event;
-                invoke(cie.getMethod(), cie.getParams(), cie.getCallback());
+                invoke(cie.getMethod(), cie.getParams(getEncoding()), cie.getCallback());
                 break;
             case CLIENT_NOTIFY:
                 ClientNotifyEvent cne = (ClientNotifyEvent) event;
-                notify(cne.getMethod(), cne.getParams());
+                notify(cne.getMethod(), cne.getParams(getEncoding()));
                 break;
             default:
                 log.warn("Unhandled event: {}", event);
@@ -1087,7 +1148,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      * processing. The caller only knows that it cannot be confirmed that the callee has invoked the service call and returned a result.
      */
     public void sendPendingServiceCallsCloseError() {
-        if (pendingCalls != null && !pendingCalls.isEmpty()) {
+        if (!pendingCalls.isEmpty()) {
             if (isDebug) {
                 log.debug("Connection calls pending: {}", pendingCalls.size());
             }
@@ -1107,7 +1168,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         }
         double d = streamId.doubleValue();
         if (d > 0.0d) {
-            if (reservedStreams.remove(d)) {
+            if (reservedStreams.remove((int) d) != null) {
                 deleteStreamById(d);
             } else {
                 if (isTrace) {
@@ -1124,10 +1185,10 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         }
         double d = streamId.doubleValue();
         if (d > 0.0d) {
-            if (streams.remove(d) != null) {
+            if (streams.remove((int) d) != null) {
                 usedStreams.decrementAndGet();
-                pendingVideos.remove(d);
-                streamBuffers.remove(d);
+                pendingVideos.remove((int) d);
+                streamBuffers.remove((int) d);
             } else {
                 if (isTrace) {
                     log.trace("Failed to remove stream id: {} streams: {}", d, streams);
@@ -1363,12 +1424,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     protected void writingMessage(Packet message) {
         if (message.getMessage() instanceof VideoData) {
             Number streamId = message.getHeader().getStreamId();
-            final AtomicInteger value = new AtomicInteger();
-            AtomicInteger old = pendingVideos.putIfAbsent(streamId.doubleValue(), value);
-            if (old == null) {
-                old = value;
-            }
-            old.incrementAndGet();
+            pendingVideos.computeIfAbsent(streamId.intValue(), id -> new AtomicInteger()).incrementAndGet();
         }
         // XXX(paul) work-around for RTMPE issue with Mina messageSent callback
         if (isEncrypted()) {
@@ -1449,8 +1505,18 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
             // increment the queue size
             receivedQueueSizeUpdater.incrementAndGet(this);
         }
+        if (lean) {
+            // one drain at a time keeps the messages of a connection in order
+            if (drainingUpdater.compareAndSet(this, 0, 1)) {
+                scheduleDrain();
+            }
+            return;
+        }
         // create the future for processing the queue as needed
         if (receivedPacketFuture == null) {
+            if (receivedPacketExecutor == null) {
+                receivedPacketExecutor = Executors.newSingleThreadExecutor();
+            }
             final RTMPConnection conn = this;
             receivedPacketFuture = receivedPacketExecutor.submit(() -> {
                 Thread.currentThread().setName(String.format("RTMPRecv@%s", sessionId));
@@ -1516,6 +1582,47 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         }
     }
 
+    /**
+     * Submits a drain of the received packet queue to the message executor, or drains on the calling thread if there is no executor or
+     * it rejects the drain.
+     */
+    private void scheduleDrain() {
+        if (executor != null) {
+            try {
+                executor.execute(this::drainReceivedPackets);
+                return;
+            } catch (TaskRejectedException tre) {
+                // the executor is saturated; the packets are handled here rather than left until the next message arrives
+                log.info("Rejected received message drain for {} queued: {}, draining on the calling thread", sessionId, receivedQueueSize);
+            }
+        }
+        drainReceivedPackets();
+    }
+
+    /**
+     * Handles queued packets in lean mode, up to a limit so a busy connection does not hold the executor thread.
+     */
+    private void drainReceivedPackets() {
+        try {
+            Packet p;
+            for (int i = 0; i < LEAN_DRAIN_LIMIT && (p = receivedPacketQueue.poll()) != null; i++) {
+                receivedQueueSizeUpdater.decrementAndGet(this);
+                ReceivedMessageTask task = new ReceivedMessageTask(this, p);
+                try {
+                    task.call();
+                } catch (Throwable e) {
+                    log.warn("Incoming message failed task: {}", task, e);
+                }
+            }
+        } finally {
+            draining = 0;
+        }
+        // pick up packets queued after the last poll or left over by the limit
+        if (!receivedPacketQueue.isEmpty() && state.getState() < RTMP.STATE_ERROR && drainingUpdater.compareAndSet(this, 0, 1)) {
+            scheduleDrain();
+        }
+    }
+
     /**
      * Mark message as sent.
      *
@@ -1528,7 +1635,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         if (event instanceof VideoData) {
             log.debug("Video message sent");
             Number streamId = message.getHeader().getStreamId();
-            AtomicInteger pending = pendingVideos.get(streamId.doubleValue());
+            AtomicInteger pending = pendingVideos.get(streamId.intValue());
             if (isTrace) {
                 log.trace("Stream id: {} pending: {} total pending videos: {}", streamId, pending, pendingVideos.size());
             }
@@ -1564,7 +1671,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     /** {@inheritDoc} */
     @Override
     public long getPendingVideoMessages(Number streamId) {
-        AtomicInteger pendingCount = pendingVideos.get(streamId.doubleValue());
+        AtomicInteger pendingCount = pendingVideos.get(streamId.intValue());
         if (isTrace) {
             log.trace("Stream id: {} pendingCount: {} total pending videos: {}", streamId, pendingCount, pendingVideos.size());
         }
@@ -1736,7 +1843,15 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      *            Result to register
      */
     public void registerDeferredResult(DeferredResult result) {
-        deferredResults.add(result);
+        CopyOnWriteArraySet<DeferredResult> results = deferredResults;
+        if (results == null) {
+            synchronized (this) {
+                if ((results = deferredResults) == null) {
+                    deferredResults = results = new CopyOnWriteArraySet<>();
+                }
+            }
+        }
+        results.add(result);
     }
 
     /**
@@ -1746,7 +1861,10 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      *            Result to unregister
      */
     public void unregisterDeferredResult(DeferredResult result) {
-        deferredResults.remove(result);
+        CopyOnWriteArraySet<DeferredResult> results = deferredResults;
+        if (results != null) {
+            results.remove(result);
+        }
     }
 
     public void rememberStreamBufferDuration(int streamId, int bufferDuration) {
@@ -1779,66 +1897,97 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         this.maxPollTimeout = maxPollTimeout;
     }
 
+    public boolean isLean() {
+        return lean;
+    }
+
+    /**
+     * Enables lean mode, in which received messages are handled on the shared message executor without a receiving thread per connection.
+     * Meant for deployments holding many mostly idle connections.
+     *
+     * @param lean
+     *            true to enable lean mode
+     */
+    public void setLean(boolean lean) {
+        this.lean = lean;
+    }
+
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public int getChannelsInitalCapacity() {
         return channelsInitalCapacity;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public void setChannelsInitalCapacity(int channelsInitalCapacity) {
         this.channelsInitalCapacity = channelsInitalCapacity;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public int getChannelsConcurrencyLevel() {
         return channelsConcurrencyLevel;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public void setChannelsConcurrencyLevel(int channelsConcurrencyLevel) {
         this.channelsConcurrencyLevel = channelsConcurrencyLevel;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public int getStreamsInitalCapacity() {
         return streamsInitalCapacity;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public void setStreamsInitalCapacity(int streamsInitalCapacity) {
         this.streamsInitalCapacity = streamsInitalCapacity;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public int getStreamsConcurrencyLevel() {
         return streamsConcurrencyLevel;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public void setStreamsConcurrencyLevel(int streamsConcurrencyLevel) {
         this.streamsConcurrencyLevel = streamsConcurrencyLevel;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public int getPendingCallsInitalCapacity() {
         return pendingCallsInitalCapacity;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public void setPendingCallsInitalCapacity(int pendingCallsInitalCapacity) {
         this.pendingCallsInitalCapacity = pendingCallsInitalCapacity;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public int getPendingCallsConcurrencyLevel() {
         return pendingCallsConcurrencyLevel;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public void setPendingCallsConcurrencyLevel(int pendingCallsConcurrencyLevel) {
         this.pendingCallsConcurrencyLevel = pendingCallsConcurrencyLevel;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public int getReservedStreamsInitalCapacity() {
         return reservedStreamsInitalCapacity;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public void setReservedStreamsInitalCapacity(int reservedStreamsInitalCapacity) {
         this.reservedStreamsInitalCapacity = reservedStreamsInitalCapacity;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public int getReservedStreamsConcurrencyLevel() {
         return reservedStreamsConcurrencyLevel;
     }
 
+    @Deprecated(since = "1.3.37", forRemoval = true)
     public void setReservedStreamsConcurrencyLevel(int reservedStreamsConcurrencyLevel) {
         this.reservedStreamsConcurrencyLevel = reservedStreamsConcurrencyLevel;
     }
@@ -34,6 +34,7 @@ import org.red5.server.exception.ScopeNotFoundException;
 import org.red5.server.exception.ScopeShuttingDownException;
 import org.red5.server.messaging.IConsumer;
 import org.red5.server.messaging.OOBControlMessage;
+import org.red5.server.net.ConnectAdmissionController;
 import org.red5.server.net.ICommand;
 import org.red5.server.net.rtmp.codec.RTMP;
 import org.red5.server.net.rtmp.event.ChunkSize;
@@ -45,6 +46,7 @@ import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.net.rtmp.status.Status;
 import org.red5.server.net.rtmp.status.StatusObject;
 import org.red5.server.net.rtmp.status.StatusObjectService;
+import org.red5.server.scope.ScopeRouteCache;
 import org.red5.server.service.Call;
 import org.red5.server.so.ISharedObjectEvent;
 import org.red5.server.so.SharedObjectEvent;
@@ -85,6 +87,16 @@ public class RTMPHandler extends BaseRTMPHandler {
      */
     private boolean dispatchStreamActions;
 
+    /**
+     * Cache of resolved connect routes, optional.
+     */
+    private ScopeRouteCache routeCache;
+
+    /**
+     * Admission control for connects, optional.
+     */
+    private ConnectAdmissionController admissionController;
+
     /**
      * Setter for server object.
      *
@@ -128,6 +140,22 @@ public class RTMPHandler extends BaseRTMPHandler {
         this.dispatchStreamActions = dispatchStreamActions;
     }
 
+    public ScopeRouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    public void setRouteCache(ScopeRouteCache routeCache) {
+        this.routeCache = routeCache;
+    }
+
+    public ConnectAdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public void setAdmissionController(ConnectAdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void onChunkSize(RTMPConnection conn, Channel channel, Header source, ChunkSize chunkSize) {
@@ -306,16 +334,22 @@ public class RTMPHandler extends BaseRTMPHandler {
             params.put("path", path);
             // connection setup
             conn.setup(host, path, params);
+            // connects over the admission limits are rejected before any lookup or application code runs
+            boolean admitted = admitConnect(conn, call, path);
+            disconnectOnReturn = !admitted;
             try {
-                // Lookup server scope when connected using host and application name
-                IGlobalScope global = server.lookupGlobal(host, path);
-                log.trace("Global lookup result: {}", global);
-                if (global != null) {
-                    final IContext context = global.getContext();
-                    IScope scope = null;
+                // use a cached route, or lookup server scope when connected using host and application name; nothing is looked up for a rejected connect
+                IScope scope = admitted && routeCache != null ? routeCache.get(host, path) : null;
+                IGlobalScope global = admitted && scope == null ? server.lookupGlobal(host, path) : null;
+                log.trace("Route cache result: {} global lookup result: {}", scope, global);
+                if (scope != null || global != null) {
                     try {
-                        // TODO optimize this to use Scope instead of Context
-                        scope = context.resolveScope(global, path);
+                        if (scope == null) {
+                            scope = global.getContext().resolveScope(global, path);
+                            if (scope != null && routeCache != null) {
+                                routeCache.put(host, path, scope);
+                            }
+                        }
                         if (scope != null) {
                             if (isDebug) {
                                 log.debug("Connecting to: {}", scope.getName());
@@ -405,7 +439,7 @@ public class RTMPHandler extends BaseRTMPHandler {
                         log.info("Application at {} currently shutting down on {}", path, host);
                         disconnectOnReturn = true;
                     }
-                } else {
+                } else if (admitted) {
                     log.warn("Scope {} not found", path);
                     call.setStatus(Call.STATUS_SERVICE_NOT_FOUND);
                     if (call instanceof IPendingServiceCall) {
@@ -424,6 +458,10 @@ public class RTMPHandler extends BaseRTMPHandler {
                 }
                 log.error("Error connecting {}", e);
                 disconnectOnReturn = true;
+            } finally {
+                if (admitted && admissionController != null) {
+                    admissionController.release();
+                }
             }
             // Evaluate request for AMF3 encoding
             if (Double.valueOf(3d).equals(params.get("objectEncoding"))) {
@@ -494,6 +532,31 @@ public class RTMPHandler extends BaseRTMPHandler {
         return statusObjectService.getStatusObject(code);
     }
 
+    /**
+     * Checks a connect against the admission controller, if there is one, and sets the rejection as the result of the connect call.
+     *
+     * @param conn
+     *            connection
+     * @param call
+     *            connect call
+     * @param path
+     *            path the client connects to
+     * @return true if the connect is handled, in which case the admission controller must be released afterwards
+     */
+    private boolean admitConnect(RTMPConnection conn, IServiceCall call, String path) {
+        if (admissionController == null || admissionController.admit(path, conn.getRemoteAddress())) {
+            return true;
+        }
+        call.setStatus(Call.STATUS_ACCESS_DENIED);
+        if (call instanceof IPendingServiceCall) {
+            StatusObject status = getStatus(NC_CONNECT_REJECTED);
+            status.setDescription("Too many connection attempts, try again later.");
+            ((IPendingServiceCall) call).setResult(status);
+        }
+        log.debug("Connect to {} from {} rejected by admission control", path, conn.getRemoteAddress());
+        return false;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void onPing(RTMPConnection conn, Channel channel, Header source, Ping ping) {
@@ -13,10 +13,14 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -31,8 +35,11 @@ import org.red5.server.api.scope.IScope;
 import org.red5.server.jmx.mxbeans.RTMPMinaConnectionMXBean;
 import org.red5.server.net.rtmp.codec.RTMP;
 import org.red5.server.net.rtmp.event.ClientBW;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
 import org.red5.server.net.rtmp.event.ServerBW;
+import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.stream.IStreamData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jmx.export.annotation.ManagedResource;
@@ -71,6 +78,56 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
 
     protected boolean bandwidthDetection = true;
 
+    /**
+     * Whether or not small media messages are coalesced into a single write request
+     */
+    protected boolean writeCoalescing;
+
+    /**
+     * Number of media bytes held for a coalesced write before it is flushed
+     */
+    protected int writeCoalescingMaxBytes = 8192;
+
+    /**
+     * Maximum time in milliseconds a live media message is held for a coalesced write
+     */
+    protected long writeCoalescingLiveDelay = 5L;
+
+    /**
+     * Maximum time in milliseconds a vod media message is held for a coalesced write
+     */
+    protected long writeCoalescingVodDelay = 40L;
+
+    /**
+     * Packets waiting for a coalesced write; guarded by the write lock, the backing array is allocated on the first coalesced write
+     */
+    private final List<Packet> coalescedPackets = new ArrayList<>();
+
+    /**
+     * Media bytes waiting for a coalesced write; updated under the write lock
+     */
+    private volatile int coalescedBytes;
+
+    /**
+     * Time at which the waiting packets must be written; guarded by the write lock
+     */
+    private long coalescedDeadline;
+
+    /**
+     * Pending flush of the coalesced packets; guarded by the write lock
+     */
+    private ScheduledFuture<?> coalescedFlush;
+
+    /**
+     * Number of packets waiting for a coalesced write
+     */
+    private volatile int coalescedCount;
+
+    /**
+     * Number of write requests handed to the io session
+     */
+    private final AtomicLong writeRequests = new AtomicLong();
+
     /** Constructs a new RTMPMinaConnection. */
     @ConstructorProperties(value = { "persistent" })
     public RTMPMinaConnection() {
@@ -111,6 +168,11 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
     @Override
     public void close() {
         if (closing.compareAndSet(false, true)) {
+            // anything still waiting to be coalesced is discarded along with the session
+            ScheduledFuture<?> flush = coalescedFlush;
+            if (flush != null) {
+                flush.cancel(false);
+            }
             super.close();
             log.debug("IO Session closing: {}", (ioSession != null ? ioSession.isClosing() : null));
             if (ioSession != null && !ioSession.isClosing()) {
@@ -221,6 +283,76 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
         this.bandwidthDetection = bandwidthDetection;
     }
 
+    /**
+     * @return the writeCoalescing
+     */
+    public boolean isWriteCoalescing() {
+        return writeCoalescing;
+    }
+
+    /**
+     * Enables coalescing of small audio and video messages into a single write request. Media messages are held until either the byte
+     * budget or the delay for their latency class (live or vod) is reached; control messages, pings and invokes are never held and flush
+     * any media waiting ahead of them.
+     *
+     * @param writeCoalescing
+     *            the writeCoalescing to set
+     */
+    public void setWriteCoalescing(boolean writeCoalescing) {
+        this.writeCoalescing = writeCoalescing;
+    }
+
+    /**
+     * @return the writeCoalescingMaxBytes
+     */
+    public int getWriteCoalescingMaxBytes() {
+        return writeCoalescingMaxBytes;
+    }
+
+    /**
+     * @param writeCoalescingMaxBytes
+     *            the writeCoalescingMaxBytes to set
+     */
+    public void setWriteCoalescingMaxBytes(int writeCoalescingMaxBytes) {
+        this.writeCoalescingMaxBytes = writeCoalescingMaxBytes;
+    }
+
+    /**
+     * @return the writeCoalescingLiveDelay
+     */
+    public long getWriteCoalescingLiveDelay() {
+        return writeCoalescingLiveDelay;
+    }
+
+    /**
+     * @param writeCoalescingLiveDelay
+     *            the writeCoalescingLiveDelay to set
+     */
+    public void setWriteCoalescingLiveDelay(long writeCoalescingLiveDelay) {
+        this.writeCoalescingLiveDelay = writeCoalescingLiveDelay;
+    }
+
+    /**
+     * @return the writeCoalescingVodDelay
+     */
+    public long getWriteCoalescingVodDelay() {
+        return writeCoalescingVodDelay;
+    }
+
+    /**
+     * @param writeCoalescingVodDelay
+     *            the writeCoalescingVodDelay to set
+     */
+    public void setWriteCoalescingVodDelay(long writeCoalescingVodDelay) {
+        this.writeCoalescingVodDelay = writeCoalescingVodDelay;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getWriteRequests() {
+        return writeRequests.get();
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean isReaderIdle() {
@@ -243,7 +375,16 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
     @Override
     public long getPendingMessages() {
         if (ioSession != null) {
-            return ioSession.getScheduledWriteMessages();
+            return ioSession.getScheduledWriteMessages() + coalescedCount;
+        }
+        return 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPendingBytes() {
+        if (ioSession != null) {
+            return ioSession.getScheduledWriteBytes() + coalescedBytes;
         }
         return 0;
     }
@@ -362,7 +503,12 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
                                 log.trace("Writing message");
                             }
                             writingMessage(out);
-                            ioSession.write(out);
+                            if (writeCoalescing && scheduler != null) {
+                                coalesce(out);
+                            } else {
+                                ioSession.write(out);
+                                writeRequests.incrementAndGet();
+                            }
                         }
                         break;
                     }
@@ -387,6 +533,87 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
         }
     }
 
+    /**
+     * Adds a packet to the coalesced write; the caller must hold the write lock. Audio and video are held until the byte budget or the
+     * delay for their latency class is reached, anything else is written immediately along with the media queued ahead of it.
+     *
+     * @param out
+     *            packet
+     */
+    private void coalesce(Packet out) {
+        coalescedPackets.add(out);
+        coalescedCount = coalescedPackets.size();
+        IRTMPEvent message = out.getMessage();
+        byte dataType = message.getDataType();
+        if (dataType == Constants.TYPE_AUDIO_DATA || dataType == Constants.TYPE_VIDEO_DATA || dataType == Constants.TYPE_AGGREGATE) {
+            IoBuffer data = ((IStreamData<?>) message).getData();
+            coalescedBytes += (data != null ? data.limit() : 0);
+            if (coalescedBytes < writeCoalescingMaxBytes) {
+                long deadline = System.currentTimeMillis() + (message.getSourceType() == Constants.SOURCE_TYPE_LIVE ? writeCoalescingLiveDelay : writeCoalescingVodDelay);
+                if (coalescedFlush == null || deadline < coalescedDeadline) {
+                    if (coalescedFlush != null) {
+                        coalescedFlush.cancel(false);
+                    }
+                    coalescedDeadline = deadline;
+                    coalescedFlush = scheduler.schedule(this::flushCoalesced, new Date(deadline));
+                }
+                return;
+            }
+        }
+        writeCoalesced();
+    }
+
+    /**
+     * Writes the coalesced packets as one request; the caller must hold the write lock.
+     */
+    private void writeCoalesced() {
+        if (coalescedFlush != null) {
+            coalescedFlush.cancel(false);
+            coalescedFlush = null;
+        }
+        int count = coalescedPackets.size();
+        if (count > 0) {
+            if (!ioSession.isClosing()) {
+                if (count == 1) {
+                    ioSession.write(coalescedPackets.get(0));
+                } else {
+                    // the encoder writes the whole array as one buffer
+                    ioSession.write(coalescedPackets.toArray(new Packet[count]));
+                }
+                writeRequests.incrementAndGet();
+            }
+            coalescedPackets.clear();
+            coalescedCount = 0;
+        }
+        coalescedBytes = 0;
+    }
+
+    /**
+     * Flushes the coalesced packets once their delay has expired.
+     */
+    private void flushCoalesced() {
+        if (ioSession != null) {
+            final Semaphore lock = getLock();
+            while (state.getState() < RTMP.STATE_ERROR) {
+                boolean acquired = false;
+                try {
+                    acquired = lock.tryAcquire(10, TimeUnit.MILLISECONDS);
+                    if (acquired) {
+                        writeCoalesced();
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    log.debug("Interrupted while waiting for write lock (flush). State: {}", RTMP.states[state.getState()]);
+                    break;
+                } finally {
+                    if (acquired) {
+                        lock.release();
+                    }
+                }
+            }
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public void writeRaw(IoBuffer out) {
@@ -400,6 +627,10 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
                         if (log.isTraceEnabled()) {
                             log.trace("Writing raw message");
                         }
+                        // keep ordering with any packets waiting to be coalesced
+                        if (coalescedCount > 0) {
+                            writeCoalesced();
+                        }
                         ioSession.write(out);
                         break;
                     }
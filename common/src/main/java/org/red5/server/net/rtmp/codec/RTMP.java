@@ -7,12 +7,10 @@
 
 package org.red5.server.net.rtmp.codec;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-
 import org.red5.server.api.IConnection.Encoding;
 import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.util.CopyOnWriteIntMap;
 
 /**
  * RTMP is the RTMP protocol state representation.
@@ -79,7 +77,7 @@ public class RTMP {
     /**
      * Map for channels, keyed by channel id.
      */
-    private final transient ConcurrentMap<Integer, ChannelInfo> channels = new ConcurrentHashMap<>(3, 0.9f, 1);
+    private final transient CopyOnWriteIntMap<ChannelInfo> channels = new CopyOnWriteIntMap<>();
 
     /**
      * Read chunk size. Packets are read and written chunk-by-chunk.
@@ -109,11 +107,7 @@ public class RTMP {
      * @return channel info
      */
     private ChannelInfo getChannelInfo(int channelId) {
-        ChannelInfo info = channels.putIfAbsent(channelId, new ChannelInfo());
-        if (info == null) {
-            info = channels.get(channelId);
-        }
-        return info;
+        return channels.computeIfAbsent(channelId, id -> new ChannelInfo());
     }
 
     /**
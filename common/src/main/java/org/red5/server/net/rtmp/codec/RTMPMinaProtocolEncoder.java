@@ -8,16 +8,21 @@
 package org.red5.server.net.rtmp.codec;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecException;
 import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
 import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+import org.apache.mina.filter.ssl.SslFilter;
 import org.red5.server.api.Red5;
 import org.red5.server.net.IConnectionManager;
 import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.stream.IStreamData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +37,9 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
 
     private int targetChunkSize = 2048;
 
+    // minimum chunk payload written as a slice of data which is not on the heap, 0 to always copy
+    private static int zeroCopyMinSlice;
+
     /** {@inheritDoc} */
     public void encode(IoSession session, Object message, ProtocolEncoderOutput out) throws ProtocolCodecException {
         // get the connection from the session
@@ -54,20 +62,24 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
                 }
                 Boolean interrupted = false;
                 try {
-                    // get the buffer
-                    final IoBuffer buf = message instanceof IoBuffer ? (IoBuffer) message : encoder.encode(message);
-                    if (buf != null) {
-                        int requestedWriteChunkSize = conn.getState().getWriteChunkSize();
-                        log.trace("Requested chunk size: {} target chunk size: {}", requestedWriteChunkSize, targetChunkSize);
-                        if (buf.remaining() <= targetChunkSize * 2) {
-                            log.trace("Writing output data");
+                    // slicing is left to plain connections, encryption has to copy the data anyway
+                    boolean zeroCopy = zeroCopyMinSlice > 0 && !session.containsAttribute(RTMPConnection.RTMPE_CIPHER_OUT) && !session.getFilterChain().contains(SslFilter.class);
+                    int requestedWriteChunkSize = conn.getState().getWriteChunkSize();
+                    if (message instanceof Packet[]) {
+                        // small coalesced packets are merged, larger ones and sliced data are written on their own
+                        encodeCoalesced((Packet[]) message, zeroCopy, requestedWriteChunkSize, out);
+                    } else if (zeroCopy && isSliceable(message)) {
+                        for (IoBuffer buf : encoder.encodePacket((Packet) message, zeroCopyMinSlice)) {
                             out.write(buf);
-                        } else {
-                            int sentChunks = Chunker.chunkAndWrite(out, buf, requestedWriteChunkSize, targetChunkSize);
-                            log.trace("Wrote {} chunks", sentChunks);
                         }
                     } else {
-                        log.trace("Response buffer was null after encoding");
+                        // get the buffer
+                        final IoBuffer buf = message instanceof IoBuffer ? (IoBuffer) message : encoder.encode(message);
+                        if (buf != null) {
+                            write(buf, requestedWriteChunkSize, out);
+                        } else {
+                            log.trace("Response buffer was null after encoding");
+                        }
                     }
                 } catch (InterruptedException ex) {
                     log.error("InterruptedException during encode", ex);
@@ -91,6 +103,115 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
         }
     }
 
+    /**
+     * Writes an encoded message, split at chunk boundaries if it is larger than twice the target chunk size.
+     *
+     * @param buf
+     *            encoded message
+     * @param chunkSize
+     *            requested write chunk size
+     * @param out
+     *            encoder output
+     */
+    private void write(IoBuffer buf, int chunkSize, ProtocolEncoderOutput out) {
+        log.trace("Requested chunk size: {} target chunk size: {}", chunkSize, targetChunkSize);
+        if (buf.remaining() <= targetChunkSize * 2) {
+            log.trace("Writing output data");
+            out.write(buf);
+        } else {
+            int sentChunks = Chunker.chunkAndWrite(out, buf, chunkSize, targetChunkSize);
+            log.trace("Wrote {} chunks", sentChunks);
+        }
+    }
+
+    /**
+     * Encodes a set of coalesced packets in order. Packets no larger than the target chunk size are merged into buffers of up to twice that
+     * size; larger packets are not copied but written on their own like single ones, as are packets with sliceable data.
+     *
+     * @param packets
+     *            packets
+     * @param zeroCopy
+     *            whether data which is not on the heap may be sliced
+     * @param chunkSize
+     *            requested write chunk size
+     * @param out
+     *            encoder output
+     * @throws Exception
+     *             on encoding error
+     */
+    private void encodeCoalesced(Packet[] packets, boolean zeroCopy, int chunkSize, ProtocolEncoderOutput out) throws Exception {
+        List<IoBuffer> merged = new ArrayList<>(packets.length);
+        int mergedSize = 0;
+        for (Packet packet : packets) {
+            if (zeroCopy && isSliceable(packet)) {
+                // the packets ahead of it go first
+                writeMerged(merged, mergedSize, out);
+                mergedSize = 0;
+                for (IoBuffer buf : encoder.encodePacket(packet, zeroCopyMinSlice)) {
+                    out.write(buf);
+                }
+            } else {
+                IoBuffer buf = encoder.encode(packet);
+                if (buf == null) {
+                    log.trace("Response buffer was null after encoding");
+                } else if (buf.remaining() > targetChunkSize) {
+                    writeMerged(merged, mergedSize, out);
+                    mergedSize = 0;
+                    write(buf, chunkSize, out);
+                } else {
+                    if (mergedSize + buf.remaining() > targetChunkSize * 2) {
+                        writeMerged(merged, mergedSize, out);
+                        mergedSize = 0;
+                    }
+                    merged.add(buf);
+                    mergedSize += buf.remaining();
+                }
+            }
+        }
+        writeMerged(merged, mergedSize, out);
+    }
+
+    /**
+     * Writes encoded packets as one buffer and clears them; a single packet is written as is.
+     *
+     * @param merged
+     *            encoded packets
+     * @param size
+     *            their total size
+     * @param out
+     *            encoder output
+     */
+    private static void writeMerged(List<IoBuffer> merged, int size, ProtocolEncoderOutput out) {
+        if (merged.size() == 1) {
+            out.write(merged.get(0));
+        } else if (!merged.isEmpty()) {
+            IoBuffer buf = IoBuffer.allocate(size, false);
+            for (IoBuffer chunk : merged) {
+                buf.put(chunk);
+                chunk.free();
+            }
+            buf.flip();
+            log.trace("Coalesced {} packets into {} bytes", merged.size(), size);
+            out.write(buf);
+        }
+        merged.clear();
+    }
+
+    /**
+     * Whether the message is a packet of audio or video data which is not on the heap, such as a tag body mapped from a file.
+     *
+     * @param message
+     *            message
+     * @return true if its chunks may be slices of the data
+     */
+    private static boolean isSliceable(Object message) {
+        if (message instanceof Packet && ((Packet) message).getMessage() instanceof IStreamData) {
+            IoBuffer data = ((IStreamData<?>) ((Packet) message).getMessage()).getData();
+            return data != null && data.isDirect();
+        }
+        return false;
+    }
+
     /**
      * Sets an RTMP protocol encoder
      *
@@ -145,6 +266,18 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
         this.targetChunkSize = targetChunkSize;
     }
 
+    /**
+     * Sets the minimum size of a chunk payload which is written as a slice of audio or video data which is not on the heap, such as tag
+     * bodies mapped from a file, instead of copying it. Only applies to connections without encryption; smaller payloads are cheaper to copy
+     * than to write separately. Zero, the default, always copies.
+     *
+     * @param zeroCopyMinSlice
+     *            minimum payload size in bytes
+     */
+    public static void setZeroCopyMinSlice(int zeroCopyMinSlice) {
+        RTMPMinaProtocolEncoder.zeroCopyMinSlice = zeroCopyMinSlice;
+    }
+
     /**
      * Output data chunker.
      */
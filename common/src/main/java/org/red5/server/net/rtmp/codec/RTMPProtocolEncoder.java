@@ -120,6 +120,26 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
      * @return Encoded data
      */
     public IoBuffer encodePacket(Packet packet) {
+        return encodePacket(packet, null, 0);
+    }
+
+    /**
+     * Encodes a packet into buffers to be written in order, in which chunk payloads of at least the given size are slices of the message data
+     * rather than copies. This avoids copying data which does not live on the heap, such as tag bodies mapped from a file.
+     *
+     * @param packet
+     *            RTMP packet
+     * @param minSlice
+     *            minimum size of a chunk payload to be sliced, smaller payloads are copied along with the chunk headers
+     * @return encoded buffers, empty if the message was dropped
+     */
+    public List<IoBuffer> encodePacket(Packet packet, int minSlice) {
+        List<IoBuffer> buffers = new ArrayList<>();
+        encodePacket(packet, buffers, minSlice);
+        return buffers;
+    }
+
+    private IoBuffer encodePacket(Packet packet, List<IoBuffer> slices, int minSlice) {
         IoBuffer out = null;
         Header header = packet.getHeader();
         int channelId = header.getChannelId();
@@ -158,8 +178,10 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
                 if (log.isTraceEnabled()) {
                     log.trace("Channel id: {} chunkSize: {}", channelId, chunkSize);
                 }
+                // slices only need room for the headers in between
+                boolean sliced = slices != null && chunkSize >= minSlice;
                 // attempt to properly guess the size of the buffer we'll need
-                int bufSize = dataLen + 18 + (numChunks * 2);
+                int bufSize = sliced ? 18 : dataLen + 18 + (numChunks * 2);
                 //log.trace("Allocated buffer size: {}", bufSize);
                 out = IoBuffer.allocate(bufSize, false);
                 out.setAutoExpand(true);
@@ -167,10 +189,19 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
                     // encode the header
                     encodeHeader(header, lastHeader, out);
                     // write a chunk
-                    byte[] buf = new byte[Math.min(chunkSize, data.remaining())];
-                    data.get(buf);
-                    //log.trace("Buffer: {}", Hex.encodeHexString(buf));
-                    out.put(buf);
+                    int length = Math.min(chunkSize, data.remaining());
+                    if (sliced && length >= minSlice) {
+                        out.flip();
+                        slices.add(out);
+                        slices.add(data.getSlice(length));
+                        out = IoBuffer.allocate(18, false);
+                        out.setAutoExpand(true);
+                    } else {
+                        int limit = data.limit();
+                        data.limit(data.position() + length);
+                        out.put(data);
+                        data.limit(limit);
+                    }
                     // move header over to last header
                     lastHeader = header.clone();
                 } while (data.hasRemaining());
@@ -180,9 +211,17 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
                 lastHeader.setTimerDelta(0);
                 // set last write header
                 rtmp.setLastWriteHeader(channelId, lastHeader);
-                data.free();
+                if (!sliced) {
+                    data.free();
+                }
                 out.flip();
                 data = null;
+                if (slices != null) {
+                    if (out.hasRemaining()) {
+                        slices.add(out);
+                    }
+                    out = null;
+                }
             }
         }
         message.release();
@@ -227,6 +266,10 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
             // never drop pings
             return false;
         }
+        // a subscriber with a congestion controller has decided on dropping before the message was written
+        if (conn != null && conn.isCongestionControlledChannel(channelId)) {
+            return false;
+        }
         // whether or not the packet will be dropped
         boolean drop = false;
         // we only drop audio or video data
@@ -2,6 +2,7 @@ package org.red5.server.net.rtmp.event;
 
 import java.util.Arrays;
 
+import org.red5.server.api.IConnection.Encoding;
 import org.red5.server.api.service.IPendingServiceCallback;
 
 /**
@@ -15,6 +16,8 @@ public class ClientInvokeEvent extends BaseEvent {
 
     private final Object[] params;
 
+    private PreEncodedArguments preEncoded;
+
     private final IPendingServiceCallback callback;
 
     public ClientInvokeEvent(String method, Object[] params, IPendingServiceCallback callback) {
@@ -29,6 +32,17 @@ public class ClientInvokeEvent extends BaseEvent {
         return event;
     }
 
+    /**
+     * Builds an event for many connections, whose arguments are serialized once per object encoding instead of once per connection.
+     *
+     * @see PreEncodedArguments
+     */
+    public final static ClientInvokeEvent buildBroadcast(String method, Object[] params, IPendingServiceCallback callback) {
+        ClientInvokeEvent event = new ClientInvokeEvent(method, params, callback);
+        event.preEncoded = new PreEncodedArguments(params);
+        return event;
+    }
+
     @Override
     public byte getDataType() {
         return TYPE_INVOKE;
@@ -52,6 +66,17 @@ public class ClientInvokeEvent extends BaseEvent {
         return params;
     }
 
+    /**
+     * Returns the params to send to a connection with the given object encoding, pre-encoded if this is a broadcast event.
+     *
+     * @param encoding
+     *            object encoding of the connection
+     * @return the params
+     */
+    public Object[] getParams(Encoding encoding) {
+        return preEncoded != null ? preEncoded.getParams(encoding) : params;
+    }
+
     /**
      * @return the callback
      */
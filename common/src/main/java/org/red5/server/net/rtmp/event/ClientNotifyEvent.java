@@ -2,6 +2,8 @@ package org.red5.server.net.rtmp.event;
 
 import java.util.Arrays;
 
+import org.red5.server.api.IConnection.Encoding;
+
 /**
  * Represents an notify to be executed on a connected client.
  *
@@ -13,6 +15,8 @@ public class ClientNotifyEvent extends BaseEvent {
 
     private final Object[] params;
 
+    private PreEncodedArguments preEncoded;
+
     public ClientNotifyEvent(String method, Object[] params) {
         super(Type.CLIENT_NOTIFY);
         this.method = method;
@@ -24,6 +28,17 @@ public class ClientNotifyEvent extends BaseEvent {
         return event;
     }
 
+    /**
+     * Builds an event for many connections, whose arguments are serialized once per object encoding instead of once per connection.
+     *
+     * @see PreEncodedArguments
+     */
+    public final static ClientNotifyEvent buildBroadcast(String method, Object[] params) {
+        ClientNotifyEvent event = new ClientNotifyEvent(method, params);
+        event.preEncoded = new PreEncodedArguments(params);
+        return event;
+    }
+
     @Override
     public byte getDataType() {
         return TYPE_NOTIFY;
@@ -47,6 +62,17 @@ public class ClientNotifyEvent extends BaseEvent {
         return params;
     }
 
+    /**
+     * Returns the params to send to a connection with the given object encoding, pre-encoded if this is a broadcast event.
+     *
+     * @param encoding
+     *            object encoding of the connection
+     * @return the params
+     */
+    public Object[] getParams(Encoding encoding) {
+        return preEncoded != null ? preEncoded.getParams(encoding) : params;
+    }
+
     /*
      * (non-Javadoc)
      * @see java.lang.Object#toString()
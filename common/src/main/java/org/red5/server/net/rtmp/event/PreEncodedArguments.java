@@ -0,0 +1,86 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.event;
+
+import java.nio.ByteBuffer;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.object.Output;
+import org.red5.io.object.Serializer;
+import org.red5.server.api.IConnection.Encoding;
+
+/**
+ * Arguments of a call sent to many connections, serialized once per object encoding. The serialized form is passed to each connection as a
+ * single {@link ByteBuffer} argument, which the RTMP encoder writes as is, so only the method name and transaction id are encoded per
+ * connection.
+ *
+ * @author The Red5 Project
+ */
+public class PreEncodedArguments {
+
+    private final Object[] params;
+
+    private volatile ByteBuffer amf0;
+
+    private volatile ByteBuffer amf3;
+
+    public PreEncodedArguments(Object[] params) {
+        this.params = params;
+    }
+
+    /**
+     * Returns the arguments for a connection with the given encoding, serializing them on first use for that encoding. The returned array
+     * holds a view of the shared bytes, so it may be used by one connection only.
+     *
+     * @param encoding
+     *            object encoding of the connection
+     * @return pre-encoded arguments
+     */
+    public Object[] getParams(Encoding encoding) {
+        if (params == null || params.length == 0) {
+            return params;
+        }
+        // racing threads may both serialize, with the same result
+        ByteBuffer encoded;
+        if (encoding == Encoding.AMF3) {
+            if ((encoded = amf3) == null) {
+                IoBuffer buf = allocate();
+                amf3 = encoded = encode(new org.red5.io.amf3.Output(buf), buf);
+            }
+        } else if ((encoded = amf0) == null) {
+            IoBuffer buf = allocate();
+            amf0 = encoded = encode(new org.red5.io.amf.Output(buf), buf);
+        }
+        return new Object[] { encoded.duplicate() };
+    }
+
+    /**
+     * Returns the arguments as given.
+     *
+     * @return arguments
+     */
+    public Object[] getParams() {
+        return params;
+    }
+
+    private static IoBuffer allocate() {
+        return IoBuffer.allocate(256).setAutoExpand(true);
+    }
+
+    // same serialization as RTMPProtocolEncoder.encodeCommand applies to the arguments of a pending call
+    private ByteBuffer encode(Output output, IoBuffer buf) {
+        for (Object element : params) {
+            Serializer.serialize(output, element);
+        }
+        buf.flip();
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+}
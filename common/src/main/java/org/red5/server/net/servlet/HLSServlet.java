@@ -0,0 +1,179 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.servlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.red5.server.stream.consumer.HLSSegmenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the playlists and segments of live streams packaged by {@link HLSSegmenter} straight from memory. Mapped below a web application,
+ * for instance to <code>/hls/*</code>, the resources of a stream published as <code>stream1</code> in the application scope are found at
+ * <code>/hls/stream1/playlist.m3u8</code>; streams in sub-scopes add the scope path before the stream name.
+ * <p>
+ * Blocking playlist reloads (<code>_HLS_msn</code> / <code>_HLS_part</code>) and requests for the part announced by the preload hint are held
+ * using asynchronous processing until the media exists, so the servlet must be declared with <code>async-supported</code>.
+ *
+ * @author The Red5 Project
+ */
+public class HLSServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 2781547319820135648L;
+
+    private static final Logger log = LoggerFactory.getLogger(HLSServlet.class);
+
+    private static final String PLAYLIST_TYPE = "application/vnd.apple.mpegurl";
+
+    private static final String MEDIA_TYPE = "video/mp4";
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String path = req.getPathInfo();
+        int slash = path != null ? path.lastIndexOf('/') : -1;
+        if (slash < 1) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String resource = path.substring(slash + 1);
+        HLSSegmenter segmenter = HLSSegmenter.getSegmenter(req.getContextPath(), path.substring(1, slash));
+        if (segmenter == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        resp.setHeader("Access-Control-Allow-Origin", "*");
+        try {
+            if (resource.endsWith(".m3u8")) {
+                String msn = req.getParameter("_HLS_msn");
+                if (msn != null) {
+                    String part = req.getParameter("_HLS_part");
+                    await(req, resp, segmenter, Integer.parseInt(msn), part != null ? Integer.parseInt(part) : -1, () -> sendPlaylist(segmenter, resp));
+                } else {
+                    sendPlaylist(segmenter, resp);
+                }
+            } else if (resource.startsWith("init") && resource.endsWith(".mp4")) {
+                int version = Integer.parseInt(resource.substring(4, resource.length() - 4));
+                send(resp, segmenter.getInit(version), MEDIA_TYPE, true);
+            } else if (resource.startsWith("seg") && resource.endsWith(".m4s")) {
+                int sequence = Integer.parseInt(resource.substring(3, resource.length() - 4));
+                send(resp, segmenter.getSegment(sequence), MEDIA_TYPE, true);
+            } else if (resource.startsWith("part") && resource.endsWith(".m4s")) {
+                String[] ids = resource.substring(4, resource.length() - 4).split("\\.");
+                int sequence = Integer.parseInt(ids[0]);
+                int index = Integer.parseInt(ids[1]);
+                // the part announced by the preload hint is answered once it exists
+                await(req, resp, segmenter, sequence, index, () -> send(resp, segmenter.getPart(sequence, index), MEDIA_TYPE, true));
+            } else {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Responds now if the media is available, or else once it is produced or the request times out.
+     */
+    private void await(HttpServletRequest req, HttpServletResponse resp, HLSSegmenter segmenter, int sequence, int part, Responder responder) throws IOException {
+        if (!req.isAsyncSupported()) {
+            responder.respond();
+            return;
+        }
+        // start asynchronous processing first, the media may show up as soon as we register
+        AsyncContext ctx = req.startAsync();
+        ctx.setTimeout(Math.max(segmenter.getSegmentDuration(), 1000) * 3L);
+        AtomicBoolean done = new AtomicBoolean();
+        Runnable callback = () -> {
+            if (done.compareAndSet(false, true)) {
+                // don't write on the thread producing the media
+                ctx.start(() -> complete(ctx, responder));
+            }
+        };
+        ctx.addListener(new AsyncListener() {
+
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                segmenter.cancel(callback);
+                if (done.compareAndSet(false, true)) {
+                    complete(ctx, responder);
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) throws IOException {
+                segmenter.cancel(callback);
+                done.set(true);
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) throws IOException {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) throws IOException {
+            }
+
+        });
+        int state = segmenter.whenAvailable(sequence, part, callback);
+        if (state == 1) {
+            if (done.compareAndSet(false, true)) {
+                complete(ctx, responder);
+            }
+        } else if (state < 0 && done.compareAndSet(false, true)) {
+            ((HttpServletResponse) ctx.getResponse()).sendError(HttpServletResponse.SC_BAD_REQUEST);
+            ctx.complete();
+        }
+    }
+
+    private static void complete(AsyncContext ctx, Responder responder) {
+        try {
+            responder.respond();
+        } catch (IOException e) {
+            log.debug("Exception writing HLS response", e);
+        } finally {
+            ctx.complete();
+        }
+    }
+
+    private static void sendPlaylist(HLSSegmenter segmenter, HttpServletResponse resp) throws IOException {
+        String playlist = segmenter.getPlaylist();
+        send(resp, playlist != null ? playlist.getBytes(StandardCharsets.UTF_8) : null, PLAYLIST_TYPE, false);
+    }
+
+    private static void send(HttpServletResponse resp, byte[] data, String contentType, boolean cacheable) throws IOException {
+        if (data == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        resp.setContentType(contentType);
+        // media never changes once produced, playlists do all the time
+        resp.setHeader("Cache-Control", cacheable ? "max-age=60" : "no-cache");
+        resp.setContentLength(data.length);
+        resp.getOutputStream().write(data);
+    }
+
+    @FunctionalInterface
+    private interface Responder {
+
+        void respond() throws IOException;
+
+    }
+
+}
@@ -17,6 +17,7 @@ import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.logging.Red5LoggerFactory;
 import org.slf4j.Logger;
 
@@ -114,6 +115,49 @@ public class ServletUtils {
         }
     }
 
+    /**
+     * Reads the body of the http request straight into a heap buffer, which grows as needed when the content length is not known.
+     *
+     * @param req
+     *            Request
+     * @param maxSize
+     *            largest body accepted in bytes
+     * @return flipped buffer holding the body
+     * @throws java.io.IOException
+     *             on error or if the body is larger than the maximum size
+     */
+    public static IoBuffer read(HttpServletRequest req, int maxSize) throws IOException {
+        int contentLength = req.getContentLength();
+        if (contentLength > maxSize) {
+            throw new IOException("Request body of " + contentLength + " bytes exceeds the maximum of " + maxSize);
+        }
+        IoBuffer buffer = IoBuffer.allocate(contentLength > 0 ? contentLength : DEFAULT_BUFFER_SIZE, false);
+        InputStream input = req.getInputStream();
+        while (contentLength <= 0 || buffer.position() < contentLength) {
+            if (!buffer.hasRemaining()) {
+                // a single byte tells the end of the body from more data, so a full buffer is not grown just to read the end
+                int next = input.read();
+                if (next == -1) {
+                    break;
+                }
+                if (buffer.position() >= maxSize) {
+                    buffer.free();
+                    throw new IOException("Request body exceeds the maximum of " + maxSize);
+                }
+                buffer.capacity(Math.min(maxSize, buffer.capacity() * 2));
+                buffer.limit(buffer.capacity());
+                buffer.put((byte) next);
+                continue;
+            }
+            int bytesRead = input.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (bytesRead == -1) {
+                break;
+            }
+            buffer.skip(bytesRead);
+        }
+        return buffer.flip();
+    }
+
     /**
      * Copies information between specified streams and then closes both of the streams.
      *
@@ -126,6 +126,11 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
      */
     private transient volatile ConcurrentMap<String, Object> serviceHandlers;
 
+    /**
+     * Services resolved for this scope by ScopeUtils
+     */
+    private final transient ScopeServiceRegistry serviceRegistry = new ScopeServiceRegistry();
+
     /**
      * Child scopes
      */
@@ -136,6 +141,11 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
      */
     private final transient CopyOnWriteArraySet<IClient> clients;
 
+    /**
+     * Connections of the connected clients, maintained on connect and disconnect so events can be dispatched without copying
+     */
+    private final transient Set<IConnection> connections = ConcurrentHashMap.newKeySet();
+
     /**
      * Statistics about connections to the scope.
      */
@@ -272,6 +282,8 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
                 // timeout while connecting client
                 return false;
             }
+            // index every connection of the client for event dispatch, not only the one which added it
+            connections.add(conn);
             // add the client and event listener
             if (clients.add(client) && addEventListener(conn)) {
                 log.debug("Added client");
@@ -377,6 +389,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
             }
         }
         // remove listener
+        connections.remove(conn);
         removeEventListener(conn);
         // disconnect from parent
         if (hasParent()) {
@@ -389,7 +402,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
     /** {@inheritDoc} */
     @Override
     public void dispatchEvent(IEvent event) {
-        getClientConnections().forEach(conn -> {
+        connections.forEach(conn -> {
             try {
                 conn.dispatchEvent(event);
             } catch (RuntimeException e) {
@@ -454,6 +467,17 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
         return (IBroadcastScope) children.getBasicScope(ScopeType.BROADCAST, name);
     }
 
+    /**
+     * Indexes the subscribe aliases of the stream on a broadcast child scope, so that the scope is found by them. This is called when the
+     * stream is set on the scope and when the stream gets an alias later on.
+     *
+     * @param scope
+     *            broadcast child scope
+     */
+    public void indexBroadcastAliases(IBroadcastScope scope) {
+        children.indexAliases(scope);
+    }
+
     /**
      * Return the broadcast streams for this scope.
      *
@@ -801,6 +825,27 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
         return serviceHandlers.keySet();
     }
 
+    /**
+     * Returns the services resolved for this scope.
+     *
+     * @return service registry
+     */
+    public ScopeServiceRegistry getServiceRegistry() {
+        return serviceRegistry;
+    }
+
+    /**
+     * Forgets the services resolved for this scope and its child scopes, which may have resolved them through this one.
+     */
+    protected void invalidateServices() {
+        serviceRegistry.clear();
+        children.forEach(child -> {
+            if (child instanceof Scope) {
+                ((Scope) child).invalidateServices();
+            }
+        });
+    }
+
     /**
      * Return map of service handlers. The map is created if it doesn't exist yet.
      *
@@ -1057,6 +1102,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
     public void setContext(IContext context) {
         log.debug("Set context: {}", context);
         this.context = context;
+        invalidateServices();
     }
 
     /**
@@ -1091,6 +1137,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
         if (handler instanceof IScopeAware) {
             ((IScopeAware) handler).setScope(this);
         }
+        invalidateServices();
     }
 
     /**
@@ -1125,6 +1172,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
     public void setParent(IScope parent) {
         log.debug("Set parent scope: {}", parent);
         this.parent = parent;
+        invalidateServices();
     }
 
     /**
@@ -1347,6 +1395,11 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 
         private static final long serialVersionUID = 283917025588555L;
 
+        /**
+         * Broadcast child scopes by name and by the subscribe aliases of their stream, so that lookups do not walk the children
+         */
+        private final ConcurrentMap<String, IBasicScope> broadcastIndex = new ConcurrentHashMap<>();
+
         @Override
         public boolean add(IBasicScope scope) {
             boolean added = false;
@@ -1371,6 +1424,11 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
                         added = super.add(scope);
                         if (added) {
                             subscopeStats.increment();
+                            if (ScopeType.BROADCAST.equals(scope.getType())) {
+                                // the name takes precedence over an alias of another stream
+                                broadcastIndex.put(scope.getName(), scope);
+                                indexAliases((IBroadcastScope) scope);
+                            }
                         } else {
                             log.debug("Subscope was not added");
                         }
@@ -1413,6 +1471,10 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
             // remove the entry, ensure removed value is equal to the given object
             if (super.remove(scope)) {
                 subscopeStats.decrement();
+                if (scope instanceof IBroadcastScope) {
+                    // the aliases of the stream may be gone already, so look for the scope itself
+                    broadcastIndex.values().removeIf(child -> child == scope);
+                }
                 return true;
             } else {
                 log.debug("Subscope was not removed or was not found");
@@ -1420,6 +1482,34 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
             return false;
         }
 
+        /**
+         * Indexes the subscribe aliases of the stream on a broadcast child scope. An alias held by another live stream is left to that stream.
+         *
+         * @param scope
+         *            broadcast child scope
+         */
+        public void indexAliases(IBroadcastScope scope) {
+            IClientBroadcastStream cbs = scope.getClientBroadcastStream();
+            if (cbs != null && contains(scope)) {
+                cbs.getAliases().forEach(alias -> broadcastIndex.compute(alias, (key, child) -> (child == null || !isIndexedAs(child, key)) ? scope : child));
+                // removed while indexing
+                if (!contains(scope)) {
+                    broadcastIndex.values().removeIf(child -> child == scope);
+                }
+            }
+        }
+
+        /**
+         * Returns whether a broadcast scope still answers to the given name, either its own or an alias of its stream.
+         */
+        private boolean isIndexedAs(IBasicScope child, String name) {
+            if (child.getName().equals(name)) {
+                return true;
+            }
+            IClientBroadcastStream cbs = ((IBroadcastScope) child).getClientBroadcastStream();
+            return cbs != null && cbs.containsAlias(name);
+        }
+
         /**
          * Returns the scope names.
          *
@@ -1476,32 +1566,16 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
             } else {
                 // if its broadcast type then allow an alias match in addition to the name match
                 if (ScopeType.BROADCAST.equals(type)) {
-                    // checks publish and subscribe aliases
-                    for (IBasicScope child : this) {
-                        // ensure type is broadcast type, since we'll pull out a cbs
-                        if (child.getType().equals(type)) {
-                            String childName = child.getName();
-                            IClientBroadcastStream cbs = ((IBroadcastScope) child).getClientBroadcastStream();
-                            if (cbs != null) {
-                                String pubName = cbs.getPublishedName();
-                                if (childName.equals(name)) {
-                                    log.debug("Scope found by name: {} on {}", name, pubName);
-                                    return child;
-                                } else if (cbs.containsAlias(name)) {
-                                    log.debug("Scope found with alias: {} on {}", name, pubName);
-                                    return child;
-                                } else {
-                                    log.debug("No match for name or alias of {} on published stream: {}", name, pubName);
-                                }
-                            } else {
-                                //log.debug("Broadcast scope: {} has no stream attached", name);
-                                if (childName.equals(name)) {
-                                    log.debug("Scope found by name: {} but has no stream", name);
-                                    return child;
-                                }
-                            }
+                    IBasicScope child = broadcastIndex.get(name);
+                    if (child != null) {
+                        if (isIndexedAs(child, name)) {
+                            log.debug("Scope found by name or alias: {}", name);
+                            return child;
                         }
+                        // the alias was dropped from the stream
+                        broadcastIndex.remove(name, child);
                     }
+                    return null;
                 } else {
                     scope = stream().filter(child -> child.getType().equals(type) && child.getName().equals(name)).findFirst();
                 }
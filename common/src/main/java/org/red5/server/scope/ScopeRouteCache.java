@@ -0,0 +1,191 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.scope;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.red5.server.api.IServer;
+import org.red5.server.api.listeners.IScopeListener;
+import org.red5.server.api.scope.IBasicScope;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.scope.ScopeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of resolved connect routes, from host and path to the scope a client connects to, so repeated connects skip the global scope
+ * lookup in the server mappings and the resolution of the path.
+ * <p>
+ * Routes are dropped when their scope or one of its parents is removed, and all routes are dropped when an application or global scope
+ * is created or the server's mappings change. Scope notifications are delivered asynchronously, so a cached scope is also checked to
+ * still be attached to its parents before it is returned.
+ * </p>
+ *
+ * @author The Red5 Project
+ */
+public class ScopeRouteCache implements IScopeListener {
+
+    private static Logger log = LoggerFactory.getLogger(ScopeRouteCache.class);
+
+    private final ConcurrentMap<String, IScope> routes = new ConcurrentHashMap<>();
+
+    /**
+     * Maximum number of cached routes, the cache is emptied when it is reached. 0 disables the cache.
+     */
+    private int maxEntries = 10000;
+
+    private IServer server;
+
+    /**
+     * Mapping generation of the server the cached routes were resolved with
+     */
+    private volatile long mappingGeneration;
+
+    /**
+     * Registers the cache for scope notifications of the server.
+     *
+     * @param server
+     *            server
+     */
+    public void setServer(IServer server) {
+        this.server = server;
+        mappingGeneration = server.getMappingGeneration();
+        server.addListener(this);
+    }
+
+    /**
+     * Returns the cached scope for the host and path.
+     *
+     * @param host
+     *            host name, may be null
+     * @param path
+     *            path as given in the connect
+     * @return scope or null if there is no valid cached route
+     */
+    public IScope get(String host, String path) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        checkMappings();
+        String key = getKey(host, path);
+        IScope scope = routes.get(key);
+        if (scope != null && !isAttached(scope)) {
+            log.debug("Dropping route {} to detached scope {}", key, scope.getName());
+            routes.remove(key, scope);
+            return null;
+        }
+        return scope;
+    }
+
+    /**
+     * Caches the scope resolved for the host and path.
+     *
+     * @param host
+     *            host name, may be null
+     * @param path
+     *            path as given in the connect
+     * @param scope
+     *            resolved scope
+     */
+    public void put(String host, String path, IScope scope) {
+        if (maxEntries > 0) {
+            checkMappings();
+            if (routes.size() >= maxEntries) {
+                log.debug("Route cache is full, clearing {} routes", routes.size());
+                routes.clear();
+            }
+            routes.put(getKey(host, path), scope);
+        }
+    }
+
+    /**
+     * Drops all cached routes.
+     */
+    public void clear() {
+        routes.clear();
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        if (maxEntries <= 0) {
+            routes.clear();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void notifyScopeCreated(IScope scope) {
+        ScopeType type = scope.getType();
+        if (type == ScopeType.APPLICATION || type == ScopeType.GLOBAL) {
+            routes.clear();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void notifyScopeRemoved(IScope scope) {
+        routes.values().removeIf(cached -> isSameOrChild(cached, scope));
+    }
+
+    /** {@inheritDoc} */
+    public void notifyBasicScopeAdded(IBasicScope scope) {
+    }
+
+    /** {@inheritDoc} */
+    public void notifyBasicScopeRemoved(IBasicScope scope) {
+        if (scope instanceof IScope) {
+            notifyScopeRemoved((IScope) scope);
+        }
+    }
+
+    // a mapping which was added or removed may route a path to another global scope
+    private void checkMappings() {
+        if (server != null) {
+            long generation = server.getMappingGeneration();
+            if (generation != mappingGeneration) {
+                log.debug("Server mappings changed, clearing {} routes", routes.size());
+                routes.clear();
+                mappingGeneration = generation;
+            }
+        }
+    }
+
+    private static String getKey(String host, String path) {
+        return host == null ? '/' + path : host + '/' + path;
+    }
+
+    // a scope is attached while every scope on the way to the root still holds it as a child
+    private static boolean isAttached(IScope scope) {
+        IScope current = scope;
+        IScope parent;
+        while ((parent = current.getParent()) != null) {
+            if (parent.getScope(current.getName()) != current) {
+                return false;
+            }
+            current = parent;
+        }
+        return true;
+    }
+
+    private static boolean isSameOrChild(IScope scope, IScope ancestor) {
+        for (IScope current = scope; current != null; current = current.getParent()) {
+            if (current == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.scope;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Services resolved for a scope, see {@link org.red5.server.util.ScopeUtils#getScopeService(IScope, Class, Class, boolean)}.
+ * <p>
+ * Every service interface is given a slot index once for the whole server, so a lookup is an index read from the interface class and an
+ * array read. Slots are filled when a service is first resolved and are all cleared when the scope's handler, context or parent changes.
+ *
+ * @author The Red5 Project
+ */
+public final class ScopeServiceRegistry {
+
+    private static final AtomicInteger nextIndex = new AtomicInteger();
+
+    private static final ClassValue<Integer> INDEX = new ClassValue<Integer>() {
+
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return nextIndex.getAndIncrement();
+        }
+
+    };
+
+    private volatile Entry[] slots = new Entry[8];
+
+    private volatile int generation;
+
+    /**
+     * Returns the resolved service for an interface.
+     *
+     * @param intf
+     *            service interface
+     * @return entry or null if the service has not been resolved
+     */
+    public Entry get(Class<?> intf) {
+        int index = INDEX.get(intf);
+        Entry[] current = slots;
+        return index < current.length ? current[index] : null;
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put(Class, Entry, int)}; taken before a service is resolved.
+     *
+     * @return generation
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Stores a resolved service unless the registry has been cleared since the resolution started.
+     *
+     * @param intf
+     *            service interface
+     * @param entry
+     *            resolved service
+     * @param generation
+     *            generation when the resolution started
+     */
+    public synchronized void put(Class<?> intf, Entry entry, int generation) {
+        if (generation == this.generation) {
+            int index = INDEX.get(intf);
+            Entry[] current = slots;
+            if (index >= current.length) {
+                current = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+            }
+            current[index] = entry;
+            // volatile write publishes the slot
+            slots = current;
+        }
+    }
+
+    /**
+     * Forgets all resolved services.
+     */
+    public synchronized void clear() {
+        generation++;
+        slots = new Entry[slots.length];
+    }
+
+    /**
+     * Resolved service, which may be null.
+     */
+    public static final class Entry {
+
+        private final Object service;
+
+        private final boolean inheritable;
+
+        /**
+         * @param service
+         *            service or null if none was found
+         * @param inheritable
+         *            whether child scopes sharing this scope's context resolve to the same service; false for instances created for this
+         *            scope alone
+         */
+        public Entry(Object service, boolean inheritable) {
+            this.service = service;
+            this.inheritable = inheritable;
+        }
+
+        public Object getService() {
+            return service;
+        }
+
+        public boolean isInheritable() {
+            return inheritable;
+        }
+
+    }
+
+}
@@ -43,10 +43,12 @@ import org.red5.codec.IVideoStreamCodec;
 import org.red5.codec.StreamCodecInfo;
 import org.red5.io.amf.Output;
 import org.red5.server.api.IConnection;
+import org.red5.server.api.IContext;
 import org.red5.server.api.Red5;
 import org.red5.server.api.event.IEvent;
 import org.red5.server.api.event.IEventDispatcher;
 import org.red5.server.api.event.IEventListener;
+import org.red5.server.api.scope.IBroadcastScope;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.statistics.IClientBroadcastStreamStatistics;
 import org.red5.server.api.statistics.support.StatisticsCounter;
@@ -76,6 +78,9 @@ import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.net.rtmp.status.Status;
 import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.scope.Scope;
+import org.red5.server.stream.consumer.DVRBuffer;
+import org.red5.server.stream.consumer.HLSSegmenter;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.stream.message.StatusMessage;
 import org.slf4j.Logger;
@@ -108,6 +113,26 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
      */
     protected boolean automaticRecording;
 
+    /**
+     * Whether or not to automatically package the associated stream for HLS.
+     */
+    protected boolean automaticHLS;
+
+    /**
+     * HLS segmenter, if the stream is packaged for HLS
+     */
+    protected volatile HLSSegmenter hlsSegmenter;
+
+    /**
+     * Whether or not to automatically keep a DVR window of the associated stream.
+     */
+    protected boolean automaticDVR;
+
+    /**
+     * DVR window, if the stream can be played time-shifted
+     */
+    protected volatile DVRBuffer dvrBuffer;
+
     /**
      * Total number of bytes received.
      */
@@ -227,6 +252,10 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
                 // inform the listener to finish and close
                 recordingListener.get().stop();
             }
+            // end the hls playlist
+            stopSegmenting();
+            // release the dvr window
+            stopDVR();
             sendPublishStopNotify();
             // TODO: can we send the client something to make sure he stops sending data?
             if (connMsgOut != null) {
@@ -502,6 +531,36 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
         this.automaticRecording = automaticRecording;
     }
 
+    /**
+     * @return the automaticHLS
+     */
+    public boolean isAutomaticHLS() {
+        return automaticHLS;
+    }
+
+    /**
+     * @param automaticHLS
+     *            the automaticHLS to set
+     */
+    public void setAutomaticHLS(boolean automaticHLS) {
+        this.automaticHLS = automaticHLS;
+    }
+
+    /**
+     * @return the automaticDVR
+     */
+    public boolean isAutomaticDVR() {
+        return automaticDVR;
+    }
+
+    /**
+     * @param automaticDVR
+     *            the automaticDVR to set
+     */
+    public void setAutomaticDVR(boolean automaticDVR) {
+        this.automaticDVR = automaticDVR;
+    }
+
     /**
      * @param registerJMX
      *            the registerJMX to set
@@ -838,7 +897,7 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
             } catch (IOException err) {
                 log.error("Error while pushing message: {}", msg, err);
             }
-        } else {
+        } else if (getConnection() != null) {
             log.warn("Consumer message output is null");
         }
     }
@@ -898,6 +957,9 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
         if (connMsgOut != null && connMsgOut.subscribe(this, null)) {
             // technically this would be a 'start' time
             startTime = System.currentTimeMillis();
+        } else if (getConnection() == null) {
+            // fed by the server itself, such as a stream relayed from an origin, so there is no client to send status to
+            startTime = System.currentTimeMillis();
         } else {
             log.warn("Subscribe failed");
         }
@@ -918,6 +980,86 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
                 log.warn("Start of automatic recording failed", e);
             }
         }
+        // package for hls if set
+        if (automaticHLS) {
+            startSegmenting();
+        }
+        // keep a dvr window if set
+        if (automaticDVR) {
+            startDVR();
+        }
+    }
+
+    /**
+     * Starts packaging this stream for HLS. The segmenter is taken from the "hlsSegmenter" bean if the scope context provides one.
+     *
+     * @return segmenter
+     */
+    public HLSSegmenter startSegmenting() {
+        HLSSegmenter segmenter = hlsSegmenter;
+        if (segmenter == null) {
+            IContext context = getScope().getContext();
+            if (context.hasBean("hlsSegmenter")) {
+                segmenter = (HLSSegmenter) context.getBean("hlsSegmenter");
+            } else {
+                segmenter = new HLSSegmenter();
+            }
+            segmenter.attach(this);
+            hlsSegmenter = segmenter;
+        }
+        return segmenter;
+    }
+
+    /**
+     * Stops packaging this stream for HLS.
+     */
+    public void stopSegmenting() {
+        HLSSegmenter segmenter = hlsSegmenter;
+        if (segmenter != null) {
+            hlsSegmenter = null;
+            segmenter.detach(this);
+        }
+    }
+
+    /**
+     * Starts keeping a DVR window of this stream, so subscribers can play it time-shifted. The window is taken from the "dvrBuffer" bean if
+     * the scope context provides one.
+     *
+     * @return DVR window
+     */
+    public DVRBuffer startDVR() {
+        DVRBuffer buffer = dvrBuffer;
+        if (buffer == null) {
+            IContext context = getScope().getContext();
+            if (context.hasBean("dvrBuffer")) {
+                buffer = (DVRBuffer) context.getBean("dvrBuffer");
+            } else {
+                buffer = new DVRBuffer();
+            }
+            buffer.attach(this);
+            dvrBuffer = buffer;
+        }
+        return buffer;
+    }
+
+    /**
+     * Stops keeping the DVR window of this stream.
+     */
+    public void stopDVR() {
+        DVRBuffer buffer = dvrBuffer;
+        if (buffer != null) {
+            dvrBuffer = null;
+            buffer.detach(this);
+        }
+    }
+
+    /**
+     * Returns the DVR window of this stream.
+     *
+     * @return DVR window or null if none is kept
+     */
+    public DVRBuffer getDVRBuffer() {
+        return dvrBuffer;
     }
 
     /** {@inheritDoc} */
@@ -1017,6 +1159,14 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
         }
         // check local registry first then attempt the add
         if (!localAliases.contains(alias) && aliases.add(alias)) {
+            // once published, the scope has to be found by the new alias as well
+            IScope scope = getScope();
+            if (publishedName != null && scope instanceof Scope) {
+                IBroadcastScope bsScope = scope.getBroadcastScope(publishedName);
+                if (bsScope != null && bsScope.getClientBroadcastStream() == this) {
+                    ((Scope) scope).indexBroadcastAliases(bsScope);
+                }
+            }
             return true;
         }
         return false;
@@ -0,0 +1,248 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.event.VideoData.FrameType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-subscriber congestion controller for live video.
+ * <p>
+ * Instead of counting pending messages, the controller looks at the bytes actually queued for writing on the connection and at the rate at
+ * which the connection has been draining them, which together give the time it will take for a newly queued frame to leave the server. Frames
+ * are then dropped by class, using the frame type flags shared by AVC, HEVC and AV1:
+ * <ul>
+ * <li>disposable interframes are dropped once the queue delay passes a quarter of the maximum delay</li>
+ * <li>interframes are dropped once it passes half of the maximum delay; everything up to the next keyframe is dropped as well</li>
+ * <li>keyframes are dropped only once the maximum delay is exceeded</li>
+ * </ul>
+ * After an interframe or keyframe has been dropped, sending resumes at the first keyframe arriving while the queue delay is back under half of
+ * the maximum delay. Sequence headers and end-of-sequence markers are never dropped.
+ *
+ * @author The Red5 Project
+ */
+public class EgressCongestionController {
+
+    private static final Logger log = LoggerFactory.getLogger(EgressCongestionController.class);
+
+    /**
+     * Minimum interval between two drain rate samples in milliseconds
+     */
+    private static final long SAMPLE_INTERVAL = 50L;
+
+    /**
+     * Drain rate assumed until the first sample, in bytes per millisecond (64kbit/s)
+     */
+    private static final double MIN_DRAIN_RATE = 8d;
+
+    /**
+     * Queue delay in milliseconds above which keyframes are dropped
+     */
+    private final int maxDelay;
+
+    /**
+     * Set when an interframe or keyframe has been dropped and sending waits for the next keyframe
+     */
+    private volatile boolean awaitingKeyframe;
+
+    /**
+     * Smoothed drain rate in bytes per millisecond
+     */
+    private volatile double drainRate;
+
+    /**
+     * Last estimated queue delay in milliseconds
+     */
+    private volatile long queueDelay;
+
+    /**
+     * Bytes queued at the last update
+     */
+    private volatile long queuedBytes;
+
+    private long lastWrittenBytes = -1;
+
+    private long lastSampleTime;
+
+    private final AtomicLong sentFrames = new AtomicLong();
+
+    private final AtomicLong droppedDisposable = new AtomicLong();
+
+    private final AtomicLong droppedInterframes = new AtomicLong();
+
+    private final AtomicLong droppedKeyframes = new AtomicLong();
+
+    private final AtomicLong resumes = new AtomicLong();
+
+    /**
+     * Creates a controller.
+     *
+     * @param maxDelay
+     *            queue delay in milliseconds above which keyframes are dropped
+     */
+    public EgressCongestionController(int maxDelay) {
+        this.maxDelay = Math.max(maxDelay, 4);
+    }
+
+    /**
+     * Updates the drain rate and queue delay estimates.
+     *
+     * @param queued
+     *            bytes currently queued for writing
+     * @param written
+     *            total bytes written so far
+     * @param now
+     *            current time in milliseconds
+     * @return estimated queue delay in milliseconds
+     */
+    public long update(long queued, long written, long now) {
+        if (lastWrittenBytes < 0) {
+            lastWrittenBytes = written;
+            lastSampleTime = now;
+        } else {
+            long elapsed = now - lastSampleTime;
+            if (elapsed >= SAMPLE_INTERVAL) {
+                // only a backlogged connection shows its real capacity, an idle one drains whatever we hand it
+                if (queuedBytes > 0 || queued > 0) {
+                    double rate = (double) (written - lastWrittenBytes) / elapsed;
+                    drainRate = drainRate == 0d ? rate : (drainRate * 0.75d) + (rate * 0.25d);
+                }
+                lastWrittenBytes = written;
+                lastSampleTime = now;
+            }
+        }
+        queuedBytes = queued;
+        queueDelay = queued > 0 ? (long) (queued / Math.max(drainRate, MIN_DRAIN_RATE)) : 0L;
+        return queueDelay;
+    }
+
+    /**
+     * Decides whether the given video frame may be written, based on the last queue delay estimate.
+     *
+     * @param video
+     *            video frame
+     * @return true to send the frame, false to drop it
+     */
+    public boolean canSend(VideoData video) {
+        if (video.isConfig() || video.isEndOfSequence()) {
+            return true;
+        }
+        final long delay = queueDelay;
+        FrameType type = video.getFrameType();
+        switch (type) {
+            case KEYFRAME:
+                if (awaitingKeyframe) {
+                    if (delay <= maxDelay / 2) {
+                        awaitingKeyframe = false;
+                        resumes.incrementAndGet();
+                        log.debug("Resuming at keyframe, queue delay: {}ms", delay);
+                        break;
+                    }
+                    droppedKeyframes.incrementAndGet();
+                    return false;
+                }
+                if (delay > maxDelay) {
+                    awaitingKeyframe = true;
+                    droppedKeyframes.incrementAndGet();
+                    return false;
+                }
+                break;
+            case INTERFRAME:
+                if (awaitingKeyframe || delay > maxDelay / 2) {
+                    awaitingKeyframe = true;
+                    droppedInterframes.incrementAndGet();
+                    return false;
+                }
+                break;
+            case DISPOSABLE_INTERFRAME:
+                if (awaitingKeyframe || delay > maxDelay / 4) {
+                    droppedDisposable.incrementAndGet();
+                    return false;
+                }
+                break;
+            default:
+        }
+        sentFrames.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns whether the queue delay exceeds the maximum delay.
+     *
+     * @return true if congested
+     */
+    public boolean isCongested() {
+        return queueDelay > maxDelay;
+    }
+
+    /**
+     * Makes the next frame sent a keyframe, for instance after a seek or a stream switch.
+     */
+    public void reset() {
+        awaitingKeyframe = true;
+    }
+
+    public boolean isAwaitingKeyframe() {
+        return awaitingKeyframe;
+    }
+
+    public int getMaxDelay() {
+        return maxDelay;
+    }
+
+    public long getQueueDelay() {
+        return queueDelay;
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Returns the smoothed drain rate.
+     *
+     * @return bytes per second
+     */
+    public long getDrainRate() {
+        return (long) (drainRate * 1000d);
+    }
+
+    public long getSentFrames() {
+        return sentFrames.get();
+    }
+
+    public long getDroppedDisposable() {
+        return droppedDisposable.get();
+    }
+
+    public long getDroppedInterframes() {
+        return droppedInterframes.get();
+    }
+
+    public long getDroppedKeyframes() {
+        return droppedKeyframes.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedDisposable.get() + droppedInterframes.get() + droppedKeyframes.get();
+    }
+
+    public long getResumes() {
+        return resumes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "EgressCongestionController [queueDelay=" + queueDelay + ", queuedBytes=" + queuedBytes + ", drainRate=" + getDrainRate() + ", sent=" + sentFrames + ", droppedDisposable=" + droppedDisposable + ", droppedInterframes=" + droppedInterframes + ", droppedKeyframes=" + droppedKeyframes + ", resumes=" + resumes + "]";
+    }
+
+}
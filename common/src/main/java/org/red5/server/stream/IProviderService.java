@@ -75,6 +75,19 @@ public interface IProviderService extends IScopeService {
      */
     IMessageInput getVODProviderInput(IScope scope, String name);
 
+    /**
+     * Get the DVR window of a named live stream as the source of input, see {@link ClientBroadcastStream#startDVR()}.
+     *
+     * @param scope
+     *            Scope of provider
+     * @param name
+     *            Name of provider
+     * @return null if the stream is not live or keeps no window.
+     */
+    default IMessageInput getDVRProviderInput(IScope scope, String name) {
+        return null;
+    }
+
     /**
      * Get a named VOD source file.
      *
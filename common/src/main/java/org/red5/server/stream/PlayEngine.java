@@ -25,15 +25,19 @@ import org.red5.codec.IVideoStreamCodec;
 import org.red5.codec.IVideoStreamCodec.FrameData;
 import org.red5.codec.StreamCodecInfo;
 import org.red5.io.amf.Output;
+import org.red5.io.utils.IOUtils;
 import org.red5.io.utils.ObjectMap;
 import org.red5.logging.Red5LoggerFactory;
+import org.red5.server.BaseConnection;
 import org.red5.server.api.scheduling.IScheduledJob;
 import org.red5.server.api.scheduling.ISchedulingService;
 import org.red5.server.api.scope.IBroadcastScope;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.stream.IBroadcastStream;
+import org.red5.server.api.stream.IClientBroadcastStream;
 import org.red5.server.api.stream.IPlayItem;
 import org.red5.server.api.stream.IPlaylistSubscriberStream;
+import org.red5.server.api.stream.IStreamCapableConnection;
 import org.red5.server.api.stream.ISubscriberStream;
 import org.red5.server.api.stream.OperationNotSupportedException;
 import org.red5.server.api.stream.StreamState;
@@ -64,6 +68,7 @@ import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.net.rtmp.status.Status;
 import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.stream.consumer.DVRBuffer;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.stream.message.ResetMessage;
 import org.red5.server.stream.message.StatusMessage;
@@ -113,6 +118,11 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 
     private boolean pullMode;
 
+    /**
+     * DVR window of the live stream being played, if it keeps one
+     */
+    private DVRBuffer dvrBuffer;
+
     private String waitLiveJob;
 
     /**
@@ -155,6 +165,21 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
      */
     private IFrameDropper videoFrameDropper = new VideoFrameDropper();
 
+    /**
+     * Congestion controller driven by the bytes queued on the connection, replaces the pending message thresholds when set
+     */
+    private EgressCongestionController congestionController;
+
+    /**
+     * Longest span of file media packed into one aggregate message, in milliseconds; 0 sends every tag as its own message
+     */
+    private int aggregateDuration;
+
+    /**
+     * Size in bytes at which an aggregate message is sent regardless of its duration
+     */
+    private int aggregateMaxSize = 65536;
+
     private int timestampOffset = 0;
 
     /**
@@ -358,6 +383,8 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         // If 0 or a positive number, plays a recorded stream, beginning start seconds in.
         //
         // -2: live then recorded, -1: live, >=0: recorded
+        // a live stream which keeps a dvr window is played time-shifted for anything below -2, starting that far behind the live end, and
+        // for 0 or a positive number, which is then a timestamp of the stream
         int type = (int) (item.getStart() / 1000);
         log.debug("Type {}", type);
         // see if it's a published stream
@@ -366,7 +393,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         //check for input and type
         IProviderService.INPUT_TYPE sourceType = providerService.lookupProviderInput(thisScope, itemName, type);
         boolean sendNotifications = true;
-        // decision: 0 for Live, 1 for File, 2 for Wait, 3 for N/A
+        // decision: 0 for Live, 1 for File, 2 for Wait, 3 for N/A, 4 for Time-shift
         switch (type) {
             case -2:
                 if (sourceType == IProviderService.INPUT_TYPE.LIVE) {
@@ -387,6 +414,8 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
             default:
                 if (sourceType == IProviderService.INPUT_TYPE.VOD) {
                     playDecision = 1;
+                } else if (sourceType == IProviderService.INPUT_TYPE.LIVE && (dvrBuffer = getDVRBuffer(thisScope, itemName)) != null) {
+                    playDecision = 4;
                 }
                 break;
         }
@@ -394,13 +423,18 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         currentItem.set(item);
         long itemLength = item.getLength();
         if (isDebug) {
-            log.debug("Play decision is {} (0=Live, 1=File, 2=Wait, 3=N/A) item length: {}", playDecision, itemLength);
+            log.debug("Play decision is {} (0=Live, 1=File, 2=Wait, 3=N/A, 4=Time-shift) item length: {}", playDecision, itemLength);
         }
         switch (playDecision) {
             case 0:
                 // get source input without create
                 in = providerService.getLiveProviderInput(thisScope, itemName, false);
                 if (msgInReference.compareAndSet(null, in)) {
+                    // the timestamps of a stream which keeps a dvr window are kept, so positions are the same live and time-shifted
+                    dvrBuffer = getDVRBuffer(thisScope, itemName);
+                    if (dvrBuffer != null) {
+                        streamStartTS.set(0);
+                    }
                     // drop all frames up to the next keyframe
                     videoFrameDropper.reset(IFrameDropper.SEND_KEYFRAMES_CHECK);
                     if (in instanceof IBroadcastScope) {
@@ -479,6 +513,21 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                     throw new StreamNotFoundException(itemName);
                 }
                 break;
+            case 4:
+                in = providerService.getDVRProviderInput(thisScope, itemName);
+                if (in != null && msgInReference.compareAndSet(null, in)) {
+                    if (in.subscribe(this, null)) {
+                        int start = (int) item.getStart();
+                        playDVR(withReset, type < -2 ? dvrBuffer.getLastTimestamp() + start : start);
+                    } else {
+                        log.warn("Input source subscribe failed");
+                        throw new IOException(String.format("Subscribe to %s failed", itemName));
+                    }
+                } else {
+                    sendStreamNotFoundStatus(item);
+                    throw new StreamNotFoundException(itemName);
+                }
+                break;
             default:
                 sendStreamNotFoundStatus(item);
                 throw new StreamNotFoundException(itemName);
@@ -644,6 +693,67 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         return msg;
     }
 
+    /**
+     * Performs the processes needed for time-shifted playback of a live stream from its DVR window. The timestamps of the stream are kept
+     * and playback continues up to the live end of the window for as long as the stream is published.
+     *
+     * @param withReset
+     *            whether or not to perform reset on the stream
+     * @param position
+     *            timestamp of the stream to start at
+     */
+    private final void playDVR(boolean withReset, int position) {
+        // change state
+        subscriberStream.setState(StreamState.PLAYING);
+        if (withReset) {
+            releasePendingMessage();
+        }
+        streamStartTS.set(0);
+        // start at the nearest keyframe
+        streamOffset = sendVODSeekCM(position);
+        if (streamOffset == -1) {
+            streamOffset = position;
+        }
+    }
+
+    /**
+     * Switches from the live stream to its DVR window, so that playback can continue time-shifted.
+     */
+    private void timeShift() {
+        IMessageInput in = providerService.getDVRProviderInput(subscriberStream.getScope(), currentItem.get().getName());
+        if (in != null) {
+            log.debug("Switching to the DVR window of {}", currentItem.get().getName());
+            IMessageInput live = msgInReference.getAndSet(null);
+            if (live != null) {
+                live.unsubscribe(this);
+            }
+            playDecision = 4;
+            if (msgInReference.compareAndSet(null, in)) {
+                in.subscribe(this, null);
+            }
+        }
+    }
+
+    /**
+     * Returns the DVR window of the named live stream.
+     *
+     * @param scope
+     *            scope of the stream
+     * @param name
+     *            name of the stream
+     * @return DVR window or null if the stream is not live or keeps none
+     */
+    private DVRBuffer getDVRBuffer(IScope scope, String name) {
+        IMessageInput in = providerService.getLiveProviderInput(scope, name, false);
+        if (in instanceof IBroadcastScope) {
+            IClientBroadcastStream stream = ((IBroadcastScope) in).getClientBroadcastStream();
+            if (stream instanceof ClientBroadcastStream) {
+                return ((ClientBroadcastStream) stream).getDVRBuffer();
+            }
+        }
+        return null;
+    }
+
     /**
      * Connects to the data provider.
      *
@@ -712,6 +822,10 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         // allow resume from pause
         switch (subscriberStream.getState()) {
             case PAUSED:
+                if (!pullMode && playDecision == 0 && dvrBuffer != null) {
+                    // resume a live stream which keeps a dvr window where it was paused
+                    timeShift();
+                }
                 subscriberStream.setState(StreamState.PLAYING);
                 sendReset();
                 sendResumeStatus(currentItem.get());
@@ -729,6 +843,9 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                 } else {
                     subscriberStream.onChange(StreamState.RESUMED, currentItem.get(), position);
                     videoFrameDropper.reset(VideoFrameDropper.SEND_KEYFRAMES_CHECK);
+                    if (congestionController != null) {
+                        congestionController.reset();
+                    }
                 }
                 break;
             default:
@@ -747,6 +864,10 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
      *             If this object doesn't support the operation.
      */
     public void seek(int position) throws IllegalStateException, OperationNotSupportedException {
+        if (!pullMode && playDecision == 0 && dvrBuffer != null) {
+            // seeking a live stream which keeps a dvr window continues from the window
+            timeShift();
+        }
         // add this pending seek operation to the list
         pendingOperations.add(new SeekRunnable(position));
         cancelDeferredStop();
@@ -857,17 +978,23 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
             if (isClientBufferFull(now)) {
                 return false;
             }
-            // get pending message count
-            long pending = pendingMessages();
+            // check the egress queue, by its estimated delay if congestion control is enabled or else by pending message count
+            boolean underrun;
+            if (congestionController != null) {
+                updateCongestion(now);
+                underrun = congestionController.isCongested();
+            } else {
+                underrun = pendingMessages() > underrunTrigger;
+            }
             if (bufferCheckInterval > 0 && now >= nextCheckBufferUnderrun) {
-                if (pending > underrunTrigger) {
+                if (underrun) {
                     // client is playing behind speed, notify him
                     sendInsufficientBandwidthStatus(currentItem.get());
                 }
                 nextCheckBufferUnderrun = now + bufferCheckInterval;
             }
             // check for under run
-            if (pending > underrunTrigger) {
+            if (underrun) {
                 // too many messages already queued on the connection
                 return false;
             }
@@ -1484,39 +1611,56 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                                 // which may trigger an OutOfMemory exception. To mitigate this, we check the size of
                                 // pending video messages and drop video packets until the queue is below the threshold.
                                 // only check for frame dropping if the codec supports it
-                                long pendingVideos = pendingVideoMessages();
-                                if (isTrace) {
-                                    log.trace("Pending messages sessionId={} stream={} pending={} threshold={} sequential={} dropped={}", new Object[] { sessionId, subscribedStreamName, pendingVideos, maxPendingVideoFrames, numSequentialPendingVideoFrames, droppedPacketsCount });
-                                }
-                                if (!videoFrameDropper.canSendPacket(rtmpMessage, pendingVideos)) {
-                                    // drop frame as it depends on other frames that were dropped before
-                                    droppedPacketsCount++;
-                                    if (log.isInfoEnabled() && shouldLogPacketDrop()) {
-                                        log.info("Frame dropper says to drop packet. sessionId={} stream={} dropped={}", sessionId, subscribedStreamName, droppedPacketsCount);
+                                if (congestionController != null) {
+                                    // drop by frame class on the estimated time the queued bytes need to drain
+                                    long now = System.currentTimeMillis();
+                                    updateCongestion(now);
+                                    if (!congestionController.canSend((VideoData) body)) {
+                                        droppedPacketsCount++;
+                                        if (log.isInfoEnabled() && shouldLogPacketDrop()) {
+                                            log.info("Drop packet. Egress congested. sessionId={} stream={} {}", sessionId, subscribedStreamName, congestionController);
+                                        }
+                                        if (bufferCheckInterval > 0 && now >= nextCheckBufferUnderrun) {
+                                            sendInsufficientBandwidthStatus(currentItem.get());
+                                            nextCheckBufferUnderrun = now + bufferCheckInterval;
+                                        }
+                                        return;
                                     }
-                                    return;
-                                }
-                                // increment the number of times we had pending video frames sequentially
-                                if (pendingVideos > 1) {
-                                    numSequentialPendingVideoFrames++;
                                 } else {
-                                    // reset number of sequential pending frames if 1 or 0 are pending
-                                    numSequentialPendingVideoFrames = 0;
-                                }
-                                if (pendingVideos > maxPendingVideoFrames || numSequentialPendingVideoFrames > maxSequentialPendingVideoFrames) {
-                                    droppedPacketsCount++;
-                                    if (log.isInfoEnabled() && shouldLogPacketDrop()) {
-                                        log.info("Drop packet. Pending above threshold. sessionId={} stream={} pending={} threshold={} sequential={} dropped={}", new Object[] { sessionId, subscribedStreamName, pendingVideos, maxPendingVideoFrames, numSequentialPendingVideoFrames, droppedPacketsCount });
+                                    long pendingVideos = pendingVideoMessages();
+                                    if (isTrace) {
+                                        log.trace("Pending messages sessionId={} stream={} pending={} threshold={} sequential={} dropped={}", new Object[] { sessionId, subscribedStreamName, pendingVideos, maxPendingVideoFrames, numSequentialPendingVideoFrames, droppedPacketsCount });
                                     }
-                                    // drop because the client has insufficient bandwidth
-                                    long now = System.currentTimeMillis();
-                                    if (bufferCheckInterval > 0 && now >= nextCheckBufferUnderrun) {
-                                        // notify client about frame dropping (keyframe)
-                                        sendInsufficientBandwidthStatus(currentItem.get());
-                                        nextCheckBufferUnderrun = now + bufferCheckInterval;
+                                    if (!videoFrameDropper.canSendPacket(rtmpMessage, pendingVideos)) {
+                                        // drop frame as it depends on other frames that were dropped before
+                                        droppedPacketsCount++;
+                                        if (log.isInfoEnabled() && shouldLogPacketDrop()) {
+                                            log.info("Frame dropper says to drop packet. sessionId={} stream={} dropped={}", sessionId, subscribedStreamName, droppedPacketsCount);
+                                        }
+                                        return;
+                                    }
+                                    // increment the number of times we had pending video frames sequentially
+                                    if (pendingVideos > 1) {
+                                        numSequentialPendingVideoFrames++;
+                                    } else {
+                                        // reset number of sequential pending frames if 1 or 0 are pending
+                                        numSequentialPendingVideoFrames = 0;
+                                    }
+                                    if (pendingVideos > maxPendingVideoFrames || numSequentialPendingVideoFrames > maxSequentialPendingVideoFrames) {
+                                        droppedPacketsCount++;
+                                        if (log.isInfoEnabled() && shouldLogPacketDrop()) {
+                                            log.info("Drop packet. Pending above threshold. sessionId={} stream={} pending={} threshold={} sequential={} dropped={}", new Object[] { sessionId, subscribedStreamName, pendingVideos, maxPendingVideoFrames, numSequentialPendingVideoFrames, droppedPacketsCount });
+                                        }
+                                        // drop because the client has insufficient bandwidth
+                                        long now = System.currentTimeMillis();
+                                        if (bufferCheckInterval > 0 && now >= nextCheckBufferUnderrun) {
+                                            // notify client about frame dropping (keyframe)
+                                            sendInsufficientBandwidthStatus(currentItem.get());
+                                            nextCheckBufferUnderrun = now + bufferCheckInterval;
+                                        }
+                                        videoFrameDropper.dropPacket(rtmpMessage);
+                                        return;
                                     }
-                                    videoFrameDropper.dropPacket(rtmpMessage);
-                                    return;
                                 }
                                 // we are ok to send, check if we should send buffered frame
                                 if (bufferedInterframeIdx > -1) {
@@ -1587,6 +1731,19 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         return subscriberStream.getConnection().getPendingMessages();
     }
 
+    /**
+     * Feeds the congestion controller with the current state of the connection write queue.
+     *
+     * @param now
+     *            current time in milliseconds
+     */
+    private void updateCongestion(long now) {
+        IStreamCapableConnection conn = subscriberStream.getConnection();
+        if (conn instanceof BaseConnection) {
+            congestionController.update(((BaseConnection) conn).getPendingBytes(), conn.getWrittenBytes(), now);
+        }
+    }
+
     public boolean isPullMode() {
         return pullMode;
     }
@@ -1916,6 +2073,8 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                         } else {
                             IMessage msg = null;
                             IMessageInput in = msgInReference.get();
+                            // audio and video pulled in this run are packed into aggregates, none is held over to the next run
+                            AggregateBuilder aggregate = isAggregating() ? new AggregateBuilder() : null;
                             do {
                                 msg = in.pullMessage();
                                 if (msg != null) {
@@ -1927,13 +2086,25 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                                             body.setTimestamp(body.getTimestamp() + timestampOffset);
                                             if (okayToSendMessage(body)) {
                                                 log.trace("ts: {}", rtmpMessage.getBody().getTimestamp());
-                                                sendMessage(rtmpMessage);
+                                                if (aggregate != null && aggregate.add(body)) {
+                                                    if (aggregate.isFull()) {
+                                                        aggregate.send();
+                                                    }
+                                                } else {
+                                                    if (aggregate != null) {
+                                                        aggregate.send();
+                                                    }
+                                                    sendMessage(rtmpMessage);
+                                                }
                                                 IoBuffer data = ((IStreamData<?>) body).getData();
                                                 if (data != null) {
                                                     data.free();
                                                 }
                                                 // continue to pull and feed
                                             } else {
+                                                if (aggregate != null) {
+                                                    aggregate.send();
+                                                }
                                                 // ensure p/p executable scheduled and break to exit
                                                 pendingMessage = rtmpMessage;
                                                 ensurePullAndPushRunning();
@@ -1942,9 +2113,17 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                                         }
                                     }
                                 } else {
-                                    // No more packets to send
-                                    log.debug("Ran out of packets");
-                                    runDeferredStop();
+                                    if (aggregate != null) {
+                                        aggregate.send();
+                                    }
+                                    if (playDecision == 4 && !dvrBuffer.isClosed()) {
+                                        // caught up with the live end of the dvr window, wait for more
+                                        log.trace("Reached the live end of the DVR window");
+                                    } else {
+                                        // No more packets to send
+                                        log.debug("Ran out of packets");
+                                        runDeferredStop();
+                                    }
                                 }
                             } while (msg != null);
                         }
@@ -1963,6 +2142,75 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         }
     }
 
+    /**
+     * Whether or not file media is sent in aggregate messages. Items played for a limited length are sent tag by tag, so that they stop
+     * exactly where requested.
+     */
+    private boolean isAggregating() {
+        IPlayItem item = currentItem.get();
+        return aggregateDuration > 0 && playDecision == 1 && item != null && item.getLength() < 0;
+    }
+
+    /**
+     * Packs consecutive audio and video events into the body of an aggregate message, each as an FLV tag with its own timestamp followed by
+     * its back pointer.
+     */
+    private final class AggregateBuilder {
+
+        private IoBuffer buffer;
+
+        private int firstTimestamp, lastTimestamp;
+
+        /**
+         * Adds an event if it can be part of an aggregate. Bodies in direct buffers, such as mapped file regions, are sent on their own
+         * so they reach the socket without being copied to the heap.
+         *
+         * @return true if added, false if it has to be sent on its own
+         */
+        boolean add(IRTMPEvent event) {
+            if (!(event instanceof AudioData || event instanceof VideoData)) {
+                return false;
+            }
+            IoBuffer data = ((IStreamData<?>) event).getData();
+            if (data == null || data.isDirect()) {
+                return false;
+            }
+            int size = data.limit();
+            int timestamp = event.getTimestamp();
+            if (buffer == null) {
+                buffer = IoBuffer.allocate(Math.max(aggregateMaxSize, size) + 15).setAutoExpand(true);
+                firstTimestamp = timestamp;
+            }
+            lastTimestamp = timestamp;
+            buffer.put(event.getDataType());
+            IOUtils.writeMediumInt(buffer, size);
+            IOUtils.writeExtendedMediumInt(buffer, timestamp);
+            // stream id
+            IOUtils.writeMediumInt(buffer, 0);
+            buffer.put(data.asReadOnlyBuffer().rewind());
+            buffer.putInt(size + 11);
+            return true;
+        }
+
+        boolean isFull() {
+            return buffer != null && (buffer.position() >= aggregateMaxSize || lastTimestamp - firstTimestamp >= aggregateDuration);
+        }
+
+        /**
+         * Sends what has been added so far.
+         */
+        void send() {
+            if (buffer != null) {
+                buffer.flip();
+                Aggregate aggregate = new Aggregate(buffer);
+                aggregate.setTimestamp(firstTimestamp);
+                buffer = null;
+                sendMessage(RTMPMessage.build(aggregate));
+            }
+        }
+
+    }
+
     private class DeferredStopRunnable implements IScheduledJob {
 
         public void execute(ISchedulingService service) {
@@ -1990,4 +2238,49 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         this.maxSequentialPendingVideoFrames = maxSequentialPendingVideoFrames;
     }
 
+    /**
+     * Enables congestion control of live video by the bytes queued on the connection. When enabled, the pending message and pending video
+     * frame thresholds are no longer used and the encoder does not drop messages of the stream on its own.
+     *
+     * @param congestionMaxDelay
+     *            queue delay in milliseconds above which even keyframes are dropped, 0 to disable
+     */
+    public void setCongestionMaxDelay(int congestionMaxDelay) {
+        if (congestionMaxDelay > 0) {
+            congestionController = new EgressCongestionController(congestionMaxDelay);
+        } else {
+            congestionController = null;
+        }
+    }
+
+    /**
+     * Enables delivery of file media in aggregate messages, which carry several audio and video tags each and so save the per message
+     * header, encoding and write work.
+     *
+     * @param aggregateDuration
+     *            longest span of media in one aggregate in milliseconds, 0 to send every tag as its own message
+     */
+    public void setAggregateDuration(int aggregateDuration) {
+        this.aggregateDuration = aggregateDuration;
+    }
+
+    /**
+     * Sets the size at which an aggregate message is sent even if it spans less than the aggregate duration.
+     *
+     * @param aggregateMaxSize
+     *            size in bytes
+     */
+    public void setAggregateMaxSize(int aggregateMaxSize) {
+        this.aggregateMaxSize = aggregateMaxSize;
+    }
+
+    /**
+     * Returns the congestion controller of this subscriber, which holds its drop statistics.
+     *
+     * @return congestion controller or null if congestion control is disabled
+     */
+    public EgressCongestionController getCongestionController() {
+        return congestionController;
+    }
+
 }
@@ -23,6 +23,7 @@ import org.red5.server.api.stream.IPlayItem;
 import org.red5.server.api.stream.IPlaylistController;
 import org.red5.server.api.stream.IPlaylistSubscriberStream;
 import org.red5.server.api.stream.IStreamAwareScopeHandler;
+import org.red5.server.api.stream.IStreamCapableConnection;
 import org.red5.server.api.stream.OperationNotSupportedException;
 import org.red5.server.api.stream.StreamState;
 import org.slf4j.Logger;
@@ -120,6 +121,21 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
      */
     private int maxSequentialPendingVideoFrames = 10;
 
+    /**
+     * see PlayEngine.setCongestionMaxDelay
+     */
+    private int congestionMaxDelay;
+
+    /**
+     * see PlayEngine.setAggregateDuration
+     */
+    private int aggregateDuration;
+
+    /**
+     * see PlayEngine.setAggregateMaxSize
+     */
+    private int aggregateMaxSize = 65536;
+
     /** Constructs a new PlaylistSubscriberStream. */
     public PlaylistSubscriberStream() {
     }
@@ -134,6 +150,11 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
         engine.setMaxPendingVideoFrames(maxPendingVideoFrames);
         // set the max sequential pending video frames to the play engine
         engine.setMaxSequentialPendingVideoFrames(maxSequentialPendingVideoFrames);
+        // set the congestion control delay to the play engine
+        engine.setCongestionMaxDelay(congestionMaxDelay);
+        // set the aggregate delivery of file media to the play engine
+        engine.setAggregateDuration(aggregateDuration);
+        engine.setAggregateMaxSize(aggregateMaxSize);
         return engine;
     }
 
@@ -203,8 +224,18 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
         engine.setMaxPendingVideoFrames(maxPendingVideoFrames);
         // set the max sequential pending video frames to the play engine
         engine.setMaxSequentialPendingVideoFrames(maxSequentialPendingVideoFrames);
+        // set the congestion control delay to the play engine
+        engine.setCongestionMaxDelay(congestionMaxDelay);
+        // set the aggregate delivery of file media to the play engine
+        engine.setAggregateDuration(aggregateDuration);
+        engine.setAggregateMaxSize(aggregateMaxSize);
         // Start playback engine
         engine.start();
+        // a congestion controller decides on dropping before messages are written, the connection must not drop them again
+        IStreamCapableConnection conn = getConnection();
+        if (conn != null) {
+            conn.setCongestionControlled(getStreamId(), engine.getCongestionController() != null);
+        }
         // Notify subscribers on start
         onChange(StreamState.STARTED);
     }
@@ -295,6 +326,10 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
         if (engine != null) {
             // before or on close we may need to allow the queued messages a chance to clear
             engine.close();
+            IStreamCapableConnection conn = getConnection();
+            if (conn != null) {
+                conn.setCongestionControlled(getStreamId(), false);
+            }
             onChange(StreamState.CLOSED);
             items.clear();
             // clear jobs
@@ -844,6 +879,39 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
         this.maxSequentialPendingVideoFrames = maxSequentialPendingVideoFrames;
     }
 
+    /**
+     * @param congestionMaxDelay
+     *            the egress queue delay in milliseconds above which live keyframes are dropped, 0 disables congestion control
+     */
+    public void setCongestionMaxDelay(int congestionMaxDelay) {
+        this.congestionMaxDelay = congestionMaxDelay;
+    }
+
+    /**
+     * @param aggregateDuration
+     *            the longest span of file media sent in one aggregate message in milliseconds, 0 sends each tag on its own
+     */
+    public void setAggregateDuration(int aggregateDuration) {
+        this.aggregateDuration = aggregateDuration;
+    }
+
+    /**
+     * @param aggregateMaxSize
+     *            the size in bytes at which an aggregate message is sent
+     */
+    public void setAggregateMaxSize(int aggregateMaxSize) {
+        this.aggregateMaxSize = aggregateMaxSize;
+    }
+
+    /**
+     * Returns the congestion controller holding the frame drop statistics of this subscriber.
+     *
+     * @return congestion controller or null if not enabled
+     */
+    public EgressCongestionController getCongestionController() {
+        return engine != null ? engine.getCongestionController() : null;
+    }
+
     /** {@inheritDoc} */
     public String scheduleOnceJob(IScheduledJob job) {
         String jobName = schedulingService.addScheduledOnceJob(10, job);
@@ -9,15 +9,11 @@ package org.red5.server.stream;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.IKeyFrameMetaCache;
 import org.red5.server.api.IConnection;
-import org.red5.server.api.scheduling.IScheduledJob;
-import org.red5.server.api.scheduling.ISchedulingService;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.stream.IBroadcastStream;
 import org.red5.server.api.stream.IStreamFilenameGenerator;
@@ -25,7 +21,6 @@ import org.red5.server.api.stream.IStreamFilenameGenerator.GenerationType;
 import org.red5.server.api.stream.IStreamPacket;
 import org.red5.server.net.rtmp.event.Aggregate;
 import org.red5.server.net.rtmp.event.AudioData;
-import org.red5.server.net.rtmp.event.CachedEvent;
 import org.red5.server.net.rtmp.event.IRTMPEvent;
 import org.red5.server.net.rtmp.event.Notify;
 import org.red5.server.net.rtmp.event.VideoData;
@@ -46,16 +41,6 @@ public class RecordingListener implements IRecordingListener {
 
     private static final Logger log = LoggerFactory.getLogger(RecordingListener.class);
 
-    /**
-     * Scheduler
-     */
-    private ISchedulingService scheduler;
-
-    /**
-     * Event queue worker job name
-     */
-    private String eventQueueJobName;
-
     /**
      * Whether we are recording or not
      */
@@ -76,16 +61,6 @@ public class RecordingListener implements IRecordingListener {
      */
     private String fileName;
 
-    /**
-     * Queue to hold incoming stream event packets.
-     */
-    private final BlockingQueue<CachedEvent> queue = new LinkedBlockingQueue<>(8192);
-
-    /**
-    * The instance holding the queued processQueue() calls
-    **/
-    private EventQueueJob eqj;
-
     /**
      * Get the file we'd be recording to based on scope and given name.
      *
@@ -100,7 +75,7 @@ public class RecordingListener implements IRecordingListener {
         // get stream filename generator
         IStreamFilenameGenerator generator = (IStreamFilenameGenerator) ScopeUtils.getScopeService(scope, IStreamFilenameGenerator.class, DefaultStreamFilenameGenerator.class);
         // generate filename
-        String fileName = generator.generateFilename(scope, name, ".flv", GenerationType.RECORD);
+        String fileName = generator.generateFilename(scope, name, getRecordExtension(name), GenerationType.RECORD);
         File file = null;
         if (generator.resolvesToAbsolutePath()) {
             file = new File(fileName);
@@ -121,6 +96,18 @@ public class RecordingListener implements IRecordingListener {
         return file;
     }
 
+    /**
+     * Returns the extension to add to a recording name; names ending with .mp4 are recorded as fragmented MP4 and keep their name, all others
+     * are recorded as FLV.
+     *
+     * @param name
+     *            name
+     * @return extension
+     */
+    public static String getRecordExtension(String name) {
+        return name != null && name.endsWith(".mp4") ? "" : ".flv";
+    }
+
     /** {@inheritDoc} */
     public boolean init(IConnection conn, String name, boolean isAppend) {
         // get connections scope
@@ -199,8 +186,6 @@ public class RecordingListener implements IRecordingListener {
             }
             // set the filename
             setFileName(file.getName());
-            // get the scheduler
-            scheduler = (ISchedulingService) scope.getParent().getContext().getBean(ISchedulingService.BEAN_NAME);
             // set recording true
             recording.set(true);
         } else {
@@ -212,32 +197,14 @@ public class RecordingListener implements IRecordingListener {
 
     /** {@inheritDoc} */
     public void start() {
-        // start the worker
-        eqj = new EventQueueJob();
-        eventQueueJobName = scheduler.addScheduledJob(3000, eqj);
+        // packets are handed to the consumer as they arrive, its recording engine does the writing
     }
 
     /** {@inheritDoc} */
     public void stop() {
         // set the record flag to false
         if (recording.compareAndSet(true, false)) {
-            // remove the scheduled job
-            scheduler.removeScheduledJob(eventQueueJobName);
-            if (queue.isEmpty()) {
-                log.debug("Event queue was empty on stop");
-            } else {
-                if (!eqj.processing.get()) {
-                    log.debug("Event queue was not empty on stop and it's not processing, processing...");
-                    do {
-                        processQueue();
-                    } while (!queue.isEmpty());
-                } else {
-                    log.debug("Event queue was not empty on stop but it's in processing, waiting...");
-                    do {
-                    } while (!queue.isEmpty());
-                }
-                log.debug("Processing done, event queue empty, moving on");
-            }
+            // writes out whatever is still queued and closes the file
             recordingConsumer.uninit();
         } else {
             log.debug("Recording listener was already stopped");
@@ -247,78 +214,51 @@ public class RecordingListener implements IRecordingListener {
     /** {@inheritDoc} */
     public void packetReceived(IBroadcastStream stream, IStreamPacket packet) {
         if (recording.get()) {
-            // store everything we would need to perform a write of the stream data
-            CachedEvent event = new CachedEvent();
-            event.setData(packet.getData().duplicate());
-            event.setDataType(packet.getDataType());
-            event.setReceivedTime(System.currentTimeMillis());
-            event.setTimestamp(packet.getTimestamp());
-            // queue the event
-            if (!queue.add(event)) {
-                log.debug("Event packet not added to recording queue");
-            }
-        } else {
-            log.info("A packet was received by recording listener, but it's not recording anymore. {}", stream.getPublishedName());
-        }
-    }
-
-    /**
-     * Process the queued items.
-     */
-    private void processQueue() {
-        CachedEvent cachedEvent;
-        try {
-            IRTMPEvent event = null;
-            RTMPMessage message = null;
-            // get first event in the queue
-            cachedEvent = queue.poll();
-            if (cachedEvent != null) {
+            try {
+                RTMPMessage message = null;
                 // get the data type
-                final byte dataType = cachedEvent.getDataType();
-                // get the data
-                IoBuffer buffer = cachedEvent.getData();
+                final byte dataType = packet.getDataType();
+                // the consumer copies the data, a duplicate protects the position of the shared buffer
+                IoBuffer buffer = packet.getData().duplicate();
                 // get the current size of the buffer / data
                 int bufferLimit = buffer.limit();
                 if (bufferLimit > 0) {
+                    IRTMPEvent event;
                     // create new RTMP message and push to the consumer
                     switch (dataType) {
                         case Constants.TYPE_AGGREGATE:
                             event = new Aggregate(buffer);
-                            event.setTimestamp(cachedEvent.getTimestamp());
-                            message = RTMPMessage.build(event);
                             break;
                         case Constants.TYPE_AUDIO_DATA:
                             event = new AudioData(buffer);
-                            event.setTimestamp(cachedEvent.getTimestamp());
-                            message = RTMPMessage.build(event);
                             break;
                         case Constants.TYPE_VIDEO_DATA:
                             event = new VideoData(buffer);
-                            event.setTimestamp(cachedEvent.getTimestamp());
-                            message = RTMPMessage.build(event);
                             break;
                         default:
                             event = new Notify(buffer);
-                            event.setTimestamp(cachedEvent.getTimestamp());
-                            message = RTMPMessage.build(event);
                             break;
                     }
-                    // push it down to the recorder
-                    recordingConsumer.pushMessage(null, message);
-                } else if (bufferLimit == 0 && dataType == Constants.TYPE_AUDIO_DATA) {
+                    event.setTimestamp(packet.getTimestamp());
+                    message = RTMPMessage.build(event);
+                } else if (dataType == Constants.TYPE_AUDIO_DATA) {
                     log.debug("Stream data size was 0, sending empty audio message");
                     // allow for 0 byte audio packets
-                    event = new AudioData(IoBuffer.allocate(0));
-                    event.setTimestamp(cachedEvent.getTimestamp());
+                    AudioData event = new AudioData(IoBuffer.allocate(0));
+                    event.setTimestamp(packet.getTimestamp());
                     message = RTMPMessage.build(event);
-                    // push it down to the recorder
-                    recordingConsumer.pushMessage(null, message);
                 } else {
                     log.debug("Stream data size was 0, recording pipe will not be notified");
                 }
+                if (message != null) {
+                    // push it down to the recorder, which never waits; video is dropped if the recording falls behind
+                    recordingConsumer.pushMessage(null, message);
+                }
+            } catch (Exception e) {
+                log.warn("Exception while pushing to consumer", e);
             }
-        } catch (Exception e) {
-            log.warn("Exception while pushing to consumer", e);
+        } else {
+            log.info("A packet was received by recording listener, but it's not recording anymore. {}", stream.getPublishedName());
         }
     }
 
@@ -353,34 +293,4 @@ public class RecordingListener implements IRecordingListener {
         this.fileName = fileName;
     }
 
-    private class EventQueueJob implements IScheduledJob {
-
-        public AtomicBoolean processing = new AtomicBoolean(false);
-
-        public void execute(ISchedulingService service) {
-            if (processing.compareAndSet(false, true)) {
-                if (log.isTraceEnabled()) {
-                    log.trace("Event queue size: {}", queue.size());
-                }
-                try {
-                    if (!queue.isEmpty()) {
-                        while (!queue.isEmpty()) {
-                            if (log.isTraceEnabled()) {
-                                log.trace("Taking one more item from queue, size: {}", queue.size());
-                            }
-                            processQueue();
-                        }
-                    } else {
-                        log.trace("Nothing to record");
-                    }
-                } catch (Exception e) {
-                    log.error("Error processing queue", e);
-                } finally {
-                    processing.set(false);
-                }
-            }
-        }
-
-    }
-
 }
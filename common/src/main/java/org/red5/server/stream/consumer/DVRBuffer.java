@@ -0,0 +1,545 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.consumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.api.stream.IBroadcastStream;
+import org.red5.server.api.stream.IStreamListener;
+import org.red5.server.api.stream.IStreamPacket;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.event.VideoData.FrameType;
+import org.red5.server.net.rtmp.message.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Live consumer which keeps the most recent part of a broadcast stream, up to a time window, so that it can be played time-shifted. The tags
+ * are appended to segments of memory mapped temporary files, which keeps the window off the Java heap and leaves paging it to the operating
+ * system. Segments are dropped from the head as a whole once the window or the maximum size is exceeded.
+ * <p>
+ * Video keyframes, or one audio frame a second for streams without video, are indexed by timestamp so that a {@link Reader} can start at or
+ * seek to any of them. The codec configurations and metadata current at each of these points are kept with it, so a reader can send them
+ * ahead of the first frame. A reader works on read-only views of the mapped data and never blocks the publisher; one which falls behind the
+ * head of the window continues from its oldest point.
+ * </p>
+ *
+ * @author The Red5 Project
+ */
+public class DVRBuffer implements IStreamListener {
+
+    private static final Logger log = LoggerFactory.getLogger(DVRBuffer.class);
+
+    /**
+     * Size of the type, timestamp and body size ahead of each tag body
+     */
+    private static final int TAG_HEADER_SIZE = 9;
+
+    /**
+     * Interval in milliseconds of the indexed audio frames of streams without video
+     */
+    private static final int AUDIO_SYNC_INTERVAL = 1000;
+
+    /**
+     * Duration of the window in milliseconds
+     */
+    private long window = 7200000L;
+
+    /**
+     * Maximum size of all segments in bytes
+     */
+    private long maxSize = 1024L * 1024L * 1024L;
+
+    /**
+     * Size of a segment in bytes, a larger tag gets a segment of its own
+     */
+    private int segmentSize = 8 * 1024 * 1024;
+
+    /**
+     * Directory of the temporary files, the system temporary directory if not set
+     */
+    private String directory;
+
+    private String name;
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+    private final ConcurrentSkipListMap<Integer, Position> index = new ConcurrentSkipListMap<>();
+
+    private Segment current;
+
+    private long size;
+
+    private boolean videoSeen;
+
+    private int lastSyncTimestamp = -AUDIO_SYNC_INTERVAL;
+
+    private IoBuffer videoConfig;
+
+    private IoBuffer audioConfig;
+
+    private IoBuffer metaData;
+
+    private volatile int lastTimestamp = -1;
+
+    private volatile boolean closed;
+
+    /**
+     * Starts keeping the packets of the given stream.
+     *
+     * @param stream
+     *            broadcast stream
+     */
+    public void attach(IBroadcastStream stream) {
+        name = stream.getPublishedName();
+        stream.addStreamListener(this);
+        log.debug("DVR attached to {}, window: {} ms max size: {}", name, window, maxSize);
+    }
+
+    /**
+     * Stops keeping packets and releases the window. Readers finish what they hold and then see the buffer closed.
+     *
+     * @param stream
+     *            broadcast stream
+     */
+    public void detach(IBroadcastStream stream) {
+        stream.removeStreamListener(this);
+        synchronized (this) {
+            closed = true;
+            index.clear();
+            segments.clear();
+            current = null;
+            size = 0;
+        }
+        log.debug("DVR detached from {}", name);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void packetReceived(IBroadcastStream stream, IStreamPacket packet) {
+        IoBuffer data = packet.getData();
+        if (data == null || closed) {
+            return;
+        }
+        byte type = packet.getDataType();
+        int timestamp = packet.getTimestamp();
+        boolean sync = false;
+        switch (type) {
+            case Constants.TYPE_VIDEO_DATA:
+                videoSeen = true;
+                if (packet instanceof VideoData) {
+                    VideoData video = (VideoData) packet;
+                    if (video.isConfig()) {
+                        videoConfig = copy(data);
+                    } else {
+                        sync = video.getFrameType() == FrameType.KEYFRAME;
+                    }
+                }
+                break;
+            case Constants.TYPE_AUDIO_DATA:
+                if (packet instanceof AudioData && ((AudioData) packet).isConfig()) {
+                    audioConfig = copy(data);
+                } else if (!videoSeen && timestamp - lastSyncTimestamp >= AUDIO_SYNC_INTERVAL) {
+                    sync = true;
+                }
+                break;
+            case Constants.TYPE_NOTIFY:
+                if (packet instanceof Notify && "onMetaData".equals(((Notify) packet).getAction())) {
+                    metaData = copy(data);
+                }
+                break;
+            case Constants.TYPE_AGGREGATE:
+                break;
+            default:
+                return;
+        }
+        append(type, timestamp, data, sync);
+    }
+
+    private synchronized void append(byte type, int timestamp, IoBuffer data, boolean sync) {
+        if (closed) {
+            return;
+        }
+        ByteBuffer body = data.buf().duplicate();
+        body.position(0);
+        int length = body.remaining();
+        int needed = TAG_HEADER_SIZE + length;
+        Segment segment = current;
+        if (segment == null || segment.capacity - segment.end < needed) {
+            segment = newSegment(Math.max(segmentSize, needed), timestamp);
+            if (segment == null) {
+                return;
+            }
+        }
+        int offset = segment.end;
+        ByteBuffer out = segment.writer;
+        out.position(offset);
+        out.put(type).putInt(timestamp).putInt(length).put(body);
+        // publish the tag before it is indexed
+        segment.end = offset + needed;
+        lastTimestamp = timestamp;
+        if (sync) {
+            index.put(timestamp, new Position(segment, offset, timestamp, videoConfig, audioConfig, metaData));
+            lastSyncTimestamp = timestamp;
+        }
+        trim(timestamp);
+    }
+
+    private Segment newSegment(int capacity, int timestamp) {
+        Segment segment;
+        try {
+            File file = File.createTempFile("dvr", ".seg", directory != null ? new File(directory) : null);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                segment = new Segment(channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity), timestamp);
+            } finally {
+                // the mapping outlives the file
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("DVR segment could not be created for {}", name, e);
+            return null;
+        }
+        if (current != null) {
+            current.next = segment;
+        }
+        current = segment;
+        segments.add(segment);
+        size += capacity;
+        return segment;
+    }
+
+    /**
+     * Drops the oldest segments while the remaining ones still cover the window, or while the maximum size is exceeded.
+     */
+    private void trim(int timestamp) {
+        while (segments.size() > 1) {
+            Segment head = segments.peekFirst();
+            Segment next = head.next;
+            if (next.firstTimestamp > timestamp - window && size <= maxSize) {
+                break;
+            }
+            segments.pollFirst();
+            size -= head.capacity;
+            head.dropped = true;
+            index.headMap(next.firstTimestamp).clear();
+            log.trace("DVR segment dropped for {}, window starts at {}", name, next.firstTimestamp);
+        }
+    }
+
+    private static IoBuffer copy(IoBuffer data) {
+        ByteBuffer src = data.buf().duplicate();
+        src.position(0);
+        byte[] bytes = new byte[src.remaining()];
+        src.get(bytes);
+        return IoBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a new reader positioned at the first point of the window.
+     *
+     * @return reader
+     */
+    public Reader newReader() {
+        Reader reader = new Reader();
+        reader.seek(0);
+        return reader;
+    }
+
+    /**
+     * Returns the timestamp of the first point in the window.
+     *
+     * @return timestamp or -1 if the window is empty
+     */
+    public int getFirstTimestamp() {
+        Map.Entry<Integer, Position> first = index.firstEntry();
+        return first != null ? first.getKey() : -1;
+    }
+
+    /**
+     * Returns the timestamp of the most recent tag.
+     *
+     * @return timestamp or -1 if nothing was received yet
+     */
+    public int getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Returns whether the stream has video.
+     *
+     * @return true if video was received
+     */
+    public boolean hasVideo() {
+        return videoSeen;
+    }
+
+    /**
+     * Returns whether the stream stopped and nothing will be added anymore.
+     *
+     * @return true if closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the size of the mapped segments.
+     *
+     * @return size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * Sets the duration of the window.
+     *
+     * @param window
+     *            duration in milliseconds
+     */
+    public void setWindow(long window) {
+        this.window = window;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum size of the mapped segments, the window is shortened to stay within it.
+     *
+     * @param maxSize
+     *            size in bytes
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Sets the size of each mapped segment.
+     *
+     * @param segmentSize
+     *            size in bytes
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Sets the directory of the temporary segment files, an empty value selects the system temporary directory.
+     *
+     * @param directory
+     *            directory
+     */
+    public void setDirectory(String directory) {
+        this.directory = directory != null && !directory.isEmpty() ? directory : null;
+    }
+
+    /**
+     * Tag read from the window, the body is a read-only view of the mapped data.
+     */
+    public static final class Tag {
+
+        private final byte dataType;
+
+        private final int timestamp;
+
+        private final IoBuffer body;
+
+        Tag(byte dataType, int timestamp, IoBuffer body) {
+            this.dataType = dataType;
+            this.timestamp = timestamp;
+            this.body = body;
+        }
+
+        public byte getDataType() {
+            return dataType;
+        }
+
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        public IoBuffer getBody() {
+            return body;
+        }
+
+    }
+
+    /**
+     * Sequential reader of the window, not thread-safe.
+     */
+    public final class Reader {
+
+        private Segment segment;
+
+        private int offset;
+
+        private Position start;
+
+        private Reader() {
+        }
+
+        /**
+         * Moves to the indexed point at or before the given timestamp, or to the first one if there is none.
+         *
+         * @param timestamp
+         *            stream timestamp
+         * @return timestamp of the point or -1 if the window is empty
+         */
+        public int seek(int timestamp) {
+            Map.Entry<Integer, Position> entry = index.floorEntry(timestamp);
+            if (entry == null) {
+                entry = index.firstEntry();
+            }
+            if (entry == null) {
+                start = null;
+                segment = null;
+                return -1;
+            }
+            start = entry.getValue();
+            segment = start.segment;
+            offset = start.offset;
+            return start.timestamp;
+        }
+
+        /**
+         * Returns the codec configurations and metadata to send ahead of the tags since the last seek, once.
+         *
+         * @return video config, audio config and metadata, each may be null, or null if already returned
+         */
+        public IoBuffer[] getConfigs() {
+            Position position = start;
+            start = null;
+            return position != null ? new IoBuffer[] { duplicate(position.videoConfig), duplicate(position.audioConfig), duplicate(position.metaData) } : null;
+        }
+
+        /**
+         * Returns the next tag.
+         *
+         * @return tag or null if the reader caught up with the live end of the window
+         */
+        public Tag next() {
+            if (segment == null || segment.dropped) {
+                // nothing was received at the start, or the window moved past this reader
+                if (segment != null) {
+                    log.debug("DVR reader of {} fell behind the window", name);
+                }
+                if (seek(0) == -1) {
+                    return null;
+                }
+            }
+            while (true) {
+                if (offset < segment.end) {
+                    ByteBuffer view = segment.buffer.duplicate();
+                    byte dataType = view.get(offset);
+                    int timestamp = view.getInt(offset + 1);
+                    int length = view.getInt(offset + 5);
+                    view.limit(offset + TAG_HEADER_SIZE + length).position(offset + TAG_HEADER_SIZE);
+                    offset += TAG_HEADER_SIZE + length;
+                    return new Tag(dataType, timestamp, IoBuffer.wrap(view.slice().asReadOnlyBuffer()));
+                }
+                Segment next = segment.next;
+                if (next == null) {
+                    return null;
+                }
+                // the end of a segment is final once the next one is linked, read what was added before that first
+                if (offset >= segment.end) {
+                    segment = next;
+                    offset = 0;
+                }
+            }
+        }
+
+        private IoBuffer duplicate(IoBuffer buffer) {
+            return buffer != null ? buffer.duplicate() : null;
+        }
+
+    }
+
+    /**
+     * Mapped segment of the window, written by the publisher only.
+     */
+    private static final class Segment {
+
+        final ByteBuffer buffer;
+
+        final ByteBuffer writer;
+
+        final int capacity;
+
+        final int firstTimestamp;
+
+        volatile int end;
+
+        volatile Segment next;
+
+        volatile boolean dropped;
+
+        Segment(ByteBuffer buffer, int firstTimestamp) {
+            this.buffer = buffer;
+            this.writer = buffer.duplicate();
+            this.capacity = buffer.capacity();
+            this.firstTimestamp = firstTimestamp;
+        }
+
+    }
+
+    /**
+     * Indexed point of the window.
+     */
+    private static final class Position {
+
+        final Segment segment;
+
+        final int offset;
+
+        final int timestamp;
+
+        final IoBuffer videoConfig;
+
+        final IoBuffer audioConfig;
+
+        final IoBuffer metaData;
+
+        Position(Segment segment, int offset, int timestamp, IoBuffer videoConfig, IoBuffer audioConfig, IoBuffer metaData) {
+            this.segment = segment;
+            this.offset = offset;
+            this.timestamp = timestamp;
+            this.videoConfig = videoConfig;
+            this.audioConfig = audioConfig;
+            this.metaData = metaData;
+        }
+
+    }
+
+}
@@ -7,11 +7,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -20,6 +17,7 @@ import org.red5.codec.VideoCodec;
 import org.red5.io.ITag;
 import org.red5.io.ITagWriter;
 import org.red5.io.flv.impl.FLVWriter;
+import org.red5.io.mp4.impl.FragmentedMP4Writer;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.stream.IClientStream;
 import org.red5.server.api.stream.IStreamFilenameGenerator;
@@ -37,6 +35,7 @@ import org.red5.server.net.rtmp.event.VideoData;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.stream.DefaultStreamFilenameGenerator;
 import org.red5.server.stream.IStreamData;
+import org.red5.server.stream.RecordingListener;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.stream.message.ResetMessage;
 import org.red5.server.util.ScopeUtils;
@@ -57,16 +56,21 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
     private AtomicBoolean initialized = new AtomicBoolean(false);
 
     /**
-     * Executor for all instance writer jobs
+     * Engine performing the writes of this and all other recordings
      */
-    private ExecutorService executor = Executors.newFixedThreadPool(1);
+    private RecordingEngine recordingEngine;
+
+    /**
+     * Registration with the engine, present while recording
+     */
+    private volatile RecordingEngine.Recording recording;
 
     private static QueuedMediaDataComparator comparator = new QueuedMediaDataComparator();
 
     /**
      * Queue to hold data awaiting writing
      */
-    private BlockingQueue<QueuedMediaData> queue;
+    private Queue<QueuedMediaData> queue;
 
     /**
      * Scope
@@ -104,11 +108,6 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
     @SuppressWarnings("unused")
     private ITag audioConfigurationTag;
 
-    /**
-     * Keeps track of the last spawned write worker.
-     */
-    private volatile Future<?> writerFuture;
-
     private volatile boolean gotKeyFrame = false;
 
     /**
@@ -127,9 +126,9 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
     private boolean usePriority = true;
 
     /**
-     * Queue offer timeout in milliseconds.
+     * Set when video was dropped, so video is skipped until the next keyframe.
      */
-    private long offerTimeout = 100L;
+    private volatile boolean videoDropped;
 
     /**
      * Default ctor
@@ -182,7 +181,7 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
     public void pushMessage(IPipe pipe, IMessage message) throws IOException {
         if (message instanceof RTMPMessage) {
             final IRTMPEvent msg = ((RTMPMessage) message).getBody();
-            // if writes are delayed, queue the data and sort it by time
+            // queue the data, sorted by time if requested
             if (queue == null) {
                 if (usePriority) {
                     if (log.isTraceEnabled()) {
@@ -195,7 +194,7 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
                         log.trace("Creating non-priority typed packet queue");
                     }
                     // process as received
-                    queue = new LinkedBlockingQueue<>();
+                    queue = new ConcurrentLinkedQueue<>();
                 }
             }
             if (msg instanceof IStreamData) {
@@ -213,105 +212,25 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
                 } else {
                     timestamp -= startTimestamp;
                 }
-                // offer to the queue
-                try {
-                    QueuedMediaData queued = new QueuedMediaData(timestamp, dataType, (IStreamData) msg);
-                    if (log.isTraceEnabled()) {
-                        log.trace("Inserting packet into queue. timestamp: {} queue size: {}, codecId={}, isConfig={}", timestamp, queue.size(), queued.codecId, queued.config);
-                    }
-                    if (queue.size() > queueThreshold) {
-                        if (queue.size() % 20 == 0) {
-                            log.warn("Queue size is greater than threshold. queue size={} threshold={}", queue.size(), queueThreshold);
-                        }
-                    }
-                    if (queue.size() < 2 * queueThreshold) {
-                        // Cap queue size to prevent a runaway stream causing OOM.
-                        queue.offer(queued, offerTimeout, TimeUnit.MILLISECONDS);
-                    }
-                } catch (InterruptedException e) {
-                    log.warn("Stream data was not accepted by the queue - timestamp: {} data type: {}", timestamp, dataType, e);
+                if (path == null) {
+                    log.debug("Consumer is uninitialized, dropping data");
+                    return;
                 }
-            }
-            // initialize a writer
-            if (writer == null) {
-                executor.submit(new Runnable() {
-                    public void run() {
-                        Thread.currentThread().setName("ProFileConsumer-" + path.getFileName());
-                        try {
-                            if (log.isTraceEnabled()) {
-                                log.trace("Running FileConsumer thread. queue size: {} initialized: {} writerNotNull={}", queue.size(), initialized, (writer != null));
-                            }
-                            init();
-                            while (writer != null) {
-                                if (log.isTraceEnabled()) {
-                                    log.trace("Processing packet from queue. queue size: {}", queue.size());
-                                }
-
-                                try {
-                                    QueuedMediaData queued = queue.take();
-                                    if (queued != null) {
-                                        // get data type
-                                        byte dataType = queued.getDataType();
-                                        // get timestamp
-                                        int timestamp = queued.getTimestamp();
-                                        ITag tag = queued.getData();
-                                        // ensure that our first video frame written is a key frame
-                                        if (queued.isVideo()) {
-                                            if (log.isTraceEnabled()) {
-                                                log.trace("pushMessage video - waitForKeyframe: {} gotKeyframe: {} timestamp: {}", waitForVideoKeyframe, gotKeyFrame, queued.getTimestamp());
-                                            }
-                                            if (queued.codecId == VideoCodec.AVC.getId()) {
-                                                if (queued.isConfig()) {
-                                                    videoConfigurationTag = tag;
-                                                    gotKeyFrame = true;
-                                                }
-                                                if (videoConfigurationTag == null && waitForVideoKeyframe) {
-                                                    continue;
-                                                }
-                                            } else {
-                                                if (queued.frameType == VideoData.FrameType.KEYFRAME) {
-                                                    gotKeyFrame = true;
-                                                }
-                                                if (waitForVideoKeyframe && !gotKeyFrame) {
-                                                    continue;
-                                                }
-                                            }
-                                        } else if (queued.isAudio()) {
-                                            if (queued.isConfig()) {
-                                                audioConfigurationTag = tag;
-                                            }
-                                        }
-
-                                        if (queued.isVideo()) {
-                                            if (log.isTraceEnabled()) {
-                                                log.trace("Writing packet. frameType={} timestamp={}", queued.frameType, queued.getTimestamp());
-                                            }
-                                        }
-
-                                        // write
-                                        write(dataType, timestamp, tag);
-                                        // clean up
-                                        queued.dispose();
-                                    } else {
-                                        if (log.isTraceEnabled()) {
-                                            log.trace("Queued media is null. queue size: {}", queue.size());
-                                        }
-                                    }
-                                } catch (InterruptedException e) {
-                                    log.warn("{}", e.getMessage(), e);
-                                }
-                                //finally {
-                                //    if (log.isTraceEnabled()) {
-                                //        log.trace("Clearing queue. queue size: {}", queue.size());
-                                //    }
-                                //    queue.clear();
-                                //}
-                            }
-                        } catch (IOException e) {
-                            log.warn("{}", e.getMessage(), e);
-                        }
+                QueuedMediaData queued = new QueuedMediaData(timestamp, dataType, (IStreamData) msg);
+                // video which depends on dropped frames is useless, wait for the next keyframe
+                if (videoDropped && queued.isVideo()) {
+                    if (queued.frameType != VideoData.FrameType.KEYFRAME && !queued.isConfig()) {
+                        return;
                     }
-                });
+                    videoDropped = false;
+                }
+                if (log.isTraceEnabled()) {
+                    log.trace("Inserting packet into queue. timestamp: {} queue size: {}, codecId={}, isConfig={}", timestamp, queue.size(), queued.codecId, queued.config);
+                }
+                // the engine drops data rather than wait when the recording falls behind
+                if (!getRecording().offer(queued) && queued.isVideo()) {
+                    videoDropped = true;
+                }
             }
         } else if (message instanceof ResetMessage) {
             startTimestamp = -1;
@@ -353,6 +272,82 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
         }
     }
 
+    /**
+     * Returns the registration with the recording engine, registering on first use.
+     */
+    private RecordingEngine.Recording getRecording() {
+        if (recording == null) {
+            if (recordingEngine == null) {
+                recordingEngine = RecordingEngine.getDefault();
+            }
+            final Queue<QueuedMediaData> recordingQueue = queue;
+            recording = recordingEngine.register(recordingQueue, new RecordingEngine.Sink() {
+
+                @Override
+                public void write(QueuedMediaData queued) throws IOException {
+                    init();
+                    if (writer != null) {
+                        process(queued);
+                    }
+                }
+
+                @Override
+                public void flush(boolean sync) throws IOException {
+                    if (writer != null) {
+                        writer.flush(sync);
+                    }
+                }
+
+            });
+        }
+        return recording;
+    }
+
+    /**
+     * Writes queued data, ensuring that the first video frame written is a key frame. Called by the recording engine.
+     *
+     * @param queued
+     *            queued data
+     */
+    private void process(QueuedMediaData queued) {
+        // get data type
+        byte dataType = queued.getDataType();
+        // get timestamp
+        int timestamp = queued.getTimestamp();
+        ITag tag = queued.getData();
+        // ensure that our first video frame written is a key frame
+        if (queued.isVideo()) {
+            if (log.isTraceEnabled()) {
+                log.trace("pushMessage video - waitForKeyframe: {} gotKeyframe: {} timestamp: {}", waitForVideoKeyframe, gotKeyFrame, queued.getTimestamp());
+            }
+            if (queued.codecId == VideoCodec.AVC.getId()) {
+                if (queued.isConfig()) {
+                    videoConfigurationTag = tag;
+                    gotKeyFrame = true;
+                }
+                if (videoConfigurationTag == null && waitForVideoKeyframe) {
+                    return;
+                }
+            } else {
+                if (queued.frameType == VideoData.FrameType.KEYFRAME) {
+                    gotKeyFrame = true;
+                }
+                if (waitForVideoKeyframe && !gotKeyFrame) {
+                    return;
+                }
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("Writing packet. frameType={} timestamp={}", queued.frameType, queued.getTimestamp());
+            }
+        } else if (queued.isAudio()) {
+            if (queued.isConfig()) {
+                audioConfigurationTag = tag;
+            }
+        }
+        // write
+        write(dataType, timestamp, tag);
+    }
+
     /**
      * Initialization
      *
@@ -373,7 +368,7 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
                         throw new IOException("File to be appended doesnt exist, verify the record mode");
                     }
                     log.debug("Path: {}\nRead: {} write: {} size: {}", path, Files.isReadable(path), Files.isWritable(path), Files.size(path));
-                    writer = new FLVWriter(path, true);
+                    writer = createWriter(true);
                 } else if (IClientStream.MODE_RECORD.equals(mode)) {
                     try {
                         // delete existing file
@@ -391,7 +386,7 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
                         throw new IOException("File is not writable");
                     }
                     log.debug("Path: {}\nRead: {} write: {}", path, Files.isReadable(path), Files.isWritable(path));
-                    writer = new FLVWriter(path, false);
+                    writer = createWriter(false);
                 } else {
                     try {
                         // delete existing file since we're not recording nor appending
@@ -409,24 +404,35 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
         }
     }
 
+    private ITagWriter createWriter(boolean append) {
+        if (path.getFileName().toString().endsWith(".mp4")) {
+            // fragmented mp4 writes whole fragments, it needs no write buffer
+            FragmentedMP4Writer mp4Writer = new FragmentedMP4Writer(path, append);
+            mp4Writer.setSyncOnClose(recordingEngine.getFsyncPolicy() != RecordingEngine.FsyncPolicy.NONE);
+            return mp4Writer;
+        }
+        FLVWriter flvWriter = new FLVWriter(path, append);
+        flvWriter.setWriteBufferSize(recordingEngine.getWriteBufferSize());
+        flvWriter.setSyncOnClose(recordingEngine.getFsyncPolicy() != RecordingEngine.FsyncPolicy.NONE);
+        return flvWriter;
+    }
+
     /**
      * Reset or uninitialize
      */
     public void uninit() {
+        // let the engine write out everything queued, which may initialize us too
+        if (recording != null) {
+            try {
+                recording.close().get(30, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                log.warn("Exception waiting for queued data to be written on uninit", e);
+            }
+            recording = null;
+        }
         if (initialized.get()) {
             log.debug("Uninit");
             if (writer != null) {
-                if (writerFuture != null) {
-                    try {
-                        writerFuture.get();
-                    } catch (Exception e) {
-                        log.warn("Exception waiting for write result on uninit", e);
-                    }
-                    if (writerFuture.cancel(false)) {
-                        log.debug("Future completed");
-                    }
-                }
-                writerFuture = null;
                 // clear the queue
                 queue.clear();
                 queue = null;
@@ -481,7 +487,7 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
         // get stream filename generator
         IStreamFilenameGenerator generator = (IStreamFilenameGenerator) ScopeUtils.getScopeService(scope, IStreamFilenameGenerator.class, DefaultStreamFilenameGenerator.class);
         // generate file path
-        String filePath = generator.generateFilename(scope, name, ".flv", GenerationType.RECORD);
+        String filePath = generator.generateFilename(scope, name, RecordingListener.getRecordExtension(name), GenerationType.RECORD);
         this.path = generator.resolvesToAbsolutePath() ? Paths.get(filePath) : Paths.get(System.getProperty("red5.root"), "webapps", scope.getContextPath(), filePath);
         // if append was requested, ensure the file we want to append exists (append==record)
         File appendee = getFile();
@@ -528,10 +534,10 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
     }
 
     /**
-     * Sets the threshold for the queue. When the threshold is met a worker is spawned to empty the sorted queue to the writer.
+     * Sets the initial capacity of the sorted queue. How much may be queued is limited by the {@link RecordingEngine}.
      *
      * @param queueThreshold
-     *            number of items to queue before spawning worker
+     *            number of items expected to be queued
      */
     public void setQueueThreshold(int queueThreshold) {
         this.queueThreshold = queueThreshold;
@@ -570,9 +576,20 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
      * Amount of time in milliseconds to wait for an offer to be accepted.
      *
      * @param offerTimeout how long to wait for offer acceptance
+     * @deprecated offers no longer wait, see {@link RecordingEngine}
      */
+    @Deprecated
     public void setOfferTimeout(long offerTimeout) {
-        this.offerTimeout = offerTimeout;
+    }
+
+    /**
+     * Sets the engine which writes the recording.
+     *
+     * @param recordingEngine
+     *            recording engine
+     */
+    public void setRecordingEngine(RecordingEngine recordingEngine) {
+        this.recordingEngine = recordingEngine;
     }
 
     /**
@@ -595,9 +612,7 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
 
     @Override
     public void destroy() throws Exception {
-        if (executor != null) {
-            executor.shutdown();
-        }
+        uninit();
     }
 
 }
@@ -0,0 +1,761 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.consumer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.codec.AudioCodec;
+import org.red5.codec.VideoCodec;
+import org.red5.io.isobmff.FragmentedMP4Muxer;
+import org.red5.io.isobmff.FragmentedMP4Muxer.Track;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.stream.IBroadcastStream;
+import org.red5.server.api.stream.IStreamListener;
+import org.red5.server.api.stream.IStreamPacket;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Live consumer which repackages the AVC / HEVC and AAC frames of a broadcast stream into fragmented MP4 (CMAF) segments for HLS, kept in
+ * memory together with a sliding window media playlist. When a part duration is set, segments are made of partial segments which are listed
+ * as well (Low-Latency HLS), and playlist and part requests may wait for media which has not been produced yet.
+ * <p>
+ * Segmenters register themselves by scope context path and stream name while attached, so they can be looked up by the HTTP side, see
+ * {@link org.red5.server.net.servlet.HLSServlet}.
+ *
+ * @author The Red5 Project
+ */
+public class HLSSegmenter implements IStreamListener {
+
+    private static final Logger log = LoggerFactory.getLogger(HLSSegmenter.class);
+
+    /**
+     * Active segmenters by scope context path and stream name
+     */
+    private static final ConcurrentMap<String, HLSSegmenter> segmenters = new ConcurrentHashMap<>();
+
+    /**
+     * Number of completed segments retained after they leave the playlist, for clients still fetching them
+     */
+    private static final int RETAINED_SEGMENTS = 2;
+
+    /**
+     * AAC frame length in samples
+     */
+    private static final int AAC_FRAME_SAMPLES = 1024;
+
+    /**
+     * Minimum duration of a segment in milliseconds; segments start at keyframes
+     */
+    private int segmentDuration = 2000;
+
+    /**
+     * Maximum duration of a partial segment in milliseconds, 0 to disable partial segments
+     */
+    private int partDuration = 500;
+
+    /**
+     * Number of segments listed in the playlist
+     */
+    private int windowSize = 6;
+
+    private String name;
+
+    private String key;
+
+    private FragmentedMP4Muxer muxer;
+
+    private Track videoTrack;
+
+    private Track audioTrack;
+
+    private String videoFourcc;
+
+    private byte[] videoConfig;
+
+    private byte[] audioConfig;
+
+    private boolean videoSeen;
+
+    private int firstAudioTimestamp = -1;
+
+    private boolean started;
+
+    private boolean closed;
+
+    private int initVersion = -1;
+
+    /**
+     * Initialization segments by version, while a segment which can still be requested refers to them
+     */
+    private final Map<Integer, byte[]> inits = new HashMap<>(4);
+
+    private boolean discontinuity;
+
+    private int discontinuitySequence;
+
+    // video frame waiting for the next one to know its duration
+    private byte[] pendingVideo;
+
+    private int pendingVideoTimestamp;
+
+    private int pendingVideoOffset;
+
+    private boolean pendingVideoKey;
+
+    private long audioDecodeTime = -1;
+
+    private int segmentStart;
+
+    private int partStart;
+
+    private boolean partHasVideo;
+
+    private boolean partIndependent;
+
+    private int lastTimestamp;
+
+    private int nextSequence;
+
+    private Segment current;
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+    private int maxSegmentDuration;
+
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    /**
+     * Attaches the segmenter to the given stream and registers it for lookup.
+     *
+     * @param stream
+     *            broadcast stream
+     */
+    public void attach(IBroadcastStream stream) {
+        IScope scope = stream.getScope();
+        name = stream.getPublishedName();
+        key = getKey(scope != null ? scope.getContextPath() : "", name);
+        HLSSegmenter previous = segmenters.put(key, this);
+        if (previous != null && previous != this) {
+            previous.close();
+        }
+        stream.addStreamListener(this);
+        log.debug("HLS segmenter attached: {}", key);
+    }
+
+    /**
+     * Detaches the segmenter from the given stream, closes it and removes its registration.
+     *
+     * @param stream
+     *            broadcast stream
+     */
+    public void detach(IBroadcastStream stream) {
+        stream.removeStreamListener(this);
+        if (key != null) {
+            segmenters.remove(key, this);
+        }
+        close();
+    }
+
+    /**
+     * Returns the segmenter registered for the given scope context path and stream name.
+     *
+     * @param contextPath
+     *            scope context path
+     * @param name
+     *            stream name
+     * @return segmenter or null
+     */
+    public static HLSSegmenter getSegmenter(String contextPath, String name) {
+        return segmenters.get(getKey(contextPath, name));
+    }
+
+    private static String getKey(String contextPath, String name) {
+        String path = contextPath == null ? "" : contextPath;
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path.isEmpty() ? name : path + '/' + name;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void packetReceived(IBroadcastStream stream, IStreamPacket packet) {
+        IoBuffer data = packet.getData();
+        if (data == null || data.limit() < 2) {
+            return;
+        }
+        List<Waiter> ready;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (packet instanceof VideoData) {
+                onVideo(data, packet.getTimestamp());
+            } else if (packet instanceof AudioData) {
+                onAudio(data, packet.getTimestamp());
+            }
+            if (waiters.isEmpty()) {
+                return;
+            }
+            ready = collectReady();
+        }
+        fire(ready);
+    }
+
+    private void onVideo(IoBuffer data, int timestamp) {
+        int first = data.get(0) & 0xff;
+        int codecId = first & 0x0f;
+        String fourcc;
+        if (codecId == VideoCodec.AVC.getId()) {
+            fourcc = "avc1";
+        } else if (codecId == VideoCodec.HEVC.getId()) {
+            fourcc = "hvc1";
+        } else {
+            return;
+        }
+        videoSeen = true;
+        if (data.limit() < 5) {
+            return;
+        }
+        int packetType = data.get(1);
+        if (packetType == 0) {
+            byte[] config = copy(data, 5);
+            if (!Arrays.equals(config, videoConfig) || !fourcc.equals(videoFourcc)) {
+                videoConfig = config;
+                videoFourcc = fourcc;
+                if (started) {
+                    log.debug("Video configuration changed, restarting: {}", key);
+                    restart();
+                }
+            }
+            return;
+        } else if (packetType != 1) {
+            return;
+        }
+        boolean keyframe = ((first & 0xf0) >> 4) == 1;
+        if (!started) {
+            if (!keyframe || videoConfig == null) {
+                return;
+            }
+            start(timestamp);
+        } else if (videoTrack == null) {
+            return;
+        }
+        // composition time offset, signed 24 bit
+        int offset = ((data.get(2) & 0xff) << 16) | ((data.get(3) & 0xff) << 8) | (data.get(4) & 0xff);
+        offset = (offset << 8) >> 8;
+        if (pendingVideo != null) {
+            if (partDuration > 0 && partHasVideo && timestamp - partStart > partDuration) {
+                // the part ends where the waiting frame starts, so it stays within the part target
+                closePart(pendingVideoTimestamp);
+            }
+            addPendingVideo(timestamp);
+        }
+        if (keyframe && timestamp - segmentStart >= segmentDuration) {
+            closePart(timestamp);
+            closeSegment(timestamp);
+        }
+        pendingVideo = copy(data, 5);
+        pendingVideoTimestamp = timestamp;
+        pendingVideoOffset = offset;
+        pendingVideoKey = keyframe;
+        lastTimestamp = timestamp;
+    }
+
+    private void addPendingVideo(int nextTimestamp) {
+        int duration = Math.max(nextTimestamp - pendingVideoTimestamp, 1);
+        muxer.addSample(videoTrack, pendingVideo, pendingVideoTimestamp * 90L, duration * 90, pendingVideoOffset * 90, pendingVideoKey);
+        if (!partHasVideo) {
+            partHasVideo = true;
+            partIndependent = pendingVideoKey;
+        }
+        pendingVideo = null;
+    }
+
+    private void onAudio(IoBuffer data, int timestamp) {
+        if (((data.get(0) & 0xff) >> 4) != AudioCodec.AAC.getId()) {
+            return;
+        }
+        if (data.get(1) == 0) {
+            byte[] config = copy(data, 2);
+            if (!Arrays.equals(config, audioConfig)) {
+                audioConfig = config;
+                if (started) {
+                    log.debug("Audio configuration changed, restarting: {}", key);
+                    restart();
+                }
+            }
+            return;
+        }
+        if (audioConfig == null) {
+            return;
+        }
+        if (!started) {
+            if (firstAudioTimestamp == -1) {
+                firstAudioTimestamp = timestamp;
+            }
+            // audio only once no video has shown up for a segment duration
+            if (videoSeen || videoConfig != null || timestamp - firstAudioTimestamp < segmentDuration) {
+                return;
+            }
+            start(timestamp);
+        } else if (audioTrack == null) {
+            return;
+        }
+        int rate = audioTrack.getTimescale();
+        long expected = (long) timestamp * rate / 1000L;
+        // follow the stream clock if it drifts by more than a couple of frames
+        if (audioDecodeTime < 0 || Math.abs(expected - audioDecodeTime) > 2 * AAC_FRAME_SAMPLES) {
+            audioDecodeTime = expected;
+        }
+        if (videoTrack == null) {
+            if (partDuration > 0 && timestamp - partStart >= partDuration) {
+                closePart(timestamp);
+            }
+            if (timestamp - segmentStart >= segmentDuration) {
+                closePart(timestamp);
+                closeSegment(timestamp);
+            }
+            lastTimestamp = timestamp;
+        }
+        muxer.addSample(audioTrack, copy(data, 2), audioDecodeTime, AAC_FRAME_SAMPLES, 0, true);
+        audioDecodeTime += AAC_FRAME_SAMPLES;
+    }
+
+    private void start(int timestamp) {
+        muxer = new FragmentedMP4Muxer();
+        videoTrack = videoConfig != null ? muxer.addVideoTrack(videoFourcc, videoConfig, 0, 0) : null;
+        audioTrack = audioConfig != null ? muxer.addAudioTrack(audioConfig) : null;
+        inits.put(++initVersion, muxer.getInitSegment());
+        audioDecodeTime = -1;
+        segmentStart = timestamp;
+        partStart = timestamp;
+        lastTimestamp = timestamp;
+        current = new Segment(nextSequence++, initVersion, discontinuity);
+        discontinuity = false;
+        started = true;
+        trimInits();
+        log.debug("HLS segmenter started: {} video: {} audio: {}", key, videoFourcc, audioTrack != null);
+    }
+
+    /**
+     * Ends the current segment and waits for the next keyframe to start over with a new initialization segment.
+     */
+    private void restart() {
+        if (pendingVideo != null) {
+            addPendingVideo(pendingVideoTimestamp + 33);
+            lastTimestamp = pendingVideoTimestamp + 33;
+        }
+        closePart(lastTimestamp);
+        closeSegment(lastTimestamp);
+        started = false;
+        discontinuity = true;
+        firstAudioTimestamp = -1;
+    }
+
+    private void closePart(int timestamp) {
+        if (!muxer.hasSamples()) {
+            return;
+        }
+        byte[] fragment = muxer.flushFragment();
+        boolean independent = videoTrack == null || partIndependent;
+        current.parts.add(new Part(fragment, timestamp - partStart, independent));
+        partStart = timestamp;
+        partHasVideo = false;
+        partIndependent = false;
+    }
+
+    private void closeSegment(int timestamp) {
+        if (current.parts.isEmpty()) {
+            return;
+        }
+        current.duration = timestamp - segmentStart;
+        int size = 0;
+        for (Part part : current.parts) {
+            size += part.data.length;
+        }
+        byte[] data = new byte[size];
+        int pos = 0;
+        for (Part part : current.parts) {
+            System.arraycopy(part.data, 0, data, pos, part.data.length);
+            pos += part.data.length;
+        }
+        current.data = data;
+        maxSegmentDuration = Math.max(maxSegmentDuration, current.duration);
+        segments.add(current);
+        if (segments.size() > windowSize) {
+            // count the discontinuity of the segment which just left the playlist
+            Iterator<Segment> it = segments.descendingIterator();
+            for (int i = 0; i < windowSize; i++) {
+                it.next();
+            }
+            if (it.next().discontinuity) {
+                discontinuitySequence++;
+            }
+        }
+        while (segments.size() > windowSize + RETAINED_SEGMENTS) {
+            segments.poll();
+        }
+        segmentStart = timestamp;
+        current = new Segment(nextSequence++, initVersion, false);
+        trimInits();
+    }
+
+    /**
+     * Drops the initialization segments older than the oldest segment still held; versions only grow, so the rest is still referenced.
+     */
+    private void trimInits() {
+        int oldest = segments.isEmpty() ? current.initVersion : segments.peek().initVersion;
+        inits.keySet().removeIf(version -> version < oldest);
+    }
+
+    /**
+     * Closes the segmenter, releasing any waiting requests.
+     */
+    public void close() {
+        List<Waiter> ready;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            ready = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        fire(ready);
+        log.debug("HLS segmenter closed: {}", key);
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the media playlist.
+     *
+     * @return playlist or null if no segment is complete yet
+     */
+    public synchronized String getPlaylist() {
+        List<Segment> window = getWindow();
+        if (window.isEmpty()) {
+            return null;
+        }
+        boolean lowLatency = partDuration > 0;
+        int targetDuration = (int) Math.ceil(Math.max(maxSegmentDuration, segmentDuration) / 1000d);
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("#EXTM3U\n");
+        sb.append("#EXT-X-VERSION:").append(lowLatency ? 9 : 7).append('\n');
+        sb.append("#EXT-X-TARGETDURATION:").append(targetDuration).append('\n');
+        if (lowLatency) {
+            sb.append("#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,PART-HOLD-BACK=").append(seconds(partDuration * 3)).append('\n');
+            sb.append("#EXT-X-PART-INF:PART-TARGET=").append(seconds(partDuration)).append('\n');
+        }
+        sb.append("#EXT-X-MEDIA-SEQUENCE:").append(window.get(0).sequence).append('\n');
+        if (discontinuitySequence > 0) {
+            sb.append("#EXT-X-DISCONTINUITY-SEQUENCE:").append(discontinuitySequence).append('\n');
+        }
+        // parts are listed for the segments of the last three target durations
+        int partsFrom = Math.max(window.size() - (int) Math.ceil(3000d * targetDuration / Math.max(segmentDuration, 1)), 0);
+        int mapVersion = -1;
+        for (int i = 0; i < window.size(); i++) {
+            Segment segment = window.get(i);
+            if (segment.discontinuity) {
+                sb.append("#EXT-X-DISCONTINUITY\n");
+            }
+            if (segment.initVersion != mapVersion) {
+                mapVersion = segment.initVersion;
+                sb.append("#EXT-X-MAP:URI=\"init").append(mapVersion).append(".mp4\"\n");
+            }
+            if (lowLatency && i >= partsFrom) {
+                appendParts(sb, segment);
+            }
+            sb.append("#EXTINF:").append(seconds(segment.duration)).append(",\n");
+            sb.append("seg").append(segment.sequence).append(".m4s\n");
+        }
+        if (lowLatency && started && !closed) {
+            if (current.discontinuity) {
+                sb.append("#EXT-X-DISCONTINUITY\n");
+            }
+            if (current.initVersion != mapVersion) {
+                sb.append("#EXT-X-MAP:URI=\"init").append(current.initVersion).append(".mp4\"\n");
+            }
+            appendParts(sb, current);
+            sb.append("#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"part").append(current.sequence).append('.').append(current.parts.size()).append(".m4s\"\n");
+        }
+        if (closed) {
+            sb.append("#EXT-X-ENDLIST\n");
+        }
+        return sb.toString();
+    }
+
+    private static void appendParts(StringBuilder sb, Segment segment) {
+        for (int p = 0; p < segment.parts.size(); p++) {
+            Part part = segment.parts.get(p);
+            sb.append("#EXT-X-PART:DURATION=").append(seconds(part.duration)).append(",URI=\"part").append(segment.sequence).append('.').append(p).append(".m4s\"");
+            if (part.independent) {
+                sb.append(",INDEPENDENT=YES");
+            }
+            sb.append('\n');
+        }
+    }
+
+    private List<Segment> getWindow() {
+        List<Segment> window = new ArrayList<>(segments);
+        if (window.size() > windowSize) {
+            window = window.subList(window.size() - windowSize, window.size());
+        }
+        return window;
+    }
+
+    private static String seconds(int millis) {
+        return String.format(Locale.ROOT, "%.3f", millis / 1000d);
+    }
+
+    /**
+     * Returns the initialization segment of the given version.
+     *
+     * @param version
+     *            version
+     * @return initialization segment or null
+     */
+    public synchronized byte[] getInit(int version) {
+        return inits.get(version);
+    }
+
+    /**
+     * Returns a complete segment.
+     *
+     * @param sequence
+     *            media sequence number
+     * @return segment or null
+     */
+    public synchronized byte[] getSegment(int sequence) {
+        for (Segment segment : segments) {
+            if (segment.sequence == sequence) {
+                return segment.data;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a partial segment.
+     *
+     * @param sequence
+     *            media sequence number of its segment
+     * @param index
+     *            index of the part within the segment
+     * @return part or null
+     */
+    public synchronized byte[] getPart(int sequence, int index) {
+        Segment segment = findSegment(sequence);
+        if (segment != null && index >= 0 && index < segment.parts.size()) {
+            return segment.parts.get(index).data;
+        }
+        return null;
+    }
+
+    private Segment findSegment(int sequence) {
+        if (current != null && current.sequence == sequence) {
+            return current;
+        }
+        for (Segment segment : segments) {
+            if (segment.sequence == sequence) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the given part, or the whole segment if the part index is negative, has been produced.
+     */
+    private boolean isAvailable(int sequence, int part) {
+        if (closed) {
+            return true;
+        }
+        if (current == null) {
+            return false;
+        }
+        if (sequence < current.sequence) {
+            return true;
+        }
+        return sequence == current.sequence && part >= 0 && part < current.parts.size();
+    }
+
+    /**
+     * Runs the callback once the given part, or the whole segment if the part index is negative, has been produced or the segmenter closes.
+     * Requests too far ahead of the live edge are refused.
+     *
+     * @param sequence
+     *            media sequence number
+     * @param part
+     *            part index or -1
+     * @param callback
+     *            run on the thread producing the media, it should hand work off quickly
+     * @return 1 if available now, 0 if the callback has been registered, -1 if the request is too far ahead
+     */
+    public int whenAvailable(int sequence, int part, Runnable callback) {
+        synchronized (this) {
+            if (isAvailable(sequence, part)) {
+                return 1;
+            }
+            int edge = current != null ? current.sequence : nextSequence;
+            if (sequence > edge + 1) {
+                return -1;
+            }
+            waiters.add(new Waiter(sequence, part, callback));
+        }
+        return 0;
+    }
+
+    /**
+     * Removes a callback registered with {@link #whenAvailable(int, int, Runnable)}, for instance after the request timed out.
+     *
+     * @param callback
+     *            callback
+     */
+    public synchronized void cancel(Runnable callback) {
+        waiters.removeIf(waiter -> waiter.callback == callback);
+    }
+
+    private List<Waiter> collectReady() {
+        List<Waiter> ready = null;
+        for (Iterator<Waiter> it = waiters.iterator(); it.hasNext();) {
+            Waiter waiter = it.next();
+            if (isAvailable(waiter.sequence, waiter.part)) {
+                if (ready == null) {
+                    ready = new ArrayList<>();
+                }
+                ready.add(waiter);
+                it.remove();
+            }
+        }
+        return ready;
+    }
+
+    private static void fire(List<Waiter> ready) {
+        if (ready != null) {
+            for (Waiter waiter : ready) {
+                try {
+                    waiter.callback.run();
+                } catch (Exception e) {
+                    log.warn("Exception notifying HLS request", e);
+                }
+            }
+        }
+    }
+
+    private static byte[] copy(IoBuffer data, int offset) {
+        int length = Math.max(data.limit() - offset, 0);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = data.get(offset + i);
+        }
+        return bytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSegmentDuration() {
+        return segmentDuration;
+    }
+
+    public void setSegmentDuration(int segmentDuration) {
+        this.segmentDuration = segmentDuration;
+    }
+
+    public int getPartDuration() {
+        return partDuration;
+    }
+
+    public void setPartDuration(int partDuration) {
+        this.partDuration = partDuration;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = Math.max(windowSize, 1);
+    }
+
+    private static final class Segment {
+
+        final int sequence;
+
+        final int initVersion;
+
+        final boolean discontinuity;
+
+        final List<Part> parts = new ArrayList<>();
+
+        int duration;
+
+        byte[] data;
+
+        Segment(int sequence, int initVersion, boolean discontinuity) {
+            this.sequence = sequence;
+            this.initVersion = initVersion;
+            this.discontinuity = discontinuity;
+        }
+
+    }
+
+    private static final class Part {
+
+        final byte[] data;
+
+        final int duration;
+
+        final boolean independent;
+
+        Part(byte[] data, int duration, boolean independent) {
+            this.data = data;
+            this.duration = duration;
+            this.independent = independent;
+        }
+
+    }
+
+    private static final class Waiter {
+
+        final int sequence;
+
+        final int part;
+
+        final Runnable callback;
+
+        Waiter(int sequence, int part, Runnable callback) {
+            this.sequence = sequence;
+            this.part = part;
+            this.callback = callback;
+        }
+
+    }
+
+}
@@ -0,0 +1,417 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.consumer;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.red5.server.net.rtmp.event.VideoData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Writes all active recordings with a small, fixed pool of writer threads instead of one or more threads per recording.
+ * <p>
+ * Each recording has its own queue which is drained by at most one writer at a time, so writes to a file stay in order. Writers expect the
+ * tag writer to combine small writes, see {@link #setWriteBufferSize(int)}, and the engine flushes every recording at the flush interval and
+ * forces it to disk according to the {@link FsyncPolicy}. Data is held in the queue for the reorder window before it is written, so a priority
+ * queue can put late packets back in timestamp order. Handing data to the engine never blocks the thread delivering the stream: a recording
+ * whose queue holds more than the maximum number of bytes drops video interframes, and keyframes above twice that, so a slow disk does
+ * not fill the heap. Audio, metadata and decoder configurations are small and always queued. A dropped offer is the signal to the stream
+ * to leave out the video which depends on it.
+ *
+ * @author The Red5 Project
+ */
+public class RecordingEngine implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RecordingEngine.class);
+
+    /**
+     * When data is forced to the storage device.
+     */
+    public enum FsyncPolicy {
+        /** never, the operating system decides */
+        NONE,
+        /** at every periodic flush */
+        INTERVAL,
+        /** when the recording is closed */
+        CLOSE
+    }
+
+    /**
+     * Engine used by consumers which have not been given one.
+     */
+    private static volatile RecordingEngine defaultEngine;
+
+    /**
+     * Maximum number of items written in one go before other recordings get their turn.
+     */
+    private static final int BATCH_SIZE = 128;
+
+    private final Set<Recording> recordings = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService writers;
+
+    private ScheduledExecutorService flusher;
+
+    private int writerThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    private int writeBufferSize = 64 * 1024;
+
+    private long flushInterval = 1000L;
+
+    private long maxQueuedBytes = 8 * 1024 * 1024;
+
+    private int reorderWindow = 250;
+
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.CLOSE;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Returns the engine shared by consumers created outside of a Spring context.
+     *
+     * @return engine
+     */
+    public static RecordingEngine getDefault() {
+        if (defaultEngine == null) {
+            synchronized (RecordingEngine.class) {
+                if (defaultEngine == null) {
+                    defaultEngine = new RecordingEngine();
+                }
+            }
+        }
+        return defaultEngine;
+    }
+
+    private synchronized void start() {
+        if (writers == null) {
+            log.debug("Starting recording engine with {} writer threads", writerThreads);
+            CustomizableThreadFactory writerFactory = new CustomizableThreadFactory("RecordingWriter-");
+            writerFactory.setDaemon(true);
+            writers = Executors.newFixedThreadPool(writerThreads, writerFactory);
+            CustomizableThreadFactory flusherFactory = new CustomizableThreadFactory("RecordingFlusher-");
+            flusherFactory.setDaemon(true);
+            flusher = Executors.newSingleThreadScheduledExecutor(flusherFactory);
+            flusher.scheduleWithFixedDelay(() -> recordings.forEach(Recording::requestFlush), flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Registers a recording.
+     *
+     * @param queue
+     *            queue for the data awaiting writing; a priority queue keeps the data in timestamp order
+     * @param sink
+     *            destination of the data
+     * @return recording handle
+     */
+    public Recording register(Queue<QueuedMediaData> queue, Sink sink) {
+        start();
+        Recording recording = new Recording(queue, sink);
+        recordings.add(recording);
+        return recording;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void destroy() throws Exception {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        if (writers != null) {
+            writers.shutdown();
+            if (!writers.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Recording writers did not finish in time");
+                writers.shutdownNow();
+            }
+        }
+    }
+
+    public int getActiveRecordings() {
+        return recordings.size();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    /**
+     * Sets the size of the buffer each recording uses to combine writes.
+     *
+     * @param writeBufferSize
+     *            size in bytes, 0 to write each tag through
+     */
+    public void setWriteBufferSize(int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+    }
+
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    /**
+     * Sets how often buffered data is written out.
+     *
+     * @param flushInterval
+     *            interval in milliseconds
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Sets the number of bytes a recording may have queued before video is dropped.
+     *
+     * @param maxQueuedBytes
+     *            size in bytes
+     */
+    public void setMaxQueuedBytes(long maxQueuedBytes) {
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * Sets how long a stream was held back waiting for room in its queue before data was dropped.
+     *
+     * @param offerTimeout
+     *            timeout in milliseconds
+     * @deprecated offers no longer wait, data is dropped as soon as the queue is full
+     */
+    @Deprecated
+    public void setOfferTimeout(long offerTimeout) {
+    }
+
+    /**
+     * Sets how far behind the newest queued timestamp data is held before it is written, giving late packets time to be put back in order.
+     *
+     * @param reorderWindow
+     *            window in milliseconds, 0 to write data as soon as it is queued
+     */
+    public void setReorderWindow(int reorderWindow) {
+        this.reorderWindow = reorderWindow;
+    }
+
+    public int getReorderWindow() {
+        return reorderWindow;
+    }
+
+    public void setFsyncPolicy(String fsyncPolicy) {
+        this.fsyncPolicy = FsyncPolicy.valueOf(fsyncPolicy.toUpperCase());
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * Destination of a recording's data; only called from one writer thread at a time.
+     */
+    public interface Sink {
+
+        /**
+         * Writes an item.
+         *
+         * @param data
+         *            item to write
+         * @throws IOException
+         *             I/O exception
+         */
+        void write(QueuedMediaData data) throws IOException;
+
+        /**
+         * Writes out any buffered data.
+         *
+         * @param sync
+         *            whether or not to force the data to the storage device
+         * @throws IOException
+         *             I/O exception
+         */
+        void flush(boolean sync) throws IOException;
+
+    }
+
+    /**
+     * Handle of a registered recording.
+     */
+    public final class Recording implements Runnable {
+
+        private final Queue<QueuedMediaData> queue;
+
+        private final Sink sink;
+
+        private final AtomicLong queuedBytes = new AtomicLong();
+
+        private final AtomicLong droppedVideo = new AtomicLong();
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private final CompletableFuture<Void> closed = new CompletableFuture<>();
+
+        private volatile boolean flushRequested, closing;
+
+        private volatile int newest = Integer.MIN_VALUE;
+
+        Recording(Queue<QueuedMediaData> queue, Sink sink) {
+            this.queue = queue;
+            this.sink = sink;
+        }
+
+        /**
+         * Queues an item for writing without waiting; video is dropped when the recording is too far behind.
+         *
+         * @param data
+         *            item to write
+         * @return true if queued, false if dropped
+         */
+        public boolean offer(QueuedMediaData data) {
+            if (closing) {
+                return false;
+            }
+            int size = data.hasData() ? data.getData().getBodySize() : 0;
+            long queued = queuedBytes.get() + size;
+            if (queued > maxQueuedBytes && data.isVideo() && !data.isConfig()) {
+                boolean keyframe = data.frameType == VideoData.FrameType.KEYFRAME;
+                if (!keyframe || queued > 2 * maxQueuedBytes) {
+                    long count = dropped.incrementAndGet();
+                    if (droppedVideo.getAndIncrement() == 0 || count % 100 == 1) {
+                        log.warn("Recording queue is full, {} dropped. queued bytes: {} dropped for the recording: {} dropped total: {}", keyframe ? "keyframe" : "interframe", queuedBytes.get(), droppedVideo.get(), count);
+                    }
+                    return false;
+                }
+            }
+            queuedBytes.addAndGet(size);
+            // offers for one recording come from the thread delivering its stream
+            if (data.getTimestamp() > newest) {
+                newest = data.getTimestamp();
+            }
+            queue.offer(data);
+            schedule();
+            return true;
+        }
+
+        /**
+         * Stops accepting data and writes out what is queued.
+         *
+         * @return future completed once everything queued has been written and flushed
+         */
+        public CompletableFuture<Void> close() {
+            closing = true;
+            schedule();
+            return closed;
+        }
+
+        public long getQueuedBytes() {
+            return queuedBytes.get();
+        }
+
+        /**
+         * Returns the number of video frames dropped because the recording fell behind.
+         *
+         * @return dropped frames
+         */
+        public long getDroppedVideo() {
+            return droppedVideo.get();
+        }
+
+        void requestFlush() {
+            flushRequested = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this);
+                } catch (Exception e) {
+                    log.warn("Recording write could not be scheduled", e);
+                    if (closing) {
+                        finish();
+                    }
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            if (closed.isDone()) {
+                // a flush requested while the recording finished
+                scheduled.set(false);
+                return;
+            }
+            boolean ready = false;
+            try {
+                for (int i = 0; i < BATCH_SIZE && isReady(queue.peek()); i++) {
+                    QueuedMediaData data = queue.poll();
+                    queuedBytes.addAndGet(data.hasData() ? -data.getData().getBodySize() : 0);
+                    try {
+                        sink.write(data);
+                    } catch (IOException e) {
+                        log.warn("Exception writing recording data", e);
+                    } finally {
+                        data.dispose();
+                    }
+                }
+                if (flushRequested) {
+                    flushRequested = false;
+                    sink.flush(fsyncPolicy == FsyncPolicy.INTERVAL);
+                }
+                // only the scheduled writer may look at the head, it disposes what it writes
+                ready = isReady(queue.peek());
+            } catch (Throwable t) {
+                log.warn("Exception in recording writer", t);
+            }
+            boolean again = ready || flushRequested || (closing && !queue.isEmpty());
+            if (!again && closing) {
+                // still the scheduled writer, so no other run writes or flushes alongside or after the final flush
+                finish();
+            }
+            scheduled.set(false);
+            // data, a flush or the close may have come in while this run still held the flag
+            if (again || flushRequested || (!closed.isDone() && (closing || isReady(queue.peek())))) {
+                schedule();
+            }
+        }
+
+        /**
+         * Returns whether an item has been held for the reorder window; everything is written once the recording is closing.
+         */
+        private boolean isReady(QueuedMediaData data) {
+            return data != null && (closing || reorderWindow <= 0 || data.getTimestamp() <= (long) newest - reorderWindow);
+        }
+
+        private void finish() {
+            if (!closed.isDone() && recordings.remove(this)) {
+                try {
+                    sink.flush(fsyncPolicy != FsyncPolicy.NONE);
+                } catch (IOException e) {
+                    log.warn("Exception flushing recording", e);
+                }
+                closed.complete(null);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Thread-safe map keyed by primitive int, meant for the handful of channels, streams and pending calls held per connection. Entries are kept
+ * in sorted arrays which are replaced on every change, so lookups are lock-free binary searches without boxing, writes are serialized and an
+ * empty map shares one immutable table.
+ *
+ * @param <V>
+ *            value type
+ * @author The Red5 Project
+ */
+public class CopyOnWriteIntMap<V> {
+
+    private static final Table EMPTY = new Table(new int[0], new Object[0]);
+
+    private volatile Table table = EMPTY;
+
+    /**
+     * Returns the value for the key.
+     *
+     * @param key
+     *            key
+     * @return value or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        Table t = table;
+        int index = Arrays.binarySearch(t.keys, key);
+        return index >= 0 ? (V) t.values[index] : null;
+    }
+
+    /**
+     * Returns whether the key is mapped.
+     *
+     * @param key
+     *            key
+     * @return true if mapped and false otherwise
+     */
+    public boolean containsKey(int key) {
+        return Arrays.binarySearch(table.keys, key) >= 0;
+    }
+
+    /**
+     * Maps the key to the value.
+     *
+     * @param key
+     *            key
+     * @param value
+     *            value, not null
+     * @return previous value or null if there was none
+     */
+    public synchronized V put(int key, V value) {
+        V previous = get(key);
+        table = table.with(key, value);
+        return previous;
+    }
+
+    /**
+     * Maps the key to the value unless it is already mapped.
+     *
+     * @param key
+     *            key
+     * @param value
+     *            value, not null
+     * @return current value or null if the value was added
+     */
+    public V putIfAbsent(int key, V value) {
+        V current = get(key);
+        if (current == null) {
+            synchronized (this) {
+                if ((current = get(key)) == null) {
+                    table = table.with(key, value);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Returns the value for the key, creating and adding it if the key is not mapped.
+     *
+     * @param key
+     *            key
+     * @param factory
+     *            creates the value, called with the lock held
+     * @return current or created value
+     */
+    public V computeIfAbsent(int key, IntFunction<? extends V> factory) {
+        V current = get(key);
+        if (current == null) {
+            synchronized (this) {
+                if ((current = get(key)) == null) {
+                    current = factory.apply(key);
+                    table = table.with(key, current);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Removes the key.
+     *
+     * @param key
+     *            key
+     * @return removed value or null if the key was not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (!containsKey(key)) {
+            return null;
+        }
+        synchronized (this) {
+            Table t = table;
+            int index = Arrays.binarySearch(t.keys, key);
+            if (index < 0) {
+                return null;
+            }
+            table = t.without(index);
+            return (V) t.values[index];
+        }
+    }
+
+    public int size() {
+        return table.keys.length;
+    }
+
+    public boolean isEmpty() {
+        return table.keys.length == 0;
+    }
+
+    /**
+     * Returns the keys at the time of the call, in ascending order.
+     *
+     * @return keys
+     */
+    public int[] keys() {
+        return table.keys.clone();
+    }
+
+    /**
+     * Returns the values at the time of the call, in key order. Later changes are not reflected.
+     *
+     * @return unmodifiable list of values
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        Object[] values = table.values;
+        return values.length == 0 ? Collections.emptyList() : (List<V>) Collections.unmodifiableList(new ArrayList<>(Arrays.asList(values)));
+    }
+
+    public synchronized void clear() {
+        table = EMPTY;
+    }
+
+    @Override
+    public String toString() {
+        Table t = table;
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < t.keys.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(t.keys[i]).append('=').append(t.values[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Immutable pair of sorted keys and their values, swapped as one so readers never see them out of step.
+     */
+    private static final class Table {
+
+        final int[] keys;
+
+        final Object[] values;
+
+        Table(int[] keys, Object[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        Table with(int key, Object value) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                Object[] newValues = values.clone();
+                newValues[index] = value;
+                return new Table(keys, newValues);
+            }
+            index = -index - 1;
+            int[] newKeys = new int[keys.length + 1];
+            Object[] newValues = new Object[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(values, 0, newValues, 0, index);
+            newKeys[index] = key;
+            newValues[index] = value;
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(values, index, newValues, index + 1, keys.length - index);
+            return new Table(newKeys, newValues);
+        }
+
+        Table without(int index) {
+            if (keys.length == 1) {
+                return EMPTY;
+            }
+            int[] newKeys = new int[keys.length - 1];
+            Object[] newValues = new Object[keys.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(values, 0, newValues, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, newKeys.length - index);
+            System.arraycopy(values, index + 1, newValues, index, newValues.length - index);
+            return new Table(newKeys, newValues);
+        }
+
+    }
+
+}
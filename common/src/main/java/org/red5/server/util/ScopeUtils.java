@@ -17,6 +17,8 @@ import org.red5.server.api.scope.IScope;
 import org.red5.server.api.scope.IScopeHandler;
 import org.red5.server.api.scope.IScopeService;
 import org.red5.server.api.scope.ScopeType;
+import org.red5.server.scope.Scope;
+import org.red5.server.scope.ScopeServiceRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
@@ -30,6 +32,18 @@ public class ScopeUtils {
 
     private static final String SERVICE_CACHE_PREFIX = "__service_cache:";
 
+    /**
+     * Attribute names caching services of scopes without a service registry
+     */
+    private static final ClassValue<String> SERVICE_CACHE_ATTRIBUTES = new ClassValue<String>() {
+
+        @Override
+        protected String computeValue(Class<?> type) {
+            return IPersistable.TRANSIENT_PREFIX + SERVICE_CACHE_PREFIX + type.getCanonicalName();
+        }
+
+    };
+
     /**
      * Constant for slash symbol
      */
@@ -283,11 +297,45 @@ public class ScopeUtils {
         }
         // We expect an interface
         assert intf.isInterface();
-        String attr = String.format("%s%s%s", IPersistable.TRANSIENT_PREFIX, SERVICE_CACHE_PREFIX, intf.getCanonicalName());
+        if (scope instanceof Scope) {
+            ScopeServiceRegistry registry = ((Scope) scope).getServiceRegistry();
+            ScopeServiceRegistry.Entry entry = registry.get(intf);
+            if (entry == null) {
+                int generation = registry.getGeneration();
+                entry = resolveScopeService(scope, intf, defaultClass, checkHandler);
+                registry.put(intf, entry, generation);
+            }
+            return entry.getService();
+        }
+        String attr = SERVICE_CACHE_ATTRIBUTES.get(intf);
         if (scope.hasAttribute(attr)) {
             // return cached service
             return scope.getAttribute(attr);
         }
+        Object handler = resolveScopeService(scope, intf, defaultClass, checkHandler).getService();
+        // cache service
+        scope.setAttribute(attr, handler);
+        return handler;
+    }
+
+    /**
+     * Looks up a scope service in the handlers of the scope and its parents, then in the application context and finally creates an instance
+     * of the default class. A child scope which shares the context of its parent and whose own handler does not implement the interface
+     * resolves to the same service as its parent, so the parent's entry is used when it has one.
+     */
+    private static ScopeServiceRegistry.Entry resolveScopeService(IScope scope, Class<?> intf, Class<?> defaultClass, boolean checkHandler) {
+        if (checkHandler && intf.isInstance(scope.getHandler())) {
+            return new ScopeServiceRegistry.Entry(scope.getHandler(), true);
+        }
+        if (scope.hasParent()) {
+            IScope parent = scope.getParent();
+            if (parent instanceof Scope && parent.getContext() == scope.getContext()) {
+                ScopeServiceRegistry.Entry inherited = ((Scope) parent).getServiceRegistry().get(intf);
+                if (inherited != null && inherited.isInheritable() && (inherited.getService() != null || defaultClass == null)) {
+                    return inherited;
+                }
+            }
+        }
         Object handler = null;
         if (checkHandler) {
             IScope current = scope;
@@ -311,7 +359,7 @@ public class ScopeUtils {
                 key = intf.getField("BEAN_NAME");
                 serviceName = key.get(null);
                 //log.debug("serviceName {}", serviceName);
-                handler = getScopeService(scope, serviceName.toString(), defaultClass);
+                handler = getScopeService(scope, serviceName.toString(), null);
             } catch (Exception e) {
                 if (log.isDebugEnabled()) {
                     if (key == null) {
@@ -328,10 +376,10 @@ public class ScopeUtils {
             } catch (Exception e) {
                 log.error("", e);
             }
+            // created for this scope alone
+            return new ScopeServiceRegistry.Entry(handler, false);
         }
-        // cache service
-        scope.setAttribute(attr, handler);
-        return handler;
+        return new ScopeServiceRegistry.Entry(handler, true);
     }
 
     /**
@@ -0,0 +1,71 @@
+package org.red5.server.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConnectAdmissionControllerTest {
+
+    @Test
+    public void testAddressRate() {
+        ConnectAdmissionController controller = new ConnectAdmissionController();
+        controller.setAddressRate(0.001);
+        controller.setAddressBurst(3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(controller.admit("live", "10.0.0.1"));
+        }
+        assertFalse(controller.admit("live", "10.0.0.1"));
+        // other addresses have their own bucket
+        assertTrue(controller.admit("live", "10.0.0.2"));
+        assertEquals(4, controller.getAdmitted());
+        assertEquals(1, controller.getRejected());
+    }
+
+    @Test
+    public void testAppRate() {
+        ConnectAdmissionController controller = new ConnectAdmissionController();
+        controller.setAppRate(0.001);
+        controller.setAppBurst(2);
+        assertTrue(controller.admit("live", "10.0.0.1"));
+        // rooms count against their application
+        assertTrue(controller.admit("live/room1", "10.0.0.2"));
+        assertFalse(controller.admit("live/room2", "10.0.0.3"));
+        assertTrue(controller.admit("vod", "10.0.0.3"));
+    }
+
+    @Test
+    public void testMaxConcurrent() {
+        ConnectAdmissionController controller = new ConnectAdmissionController();
+        controller.setMaxConcurrent(1);
+        assertTrue(controller.admit("live", "10.0.0.1"));
+        // the connect is rejected at once instead of waiting for the slot
+        assertFalse(controller.admit("live", "10.0.0.2"));
+        controller.release();
+        assertTrue(controller.admit("live", "10.0.0.2"));
+        controller.release();
+        assertEquals(1, controller.getRejected());
+    }
+
+    @Test
+    public void testTrackedAddressesBounded() throws Exception {
+        ConnectAdmissionController controller = new ConnectAdmissionController();
+        controller.setAddressRate(100);
+        controller.setAddressBurst(1);
+        controller.setMaxTrackedAddresses(2);
+        assertTrue(controller.admit("live", "10.0.0.1"));
+        assertTrue(controller.admit("live", "10.0.0.2"));
+        // no room for another bucket, the addresses share the overflow bucket
+        assertTrue(controller.admit("live", "10.0.0.3"));
+        assertFalse(controller.admit("live", "10.0.0.3"));
+        assertFalse(controller.admit("live", "10.0.0.4"));
+        assertEquals(2, controller.getTrackedAddresses());
+        // once the sweep interval has passed, the refilled buckets are dropped
+        Thread.sleep(1100L);
+        assertTrue(controller.admit("live", "10.0.0.3"));
+        assertEquals(1, controller.getTrackedAddresses());
+        assertFalse(controller.admit("live", "10.0.0.3"));
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.remoting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.io.amf.Input;
+import org.red5.io.amf.Output;
+import org.red5.io.object.Deserializer;
+import org.red5.io.object.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class AsyncRemotingClientTest {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncRemotingClientTest.class);
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * Requests are answered once this is open
+     */
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    /**
+     * Stand-in gateway which answers "math.add" with the sum of its arguments and fails every other method.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.createContext("/gateway", exchange -> {
+            requests.incrementAndGet();
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            IoBuffer req = IoBuffer.wrap(body);
+            req.getUnsignedShort();
+            assertEquals(0, req.getUnsignedShort());
+            int count = req.getUnsignedShort();
+            IoBuffer resp = IoBuffer.allocate(256).setAutoExpand(true);
+            resp.putShort((short) 0).putShort((short) 0).putShort((short) count);
+            Input input = new Input(req);
+            for (int i = 0; i < count; i++) {
+                String method = input.getString();
+                String response = input.getString();
+                req.getInt();
+                input.reset();
+                Object[] args = ((List<?>) Deserializer.deserialize(input, Object.class)).toArray();
+                Object result;
+                if ("math.add".equals(method)) {
+                    double sum = 0;
+                    for (Object arg : args) {
+                        sum += ((Number) arg).doubleValue();
+                    }
+                    result = sum;
+                    Output.putString(resp, response + "/onResult");
+                } else {
+                    result = "no such method";
+                    Output.putString(resp, response + "/onStatus");
+                }
+                Output.putString(resp, "null");
+                resp.putInt(-1);
+                Serializer.serialize(new Output(resp), result);
+            }
+            resp.flip();
+            exchange.getResponseHeaders().add("Content-Type", "application/x-amf");
+            exchange.sendResponseHeaders(200, resp.limit());
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(resp.array(), resp.arrayOffset(), resp.limit());
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testBatchedCalls() throws Exception {
+        AsyncRemotingClient client = new AsyncRemotingClient("http://127.0.0.1:" + server.getAddress().getPort() + "/gateway");
+        client.setMaxRequests(2);
+        client.setMaxBatchSize(50);
+        int calls = 5000;
+        // warm up
+        client.invoke("math.add", 1, 2).get(5, TimeUnit.SECONDS);
+        requests.set(0);
+        // hold the first requests at the server so the other calls have to wait
+        gate = new CountDownLatch(1);
+        long start = System.nanoTime();
+        List<CompletableFuture<Object>> results = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            results.add(client.invoke("math.add", i, 1));
+        }
+        gate.countDown();
+        for (int i = 0; i < calls; i++) {
+            assertEquals(i + 1, ((Number) results.get(i).get(10, TimeUnit.SECONDS)).intValue());
+        }
+        long elapsed = System.nanoTime() - start;
+        log.info("{} calls in {} requests, {} calls/s", calls, requests.get(), calls * 1000000000L / elapsed);
+        // the first two calls went out on their own, the calls made while they were in flight were sent in batches of 50
+        assertEquals(2 + (calls - 2 + 49) / 50, requests.get());
+        try {
+            client.invoke("math.divide", 1, 0).get(5, TimeUnit.SECONDS);
+            fail("Error expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AsyncRemotingClient.RemotingCallException);
+        }
+        assertEquals(3.0, ((Number) client.invokeMethod("math.add", new Object[] { 1, 2 })).doubleValue(), 0);
+    }
+
+}
@@ -2,9 +2,25 @@ package org.red5.server.net.rtmp;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.DummySession;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.Ping;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import static org.red5.server.net.rtmp.RTMPConnection.MAX_RESERVED_STREAMS;
 
 public class TestRTMPConnection {
@@ -130,6 +146,22 @@ public class TestRTMPConnection {
         System.out.printf("Channel id - sid 20: %d sid 33: %d\n", conn.getChannelIdForStreamId(20), conn.getChannelIdForStreamId(33));
     }
 
+    @Test
+    public void testCongestionControlledChannel() {
+        System.out.println("\n testCongestionControlledChannel");
+        RTMPConnection conn = new RTMPMinaConnection();
+        assertFalse(conn.isCongestionControlledChannel(5));
+        conn.setCongestionControlled(2, true);
+        // stream 2 uses channels 9 to 13
+        assertFalse(conn.isCongestionControlledChannel(3));
+        assertFalse(conn.isCongestionControlledChannel(8));
+        assertTrue(conn.isCongestionControlledChannel(9));
+        assertTrue(conn.isCongestionControlledChannel(13));
+        assertFalse(conn.isCongestionControlledChannel(14));
+        conn.setCongestionControlled(2.0d, false);
+        assertFalse(conn.isCongestionControlledChannel(9));
+    }
+
     @Test
     public void testReserveStreamId() {
         System.out.println("\n testReserveStreamId");
@@ -222,4 +254,110 @@ public class TestRTMPConnection {
     //		fail("Not yet implemented");
     //	}
 
+    @Test
+    public void testWriteCoalescing() throws Exception {
+        System.out.println("\n testWriteCoalescing");
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        try {
+            // one second of 20ms AAC frames, written one request per packet
+            RTMPMinaConnection plain = new RTMPMinaConnection();
+            plain.setIoSession(new DummySession());
+            plain.setScheduler(scheduler);
+            writeAudio(plain, 50);
+            assertEquals(50, plain.getWriteRequests());
+            // same frames with coalescing, a ping forces the waiting audio out ahead of it
+            RTMPMinaConnection coalescing = new RTMPMinaConnection();
+            coalescing.setIoSession(new DummySession());
+            coalescing.setScheduler(scheduler);
+            coalescing.setWriteCoalescing(true);
+            coalescing.setWriteCoalescingMaxBytes(2048);
+            coalescing.setWriteCoalescingLiveDelay(1000);
+            writeAudio(coalescing, 50);
+            coalescing.write(new Packet(new Header(), new Ping(Ping.PING_CLIENT, 0)));
+            System.out.printf("Write requests per second of audio - plain: %d coalesced: %d%n", plain.getWriteRequests(), coalescing.getWriteRequests());
+            // a batch is written once it exceeds 2048 bytes (11 x 200), so 4 full batches plus the remainder flushed by the ping
+            assertEquals(5, coalescing.getWriteRequests());
+            assertEquals(0, coalescing.getPendingMessages());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testLeanReceiveOrder() throws Exception {
+        System.out.println("\n testLeanReceiveOrder");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(4);
+        executor.initialize();
+        try {
+            List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch done = new CountDownLatch(1000);
+            RTMPMinaConnection conn = new RTMPMinaConnection();
+            conn.setLean(true);
+            conn.setExecutor(executor);
+            conn.setHandler(new RTMPHandler() {
+                @Override
+                public void messageReceived(RTMPConnection conn, Packet packet) {
+                    received.add(((Ping) packet.getMessage()).getValue2().intValue());
+                    done.countDown();
+                }
+            });
+            conn.setStateCode(RTMP.STATE_CONNECTED);
+            for (int i = 0; i < 1000; i++) {
+                conn.handleMessageReceived(new Packet(new Header(), new Ping(Ping.PONG_SERVER, i)));
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, received.get(i).intValue());
+            }
+            // no receiving thread was started
+            assertNull(conn.receivedPacketExecutor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLeanReceiveRejected() throws Exception {
+        System.out.println("\n testLeanReceiveRejected");
+        // an executor which rejects every task
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.initialize();
+        executor.shutdown();
+        List<Integer> received = new ArrayList<>();
+        RTMPMinaConnection conn = new RTMPMinaConnection();
+        conn.setLean(true);
+        conn.setExecutor(executor);
+        conn.setHandler(new RTMPHandler() {
+            @Override
+            public void messageReceived(RTMPConnection conn, Packet packet) {
+                received.add(((Ping) packet.getMessage()).getValue2().intValue());
+            }
+        });
+        conn.setStateCode(RTMP.STATE_CONNECTED);
+        for (int i = 0; i < 100; i++) {
+            conn.handleMessageReceived(new Packet(new Header(), new Ping(Ping.PONG_SERVER, i)));
+            // handled on the receiving thread rather than left queued
+            assertEquals(i + 1, received.size());
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, received.get(i).intValue());
+        }
+    }
+
+    private static void writeAudio(RTMPMinaConnection conn, int count) {
+        for (int i = 0; i < count; i++) {
+            Header header = new Header();
+            header.setChannelId(5);
+            header.setDataType(Constants.TYPE_AUDIO_DATA);
+            header.setTimer(i * 20);
+            AudioData audio = new AudioData(IoBuffer.allocate(200));
+            audio.setSourceType(Constants.SOURCE_TYPE_LIVE);
+            audio.setTimestamp(i * 20);
+            conn.write(new Packet(header, audio));
+        }
+    }
+
 }
@@ -0,0 +1,70 @@
+package org.red5.server.net.rtmp.event;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.server.api.IConnection.Encoding;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.codec.RTMPProtocolEncoder;
+import org.red5.server.service.Call;
+import org.red5.server.service.PendingCall;
+
+public class PreEncodedArgumentsTest {
+
+    @After
+    public void tearDown() {
+        Red5.setConnectionLocal(null);
+    }
+
+    @Test
+    public void testSameBytesAsPerConnectionEncoding() {
+        Map<String, Object> message = new HashMap<>();
+        message.put("user", "alice");
+        message.put("text", "hello room");
+        message.put("time", 1234567890.0);
+        Object[] params = new Object[] { "room1", message, 42 };
+        PreEncodedArguments preEncoded = new PreEncodedArguments(params);
+        RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+        for (Encoding encoding : new Encoding[] { Encoding.AMF0, Encoding.AMF3 }) {
+            RTMPMinaConnection conn = new RTMPMinaConnection();
+            conn.getState().setEncoding(encoding);
+            Red5.setConnectionLocal(conn);
+            // every connection encodes the shared bytes, so run twice to see they are not consumed
+            for (int i = 0; i < 2; i++) {
+                byte[] expected = toArray(encoder.encodeNotify(new Notify(new Call("onMessage", params))));
+                byte[] actual = toArray(encoder.encodeNotify(new Notify(new Call("onMessage", preEncoded.getParams(encoding)))));
+                assertArrayEquals(encoding.name(), expected, actual);
+                Invoke invoke = new Invoke(new PendingCall("onMessage", params));
+                invoke.setTransactionId(7);
+                expected = toArray(encoder.encodeInvoke(invoke));
+                invoke = new Invoke(new PendingCall("onMessage", preEncoded.getParams(encoding)));
+                invoke.setTransactionId(7);
+                actual = toArray(encoder.encodeInvoke(invoke));
+                assertArrayEquals(encoding.name(), expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testNoParams() {
+        Object[] params = new Object[0];
+        assertSame(params, new PreEncodedArguments(params).getParams(Encoding.AMF0));
+        assertNull(new PreEncodedArguments(null).getParams(Encoding.AMF3));
+    }
+
+    private static byte[] toArray(IoBuffer buf) {
+        buf.flip();
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return bytes;
+    }
+
+}
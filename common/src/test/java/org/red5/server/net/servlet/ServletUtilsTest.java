@@ -0,0 +1,59 @@
+package org.red5.server.net.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class ServletUtilsTest {
+
+    private static MockHttpServletRequest request(int size, boolean contentLength) {
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) i;
+        }
+        MockHttpServletRequest req = new MockHttpServletRequest() {
+
+            @Override
+            public int getContentLength() {
+                return contentLength ? super.getContentLength() : -1;
+            }
+
+        };
+        req.setContent(body);
+        return req;
+    }
+
+    @Test
+    public void testKnownLengthIsNotGrown() throws IOException {
+        IoBuffer buf = ServletUtils.read(request(1000, true), 4096);
+        assertEquals(1000, buf.remaining());
+        assertEquals(1000, buf.capacity());
+        assertEquals((byte) 999, buf.get(999));
+    }
+
+    @Test
+    public void testUnknownLengthGrows() throws IOException {
+        IoBuffer buf = ServletUtils.read(request(10000, false), 65536);
+        assertEquals(10000, buf.remaining());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals((byte) i, buf.get(i));
+        }
+    }
+
+    @Test
+    public void testUnknownLengthAtMaximum() throws IOException {
+        assertEquals(8192, ServletUtils.read(request(8192, false), 8192).remaining());
+        try {
+            ServletUtils.read(request(8193, false), 8192);
+            fail("body over the maximum was read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+}
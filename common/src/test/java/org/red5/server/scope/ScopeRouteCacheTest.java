@@ -0,0 +1,75 @@
+package org.red5.server.scope;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.red5.server.Server;
+import org.red5.server.api.scope.ScopeType;
+
+public class ScopeRouteCacheTest {
+
+    @Test
+    public void testRoutes() {
+        Scope app = new Scope(null, ScopeType.APPLICATION, "live", false);
+        Scope room = new Scope(app, ScopeType.ROOM, "room", false);
+        app.addChildScope(room);
+        ScopeRouteCache cache = new ScopeRouteCache();
+        cache.put("localhost", "live", app);
+        cache.put("localhost", "live/room", room);
+        assertSame(app, cache.get("localhost", "live"));
+        assertSame(room, cache.get("localhost", "live/room"));
+        assertNull(cache.get("example.com", "live/room"));
+        // the removal notification arrives later, a detached scope is never returned
+        try {
+            app.removeChildScope(room);
+        } catch (NullPointerException e) {
+            // no server to notify in this test, the child is removed before that
+        }
+        assertNull(cache.get("localhost", "live/room"));
+        assertSame(app, cache.get("localhost", "live"));
+        // removing the application drops the routes to it and its rooms
+        cache.put("localhost", "live/room", room);
+        cache.notifyScopeRemoved(app);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testMaxEntries() {
+        ScopeRouteCache cache = new ScopeRouteCache();
+        cache.setMaxEntries(2);
+        Scope app = new Scope(null, ScopeType.APPLICATION, "live", false);
+        cache.put(null, "a", app);
+        cache.put(null, "b", app);
+        cache.put(null, "c", app);
+        assertEquals(1, cache.size());
+        cache.setMaxEntries(0);
+        cache.put(null, "a", app);
+        assertNull(cache.get(null, "a"));
+    }
+
+    @Test
+    public void testMappingChanges() {
+        Server server = new Server();
+        server.addMapping("localhost", "live", "default");
+        ScopeRouteCache cache = new ScopeRouteCache();
+        cache.setServer(server);
+        Scope app = new Scope(null, ScopeType.APPLICATION, "live", false);
+        cache.put("localhost", "live", app);
+        assertSame(app, cache.get("localhost", "live"));
+        // the path may now resolve to another global scope, or to none
+        server.removeMapping("localhost", "live");
+        assertNull(cache.get("localhost", "live"));
+        assertEquals(0, cache.size());
+        cache.put("localhost", "live", app);
+        assertSame(app, cache.get("localhost", "live"));
+        server.addMapping("localhost", "live", "other");
+        assertNull(cache.get("localhost", "live"));
+        // a mapping which is already there changes nothing
+        cache.put("localhost", "live", app);
+        server.addMapping("localhost", "live", "other");
+        assertSame(app, cache.get("localhost", "live"));
+    }
+
+}
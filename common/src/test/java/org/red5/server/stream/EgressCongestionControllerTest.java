@@ -0,0 +1,71 @@
+package org.red5.server.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.server.net.rtmp.event.VideoData;
+
+public class EgressCongestionControllerTest {
+
+    // AVC, HEVC and AV1 keyframe / interframe / disposable interframe headers
+    private static final int[] CODECS = { 0x07, 0x0c, 0x0a };
+
+    private static VideoData frame(int frameType, int codec) {
+        // second byte 1 marks a coded frame rather than a sequence header
+        return new VideoData(IoBuffer.wrap(new byte[] { (byte) ((frameType << 4) | codec), 1, 0, 0, 0 }));
+    }
+
+    @Test
+    public void testDropByFrameClass() {
+        for (int codec : CODECS) {
+            EgressCongestionController controller = new EgressCongestionController(1000);
+            // drain 100 bytes/ms with a backlog, then idle
+            long now = 0;
+            controller.update(1000, 0, now);
+            now += 100;
+            assertEquals(0, controller.update(0, 10000, now));
+            assertTrue(controller.canSend(frame(3, codec)));
+            assertTrue(controller.canSend(frame(2, codec)));
+            // 300ms worth of queued bytes: disposable frames go first
+            now += 100;
+            controller.update(30000, 20000, now);
+            assertFalse(controller.canSend(frame(3, codec)));
+            assertTrue(controller.canSend(frame(2, codec)));
+            assertTrue(controller.canSend(frame(1, codec)));
+            // 600ms: interframes go too and we wait for a keyframe
+            now += 100;
+            controller.update(60000, 30000, now);
+            assertFalse(controller.canSend(frame(2, codec)));
+            assertTrue(controller.isAwaitingKeyframe());
+            // 1.2s: keyframes are dropped as well
+            now += 100;
+            controller.update(120000, 40000, now);
+            assertTrue(controller.isCongested());
+            assertFalse(controller.canSend(frame(1, codec)));
+            // drained: the next interframe is still dropped, the keyframe resumes playback
+            now += 100;
+            controller.update(0, 50000, now);
+            assertFalse(controller.canSend(frame(2, codec)));
+            assertTrue(controller.canSend(frame(1, codec)));
+            assertTrue(controller.canSend(frame(2, codec)));
+            assertEquals(1, controller.getDroppedDisposable());
+            assertEquals(2, controller.getDroppedInterframes());
+            assertEquals(1, controller.getDroppedKeyframes());
+            assertEquals(1, controller.getResumes());
+            assertEquals(100000, controller.getDrainRate());
+        }
+    }
+
+    @Test
+    public void testSequenceHeadersAlwaysSent() {
+        EgressCongestionController controller = new EgressCongestionController(1000);
+        controller.update(1000000, 0, 0);
+        VideoData config = new VideoData(IoBuffer.wrap(new byte[] { 0x17, 0, 0, 0, 0 }));
+        assertTrue(controller.canSend(config));
+        assertFalse(controller.canSend(frame(1, 0x07)));
+    }
+
+}
@@ -0,0 +1,89 @@
+package org.red5.server.stream.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.stream.ClientBroadcastStream;
+
+public class DVRBufferTest {
+
+    private static VideoData video(int timestamp, boolean keyframe, boolean config, int size) {
+        byte[] data = new byte[size];
+        // avc, frame type and packet type
+        data[0] = (byte) (keyframe ? 0x17 : 0x27);
+        data[1] = (byte) (config ? 0 : 1);
+        VideoData video = new VideoData(IoBuffer.wrap(data));
+        video.setTimestamp(timestamp);
+        return video;
+    }
+
+    private static void publish(DVRBuffer buffer, int from, int to, int size) {
+        for (int ts = from; ts < to; ts += 40) {
+            // a keyframe each second
+            buffer.packetReceived(null, video(ts, ts % 1000 == 0, false, size));
+        }
+    }
+
+    @Test
+    public void testReadAndSeek() {
+        DVRBuffer buffer = new DVRBuffer();
+        buffer.packetReceived(null, video(0, true, true, 16));
+        publish(buffer, 0, 3000, 100);
+        assertEquals(0, buffer.getFirstTimestamp());
+        assertEquals(2960, buffer.getLastTimestamp());
+        DVRBuffer.Reader reader = buffer.newReader();
+        // lands on the keyframe before, with the sequence header to send first
+        assertEquals(1000, reader.seek(1500));
+        DVRBuffer.Tag tag = reader.next();
+        IoBuffer[] configs = reader.getConfigs();
+        assertNotNull(configs[0]);
+        assertEquals(0, configs[0].get(1));
+        assertNull(reader.getConfigs());
+        assertEquals(1000, tag.getTimestamp());
+        assertEquals(100, tag.getBody().remaining());
+        assertTrue(tag.getBody().isReadOnly());
+        int count = 1;
+        while ((tag = reader.next()) != null) {
+            assertEquals(1000 + count++ * 40, tag.getTimestamp());
+        }
+        assertEquals(50, count);
+        // picks up what is added later
+        publish(buffer, 3000, 3080, 100);
+        assertEquals(3000, reader.next().getTimestamp());
+        assertEquals(3040, reader.next().getTimestamp());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testWindow() {
+        DVRBuffer buffer = new DVRBuffer();
+        buffer.setWindow(2000);
+        buffer.setSegmentSize(4096);
+        DVRBuffer.Reader reader = buffer.newReader();
+        assertNull(reader.next());
+        publish(buffer, 0, 1000, 400);
+        assertEquals(0, reader.next().getTimestamp());
+        publish(buffer, 1000, 10000, 400);
+        // the head was dropped while covering the window
+        int first = buffer.getFirstTimestamp();
+        assertTrue(first > 0 && first <= 10000 - 2000);
+        assertTrue(buffer.getSize() < 10 * 4096);
+        // a reader behind the window continues at its start
+        assertEquals(first, reader.next().getTimestamp());
+        // so does a seek before it
+        assertEquals(first, reader.seek(0));
+        // a tag larger than a segment gets one of its own
+        buffer.packetReceived(null, video(10000, true, false, 10000));
+        assertEquals(10000, reader.seek(10000));
+        assertEquals(10000, reader.next().getBody().remaining());
+        buffer.detach(new ClientBroadcastStream());
+        assertTrue(buffer.isClosed());
+        assertEquals(-1, buffer.getFirstTimestamp());
+    }
+
+}
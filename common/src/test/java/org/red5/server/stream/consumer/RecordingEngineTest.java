@@ -0,0 +1,186 @@
+package org.red5.server.stream.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.VideoData;
+
+public class RecordingEngineTest {
+
+    private RecordingEngine engine = new RecordingEngine();
+
+    @After
+    public void tearDown() throws Exception {
+        engine.destroy();
+    }
+
+    private static QueuedMediaData audio(int timestamp, int size) {
+        AudioData data = new AudioData(IoBuffer.wrap(new byte[size]));
+        data.setTimestamp(timestamp);
+        return new QueuedMediaData(timestamp, data.getDataType(), data);
+    }
+
+    private static QueuedMediaData video(int timestamp, int size, boolean keyframe) {
+        byte[] body = new byte[size];
+        // sorenson h.263, which has no decoder configuration
+        body[0] = (byte) (keyframe ? 0x12 : 0x22);
+        VideoData data = new VideoData(IoBuffer.wrap(body));
+        data.setTimestamp(timestamp);
+        return new QueuedMediaData(timestamp, data.getDataType(), data);
+    }
+
+    @Test
+    public void testOrderAndFlushOnClose() throws Exception {
+        engine.setWriterThreads(2);
+        List<List<Integer>> written = new CopyOnWriteArrayList<>();
+        AtomicInteger syncs = new AtomicInteger();
+        RecordingEngine.Recording[] recordings = new RecordingEngine.Recording[4];
+        for (int r = 0; r < recordings.length; r++) {
+            List<Integer> timestamps = new CopyOnWriteArrayList<>();
+            written.add(timestamps);
+            recordings[r] = engine.register(new ConcurrentLinkedQueue<>(), new RecordingEngine.Sink() {
+
+                @Override
+                public void write(QueuedMediaData data) {
+                    timestamps.add(data.getTimestamp());
+                }
+
+                @Override
+                public void flush(boolean sync) {
+                    if (sync) {
+                        syncs.incrementAndGet();
+                    }
+                }
+
+            });
+        }
+        for (int i = 0; i < 1000; i++) {
+            for (RecordingEngine.Recording recording : recordings) {
+                assertTrue(recording.offer(audio(i, 100)));
+            }
+        }
+        for (RecordingEngine.Recording recording : recordings) {
+            recording.close().get(5, TimeUnit.SECONDS);
+            assertFalse(recording.offer(audio(1000, 100)));
+        }
+        for (List<Integer> timestamps : written) {
+            assertEquals(1000, timestamps.size());
+            for (int i = 0; i < timestamps.size(); i++) {
+                assertEquals(i, timestamps.get(i).intValue());
+            }
+        }
+        // the default policy forces each recording once, when it is closed
+        assertEquals(recordings.length, syncs.get());
+        assertEquals(0, engine.getActiveRecordings());
+    }
+
+    @Test
+    public void testReorderWindow() throws Exception {
+        engine.setReorderWindow(250);
+        List<Integer> timestamps = new CopyOnWriteArrayList<>();
+        RecordingEngine.Recording recording = engine.register(new PriorityBlockingQueue<>(16, new QueuedMediaDataComparator()), new RecordingEngine.Sink() {
+
+            @Override
+            public void write(QueuedMediaData data) {
+                timestamps.add(data.getTimestamp());
+            }
+
+            @Override
+            public void flush(boolean sync) {
+            }
+
+        });
+        // packets arriving up to 200 ms late are written in timestamp order
+        for (int timestamp : new int[] { 100, 50, 300, 200, 600, 400, 500, 900, 700, 800 }) {
+            assertTrue(recording.offer(audio(timestamp, 100)));
+        }
+        recording.close().get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(50, 100, 200, 300, 400, 500, 600, 700, 800, 900), timestamps);
+    }
+
+    @Test
+    public void testHeldDataWrittenOnClose() throws Exception {
+        List<Integer> timestamps = new CopyOnWriteArrayList<>();
+        RecordingEngine.Recording recording = engine.register(new ConcurrentLinkedQueue<>(), new RecordingEngine.Sink() {
+
+            @Override
+            public void write(QueuedMediaData data) {
+                timestamps.add(data.getTimestamp());
+            }
+
+            @Override
+            public void flush(boolean sync) {
+            }
+
+        });
+        // within the reorder window, nothing is written until the recording closes
+        recording.offer(audio(0, 100));
+        recording.offer(audio(100, 100));
+        assertEquals(200, recording.getQueuedBytes());
+        assertTrue(timestamps.isEmpty());
+        recording.close().get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(0, 100), timestamps);
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        engine.setMaxQueuedBytes(1000);
+        engine.setReorderWindow(0);
+        CountDownLatch blocked = new CountDownLatch(1);
+        RecordingEngine.Recording recording = engine.register(new ConcurrentLinkedQueue<>(), new RecordingEngine.Sink() {
+
+            @Override
+            public void write(QueuedMediaData data) throws IOException {
+                try {
+                    // a disk which does not keep up
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public void flush(boolean sync) {
+            }
+
+        });
+        int accepted = 0;
+        for (int i = 0; i < 20; i++) {
+            if (recording.offer(video(i, 100, false))) {
+                accepted++;
+            }
+        }
+        // video was dropped without holding the stream back, the queue did not grow past its limit
+        assertTrue(accepted <= 11);
+        assertTrue(recording.getQueuedBytes() <= 1000);
+        assertTrue(engine.getDropped() > 0);
+        assertEquals(20 - accepted, recording.getDroppedVideo());
+        // audio is never dropped
+        for (int i = 20; i < 25; i++) {
+            assertTrue(recording.offer(audio(i, 100)));
+        }
+        // keyframes are kept up to twice the limit
+        assertTrue(recording.offer(video(25, 400, true)));
+        assertFalse(recording.offer(video(26, 400, true)));
+        assertFalse(recording.offer(video(27, 100, false)));
+        blocked.countDown();
+        recording.close().get(5, TimeUnit.SECONDS);
+        assertEquals(0, recording.getQueuedBytes());
+    }
+
+}
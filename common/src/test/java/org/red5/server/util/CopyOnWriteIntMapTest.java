@@ -0,0 +1,62 @@
+package org.red5.server.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CopyOnWriteIntMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        CopyOnWriteIntMap<String> map = new CopyOnWriteIntMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(9, "nine"));
+        assertNull(map.put(3, "three"));
+        assertNull(map.put(5, "five"));
+        assertEquals("five", map.put(5, "FIVE"));
+        assertEquals(3, map.size());
+        assertArrayEquals(new int[] { 3, 5, 9 }, map.keys());
+        assertEquals(Arrays.asList("three", "FIVE", "nine"), map.values());
+        assertEquals("three", map.get(3));
+        assertNull(map.get(4));
+        assertEquals("three", map.putIfAbsent(3, "drei"));
+        assertEquals("FIVE", map.remove(5));
+        assertNull(map.remove(5));
+        assertFalse(map.containsKey(5));
+        assertEquals("{3=three, 9=nine}", map.toString());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(3));
+    }
+
+    @Test
+    public void testComputeIfAbsent() {
+        CopyOnWriteIntMap<Object> map = new CopyOnWriteIntMap<>();
+        Object first = map.computeIfAbsent(2, key -> new Object());
+        assertSame(first, map.computeIfAbsent(2, key -> new Object()));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testValuesSnapshot() {
+        CopyOnWriteIntMap<String> map = new CopyOnWriteIntMap<>();
+        map.put(1, "one");
+        map.put(2, "two");
+        List<String> values = map.values();
+        // removing while iterating a snapshot, as the connection does when closing its streams
+        for (String value : values) {
+            map.remove(value.equals("one") ? 1 : 2);
+        }
+        assertEquals(2, values.size());
+        assertTrue(map.isEmpty());
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.red5.server.util;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.red5.server.adapter.AbstractScopeAdapter;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.scope.ScopeType;
+import org.red5.server.api.stream.IStreamFilenameGenerator;
+import org.red5.server.scope.Scope;
+import org.red5.server.stream.DefaultStreamFilenameGenerator;
+
+public class ScopeUtilsTest {
+
+    public interface ITestService {
+    }
+
+    public static class TestHandler extends AbstractScopeAdapter implements ITestService {
+
+        @Override
+        public IScope getScope() {
+            return null;
+        }
+
+    }
+
+    @Test
+    public void testServiceRegistry() {
+        Scope app = new Scope(null, ScopeType.APPLICATION, "app", false);
+        Scope room = new Scope(app, ScopeType.ROOM, "room", false);
+        app.addChildScope(room);
+        assertNull(ScopeUtils.getScopeService(room, ITestService.class));
+        // handler changes are seen by child scopes
+        TestHandler handler = new TestHandler();
+        app.setHandler(handler);
+        assertSame(handler, ScopeUtils.getScopeService(app, ITestService.class));
+        assertSame(handler, ScopeUtils.getScopeService(room, ITestService.class));
+        TestHandler roomHandler = new TestHandler();
+        room.setHandler(roomHandler);
+        assertSame(roomHandler, ScopeUtils.getScopeService(room, ITestService.class));
+        // instances of the default class belong to one scope
+        Object generator = ScopeUtils.getScopeService(room, IStreamFilenameGenerator.class, DefaultStreamFilenameGenerator.class);
+        assertSame(generator, ScopeUtils.getScopeService(room, IStreamFilenameGenerator.class, DefaultStreamFilenameGenerator.class));
+        assertNotSame(generator, ScopeUtils.getScopeService(app, IStreamFilenameGenerator.class, DefaultStreamFilenameGenerator.class));
+    }
+
+}
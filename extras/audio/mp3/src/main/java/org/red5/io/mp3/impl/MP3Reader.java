@@ -7,6 +7,7 @@
 
 package org.red5.io.mp3.impl;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -18,7 +19,12 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.tika.metadata.Metadata;
@@ -69,14 +75,14 @@ public class MP3Reader implements ITagReader, IKeyFrameDataAnalyzer {
     private double currentTime;
 
     /**
-     * Frame metadata
+     * Frame metadata, only set once analysis has completed or it was loaded from the cache
      */
-    private KeyFrameMeta frameMeta;
+    private volatile KeyFrameMeta frameMeta;
 
     /**
-     * Positions and time map
+     * Positions and time map, filled as frames are analyzed
      */
-    private HashMap<Long, Float> posTimeMap;
+    private Map<Long, Float> posTimeMap = new ConcurrentHashMap<>();
 
     private int dataRate;
 
@@ -90,6 +96,11 @@ public class MP3Reader implements ITagReader, IKeyFrameDataAnalyzer {
      */
     static private IKeyFrameMetaCache frameCache;
 
+    /**
+     * Executor for background frame analysis, shared by all readers
+     */
+    private static ExecutorService analysisExecutor;
+
     /**
      * Holder for ID3 meta data
      */
@@ -106,11 +117,33 @@ public class MP3Reader implements ITagReader, IKeyFrameDataAnalyzer {
 
     private FileChannel fileChannel;
 
-    private LinkedList<AudioFrame> frameList;
+    /**
+     * Frames found so far, guarded by itself
+     */
+    private final List<AudioFrame> frameList = new ArrayList<>();
+
+    /**
+     * Frame positions and timestamps found so far, guarded by frameList
+     */
+    private final List<Long> positionList = new ArrayList<>();
+
+    private final List<Float> timestampList = new ArrayList<>();
 
     private int frameIndex;
 
-    private int frameCount;
+    private volatile int frameCount;
+
+    /**
+     * Set once the frame analysis has reached the end of the file or the reader has been closed
+     */
+    private volatile boolean analysisComplete;
+
+    private volatile boolean closed;
+
+    /**
+     * Set if the frame positions came from the cache, frame headers are then read when their frame is
+     */
+    private boolean cachedFrames;
 
     MP3Reader() {
         // Only used by the bean startup code to initialize the frame cache
@@ -186,13 +219,181 @@ public class MP3Reader implements ITagReader, IKeyFrameDataAnalyzer {
         // get the total bytes / file size
         fileSize = file.length();
         log.debug("File size: {}", fileSize);
-        // analyze keyframes data
-        analyzeKeyFrames();
+        // use cached frame data if we have it, otherwise build the frame list in the background; playback starts at the head of the file
+        if (!loadCachedFrameMeta()) {
+            startAnalysis();
+        }
+        // wait for the first frame, so the data rate is known
+        awaitFrames(1);
         // create file metadata object
         firstTags.addFirst(createFileMeta());
-        log.trace("File input stream - open: {} position: {}", fis.getChannel().isOpen(), fis.getChannel().position());
         // create a channel for reading
         fileChannel = fis.getChannel();
+        fileChannel.position(0);
+        log.trace("File input stream - open: {} position: {}", fileChannel.isOpen(), fileChannel.position());
+    }
+
+    private static synchronized ExecutorService getAnalysisExecutor() {
+        if (analysisExecutor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            analysisExecutor = Executors.newFixedThreadPool(2, r -> {
+                Thread thread = new Thread(r, "MP3FrameAnalyzer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return analysisExecutor;
+    }
+
+    /**
+     * Starts the frame analysis on the shared executor.
+     */
+    private void startAnalysis() {
+        try {
+            getAnalysisExecutor().execute(this::scanFrames);
+        } catch (RejectedExecutionException e) {
+            log.warn("Background frame analysis rejected, analyzing inline", e);
+            scanFrames();
+        }
+    }
+
+    /**
+     * Loads frame metadata from the cache if its available.
+     *
+     * @return true if the frames were loaded and need no analysis
+     */
+    private boolean loadCachedFrameMeta() {
+        if (frameCache != null) {
+            KeyFrameMeta meta = frameCache.loadKeyFrameMeta(file);
+            if (meta != null && meta.duration > 0 && meta.positions.length > 0) {
+                // frame data loaded, create other mappings
+                duration = meta.duration;
+                meta.audioOnly = true;
+                for (int i = 0; i < meta.positions.length; i++) {
+                    posTimeMap.put(meta.positions[i], (float) meta.timestamps[i]);
+                }
+                // bits per millisecond is kbit/s
+                dataRate = (int) (fileSize * 8 / duration);
+                frameMeta = meta;
+                cachedFrames = true;
+                frameCount = meta.positions.length;
+                analysisComplete = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the header of the frame at the given position, without moving the channel.
+     */
+    private AudioFrame readFrame(long pos) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        while (header.hasRemaining()) {
+            if (fileChannel.read(header, pos + header.position()) < 0) {
+                return null;
+            }
+        }
+        return new MP3Stream(new ByteArrayInputStream(header.array())).nextFrame();
+    }
+
+    /**
+     * Scans the frames of the file using a separate stream, so that tags may be read while the scan is in progress.
+     */
+    private void scanFrames() {
+        long rate = 0;
+        float time = 0f;
+        try (FileInputStream scanStream = new FileInputStream(file)) {
+            FileChannel channel = scanStream.getChannel();
+            // create an internal parsing stream
+            MP3Stream stream = new MP3Stream(scanStream);
+            // read the first frame and move on to all the following ones
+            AudioFrame frame = stream.nextFrame();
+            while (frame != null && !closed) {
+                long pos = channel.position() - 4;
+                if (pos + frame.getLength() > fileSize) {
+                    // last frame is incomplete
+                    log.trace("Last frame was incomplete");
+                    break;
+                }
+                synchronized (frameList) {
+                    // save frame ref
+                    frameList.add(frame);
+                    // add the position and timestamp for this frame
+                    positionList.add(pos);
+                    timestampList.add(time);
+                    posTimeMap.put(pos, time);
+                    // get the bitrate
+                    rate += frame.getBitRate() / 1000;
+                    // get the duration
+                    time += frame.getDuration();
+                    // increase the frame counter
+                    frameCount++;
+                    dataRate = (int) (rate / frameCount);
+                    frameList.notifyAll();
+                }
+                // skip current frame
+                stream.skipFrame();
+                // move to next frame
+                frame = stream.nextFrame();
+            }
+        } catch (Exception e) {
+            log.warn("Exception analyzing frames", e);
+        } finally {
+            KeyFrameMeta meta = null;
+            synchronized (frameList) {
+                log.trace("Finished with frame count: {}", frameCount);
+                if (!closed) {
+                    duration = (long) time;
+                    meta = snapshot();
+                    meta.duration = duration;
+                    frameMeta = meta;
+                }
+                analysisComplete = true;
+                frameList.notifyAll();
+            }
+            if (meta != null && frameCache != null) {
+                frameCache.saveKeyFrameMeta(file, meta);
+            }
+            log.debug("Analysis complete");
+        }
+    }
+
+    /**
+     * Creates metadata from the frames found so far; the caller must hold the frameList lock.
+     */
+    private KeyFrameMeta snapshot() {
+        KeyFrameMeta meta = new KeyFrameMeta();
+        meta.audioOnly = true;
+        meta.positions = new long[positionList.size()];
+        meta.timestamps = new int[timestampList.size()];
+        for (int i = 0; i < meta.positions.length; i++) {
+            meta.positions[i] = positionList.get(i);
+            meta.timestamps[i] = timestampList.get(i).intValue();
+        }
+        meta.duration = meta.timestamps.length > 0 ? meta.timestamps[meta.timestamps.length - 1] : 0;
+        return meta;
+    }
+
+    /**
+     * Waits until the given number of frames have been found or the analysis is complete.
+     *
+     * @param count
+     *            number of frames
+     * @return true if the frames are available
+     */
+    private boolean awaitFrames(int count) {
+        synchronized (frameList) {
+            try {
+                while (frameCount < count && !analysisComplete) {
+                    frameList.wait();
+                }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted waiting for frame analysis");
+                Thread.currentThread().interrupt();
+            }
+            return frameCount >= count;
+        }
     }
 
     /**
@@ -285,8 +486,12 @@ public class MP3Reader implements ITagReader, IKeyFrameDataAnalyzer {
         // check for duration
         if (!props.containsKey("duration")) {
             // generate it from framemeta
-            if (frameMeta != null) {
-                props.put("duration", frameMeta.timestamps[frameMeta.timestamps.length - 1] / 1000.0);
+            KeyFrameMeta meta = frameMeta;
+            if (meta != null && meta.timestamps.length > 0) {
+                props.put("duration", meta.timestamps[meta.timestamps.length - 1] / 1000.0);
+            } else if (dataRate > 0) {
+                // estimate from the data rate while the frames are still being analyzed
+                props.put("duration", (fileSize * 8d) / (dataRate * 1000d));
             } else {
                 log.debug("Frame meta was null");
             }
@@ -345,7 +550,7 @@ public class MP3Reader implements ITagReader, IKeyFrameDataAnalyzer {
     @Override
     public boolean hasMoreTags() {
         log.debug("hasMoreTags");
-        return fileChannel.isOpen() && frameIndex < frameCount;
+        return fileChannel.isOpen() && (!firstTags.isEmpty() || frameIndex < frameCount || !analysisComplete);
     }
 
     /** {@inheritDoc} */
@@ -358,7 +563,18 @@ public class MP3Reader implements ITagReader, IKeyFrameDataAnalyzer {
                 // return first tags before media data
                 return firstTags.removeFirst();
             }
-            AudioFrame frame = frameList.get(frameIndex++);
+            // the analysis may not have reached the next frame yet
+            if (!awaitFrames(frameIndex + 1)) {
+                return null;
+            }
+            AudioFrame frame;
+            if (cachedFrames) {
+                frame = readFrame(frameMeta.positions[frameIndex++]);
+            } else {
+                synchronized (frameList) {
+                    frame = frameList.get(frameIndex++);
+                }
+            }
             if (frame == null) {
                 return null;
             }
@@ -416,9 +632,8 @@ public class MP3Reader implements ITagReader, IKeyFrameDataAnalyzer {
     /** {@inheritDoc} */
     @Override
     public void close() {
-        if (posTimeMap != null) {
-            posTimeMap.clear();
-        }
+        closed = true;
+        posTimeMap.clear();
         try {
             fis.close();
             fileChannel.close();
@@ -449,100 +664,58 @@ public class MP3Reader implements ITagReader, IKeyFrameDataAnalyzer {
         }
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc} If the analysis is still in progress, this waits for it to complete.
+     */
     @Override
     public KeyFrameMeta analyzeKeyFrames() {
         log.debug("analyzeKeyFrames");
-        if (frameMeta != null) {
-            return frameMeta;
-        }
-        try {
-            lock.acquire();
-            // check for cached frame information
-            if (frameCache != null) {
-                frameMeta = frameCache.loadKeyFrameMeta(file);
-                if (frameMeta != null && frameMeta.duration > 0) {
-                    // frame data loaded, create other mappings
-                    duration = frameMeta.duration;
-                    frameMeta.audioOnly = true;
-                    posTimeMap = new HashMap<>();
-                    for (int i = 0; i < frameMeta.positions.length; i++) {
-                        posTimeMap.put(frameMeta.positions[i], (float) frameMeta.timestamps[i]);
+        KeyFrameMeta meta = frameMeta;
+        if (meta == null) {
+            synchronized (frameList) {
+                try {
+                    while (!analysisComplete) {
+                        frameList.wait();
                     }
-                    return frameMeta;
-                }
-            }
-            // rewind to the beginning using a channel
-            FileChannel channel = fis.getChannel();
-            log.debug("Position: {}", channel.position());
-            channel.position(0);
-            // create an internal parsing stream
-            MP3Stream stream = new MP3Stream(fis);
-            // frame holder
-            frameList = new LinkedList<>();
-            // position and timestamp lists
-            List<Long> positionList = new ArrayList<>();
-            List<Float> timestampList = new ArrayList<>();
-            dataRate = 0;
-            long rate = 0;
-            float time = 0f;
-            // read the first frame and move on to all the following ones
-            AudioFrame frame = stream.nextFrame();
-            while (frame != null) {
-                long pos = channel.position() - 4;
-                if (pos + frame.getLength() > fileSize) {
-                    // last frame is incomplete
-                    log.trace("Last frame was incomplete");
-                    break;
+                } catch (InterruptedException e) {
+                    log.warn("Interrupted waiting for frame analysis");
+                    Thread.currentThread().interrupt();
                 }
-                // save frame ref
-                frameList.add(frame);
-                // add the position for this frame
-                positionList.add(pos);
-                // add the timestamp for this frame
-                timestampList.add(time);
-                // get the bitrate
-                rate += frame.getBitRate() / 1000;
-                // get the duration
-                time += frame.getDuration();
-                // increase the frame counter
-                frameCount++;
-                // skip current frame
-                stream.skipFrame();
-                // move to next frame
-                frame = stream.nextFrame();
-            }
-            // reset the file input stream position
-            channel.position(0);
-            log.trace("Finished with frame count: {}", frameCount);
-            duration = (long) time;
-            dataRate = (int) (rate / frameCount);
-            posTimeMap = new HashMap<>();
-            frameMeta = new KeyFrameMeta();
-            frameMeta.duration = duration;
-            frameMeta.positions = new long[positionList.size()];
-            frameMeta.timestamps = new int[timestampList.size()];
-            frameMeta.audioOnly = true;
-            for (int i = 0; i < frameMeta.positions.length; i++) {
-                frameMeta.positions[i] = positionList.get(i);
-                frameMeta.timestamps[i] = timestampList.get(i).intValue();
-                posTimeMap.put(positionList.get(i), timestampList.get(i));
-            }
-            if (frameCache != null) {
-                frameCache.saveKeyFrameMeta(file, frameMeta);
+                meta = frameMeta != null ? frameMeta : snapshot();
             }
-        } catch (InterruptedException e) {
-            log.warn("Exception acquiring lock", e);
-        } catch (Exception e) {
-            log.warn("Exception analyzing frames", e);
-        } finally {
-            lock.release();
         }
-        log.debug("Analysis complete");
         if (log.isTraceEnabled()) {
-            log.trace("{}", frameMeta);
+            log.trace("{}", meta);
+        }
+        return meta;
+    }
+
+    /**
+     * {@inheritDoc} Only waits while the analysis has not yet reached the timestamp.
+     */
+    @Override
+    public KeyFrameMeta analyzeKeyFrames(int timestamp) {
+        KeyFrameMeta meta = frameMeta;
+        if (meta != null) {
+            return meta;
         }
-        return frameMeta;
+        synchronized (frameList) {
+            try {
+                while (!analysisComplete && (timestampList.isEmpty() || timestampList.get(timestampList.size() - 1) < timestamp)) {
+                    frameList.wait();
+                }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted waiting for frame analysis");
+                Thread.currentThread().interrupt();
+            }
+            return frameMeta != null ? frameMeta : snapshot();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isKeyFrameAnalysisComplete() {
+        return frameMeta != null;
     }
 
     /**
@@ -9,101 +9,240 @@ package org.red5.io;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * File-based keyframe metadata cache which keeps recently used entries in memory.
+ * <p>
+ * Entries are bounded both in number and in weight, the size of their keyframe arrays in bytes, and are evicted in approximate least recently
+ * used order (second chance). An entry is dropped when the size or modification time of its file changes. Concurrent loads of the same file
+ * share a single read of the meta file or a single analysis.
+ *
+ * @author The Red5 Project
+ */
 public class CachingFileKeyFrameMetaCache extends FileKeyFrameMetaCache {
 
-    private Map<String, KeyFrameMeta> inMemoryMetaCache = new HashMap<String, KeyFrameMeta>();
+    private static Logger log = LoggerFactory.getLogger(CachingFileKeyFrameMetaCache.class);
+
+    /**
+     * Approximate weight of an entry apart from its keyframe arrays
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final ConcurrentMap<String, CacheEntry> inMemoryMetaCache = new ConcurrentHashMap<>();
+
+    /**
+     * Loads in progress by canonical path
+     */
+    private final ConcurrentMap<String, CompletableFuture<KeyFrameMeta>> loads = new ConcurrentHashMap<>();
+
+    /**
+     * Eviction order; may hold entries which have since been replaced
+     */
+    private final ConcurrentLinkedQueue<CacheEntry> evictionQueue = new ConcurrentLinkedQueue<>();
 
-    private ReadWriteLock rwLock = new ReentrantReadWriteLock();
+    private final AtomicLong weight = new AtomicLong();
 
     private int maxCacheEntry = 500;
 
-    private Random random = new Random();
+    private long maxCacheWeight = 32 * 1024 * 1024;
 
-    private void freeCachingMetadata() {
-        int cacheSize = inMemoryMetaCache.size();
-        int randomIndex = random.nextInt(cacheSize);
-        Map.Entry<String, KeyFrameMeta> entryToRemove = null;
-        for (Map.Entry<String, KeyFrameMeta> cacheEntry : inMemoryMetaCache.entrySet()) {
-            if (randomIndex == 0) {
-                entryToRemove = cacheEntry;
-                break;
-            }
-            randomIndex--;
-        }
-        if (entryToRemove != null) {
-            inMemoryMetaCache.remove(entryToRemove.getKey());
-        }
+    /** {@inheritDoc} */
+    @Override
+    public KeyFrameMeta loadKeyFrameMeta(File file) {
+        return loadKeyFrameMeta(file, null);
     }
 
+    /** {@inheritDoc} */
     @Override
-    public KeyFrameMeta loadKeyFrameMeta(File file) {
-        rwLock.readLock().lock();
+    public KeyFrameMeta loadKeyFrameMeta(File file, Function<File, KeyFrameMeta> analyzer) {
+        String key = getKey(file);
+        KeyFrameMeta meta = getCached(key, file);
+        if (meta != null) {
+            return meta;
+        }
+        CompletableFuture<KeyFrameMeta> load = new CompletableFuture<>();
+        CompletableFuture<KeyFrameMeta> inflight = loads.putIfAbsent(key, load);
+        if (inflight != null) {
+            log.debug("Waiting for keyframe metadata load in progress: {}", key);
+            try {
+                meta = inflight.join();
+            } catch (CompletionException | CancellationException e) {
+                log.warn("Keyframe metadata load failed for {}", key, e);
+            }
+            return meta;
+        }
         try {
-            String canonicalPath = file.getCanonicalPath();
-            if (!inMemoryMetaCache.containsKey(canonicalPath)) {
-                rwLock.readLock().unlock();
-                rwLock.writeLock().lock();
-                try {
-                    if (inMemoryMetaCache.size() >= maxCacheEntry) {
-                        freeCachingMetadata();
+            // another load may have completed between the lookup and registering ours
+            meta = getCached(key, file);
+            if (meta == null) {
+                // stamp the file before reading it, so changes made while loading invalidate the entry
+                long modified = file.lastModified();
+                long length = file.length();
+                meta = super.loadKeyFrameMeta(file);
+                if (meta == null && analyzer != null) {
+                    meta = analyzer.apply(file);
+                    if (meta != null) {
+                        super.saveKeyFrameMeta(file, meta);
                     }
-                    KeyFrameMeta keyFrameMeta = super.loadKeyFrameMeta(file);
-                    if (keyFrameMeta != null) {
-                        inMemoryMetaCache.put(canonicalPath, keyFrameMeta);
-                    } else {
-                        return null;
-                    }
-                } finally {
-                    rwLock.writeLock().unlock();
-                    rwLock.readLock().lock();
+                }
+                if (meta != null) {
+                    put(new CacheEntry(key, meta, modified, length));
                 }
             }
-            return inMemoryMetaCache.get(canonicalPath);
-        } catch (IOException e) {
-            return null;
+            load.complete(meta);
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
         } finally {
-            rwLock.readLock().unlock();
+            loads.remove(key, load);
         }
+        return meta;
     }
 
+    /** {@inheritDoc} */
     @Override
     public void removeKeyFrameMeta(File file) {
-        rwLock.writeLock().lock();
-        try {
-            String canonicalPath = file.getCanonicalPath();
-            inMemoryMetaCache.remove(canonicalPath);
-        } catch (IOException e) {
-        } finally {
-            rwLock.writeLock().unlock();
-        }
+        remove(getKey(file));
         super.removeKeyFrameMeta(file);
     }
 
+    /** {@inheritDoc} */
     @Override
     public void saveKeyFrameMeta(File file, KeyFrameMeta meta) {
-        rwLock.writeLock().lock();
-        try {
-            String canonicalPath = file.getCanonicalPath();
-            if (inMemoryMetaCache.containsKey(canonicalPath)) {
-                inMemoryMetaCache.remove(canonicalPath);
+        String key = getKey(file);
+        remove(key);
+        super.saveKeyFrameMeta(file, meta);
+        if (meta.positions.length > 0) {
+            put(new CacheEntry(key, meta, file.lastModified(), file.length()));
+        }
+    }
+
+    /**
+     * Returns the cached metadata if the file has not changed since it was cached.
+     */
+    private KeyFrameMeta getCached(String key, File file) {
+        CacheEntry entry = inMemoryMetaCache.get(key);
+        if (entry != null) {
+            if (entry.modified == file.lastModified() && entry.length == file.length()) {
+                entry.referenced = true;
+                return entry.meta;
+            }
+            log.debug("File changed, dropping cached keyframe metadata: {}", key);
+            if (inMemoryMetaCache.remove(key, entry)) {
+                weight.addAndGet(-entry.weight);
+            }
+        }
+        return null;
+    }
+
+    private void put(CacheEntry entry) {
+        CacheEntry old = inMemoryMetaCache.put(entry.key, entry);
+        if (old != null) {
+            weight.addAndGet(-old.weight);
+        }
+        weight.addAndGet(entry.weight);
+        evictionQueue.offer(entry);
+        evict();
+    }
+
+    private void remove(String key) {
+        CacheEntry old = inMemoryMetaCache.remove(key);
+        if (old != null) {
+            weight.addAndGet(-old.weight);
+            evictionQueue.remove(old);
+        }
+    }
+
+    /**
+     * Evicts entries until the cache is within its bounds. Entries used since they were last looked at get a second chance.
+     */
+    private void evict() {
+        int chances = inMemoryMetaCache.size();
+        while (inMemoryMetaCache.size() > maxCacheEntry || weight.get() > maxCacheWeight) {
+            CacheEntry entry = evictionQueue.poll();
+            if (entry == null) {
+                break;
+            }
+            if (inMemoryMetaCache.get(entry.key) != entry) {
+                // replaced or removed already
+                continue;
+            }
+            if (entry.referenced && chances-- > 0) {
+                entry.referenced = false;
+                evictionQueue.offer(entry);
+                continue;
+            }
+            if (inMemoryMetaCache.remove(entry.key, entry)) {
+                weight.addAndGet(-entry.weight);
+                log.trace("Evicted keyframe metadata: {}", entry.key);
             }
+        }
+    }
+
+    private static String getKey(File file) {
+        try {
+            return file.getCanonicalPath();
         } catch (IOException e) {
-            // ignore the exception here, let super class to handle it.
-        } finally {
-            rwLock.writeLock().unlock();
+            return file.getAbsolutePath();
         }
-        super.saveKeyFrameMeta(file, meta);
     }
 
     public void setMaxCacheEntry(int maxCacheEntry) {
         this.maxCacheEntry = maxCacheEntry;
     }
-}
\ No newline at end of file
+
+    /**
+     * Sets the maximum combined size of the cached keyframe arrays.
+     *
+     * @param maxCacheWeight
+     *            size in bytes
+     */
+    public void setMaxCacheWeight(long maxCacheWeight) {
+        this.maxCacheWeight = maxCacheWeight;
+    }
+
+    public int getCacheSize() {
+        return inMemoryMetaCache.size();
+    }
+
+    public long getCacheWeight() {
+        return weight.get();
+    }
+
+    private static final class CacheEntry {
+
+        final String key;
+
+        final KeyFrameMeta meta;
+
+        final long modified;
+
+        final long length;
+
+        final int weight;
+
+        volatile boolean referenced;
+
+        CacheEntry(String key, KeyFrameMeta meta, long modified, long length) {
+            this.key = key;
+            this.meta = meta;
+            this.modified = modified;
+            this.length = length;
+            this.weight = ENTRY_OVERHEAD + (meta.positions != null ? meta.positions.length * 8 : 0) + (meta.timestamps != null ? meta.timestamps.length * 4 : 0);
+        }
+
+    }
+
+}
@@ -8,6 +8,7 @@
 package org.red5.io;
 
 import java.io.File;
+import java.util.function.Function;
 
 import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
 
@@ -28,6 +29,27 @@ public interface IKeyFrameMetaCache {
      */
     public KeyFrameMeta loadKeyFrameMeta(File file);
 
+    /**
+     * Load keyframe informations for the given file, running the analyzer and storing its result if none exist. Implementations may
+     * ensure that concurrent calls for the same file run the analyzer only once.
+     *
+     * @param file
+     *            File to load informations for.
+     * @param analyzer
+     *            Creates the keyframe informations, may return <code>null</code> if they could not be created.
+     * @return The keyframe informations or <code>null</code> if none exist and the analyzer failed.
+     */
+    default KeyFrameMeta loadKeyFrameMeta(File file, Function<File, KeyFrameMeta> analyzer) {
+        KeyFrameMeta meta = loadKeyFrameMeta(file);
+        if (meta == null) {
+            meta = analyzer.apply(file);
+            if (meta != null) {
+                saveKeyFrameMeta(file, meta);
+            }
+        }
+        return meta;
+    }
+
     /**
      * Remove keyframe information for given file. Need to update keyframe cache when re-writing file.
      *
@@ -91,4 +91,15 @@ public interface ITagWriter {
      */
     public void addPostProcessor(IPostProcessor postProcessor);
 
+    /**
+     * Writes out any data held back by the writer.
+     *
+     * @param sync
+     *            whether or not to force the data to the storage device as well
+     * @throws IOException
+     *             I/O exception
+     */
+    default void flush(boolean sync) throws IOException {
+    }
+
 }
@@ -24,6 +24,27 @@ public interface IKeyFrameDataAnalyzer {
         return null;
     }
 
+    /**
+     * Return keyframe metadata that covers at least the given timestamp. Analyzers which build their index in the background may return
+     * partial metadata here, waiting only until the index reaches the timestamp.
+     *
+     * @param timestamp
+     *            timestamp in milliseconds
+     * @return Metadata object
+     */
+    default KeyFrameMeta analyzeKeyFrames(int timestamp) {
+        return analyzeKeyFrames();
+    }
+
+    /**
+     * Whether or not the keyframe analysis has completed.
+     *
+     * @return true if the metadata returned by {@link #analyzeKeyFrames()} is final
+     */
+    default boolean isKeyFrameAnalysisComplete() {
+        return true;
+    }
+
     /**
      * Keyframe metadata.
      */
@@ -12,12 +12,17 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.mina.core.buffer.IoBuffer;
@@ -69,9 +74,14 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     private long channelSize;
 
     /**
-     * Keyframe metadata
+     * Keyframe metadata, only set once analysis has completed
      */
-    private KeyFrameMeta keyframeMeta;
+    private volatile KeyFrameMeta keyframeMeta;
+
+    /**
+     * Keyframe index builder, may still be running in the background
+     */
+    private volatile KeyFrameIndexer indexer;
 
     /**
      * Input byte buffer
@@ -82,10 +92,10 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     private boolean generateMetadata;
 
     /** Position of first video tag. */
-    private long firstVideoTag = -1;
+    private volatile long firstVideoTag = -1;
 
     /** Position of first audio tag. */
-    private long firstAudioTag = -1;
+    private volatile long firstAudioTag = -1;
 
     /**
      * If audio configuration data has been read
@@ -101,7 +111,7 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     private boolean metadataSent = false;
 
     /** Duration in milliseconds. */
-    private long duration;
+    private volatile long duration;
 
     /** Mapping between file position and timestamp in ms. */
     private HashMap<Long, Long> posTimeMap;
@@ -111,12 +121,30 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
 
     private static int bufferSize = 1024;
 
+    /** Read files through a read-only mapping, of which tag bodies are slices instead of copies. */
+    private static boolean mappedBodies;
+
     /** Use load buffer */
     private boolean useLoadBuf;
 
+    /** Whether the input buffer is a mapping of the whole file. */
+    private boolean mapped;
+
     /** Cache for keyframe informations. */
     private static IKeyFrameMetaCache keyframeCache;
 
+    /** Build the keyframe index in the background instead of scanning the whole file on open. */
+    private static boolean lazyKeyFrameAnalysis = true;
+
+    /** Number of threads used for background keyframe analysis. */
+    private static int keyFrameAnalysisThreads = 2;
+
+    /** Executor for background keyframe analysis, shared by all readers. */
+    private static ExecutorService keyFrameAnalysisExecutor;
+
+    /** Number of tags to index before the head of a file is considered known, when no audio or video tag is found. */
+    private static final int HEAD_TAG_COUNT = 64;
+
     /** The header of this FLV file. */
     private FLVHeader header;
 
@@ -159,7 +187,13 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         channel = fis.getChannel();
         channelSize = channel.size();
         in = null;
-        fillBuffer();
+        if (mappedBodies && channelSize <= Integer.MAX_VALUE) {
+            // the mapping remains valid for the slices handed out after the channel is closed
+            in = IoBuffer.wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channelSize));
+            mapped = true;
+        } else {
+            fillBuffer();
+        }
         postInitialize();
     }
 
@@ -210,6 +244,48 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         FLVReader.keyframeCache = keyframeCache;
     }
 
+    /**
+     * Whether or not keyframe analysis is performed in the background.
+     *
+     * @return true if lazy and false if the file is analyzed when opened
+     */
+    public static boolean isLazyKeyFrameAnalysis() {
+        return lazyKeyFrameAnalysis;
+    }
+
+    /**
+     * Setter for lazy keyframe analysis. When enabled, tags are served from the head of the file immediately while the keyframe index is
+     * built in the background; only seeks beyond the indexed range wait for it.
+     *
+     * @param lazyKeyFrameAnalysis
+     *            true to analyze in the background, false to analyze when the file is opened
+     */
+    public static void setLazyKeyFrameAnalysis(boolean lazyKeyFrameAnalysis) {
+        FLVReader.lazyKeyFrameAnalysis = lazyKeyFrameAnalysis;
+    }
+
+    /**
+     * Setter for the number of background keyframe analysis threads; must be called before the first file is opened.
+     *
+     * @param keyFrameAnalysisThreads
+     *            number of threads
+     */
+    public static void setKeyFrameAnalysisThreads(int keyFrameAnalysisThreads) {
+        FLVReader.keyFrameAnalysisThreads = Math.max(1, keyFrameAnalysisThreads);
+    }
+
+    private static synchronized ExecutorService getKeyFrameAnalysisExecutor() {
+        if (keyFrameAnalysisExecutor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            keyFrameAnalysisExecutor = Executors.newFixedThreadPool(keyFrameAnalysisThreads, r -> {
+                Thread thread = new Thread(r, "FLVKeyFrameAnalyzer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return keyFrameAnalysisExecutor;
+    }
+
     /**
      * Get the remaining bytes that could be read from a file or ByteBuffer.
      *
@@ -380,16 +456,70 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
             decodeHeader();
         }
         if (file != null) {
-            keyframeMeta = analyzeKeyFrames();
+            if (lazyKeyFrameAnalysis) {
+                startKeyFrameAnalysis();
+            } else {
+                keyframeMeta = analyzeKeyFrames();
+            }
         }
         long old = getCurrentPosition();
         log.debug("Position: {}", old);
     }
 
+    /**
+     * Loads keyframe metadata from the cache, or starts building the index in the background.
+     */
+    private void startKeyFrameAnalysis() {
+        if (loadCachedKeyFrames()) {
+            return;
+        }
+        // rough duration from the last tag until the index is complete
+        duration = getDuration(file);
+        KeyFrameIndexer idx = new KeyFrameIndexer();
+        indexer = idx;
+        try {
+            getKeyFrameAnalysisExecutor().execute(idx);
+        } catch (RejectedExecutionException e) {
+            log.warn("Background keyframe analysis rejected, analyzing inline", e);
+            idx.run();
+        }
+    }
+
+    /**
+     * Loads keyframe metadata from the cache if its available.
+     *
+     * @return true if the metadata was found in the cache
+     */
+    private boolean loadCachedKeyFrames() {
+        if (keyframeCache != null) {
+            KeyFrameMeta meta = keyframeCache.loadKeyFrameMeta(file);
+            if (meta != null) {
+                // Keyframe data loaded, create other mappings
+                duration = meta.duration;
+                posTimeMap = new HashMap<>();
+                for (int i = 0; i < meta.positions.length; i++) {
+                    posTimeMap.put(meta.positions[i], (long) meta.timestamps[i]);
+                }
+                keyframeMeta = meta;
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean hasVideo() {
-        KeyFrameMeta meta = analyzeKeyFrames();
+        KeyFrameMeta meta = keyframeMeta;
+        if (meta == null) {
+            KeyFrameIndexer idx = indexer;
+            if (idx != null) {
+                // don't wait for the full index, the head of the file tells us if there's video
+                idx.awaitHead();
+                return firstVideoTag != -1;
+            }
+            meta = analyzeKeyFrames();
+        }
         if (meta == null) {
             return false;
         }
@@ -461,6 +591,26 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         FLVReader.bufferSize = bufferSize;
     }
 
+    /**
+     * Whether files are read through a read-only mapping.
+     *
+     * @return true if tag bodies are slices of the mapped file
+     */
+    public static boolean isMappedBodies() {
+        return mappedBodies;
+    }
+
+    /**
+     * Setter for mapped reading. When enabled, files of up to 2GB are mapped read-only and the body of each tag is a slice of the mapping,
+     * so it is neither read into the heap nor copied; the encoder may then write it to plain connections without copying it either.
+     *
+     * @param mappedBodies
+     *            true to map files, false to read them through the buffer
+     */
+    public static void setMappedBodies(boolean mappedBodies) {
+        FLVReader.mappedBodies = mappedBodies;
+    }
+
     /**
      * Returns the file buffer.
      *
@@ -620,6 +770,13 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                 if (!metadataSent && !isMetaData && generateMetadata) {
                     // Generate initial metadata automatically
                     setCurrentPosition(oldPos);
+                    KeyFrameIndexer idx = indexer;
+                    if (idx != null) {
+                        // only the first audio and video tags are needed, not the whole index
+                        idx.awaitHead();
+                        metadataSent = true;
+                        return createFileMeta();
+                    }
                     KeyFrameMeta meta = analyzeKeyFrames();
                     if (meta != null) {
                         metadataSent = true;
@@ -627,10 +784,15 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                     }
                 }
                 int bodySize = tag.getBodySize();
-                IoBuffer body = IoBuffer.allocate(bodySize, false);
+                IoBuffer body;
                 // XXX Paul: this assists in 'properly' handling damaged FLV files
                 long newPosition = getCurrentPosition() + bodySize;
-                if (newPosition <= getTotalBytes()) {
+                if (mapped && newPosition <= getTotalBytes()) {
+                    // the body shares the mapped file content instead of being copied
+                    body = in.getSlice(bodySize);
+                    tag.setBody(body);
+                } else if (newPosition <= getTotalBytes()) {
+                    body = IoBuffer.allocate(bodySize, false);
                     int limit;
                     while (getCurrentPosition() < newPosition) {
                         fillBuffer(newPosition - getCurrentPosition());
@@ -645,38 +807,40 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                     }
                     body.flip();
                     tag.setBody(body);
+                } else {
+                    body = IoBuffer.allocate(bodySize, false);
                 }
                 // now that we have a tag body, check that config has been sent for codecs that require them
-                if (body.array().length > 0) {
-                    int firstByte = body.array()[0] & 0xff;
+                if (body.limit() > 0) {
+                    int firstByte = body.get(0) & 0xff;
                     if (((firstByte & ITag.MASK_SOUND_FORMAT) >> 4) == AudioCodec.AAC.getId()) {
                         // read second byte to see if its config data
-                        if (body.array()[1] != 0 && !audioConfigRead.get()) {
+                        if (body.get(1) != 0 && !audioConfigRead.get()) {
                             log.debug("Skipping AAC since config has not beean read yet");
                             body.clear();
                             body.free();
                             tag = null;
-                        } else if (body.array()[1] == 0 && audioConfigRead.compareAndSet(false, true)) {
+                        } else if (body.get(1) == 0 && audioConfigRead.compareAndSet(false, true)) {
                             log.debug("AAC config read");
                         }
                     } else if ((firstByte & ITag.MASK_VIDEO_CODEC) == VideoCodec.AVC.getId()) {
                         // read second byte to see if its config data
-                        if (body.array()[1] != 0 && !videoConfigRead.get()) {
+                        if (body.get(1) != 0 && !videoConfigRead.get()) {
                             log.debug("Skipping AVC since config has not beean read yet");
                             body.clear();
                             body.free();
                             tag = null;
-                        } else if (body.array()[1] == 0 && videoConfigRead.compareAndSet(false, true)) {
+                        } else if (body.get(1) == 0 && videoConfigRead.compareAndSet(false, true)) {
                             log.debug("AVC config read");
                         }
                     } else if ((firstByte & ITag.MASK_VIDEO_CODEC) == VideoCodec.HEVC.getId()) {
                         // read second byte to see if its config data
-                        if (body.array()[1] != 0 && !videoConfigRead.get()) {
+                        if (body.get(1) != 0 && !videoConfigRead.get()) {
                             log.debug("Skipping HEVC since config has not beean read yet");
                             body.clear();
                             body.free();
                             tag = null;
-                        } else if (body.array()[1] == 0 && videoConfigRead.compareAndSet(false, true)) {
+                        } else if (body.get(1) == 0 && videoConfigRead.compareAndSet(false, true)) {
                             log.debug("HEVC config read");
                         }
                     } else {
@@ -707,6 +871,10 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     @Override
     public void close() {
         log.debug("Reader close: {}", file.getName());
+        KeyFrameIndexer idx = indexer;
+        if (idx != null) {
+            idx.cancel();
+        }
         try {
             lock.lock();
             if (in != null) {
@@ -730,132 +898,27 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     }
 
     /**
-     * Key frames analysis may be used as a utility method so synchronize it.
+     * Key frames analysis may be used as a utility method so synchronize it. If the index is being built in the background, this waits for
+     * it to complete.
      *
      * @return Keyframe metadata
      */
     @Override
     public KeyFrameMeta analyzeKeyFrames() {
-        if (keyframeMeta != null) {
-            return keyframeMeta;
+        KeyFrameMeta meta = keyframeMeta;
+        if (meta != null) {
+            return meta;
+        }
+        KeyFrameIndexer idx = indexer;
+        if (idx != null) {
+            return idx.await(Integer.MAX_VALUE);
         }
         try {
             lock.lockInterruptibly();
-            // check for cached keyframe informations
-            if (keyframeCache != null) {
-                keyframeMeta = keyframeCache.loadKeyFrameMeta(file);
-                if (keyframeMeta != null) {
-                    // Keyframe data loaded, create other mappings
-                    duration = keyframeMeta.duration;
-                    posTimeMap = new HashMap<>();
-                    for (int i = 0; i < keyframeMeta.positions.length; i++) {
-                        posTimeMap.put(keyframeMeta.positions[i], (long) keyframeMeta.timestamps[i]);
-                    }
-                    return keyframeMeta;
-                }
-            }
-            // create a holder for the metadata
-            keyframeMeta = new KeyFrameMeta();
-            // Lists of video positions and timestamps
-            List<Long> positionList = new ArrayList<>();
-            List<Integer> timestampList = new ArrayList<>();
-            // Lists of audio positions and timestamps
-            List<Long> audioPositionList = new ArrayList<>();
-            List<Integer> audioTimestampList = new ArrayList<>();
-            long origPos = getCurrentPosition();
-            // point to the first tag
-            setCurrentPosition(9);
-            // number of tags read
-            int totalValidTags = 0;
-            // start off as audio only
-            boolean audioOnly = true;
-            while (hasMoreTags()) {
-                long pos = getCurrentPosition();
-                // read tag header and duration
-                ITag tmpTag = null;
-                try {
-                    tmpTag = readTagHeader();
-                } catch (UnsupportedDataTypeException e) {
-                    log.warn("analyzeKeyFrames", e);
-                }
-                if (tmpTag != null) {
-                    totalValidTags++;
-                } else {
-                    break;
-                }
-                duration = tmpTag.getTimestamp();
-                if (tmpTag.getDataType() == IoConstants.TYPE_VIDEO) {
-                    if (audioOnly) {
-                        audioOnly = false;
-                        audioPositionList.clear();
-                        audioTimestampList.clear();
-                    }
-                    if (firstVideoTag == -1) {
-                        firstVideoTag = pos;
-                    }
-                    // Grab Frame type
-                    fillBuffer(1);
-                    int frametype = in.get();
-                    if (keyframeMeta.videoCodecId == -1) {
-                        keyframeMeta.videoCodecId = frametype & MASK_VIDEO_CODEC;
-                    }
-                    if (((frametype & MASK_VIDEO_FRAMETYPE) >> 4) == FLAG_FRAMETYPE_KEYFRAME) {
-                        positionList.add(pos);
-                        timestampList.add(tmpTag.getTimestamp());
-                    }
-                } else if (tmpTag.getDataType() == IoConstants.TYPE_AUDIO) {
-                    if (firstAudioTag == -1) {
-                        firstAudioTag = pos;
-                    }
-                    // Grab Frame type
-                    fillBuffer(1);
-                    int frametype = in.get() & 0xff;
-                    if (keyframeMeta.audioCodecId == -1) {
-                        keyframeMeta.audioCodecId = (frametype & MASK_SOUND_FORMAT) >> 4;
-                    }
-                    if (audioOnly) {
-                        audioPositionList.add(pos);
-                        audioTimestampList.add(tmpTag.getTimestamp());
-                    }
-                }
-                // XXX Paul: this 'properly' handles damaged FLV files - as far as duration/size is concerned
-                long newPosition = pos + tmpTag.getBodySize() + 15;
-                // log.debug("---->" + in.remaining() + " limit=" + in.limit() + "
-                // new pos=" + newPosition);
-                if (newPosition >= getTotalBytes()) {
-                    log.error("New position exceeds limit");
-                    if (log.isDebugEnabled()) {
-                        log.debug("-----\nKeyframe analysis\n\tdata type={} bodysize={}\n\tremaining={} limit={}\n\tnew pos={} pos={}\n-----", new Object[] { tmpTag.getDataType(), tmpTag.getBodySize(), getRemainingBytes(), getTotalBytes(), newPosition, pos });
-                    }
-                    //XXX Paul: A runtime exception is probably not needed here
-                    log.info("New position {} exceeds limit {}", newPosition, getTotalBytes());
-                    //just break from the loop
-                    break;
-                } else {
-                    setCurrentPosition(newPosition);
-                }
-            }
-            // restore the pos
-            setCurrentPosition(origPos);
-            log.debug("Total valid tags found: {}", totalValidTags);
-            keyframeMeta.duration = duration;
-            posTimeMap = new HashMap<Long, Long>();
-            if (audioOnly) {
-                // The flv only contains audio tags, use their lists
-                // to support pause and seeking
-                positionList = audioPositionList;
-                timestampList = audioTimestampList;
-            }
-            keyframeMeta.audioOnly = audioOnly;
-            keyframeMeta.positions = new long[positionList.size()];
-            keyframeMeta.timestamps = new int[timestampList.size()];
-            for (int i = 0; i < keyframeMeta.positions.length; i++) {
-                keyframeMeta.positions[i] = positionList.get(i);
-                keyframeMeta.timestamps[i] = timestampList.get(i);
-                posTimeMap.put((long) positionList.get(i), (long) timestampList.get(i));
-            }
-            if (keyframeCache != null) {
-                keyframeCache.saveKeyFrameMeta(file, keyframeMeta);
+            if (keyframeMeta == null && !loadCachedKeyFrames()) {
+                // analyze on the calling thread
+                idx = new KeyFrameIndexer();
+                idx.run();
             }
         } catch (InterruptedException e) {
             log.warn("Exception acquiring lock", e);
@@ -867,6 +930,33 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         return keyframeMeta;
     }
 
+    /**
+     * Returns keyframe metadata which covers the given timestamp, waiting only while the background index has not yet reached it. The
+     * returned metadata may be partial if analysis is still in progress.
+     *
+     * @param timestamp
+     *            timestamp in milliseconds
+     * @return Keyframe metadata
+     */
+    @Override
+    public KeyFrameMeta analyzeKeyFrames(int timestamp) {
+        KeyFrameMeta meta = keyframeMeta;
+        if (meta != null) {
+            return meta;
+        }
+        KeyFrameIndexer idx = indexer;
+        if (idx != null) {
+            return idx.await(timestamp);
+        }
+        return analyzeKeyFrames();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isKeyFrameAnalysisComplete() {
+        return keyframeMeta != null;
+    }
+
     /**
      * Put the current position to pos. The caller must ensure the pos is a valid one (eg. not sit in the middle of a frame).
      *
@@ -998,6 +1088,301 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         return duration;
     }
 
+    /**
+     * Reads bytes at an absolute position without moving the reader's own position.
+     *
+     * @param pos
+     *            absolute position
+     * @param dst
+     *            destination buffer
+     * @return number of bytes read or -1 at the end of the data
+     * @throws IOException
+     *             on read error
+     */
+    private int readAt(long pos, ByteBuffer dst) throws IOException {
+        if (channel != null) {
+            int total = 0;
+            while (dst.hasRemaining()) {
+                int read = channel.read(dst, pos + total);
+                if (read < 0) {
+                    return total == 0 ? -1 : total;
+                }
+                total += read;
+            }
+            return total;
+        }
+        // in-memory data
+        IoBuffer data = in;
+        if (data == null || pos >= data.limit()) {
+            return -1;
+        }
+        IoBuffer dup = data.duplicate();
+        dup.position((int) pos);
+        int count = Math.min(dup.remaining(), dst.remaining());
+        dup.limit((int) pos + count);
+        dst.put(dup.buf());
+        return count;
+    }
+
+    /**
+     * Builds the keyframe index from the tag headers using positional reads, so it may run alongside tag reading. Waiters are woken as the
+     * index grows and when it completes; the complete result is stored in the keyframe cache.
+     * <p>
+     * Every reader scans the head of the file itself, the rest of the analysis goes through the keyframe cache so that readers opening the
+     * same file concurrently share a single scan.
+     */
+    private final class KeyFrameIndexer implements Runnable {
+
+        // Lists of video positions and timestamps
+        private final List<Long> positionList = new ArrayList<>();
+
+        private final List<Integer> timestampList = new ArrayList<>();
+
+        // Lists of audio positions and timestamps
+        private final List<Long> audioPositionList = new ArrayList<>();
+
+        private final List<Integer> audioTimestampList = new ArrayList<>();
+
+        private int videoCodecId = -1;
+
+        private int audioCodecId = -1;
+
+        // start off as audio only
+        private boolean audioOnly = true;
+
+        private int lastTimestamp;
+
+        private int totalValidTags;
+
+        private boolean complete;
+
+        private volatile boolean cancelled;
+
+        // position of the next tag to scan, starting at the first tag
+        private long pos = 9;
+
+        // set once the end of the file or an invalid tag has been reached
+        private boolean scanned;
+
+        @Override
+        public void run() {
+            KeyFrameMeta meta = null;
+            boolean persist = true;
+            try {
+                scan(true);
+                if (!scanned && !cancelled && file != null && keyframeCache != null) {
+                    meta = keyframeCache.loadKeyFrameMeta(file, f -> {
+                        scan(false);
+                        return cancelled ? null : snapshotIndex();
+                    });
+                    // stored by the cache, either by this reader or by the one it waited for
+                    persist = false;
+                }
+                if (meta == null) {
+                    // no cache or the shared scan failed, finish on our own
+                    scan(false);
+                    persist = true;
+                }
+            } finally {
+                finish(meta, persist);
+            }
+        }
+
+        /**
+         * Scans tag headers from the current position.
+         *
+         * @param head
+         *            stop once the head of the file has been indexed
+         */
+        private void scan(boolean head) {
+            final long totalBytes = getTotalBytes();
+            // previous tag size (4 bytes) + flv tag header size (11 bytes) + first body byte
+            ByteBuffer header = ByteBuffer.allocate(16);
+            try {
+                while (!cancelled && !scanned) {
+                    if (head && ((firstVideoTag != -1 && firstAudioTag != -1) || totalValidTags >= HEAD_TAG_COUNT)) {
+                        return;
+                    }
+                    if (totalBytes - pos <= 4) {
+                        scanned = true;
+                        break;
+                    }
+                    header.clear();
+                    if (readAt(pos, header) < 15) {
+                        scanned = true;
+                        break;
+                    }
+                    header.flip();
+                    // previous tag's size
+                    header.getInt();
+                    byte dataType = (byte) (header.get() & 31);
+                    if (dataType != TYPE_AUDIO && dataType != TYPE_VIDEO && dataType != TYPE_METADATA && dataType != 15) {
+                        log.warn("analyzeKeyFrames - invalid data type detected ({}) at {}", dataType, pos);
+                        scanned = true;
+                        break;
+                    }
+                    int bodySize = IOUtils.readUnsignedMediumInt(header);
+                    int timestamp = IOUtils.readExtendedMediumInt(header);
+                    // skip stream id
+                    header.position(header.position() + 3);
+                    int frameType = (bodySize > 0 && header.hasRemaining()) ? header.get() & 0xff : -1;
+                    add(pos, dataType, timestamp, frameType);
+                    // XXX Paul: this 'properly' handles damaged FLV files - as far as duration/size is concerned
+                    long newPosition = pos + bodySize + 15;
+                    if (newPosition >= totalBytes) {
+                        log.debug("New position {} exceeds limit {}", newPosition, totalBytes);
+                        scanned = true;
+                        break;
+                    }
+                    pos = newPosition;
+                }
+            } catch (ClosedChannelException e) {
+                log.debug("Channel closed during keyframe analysis");
+                cancelled = true;
+            } catch (IOException e) {
+                log.warn("analyzeKeyFrames", e);
+                scanned = true;
+            }
+        }
+
+        private synchronized void add(long pos, byte dataType, int timestamp, int frameType) {
+            totalValidTags++;
+            lastTimestamp = timestamp;
+            if (dataType == TYPE_VIDEO) {
+                if (audioOnly) {
+                    audioOnly = false;
+                    audioPositionList.clear();
+                    audioTimestampList.clear();
+                }
+                if (firstVideoTag == -1) {
+                    firstVideoTag = pos;
+                }
+                if (frameType != -1) {
+                    if (videoCodecId == -1) {
+                        videoCodecId = frameType & MASK_VIDEO_CODEC;
+                    }
+                    if (((frameType & MASK_VIDEO_FRAMETYPE) >> 4) == FLAG_FRAMETYPE_KEYFRAME) {
+                        positionList.add(pos);
+                        timestampList.add(timestamp);
+                    }
+                }
+            } else if (dataType == TYPE_AUDIO) {
+                if (firstAudioTag == -1) {
+                    firstAudioTag = pos;
+                }
+                if (frameType != -1 && audioCodecId == -1) {
+                    audioCodecId = (frameType & MASK_SOUND_FORMAT) >> 4;
+                }
+                if (audioOnly) {
+                    audioPositionList.add(pos);
+                    audioTimestampList.add(timestamp);
+                }
+            }
+            notifyAll();
+        }
+
+        private synchronized KeyFrameMeta snapshotIndex() {
+            return snapshot();
+        }
+
+        /**
+         * Publishes the index.
+         *
+         * @param result
+         *            index shared through the keyframe cache or null to use the one built by this reader
+         * @param persist
+         *            whether the index still has to be stored in the keyframe cache
+         */
+        private void finish(KeyFrameMeta result, boolean persist) {
+            KeyFrameMeta meta;
+            synchronized (this) {
+                log.debug("Total valid tags found: {}", totalValidTags);
+                meta = result != null ? result : snapshot();
+                if (!cancelled) {
+                    HashMap<Long, Long> map = new HashMap<>();
+                    for (int i = 0; i < meta.positions.length; i++) {
+                        map.put(meta.positions[i], (long) meta.timestamps[i]);
+                    }
+                    posTimeMap = map;
+                    duration = meta.duration;
+                    keyframeMeta = meta;
+                }
+                complete = true;
+                notifyAll();
+            }
+            indexer = null;
+            // only persist a full index
+            if (persist && !cancelled && file != null && keyframeCache != null) {
+                keyframeCache.saveKeyFrameMeta(file, meta);
+            }
+        }
+
+        /**
+         * Creates metadata from the current state of the index.
+         */
+        private KeyFrameMeta snapshot() {
+            KeyFrameMeta meta = new KeyFrameMeta();
+            meta.videoCodecId = videoCodecId;
+            meta.audioCodecId = audioCodecId;
+            meta.duration = lastTimestamp;
+            meta.audioOnly = audioOnly;
+            // The flv only contains audio tags, use their lists to support pause and seeking
+            List<Long> positions = audioOnly ? audioPositionList : positionList;
+            List<Integer> timestamps = audioOnly ? audioTimestampList : timestampList;
+            meta.positions = new long[positions.size()];
+            meta.timestamps = new int[timestamps.size()];
+            for (int i = 0; i < meta.positions.length; i++) {
+                meta.positions[i] = positions.get(i);
+                meta.timestamps[i] = timestamps.get(i);
+            }
+            return meta;
+        }
+
+        /**
+         * Waits until the index holds a keyframe at or after the given timestamp or is complete.
+         *
+         * @param timestamp
+         *            timestamp in milliseconds
+         * @return complete or partial metadata
+         */
+        synchronized KeyFrameMeta await(int timestamp) {
+            try {
+                while (!complete) {
+                    List<Integer> timestamps = audioOnly ? audioTimestampList : timestampList;
+                    if (!timestamps.isEmpty() && timestamps.get(timestamps.size() - 1) >= timestamp) {
+                        return snapshot();
+                    }
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted waiting for keyframe analysis");
+                Thread.currentThread().interrupt();
+                return snapshot();
+            }
+            KeyFrameMeta meta = keyframeMeta;
+            return meta != null ? meta : snapshot();
+        }
+
+        /**
+         * Waits until the first audio and video tags have been located, enough of the file has been seen or the index is complete.
+         */
+        synchronized void awaitHead() {
+            try {
+                while (!complete && (firstVideoTag == -1 || firstAudioTag == -1) && totalValidTags < HEAD_TAG_COUNT) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted waiting for keyframe analysis");
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+    }
+
     /**
      * Used when an unsupported datatype is found in a file.
      */
@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -188,6 +189,16 @@ public class FLVWriter implements ITagWriter {
     // offset in previous flv to skip when appending
     private long appendOffset = HEADER_LENGTH + 4L;
 
+    /**
+     * Combines tag writes into larger writes to the data file when set; tags are written through otherwise.
+     */
+    private ByteBuffer writeBuffer;
+
+    /**
+     * Whether or not to force the data to the storage device when the writer is closed.
+     */
+    private boolean syncOnClose;
+
     /**
      * Creates writer implementation with for a given file
      *
@@ -559,8 +570,7 @@ public class FLVWriter implements ITagWriter {
                 // flip so we can process from the beginning
                 tagBuffer.flip();
                 // write the tag
-                dataChannel.write(tagBuffer);
-                bytesWritten = dataChannel.position();
+                writeData(tagBuffer);
                 if (log.isTraceEnabled()) {
                     log.trace("Tag written, check value: {} (should be 0)", (bytesWritten - prevBytesWritten) - totalTagSize);
                 }
@@ -580,8 +590,10 @@ public class FLVWriter implements ITagWriter {
         } catch (InterruptedException e) {
             log.warn("Exception acquiring lock", e);
         } finally {
-            // update the file information
-            updateInfoFile();
+            // update the file information, buffered writes update it when flushed
+            if (writeBuffer == null) {
+                updateInfoFile();
+            }
             // mark config written flags
             if (onWrittenSetAudioFlag && audioConfigWritten.compareAndSet(false, true)) {
                 log.trace("Audio configuration written");
@@ -652,8 +664,7 @@ public class FLVWriter implements ITagWriter {
                     //log.debug("\n{}", sb);
                 }
                 // write the tag
-                dataChannel.write(tagBuffer);
-                bytesWritten = dataChannel.position();
+                writeData(tagBuffer);
                 if (log.isTraceEnabled()) {
                     log.trace("Tag written, check value: {} (should be 0)", (bytesWritten - prevBytesWritten) - totalTagSize);
                 }
@@ -673,8 +684,10 @@ public class FLVWriter implements ITagWriter {
         } catch (InterruptedException e) {
             log.warn("Exception acquiring lock", e);
         } finally {
-            // update the file information
-            updateInfoFile();
+            // update the file information, buffered writes update it when flushed
+            if (writeBuffer == null) {
+                updateInfoFile();
+            }
             // release lock
             lock.release();
         }
@@ -685,7 +698,9 @@ public class FLVWriter implements ITagWriter {
     @Override
     public boolean writeStream(byte[] b) {
         try {
+            flushBuffer();
             dataChannel.write(ByteBuffer.wrap(b));
+            bytesWritten = dataChannel.position();
             return true;
         } catch (IOException e) {
             log.error("", e);
@@ -693,6 +708,66 @@ public class FLVWriter implements ITagWriter {
         return false;
     }
 
+    /**
+     * Writes tag bytes to the data file, combining them with other tags when a write buffer is set.
+     *
+     * @param data
+     *            tag bytes
+     * @throws IOException
+     */
+    private void writeData(ByteBuffer data) throws IOException {
+        if (writeBuffer != null) {
+            if (data.remaining() > writeBuffer.remaining()) {
+                flushBuffer();
+            }
+            if (data.remaining() <= writeBuffer.remaining()) {
+                writeBuffer.put(data);
+                bytesWritten = dataChannel.position() + writeBuffer.position();
+                return;
+            }
+        }
+        while (data.hasRemaining()) {
+            dataChannel.write(data);
+        }
+        bytesWritten = dataChannel.position();
+    }
+
+    /**
+     * Writes any combined tags out to the data file.
+     *
+     * @throws IOException
+     */
+    private void flushBuffer() throws IOException {
+        if (writeBuffer != null && writeBuffer.position() > 0 && dataChannel != null) {
+            writeBuffer.flip();
+            while (writeBuffer.hasRemaining()) {
+                dataChannel.write(writeBuffer);
+            }
+            writeBuffer.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush(boolean sync) throws IOException {
+        try {
+            lock.acquire();
+            if (dataChannel != null && dataChannel.isOpen()) {
+                flushBuffer();
+                updateInfoFile();
+                if (sync && dataChannel instanceof FileChannel) {
+                    ((FileChannel) dataChannel).force(false);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("Exception acquiring lock", e);
+        } finally {
+            lock.release();
+        }
+    }
+
     /**
      * Create the stream output file; the flv itself.
      *
@@ -851,6 +926,8 @@ public class FLVWriter implements ITagWriter {
         if (!finalized.get()) {
             log.debug("Finalizing {}", filePath);
             try {
+                // combined tags still in memory go to the data file first
+                flushBuffer();
                 // read file info if it exists
                 File tmpFile = new File(filePath + ".info");
                 if (tmpFile.exists()) {
@@ -950,6 +1027,9 @@ public class FLVWriter implements ITagWriter {
                 dataChannel.close();
                 // get final position
                 long length = fileChannel.position();
+                if (syncOnClose && fileChannel instanceof FileChannel) {
+                    ((FileChannel) fileChannel).force(false);
+                }
                 // close the file
                 fileChannel.close();
                 // close and remove the ser file if write was successful
@@ -1163,6 +1243,37 @@ public class FLVWriter implements ITagWriter {
         this.audioDataSize = audioDataSize;
     }
 
+    /**
+     * Sets the size of the buffer used to combine tag writes. Combined tags are written when the buffer fills up or when the writer is
+     * flushed or closed.
+     *
+     * @param writeBufferSize
+     *            size in bytes, 0 to write each tag through
+     */
+    public void setWriteBufferSize(int writeBufferSize) {
+        try {
+            lock.acquire();
+            flushBuffer();
+            writeBuffer = writeBufferSize > 0 ? ByteBuffer.allocate(writeBufferSize) : null;
+        } catch (InterruptedException e) {
+            log.warn("Exception acquiring lock", e);
+        } catch (IOException e) {
+            log.warn("Exception flushing write buffer", e);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Sets whether or not the finished file is forced to the storage device when the writer is closed.
+     *
+     * @param syncOnClose
+     *            true to force the file on close
+     */
+    public void setSyncOnClose(boolean syncOnClose) {
+        this.syncOnClose = syncOnClose;
+    }
+
     private final class FLVFinalizer implements Runnable {
 
         @Override
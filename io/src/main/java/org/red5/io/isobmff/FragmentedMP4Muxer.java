@@ -0,0 +1,596 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.isobmff;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.jcodec.codecs.h264.H264Utils;
+import org.jcodec.codecs.h264.io.model.SeqParameterSet;
+import org.jcodec.codecs.h264.mp4.AvcCBox;
+import org.jcodec.common.model.Size;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes fragmented MP4 (CMAF) from FLV style codec configurations and frames: an initialization segment holding the track descriptions
+ * and media fragments (moof / mdat pairs) holding the samples added since the previous fragment. AVC, HEVC, AV1, AAC and Opus tracks are
+ * supported; the video configuration is the AVCDecoderConfigurationRecord, HEVCDecoderConfigurationRecord or AV1CodecConfigurationRecord and
+ * the AAC configuration is the AudioSpecificConfig, exactly as carried in the FLV sequence headers. AVC and HEVC samples are expected in
+ * length prefixed (AVCC) format and AV1 samples as low overhead bitstream format OBUs.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @author The Red5 Project
+ */
+public class FragmentedMP4Muxer {
+
+    private static Logger log = LoggerFactory.getLogger(FragmentedMP4Muxer.class);
+
+    /**
+     * Timescale used for video tracks
+     */
+    public static final int VIDEO_TIMESCALE = 90000;
+
+    /**
+     * Timescale of Opus tracks, Opus is always decoded at 48 kHz
+     */
+    public static final int OPUS_TIMESCALE = 48000;
+
+    private static final int[] AAC_SAMPLE_RATES = { 96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350 };
+
+    // sample flags for sync and non-sync samples
+    private static final int SYNC_SAMPLE_FLAGS = 0x02000000;
+
+    private static final int NON_SYNC_SAMPLE_FLAGS = 0x01010000;
+
+    private static final int[] UNITY_MATRIX = { 0x00010000, 0, 0, 0, 0x00010000, 0, 0, 0, 0x40000000 };
+
+    private final List<Track> tracks = new ArrayList<>(2);
+
+    private int sequenceNumber;
+
+    /**
+     * Adds a video track.
+     *
+     * @param fourcc
+     *            sample entry type, avc1, hvc1 or av01
+     * @param config
+     *            decoder configuration record
+     * @param width
+     *            width in pixels, 0 to read it from the configuration when possible
+     * @param height
+     *            height in pixels, 0 to read it from the configuration when possible
+     * @return track
+     */
+    public Track addVideoTrack(String fourcc, byte[] config, int width, int height) {
+        Track track = new Track(tracks.size() + 1, fourcc, config, VIDEO_TIMESCALE);
+        if ((width == 0 || height == 0) && "avc1".equals(fourcc)) {
+            Size size = getAVCPictureSize(config);
+            if (size != null) {
+                width = size.getWidth();
+                height = size.getHeight();
+            }
+        }
+        track.width = width;
+        track.height = height;
+        tracks.add(track);
+        return track;
+    }
+
+    /**
+     * Adds an AAC audio track.
+     *
+     * @param config
+     *            AudioSpecificConfig
+     * @return track
+     */
+    public Track addAudioTrack(byte[] config) {
+        int sampleRate = 44100;
+        int channels = 2;
+        if (config.length >= 2) {
+            int frequencyIndex = ((config[0] & 0x07) << 1) | ((config[1] & 0x80) >> 7);
+            if (frequencyIndex == 15 && config.length >= 5) {
+                sampleRate = ((config[1] & 0x7f) << 17) | ((config[2] & 0xff) << 9) | ((config[3] & 0xff) << 1) | ((config[4] & 0x80) >> 7);
+                channels = (config[4] & 0x78) >> 3;
+            } else if (frequencyIndex < AAC_SAMPLE_RATES.length) {
+                sampleRate = AAC_SAMPLE_RATES[frequencyIndex];
+                channels = (config[1] & 0x78) >> 3;
+            }
+        }
+        Track track = new Track(tracks.size() + 1, "mp4a", config, sampleRate);
+        track.channels = channels == 0 ? 2 : channels;
+        tracks.add(track);
+        return track;
+    }
+
+    /**
+     * Adds an Opus audio track.
+     *
+     * @param channels
+     *            number of output channels, one or two
+     * @param preSkip
+     *            number of samples at 48 kHz to discard from the decoder output at the start
+     * @param inputSampleRate
+     *            sample rate of the original input, informational only
+     * @return track
+     */
+    public Track addOpusTrack(int channels, int preSkip, int inputSampleRate) {
+        // OpusSpecificBox, channel mapping family 0 covers mono and stereo
+        IoBuffer dOps = IoBuffer.allocate(11);
+        dOps.put((byte) 0);
+        dOps.put((byte) channels);
+        dOps.putShort((short) preSkip);
+        dOps.putInt(inputSampleRate);
+        dOps.putShort((short) 0);
+        dOps.put((byte) 0);
+        Track track = new Track(tracks.size() + 1, "Opus", toArray(dOps), OPUS_TIMESCALE);
+        track.channels = channels;
+        tracks.add(track);
+        return track;
+    }
+
+    public List<Track> getTracks() {
+        return tracks;
+    }
+
+    /**
+     * Queues a sample for the next fragment.
+     *
+     * @param track
+     *            track
+     * @param data
+     *            sample data
+     * @param dts
+     *            decode time in the track timescale
+     * @param duration
+     *            duration in the track timescale
+     * @param compositionOffset
+     *            composition time offset in the track timescale
+     * @param sync
+     *            whether the sample is a sync sample (keyframe)
+     */
+    public void addSample(Track track, byte[] data, long dts, int duration, int compositionOffset, boolean sync) {
+        track.samples.add(new Sample(data, dts, duration, compositionOffset, sync));
+    }
+
+    /**
+     * Returns whether samples are waiting for the next fragment.
+     *
+     * @return true if a fragment can be created
+     */
+    public boolean hasSamples() {
+        for (Track track : tracks) {
+            if (!track.samples.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the sequence number of the last fragment, so that fragments appended to an existing file continue its numbering.
+     *
+     * @param sequenceNumber
+     *            sequence number of the last fragment written
+     */
+    public void setSequenceNumber(int sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    public int getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Creates the initialization segment (ftyp and moov).
+     *
+     * @return initialization segment
+     */
+    public byte[] getInitSegment() {
+        IoBuffer out = IoBuffer.allocate(1024).setAutoExpand(true);
+        int ftyp = begin(out, "ftyp");
+        out.put(fourcc("iso6"));
+        out.putInt(0);
+        out.put(fourcc("iso6"));
+        out.put(fourcc("cmfc"));
+        out.put(fourcc("mp41"));
+        end(out, ftyp);
+        int moov = begin(out, "moov");
+        writeMvhd(out);
+        for (Track track : tracks) {
+            writeTrak(out, track);
+        }
+        int mvex = begin(out, "mvex");
+        for (Track track : tracks) {
+            int trex = beginFull(out, "trex", 0, 0);
+            out.putInt(track.id);
+            // default sample description index, duration, size and flags
+            out.putInt(1);
+            out.putInt(0);
+            out.putInt(0);
+            out.putInt(0);
+            end(out, trex);
+        }
+        end(out, mvex);
+        end(out, moov);
+        return toArray(out);
+    }
+
+    /**
+     * Creates a media fragment (moof and mdat) from the queued samples and clears them.
+     *
+     * @return fragment or null if there are no samples
+     */
+    public byte[] flushFragment() {
+        if (!hasSamples()) {
+            return null;
+        }
+        IoBuffer out = IoBuffer.allocate(4096).setAutoExpand(true);
+        int moof = begin(out, "moof");
+        int mfhd = beginFull(out, "mfhd", 0, 0);
+        out.putInt(++sequenceNumber);
+        end(out, mfhd);
+        // positions of the trun data offsets, patched once the moof size is known
+        List<Integer> offsetPositions = new ArrayList<>(tracks.size());
+        List<Integer> dataOffsets = new ArrayList<>(tracks.size());
+        int dataSize = 0;
+        for (Track track : tracks) {
+            List<Sample> samples = track.samples;
+            if (samples.isEmpty()) {
+                continue;
+            }
+            boolean video = track.isVideo();
+            int traf = begin(out, "traf");
+            // default-base-is-moof
+            int tfhd = beginFull(out, "tfhd", 0, 0x020000);
+            out.putInt(track.id);
+            end(out, tfhd);
+            int tfdt = beginFull(out, "tfdt", 1, 0);
+            out.putLong(samples.get(0).dts);
+            end(out, tfdt);
+            // data offset, sample duration, sample size, plus sample flags and composition offsets for video
+            int trunFlags = video ? 0x000f01 : 0x000301;
+            int trun = beginFull(out, "trun", 1, trunFlags);
+            out.putInt(samples.size());
+            offsetPositions.add(out.position());
+            dataOffsets.add(dataSize);
+            out.putInt(0);
+            for (Sample sample : samples) {
+                out.putInt(sample.duration);
+                out.putInt(sample.data.length);
+                if (video) {
+                    out.putInt(sample.sync ? SYNC_SAMPLE_FLAGS : NON_SYNC_SAMPLE_FLAGS);
+                    out.putInt(sample.compositionOffset);
+                }
+                dataSize += sample.data.length;
+            }
+            end(out, trun);
+            end(out, traf);
+        }
+        end(out, moof);
+        int moofSize = out.position() - moof;
+        for (int i = 0; i < offsetPositions.size(); i++) {
+            out.putInt(offsetPositions.get(i), moofSize + 8 + dataOffsets.get(i));
+        }
+        out.putInt(8 + dataSize);
+        out.put(fourcc("mdat"));
+        for (Track track : tracks) {
+            for (Sample sample : track.samples) {
+                out.put(sample.data);
+            }
+            track.samples.clear();
+        }
+        return toArray(out);
+    }
+
+    private void writeMvhd(IoBuffer out) {
+        int mvhd = beginFull(out, "mvhd", 0, 0);
+        // creation and modification time
+        out.putInt(0);
+        out.putInt(0);
+        // timescale and duration
+        out.putInt(1000);
+        out.putInt(0);
+        // rate and volume
+        out.putInt(0x00010000);
+        out.putShort((short) 0x0100);
+        out.fill(10);
+        for (int value : UNITY_MATRIX) {
+            out.putInt(value);
+        }
+        out.fill(24);
+        out.putInt(tracks.size() + 1);
+        end(out, mvhd);
+    }
+
+    private void writeTrak(IoBuffer out, Track track) {
+        boolean video = track.isVideo();
+        int trak = begin(out, "trak");
+        // enabled and in movie
+        int tkhd = beginFull(out, "tkhd", 0, 3);
+        out.putInt(0);
+        out.putInt(0);
+        out.putInt(track.id);
+        out.putInt(0);
+        // duration
+        out.putInt(0);
+        out.fill(8);
+        // layer and alternate group
+        out.putShort((short) 0);
+        out.putShort((short) 0);
+        out.putShort((short) (video ? 0 : 0x0100));
+        out.putShort((short) 0);
+        for (int value : UNITY_MATRIX) {
+            out.putInt(value);
+        }
+        out.putInt(track.width << 16);
+        out.putInt(track.height << 16);
+        end(out, tkhd);
+        int mdia = begin(out, "mdia");
+        int mdhd = beginFull(out, "mdhd", 0, 0);
+        out.putInt(0);
+        out.putInt(0);
+        out.putInt(track.timescale);
+        out.putInt(0);
+        // language und
+        out.putShort((short) 0x55c4);
+        out.putShort((short) 0);
+        end(out, mdhd);
+        int hdlr = beginFull(out, "hdlr", 0, 0);
+        out.putInt(0);
+        out.put(fourcc(video ? "vide" : "soun"));
+        out.fill(12);
+        out.put((video ? "VideoHandler" : "SoundHandler").getBytes(StandardCharsets.US_ASCII));
+        out.put((byte) 0);
+        end(out, hdlr);
+        int minf = begin(out, "minf");
+        if (video) {
+            int vmhd = beginFull(out, "vmhd", 0, 1);
+            out.fill(8);
+            end(out, vmhd);
+        } else {
+            int smhd = beginFull(out, "smhd", 0, 0);
+            out.fill(4);
+            end(out, smhd);
+        }
+        int dinf = begin(out, "dinf");
+        int dref = beginFull(out, "dref", 0, 0);
+        out.putInt(1);
+        // self contained
+        int url = beginFull(out, "url ", 0, 1);
+        end(out, url);
+        end(out, dref);
+        end(out, dinf);
+        int stbl = begin(out, "stbl");
+        int stsd = beginFull(out, "stsd", 0, 0);
+        out.putInt(1);
+        if (video) {
+            writeVisualSampleEntry(out, track);
+        } else {
+            writeAudioSampleEntry(out, track);
+        }
+        end(out, stsd);
+        // empty sample tables, the samples are in the fragments
+        for (String type : new String[] { "stts", "stsc", "stco" }) {
+            int box = beginFull(out, type, 0, 0);
+            out.putInt(0);
+            end(out, box);
+        }
+        int stsz = beginFull(out, "stsz", 0, 0);
+        out.putInt(0);
+        out.putInt(0);
+        end(out, stsz);
+        end(out, stbl);
+        end(out, minf);
+        end(out, mdia);
+        end(out, trak);
+    }
+
+    private void writeVisualSampleEntry(IoBuffer out, Track track) {
+        int entry = begin(out, track.fourcc);
+        out.fill(6);
+        // data reference index
+        out.putShort((short) 1);
+        out.fill(16);
+        out.putShort((short) track.width);
+        out.putShort((short) track.height);
+        // 72 dpi
+        out.putInt(0x00480000);
+        out.putInt(0x00480000);
+        out.putInt(0);
+        // frame count
+        out.putShort((short) 1);
+        // compressor name
+        out.fill(32);
+        // depth and pre-defined
+        out.putShort((short) 0x0018);
+        out.putShort((short) -1);
+        int config = begin(out, "avc1".equals(track.fourcc) ? "avcC" : "av01".equals(track.fourcc) ? "av1C" : "hvcC");
+        out.put(track.config);
+        end(out, config);
+        end(out, entry);
+    }
+
+    private void writeAudioSampleEntry(IoBuffer out, Track track) {
+        int entry = begin(out, track.fourcc);
+        out.fill(6);
+        // data reference index
+        out.putShort((short) 1);
+        out.fill(8);
+        out.putShort((short) track.channels);
+        // sample size
+        out.putShort((short) 16);
+        out.fill(4);
+        out.putInt(Math.min(track.timescale, 0xffff) << 16);
+        if ("Opus".equals(track.fourcc)) {
+            int dOps = begin(out, "dOps");
+            out.put(track.config);
+            end(out, dOps);
+            end(out, entry);
+            return;
+        }
+        int esds = beginFull(out, "esds", 0, 0);
+        int asc = track.config.length;
+        // ES descriptor
+        out.put((byte) 0x03);
+        out.put((byte) (3 + 2 + 13 + 2 + asc + 3));
+        out.putShort((short) track.id);
+        out.put((byte) 0);
+        // decoder config descriptor: MPEG-4 audio, audio stream
+        out.put((byte) 0x04);
+        out.put((byte) (13 + 2 + asc));
+        out.put((byte) 0x40);
+        out.put((byte) 0x15);
+        out.fill(3);
+        out.putInt(0);
+        out.putInt(0);
+        // decoder specific info
+        out.put((byte) 0x05);
+        out.put((byte) asc);
+        out.put(track.config);
+        // SL config descriptor
+        out.put((byte) 0x06);
+        out.put((byte) 1);
+        out.put((byte) 0x02);
+        end(out, esds);
+        end(out, entry);
+    }
+
+    private static Size getAVCPictureSize(byte[] config) {
+        try {
+            AvcCBox avcC = H264Utils.parseAVCCFromBuffer(ByteBuffer.wrap(config));
+            if (!avcC.getSpsList().isEmpty()) {
+                // the parameter sets are handed out without their nal unit header
+                ByteBuffer sps = avcC.getSpsList().get(0).duplicate();
+                SeqParameterSet params = H264Utils.readSPS(sps);
+                return H264Utils.getPicSize(params);
+            }
+        } catch (Exception e) {
+            log.debug("Picture size could not be read from the decoder configuration", e);
+        }
+        return null;
+    }
+
+    private static int begin(IoBuffer out, String type) {
+        int start = out.position();
+        out.putInt(0);
+        out.put(fourcc(type));
+        return start;
+    }
+
+    private static int beginFull(IoBuffer out, String type, int version, int flags) {
+        int start = begin(out, type);
+        out.putInt((version << 24) | (flags & 0xffffff));
+        return start;
+    }
+
+    private static void end(IoBuffer out, int start) {
+        out.putInt(start, out.position() - start);
+    }
+
+    private static byte[] fourcc(String type) {
+        return type.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] toArray(IoBuffer out) {
+        out.flip();
+        byte[] bytes = new byte[out.remaining()];
+        out.get(bytes);
+        out.free();
+        return bytes;
+    }
+
+    /**
+     * Track of a fragmented MP4.
+     */
+    public static final class Track {
+
+        private final int id;
+
+        private final String fourcc;
+
+        private final byte[] config;
+
+        private final int timescale;
+
+        private int width;
+
+        private int height;
+
+        private int channels;
+
+        private final List<Sample> samples = new ArrayList<>();
+
+        Track(int id, String fourcc, byte[] config, int timescale) {
+            this.id = id;
+            this.fourcc = fourcc;
+            this.config = config;
+            this.timescale = timescale;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getFourcc() {
+            return fourcc;
+        }
+
+        public byte[] getConfig() {
+            return config;
+        }
+
+        public int getTimescale() {
+            return timescale;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getChannels() {
+            return channels;
+        }
+
+        public boolean isVideo() {
+            return !"mp4a".equals(fourcc) && !"Opus".equals(fourcc);
+        }
+
+    }
+
+    private static final class Sample {
+
+        final byte[] data;
+
+        final long dts;
+
+        final int duration;
+
+        final int compositionOffset;
+
+        final boolean sync;
+
+        Sample(byte[] data, long dts, int duration, int compositionOffset, boolean sync) {
+            this.data = data;
+            this.dts = dts;
+            this.duration = duration;
+            this.compositionOffset = compositionOffset;
+            this.sync = sync;
+        }
+
+    }
+
+}
@@ -0,0 +1,382 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.isobmff;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the track descriptions and the samples of a fragmented MP4 file. Only complete top level boxes are looked at, so a file which is still
+ * being written, or which was cut off by a crash, yields every sample of its complete fragments and nothing of a partly written one.
+ *
+ * @author The Red5 Project
+ */
+public final class FragmentedMP4Parser {
+
+    private static Logger log = LoggerFactory.getLogger(FragmentedMP4Parser.class);
+
+    /**
+     * Largest moov or moof box which is read into memory
+     */
+    private static final int MAX_HEADER_BOX_SIZE = 16 * 1024 * 1024;
+
+    // sample_is_non_sync_sample
+    private static final int NON_SYNC_SAMPLE_FLAG = 0x00010000;
+
+    private FragmentedMP4Parser() {
+    }
+
+    /**
+     * Receives what is found in a file.
+     */
+    public interface Listener {
+
+        /**
+         * Called for each track of the movie box.
+         *
+         * @param trackId
+         *            track id
+         * @param handler
+         *            handler type, vide or soun
+         * @param fourcc
+         *            type of the first sample entry
+         * @param timescale
+         *            media timescale
+         */
+        default void track(int trackId, String handler, String fourcc, int timescale) {
+        }
+
+        /**
+         * Called for each fragment.
+         *
+         * @param sequenceNumber
+         *            fragment sequence number
+         */
+        default void fragment(int sequenceNumber) {
+        }
+
+        /**
+         * Called for each sample of a complete fragment.
+         *
+         * @param trackId
+         *            track id
+         * @param offset
+         *            position of the sample data in the file
+         * @param size
+         *            size of the sample data
+         * @param decodeTime
+         *            decode time in the track timescale
+         * @param duration
+         *            duration in the track timescale
+         * @param compositionOffset
+         *            composition time offset in the track timescale
+         * @param sync
+         *            whether or not the sample is a sync sample
+         */
+        void sample(int trackId, long offset, int size, long decodeTime, int duration, int compositionOffset, boolean sync);
+
+    }
+
+    /**
+     * Parses a file.
+     *
+     * @param channel
+     *            channel to read from, its position is not changed
+     * @param listener
+     *            receiver of the tracks and samples
+     * @return position just past the last complete box, anything beyond it is incomplete
+     * @throws IOException
+     *             I/O exception
+     */
+    public static long parse(FileChannel channel, Listener listener) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        // default sample values per track from the movie extends box
+        Map<Integer, int[]> defaults = new HashMap<>();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        while (position + 8 <= size) {
+            header.clear().limit(8);
+            readFully(channel, header, position);
+            long boxSize = header.getInt(0) & 0xffffffffL;
+            String type = new String(header.array(), 4, 4, StandardCharsets.US_ASCII);
+            int headerSize = 8;
+            if (boxSize == 1) {
+                if (position + 16 > size) {
+                    break;
+                }
+                header.clear().limit(8);
+                readFully(channel, header, position + 8);
+                boxSize = header.getLong(0);
+                headerSize = 16;
+            } else if (boxSize == 0) {
+                boxSize = size - position;
+            }
+            if (boxSize < headerSize || position + boxSize > size) {
+                // incomplete trailing box
+                break;
+            }
+            if ("moov".equals(type) || "moof".equals(type)) {
+                if (boxSize > MAX_HEADER_BOX_SIZE) {
+                    log.warn("Skipping {} box of {} bytes at {}", type, boxSize, position);
+                } else {
+                    ByteBuffer body = ByteBuffer.allocate((int) (boxSize - headerSize));
+                    readFully(channel, body, position + headerSize);
+                    body.flip();
+                    if ("moov".equals(type)) {
+                        parseMoov(body, defaults, listener);
+                    } else {
+                        List<Sample> samples = new ArrayList<>();
+                        int sequenceNumber = parseMoof(body, position, defaults, samples);
+                        for (Sample sample : samples) {
+                            if (sample.offset + sample.size > size) {
+                                // the media data of this fragment has not been written completely
+                                return position;
+                            }
+                        }
+                        listener.fragment(sequenceNumber);
+                        for (Sample sample : samples) {
+                            listener.sample(sample.trackId, sample.offset, sample.size, sample.decodeTime, sample.duration, sample.compositionOffset, sample.sync);
+                        }
+                    }
+                }
+            }
+            position += boxSize;
+        }
+        return position;
+    }
+
+    private static void parseMoov(ByteBuffer moov, Map<Integer, int[]> defaults, Listener listener) {
+        for (Box entry; (entry = nextBox(moov)) != null;) {
+            ByteBuffer box = entry.body;
+            String type = entry.type;
+            if ("trak".equals(type)) {
+                parseTrak(box, listener);
+            } else if ("mvex".equals(type)) {
+                for (Box childEntry; (childEntry = nextBox(box)) != null;) {
+                    ByteBuffer child = childEntry.body;
+                    if ("trex".equals(childEntry.type)) {
+                        child.getInt();
+                        int trackId = child.getInt();
+                        // skip the sample description index
+                        child.getInt();
+                        defaults.put(trackId, new int[] { child.getInt(), child.getInt(), child.getInt() });
+                    }
+                }
+            }
+        }
+    }
+
+    private static void parseTrak(ByteBuffer trak, Listener listener) {
+        int trackId = 0, timescale = 0;
+        String handler = null, fourcc = null;
+        for (Box entry; (entry = nextBox(trak)) != null;) {
+            ByteBuffer box = entry.body;
+            String type = entry.type;
+            if ("tkhd".equals(type)) {
+                int version = box.getInt() >>> 24;
+                // skip creation and modification time
+                box.position(box.position() + (version == 1 ? 16 : 8));
+                trackId = box.getInt();
+            } else if ("mdia".equals(type)) {
+                for (Box childEntry; (childEntry = nextBox(box)) != null;) {
+                    ByteBuffer child = childEntry.body;
+                    String childType = childEntry.type;
+                    if ("mdhd".equals(childType)) {
+                        int version = child.getInt() >>> 24;
+                        child.position(child.position() + (version == 1 ? 16 : 8));
+                        timescale = child.getInt();
+                    } else if ("hdlr".equals(childType)) {
+                        // skip version, flags and pre-defined
+                        child.position(child.position() + 8);
+                        handler = fourcc(child);
+                    } else if ("minf".equals(childType)) {
+                        ByteBuffer stsd = findBox(findBox(child, "stbl"), "stsd");
+                        if (stsd != null && stsd.remaining() >= 16) {
+                            // skip version, flags, entry count and the size of the first entry
+                            stsd.position(stsd.position() + 12);
+                            fourcc = fourcc(stsd);
+                        }
+                    }
+                }
+            }
+        }
+        listener.track(trackId, handler, fourcc, timescale);
+    }
+
+    private static int parseMoof(ByteBuffer moof, long moofPosition, Map<Integer, int[]> defaults, List<Sample> samples) {
+        int sequenceNumber = 0;
+        for (Box entry; (entry = nextBox(moof)) != null;) {
+            ByteBuffer box = entry.body;
+            String type = entry.type;
+            if ("mfhd".equals(type)) {
+                box.getInt();
+                sequenceNumber = box.getInt();
+            } else if ("traf".equals(type)) {
+                parseTraf(box, moofPosition, defaults, samples);
+            }
+        }
+        return sequenceNumber;
+    }
+
+    private static void parseTraf(ByteBuffer traf, long moofPosition, Map<Integer, int[]> defaults, List<Sample> samples) {
+        int trackId = 0;
+        long base = moofPosition, decodeTime = 0;
+        int defaultDuration = 0, defaultSize = 0, defaultFlags = 0;
+        // where the data of a track run without a data offset starts
+        long next = -1;
+        for (Box entry; (entry = nextBox(traf)) != null;) {
+            ByteBuffer box = entry.body;
+            String type = entry.type;
+            if ("tfhd".equals(type)) {
+                int flags = box.getInt() & 0xffffff;
+                trackId = box.getInt();
+                int[] trex = defaults.getOrDefault(trackId, new int[3]);
+                defaultDuration = trex[0];
+                defaultSize = trex[1];
+                defaultFlags = trex[2];
+                if ((flags & 0x01) != 0) {
+                    base = box.getLong();
+                }
+                if ((flags & 0x02) != 0) {
+                    box.getInt();
+                }
+                if ((flags & 0x08) != 0) {
+                    defaultDuration = box.getInt();
+                }
+                if ((flags & 0x10) != 0) {
+                    defaultSize = box.getInt();
+                }
+                if ((flags & 0x20) != 0) {
+                    defaultFlags = box.getInt();
+                }
+            } else if ("tfdt".equals(type)) {
+                int version = box.getInt() >>> 24;
+                decodeTime = version == 1 ? box.getLong() : box.getInt() & 0xffffffffL;
+            } else if ("trun".equals(type)) {
+                int flags = box.getInt() & 0xffffff;
+                int count = box.getInt();
+                long offset = (flags & 0x01) != 0 ? base + box.getInt() : (next >= 0 ? next : base);
+                int firstFlags = (flags & 0x04) != 0 ? box.getInt() : -1;
+                for (int i = 0; i < count; i++) {
+                    int duration = (flags & 0x100) != 0 ? box.getInt() : defaultDuration;
+                    int size = (flags & 0x200) != 0 ? box.getInt() : defaultSize;
+                    int sampleFlags = (flags & 0x400) != 0 ? box.getInt() : (i == 0 && firstFlags != -1 ? firstFlags : defaultFlags);
+                    int compositionOffset = (flags & 0x800) != 0 ? box.getInt() : 0;
+                    samples.add(new Sample(trackId, offset, size, decodeTime, duration, compositionOffset, (sampleFlags & NON_SYNC_SAMPLE_FLAG) == 0));
+                    offset += size;
+                    decodeTime += duration;
+                }
+                next = offset;
+            }
+        }
+    }
+
+    /**
+     * Returns the next child box and moves past it.
+     */
+    private static Box nextBox(ByteBuffer parent) {
+        if (parent == null || parent.remaining() < 8) {
+            return null;
+        }
+        int start = parent.position();
+        long size = parent.getInt() & 0xffffffffL;
+        String type = fourcc(parent);
+        int headerSize = 8;
+        if (size == 1 && parent.remaining() >= 8) {
+            size = parent.getLong();
+            headerSize = 16;
+        } else if (size == 0) {
+            size = parent.limit() - start;
+        }
+        if (size < headerSize || start + size > parent.limit()) {
+            parent.position(parent.limit());
+            return null;
+        }
+        ByteBuffer body = parent.duplicate();
+        body.position(start + headerSize).limit((int) (start + size));
+        parent.position((int) (start + size));
+        return new Box(type, body.slice());
+    }
+
+    private static ByteBuffer findBox(ByteBuffer parent, String type) {
+        for (Box box; (box = nextBox(parent)) != null;) {
+            if (type.equals(box.type)) {
+                return box.body;
+            }
+        }
+        return null;
+    }
+
+    private static String fourcc(ByteBuffer buffer) {
+        byte[] bytes = new byte[4];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private static final class Box {
+
+        final String type;
+
+        final ByteBuffer body;
+
+        Box(String type, ByteBuffer body) {
+            this.type = type;
+            this.body = body;
+        }
+
+    }
+
+    private static final class Sample {
+
+        final int trackId;
+
+        final long offset;
+
+        final int size;
+
+        final long decodeTime;
+
+        final int duration;
+
+        final int compositionOffset;
+
+        final boolean sync;
+
+        Sample(int trackId, long offset, int size, long decodeTime, int duration, int compositionOffset, boolean sync) {
+            this.trackId = trackId;
+            this.offset = offset;
+            this.size = size;
+            this.decodeTime = decodeTime;
+            this.duration = duration;
+            this.compositionOffset = compositionOffset;
+            this.sync = sync;
+        }
+
+    }
+
+}
@@ -0,0 +1,619 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.mp4.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.codec.AudioCodec;
+import org.red5.codec.VideoCodec;
+import org.red5.io.IStreamableFile;
+import org.red5.io.ITag;
+import org.red5.io.ITagWriter;
+import org.red5.io.IoConstants;
+import org.red5.io.flv.impl.Tag;
+import org.red5.io.isobmff.FragmentedMP4Muxer;
+import org.red5.io.isobmff.FragmentedMP4Muxer.Track;
+import org.red5.io.isobmff.FragmentedMP4Parser;
+import org.red5.media.processor.IPostProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records FLV tags as fragmented MP4: the initialization segment (ftyp and moov) is written at the start of the file once the track
+ * configurations are known and every fragment (moof and mdat) is appended with a single positional write as soon as it is complete. There is
+ * no finalization step, the file is playable while it is being written and, after a crash, up to its last complete fragment.
+ * <p>
+ * AVC, HEVC and AV1 video and AAC and Opus audio are recorded, other codecs are skipped. Fragments start at a video keyframe once the
+ * fragment duration is reached; audio only recordings are cut at the fragment duration.
+ *
+ * @author The Red5 Project
+ */
+public class FragmentedMP4Writer implements ITagWriter {
+
+    private static Logger log = LoggerFactory.getLogger(FragmentedMP4Writer.class);
+
+    /**
+     * How long media is held back waiting for the configuration of a second track, in milliseconds
+     */
+    private static final int TRACK_WAIT = 1000;
+
+    private static final int AAC_FRAME_SAMPLES = 1024;
+
+    private final Path path;
+
+    private FileChannel channel;
+
+    private volatile long bytesWritten;
+
+    private FragmentedMP4Muxer muxer;
+
+    private Track videoTrack, audioTrack;
+
+    private String videoFourcc, audioFourcc;
+
+    private byte[] videoConfig, audioConfig;
+
+    private boolean videoSeen, audioSeen;
+
+    private boolean videoStarted;
+
+    /**
+     * Media received before the initialization segment could be written
+     */
+    private final List<ITag> held = new ArrayList<>();
+
+    /**
+     * Tracks of the file being appended to, by handler type in track id order
+     */
+    private List<String> existingTracks;
+
+    private List<String> existingFourccs;
+
+    private int existingSequenceNumber;
+
+    /**
+     * Time the appended media starts at, in milliseconds
+     */
+    private int timeOffset;
+
+    private byte[] pendingVideo;
+
+    private int pendingVideoTimestamp;
+
+    private int pendingVideoOffset;
+
+    private boolean pendingVideoKey;
+
+    private int lastVideoDuration = 1;
+
+    private long audioDecodeTime = -1;
+
+    private int fragmentStart = -1;
+
+    private int fragmentDuration = 1000;
+
+    private int duration;
+
+    private boolean syncOnClose;
+
+    private long clockStart = -1;
+
+    private LinkedList<IPostProcessor> postProcessors;
+
+    /**
+     * Creates a writer for the given file.
+     *
+     * @param path
+     *            file to write
+     * @param append
+     *            true to continue an existing recording after its last complete fragment
+     */
+    public FragmentedMP4Writer(Path path, boolean append) {
+        this.path = path;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (append && channel.size() > 0) {
+                existingTracks = new ArrayList<>(2);
+                existingFourccs = new ArrayList<>(2);
+                List<Integer> timescales = new ArrayList<>(2);
+                long[] ends = new long[8];
+                long end = FragmentedMP4Parser.parse(channel, new FragmentedMP4Parser.Listener() {
+
+                    @Override
+                    public void track(int trackId, String handler, String fourcc, int timescale) {
+                        existingTracks.add(handler);
+                        existingFourccs.add(fourcc);
+                        timescales.add(timescale);
+                    }
+
+                    @Override
+                    public void fragment(int sequenceNumber) {
+                        existingSequenceNumber = sequenceNumber;
+                    }
+
+                    @Override
+                    public void sample(int trackId, long offset, int size, long decodeTime, int duration, int compositionOffset, boolean sync) {
+                        if (trackId > 0 && trackId < ends.length) {
+                            ends[trackId] = Math.max(ends[trackId], decodeTime + duration);
+                        }
+                    }
+
+                });
+                if (existingTracks.isEmpty()) {
+                    log.debug("No initialization segment found in {}, starting over", path);
+                    existingTracks = null;
+                    end = 0;
+                } else {
+                    for (int i = 0; i < timescales.size() && i + 1 < ends.length; i++) {
+                        if (timescales.get(i) > 0) {
+                            timeOffset = (int) Math.max(timeOffset, ends[i + 1] * 1000L / timescales.get(i));
+                        }
+                    }
+                    log.debug("Appending to {} after {} ms", path, timeOffset);
+                }
+                // anything after the last complete fragment was cut off
+                channel.truncate(end);
+                bytesWritten = end;
+            } else {
+                channel.truncate(0);
+            }
+            duration = timeOffset;
+        } catch (IOException e) {
+            log.error("Failed to create fragmented MP4 writer", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void writeHeader() throws IOException {
+        // the initialization segment is written once the tracks are known
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized boolean writeTag(ITag tag) throws IOException {
+        if (channel == null) {
+            throw new IOException("MP4 write channel has been closed", new ClosedChannelException());
+        }
+        IoBuffer body = tag.getBody();
+        if (body == null || body.limit() < 2) {
+            return false;
+        }
+        int timestamp = tag.getTimestamp() + timeOffset;
+        switch (tag.getDataType()) {
+            case IoConstants.TYPE_VIDEO:
+                return onVideo(tag, body, timestamp);
+            case IoConstants.TYPE_AUDIO:
+                return onAudio(tag, body, timestamp);
+            default:
+                // the movie box carries everything needed for playback
+                return true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean writeTag(byte type, IoBuffer data) throws IOException {
+        long now = System.currentTimeMillis();
+        if (clockStart == -1) {
+            clockStart = now;
+        }
+        return writeTag(new Tag(type, (int) (now - clockStart), data.limit(), data, 0));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean writeStream(byte[] b) {
+        // fragments are built from tags, raw bytes cannot be placed
+        return false;
+    }
+
+    private boolean onVideo(ITag tag, IoBuffer body, int timestamp) throws IOException {
+        int first = body.get(0) & 0xff;
+        int codecId = first & 0x0f;
+        String fourcc;
+        int headerLength = 5;
+        if (codecId == VideoCodec.AVC.getId()) {
+            fourcc = "avc1";
+        } else if (codecId == VideoCodec.HEVC.getId()) {
+            fourcc = "hvc1";
+        } else if (codecId == VideoCodec.AV1.getId()) {
+            fourcc = "av01";
+            // no composition time offset
+            headerLength = 2;
+        } else {
+            return false;
+        }
+        if (body.limit() < headerLength) {
+            return false;
+        }
+        int packetType = body.get(1);
+        if (packetType == 0) {
+            byte[] config = copy(body, headerLength);
+            if (muxer == null) {
+                videoConfig = config;
+                videoFourcc = fourcc;
+            } else if (!fourcc.equals(videoFourcc)) {
+                log.warn("Video codec changed from {} to {} while recording {}, video is skipped", videoFourcc, fourcc, path);
+                videoTrack = null;
+            }
+            return true;
+        } else if (packetType != 1) {
+            return true;
+        }
+        videoSeen = true;
+        if (muxer == null && !start(tag, timestamp)) {
+            return true;
+        }
+        if (videoTrack == null || !fourcc.equals(videoFourcc)) {
+            return false;
+        }
+        boolean keyframe = ((first & 0xf0) >> 4) == 1;
+        if (!videoStarted) {
+            if (!keyframe) {
+                return false;
+            }
+            videoStarted = true;
+        }
+        int offset = 0;
+        if (headerLength == 5) {
+            // composition time offset, signed 24 bit
+            offset = ((body.get(2) & 0xff) << 16) | ((body.get(3) & 0xff) << 8) | (body.get(4) & 0xff);
+            offset = (offset << 8) >> 8;
+        }
+        if (pendingVideo != null) {
+            addPendingVideo(Math.max(timestamp - pendingVideoTimestamp, 1));
+            // cut at keyframes, and within very long groups of pictures so that little is lost on a crash
+            int elapsed = timestamp - fragmentStart;
+            if (elapsed >= (keyframe ? fragmentDuration : fragmentDuration * 4)) {
+                writeFragment();
+            }
+        }
+        pendingVideo = copy(body, headerLength);
+        pendingVideoTimestamp = timestamp;
+        pendingVideoOffset = offset;
+        pendingVideoKey = keyframe;
+        return true;
+    }
+
+    private void addPendingVideo(int sampleDuration) {
+        if (fragmentStart == -1) {
+            fragmentStart = pendingVideoTimestamp;
+        }
+        muxer.addSample(videoTrack, pendingVideo, pendingVideoTimestamp * 90L, sampleDuration * 90, pendingVideoOffset * 90, pendingVideoKey);
+        duration = Math.max(duration, pendingVideoTimestamp + sampleDuration);
+        lastVideoDuration = sampleDuration;
+        pendingVideo = null;
+    }
+
+    private boolean onAudio(ITag tag, IoBuffer body, int timestamp) throws IOException {
+        int format = (body.get(0) & 0xff) >> 4;
+        String fourcc;
+        if (format == AudioCodec.AAC.getId()) {
+            fourcc = "mp4a";
+        } else if (format == AudioCodec.OPUS.getId()) {
+            fourcc = "Opus";
+        } else {
+            return false;
+        }
+        if (body.get(1) == 0) {
+            if (muxer == null) {
+                audioConfig = copy(body, 2);
+                audioFourcc = fourcc;
+            } else if (!fourcc.equals(audioFourcc)) {
+                log.warn("Audio codec changed from {} to {} while recording {}, audio is skipped", audioFourcc, fourcc, path);
+                audioTrack = null;
+            }
+            return true;
+        }
+        if (audioConfig == null && "Opus".equals(fourcc) && muxer == null) {
+            // opus may be sent without a configuration, decoders fall back to stereo
+            audioConfig = new byte[0];
+            audioFourcc = fourcc;
+        }
+        audioSeen = true;
+        if (muxer == null && !start(tag, timestamp)) {
+            return true;
+        }
+        if (audioTrack == null || !fourcc.equals(audioFourcc)) {
+            return false;
+        }
+        byte[] data = copy(body, 2);
+        if (data.length == 0) {
+            return false;
+        }
+        int frameSamples = "Opus".equals(fourcc) ? getOpusSamples(data) : AAC_FRAME_SAMPLES;
+        int rate = audioTrack.getTimescale();
+        long expected = (long) timestamp * rate / 1000L;
+        // follow the stream clock if it drifts by more than a couple of frames
+        if (audioDecodeTime < 0 || Math.abs(expected - audioDecodeTime) > 2 * frameSamples) {
+            audioDecodeTime = expected;
+        }
+        // audio only recordings are cut here, others only if the video stalls
+        if (fragmentStart != -1 && timestamp - fragmentStart >= (videoTrack == null ? fragmentDuration : fragmentDuration * 4)) {
+            writeFragment();
+        }
+        if (fragmentStart == -1) {
+            fragmentStart = timestamp;
+        }
+        muxer.addSample(audioTrack, data, audioDecodeTime, frameSamples, 0, true);
+        audioDecodeTime += frameSamples;
+        duration = Math.max(duration, (int) (audioDecodeTime * 1000L / rate));
+        return true;
+    }
+
+    /**
+     * Creates the tracks and writes the initialization segment once the configuration of every track is known, holding back the media until
+     * then.
+     *
+     * @return true if started
+     */
+    private boolean start(ITag tag, int timestamp) throws IOException {
+        boolean configured = (!videoSeen || videoConfig != null) && (!audioSeen || audioConfig != null);
+        if (!(configured && videoSeen && audioSeen)) {
+            if (held.isEmpty() || timestamp - (held.get(0).getTimestamp() + timeOffset) < TRACK_WAIT) {
+                held.add(copy(tag));
+                return false;
+            }
+            if (videoConfig == null && audioConfig == null) {
+                log.debug("No supported configuration received for {}, dropping held media", path);
+                held.clear();
+                return false;
+            }
+        }
+        createTracks();
+        List<ITag> replay = new ArrayList<>(held);
+        held.clear();
+        for (ITag heldTag : replay) {
+            writeTag(heldTag);
+        }
+        return true;
+    }
+
+    private void createTracks() throws IOException {
+        muxer = new FragmentedMP4Muxer();
+        if (existingTracks == null) {
+            videoTrack = videoConfig != null ? muxer.addVideoTrack(videoFourcc, videoConfig, 0, 0) : null;
+            audioTrack = audioConfig != null ? addAudioTrack() : null;
+            write(muxer.getInitSegment());
+            log.debug("Recording {} video: {} audio: {}", path, videoFourcc, audioFourcc);
+            return;
+        }
+        // the movie box is already there, the tracks have to line up with it
+        muxer.setSequenceNumber(existingSequenceNumber);
+        for (int i = 0; i < existingTracks.size(); i++) {
+            String fourcc = existingFourccs.get(i);
+            if ("vide".equals(existingTracks.get(i))) {
+                Track track = muxer.addVideoTrack(fourcc, new byte[0], 0, 0);
+                if (videoTrack == null && fourcc.equals(videoFourcc)) {
+                    videoTrack = track;
+                }
+            } else if ("Opus".equals(fourcc)) {
+                Track track = muxer.addOpusTrack(2, 0, FragmentedMP4Muxer.OPUS_TIMESCALE);
+                if (audioTrack == null && fourcc.equals(audioFourcc)) {
+                    audioTrack = track;
+                }
+            } else {
+                Track track = muxer.addAudioTrack(audioConfig != null && "mp4a".equals(audioFourcc) ? audioConfig : new byte[0]);
+                if (audioTrack == null && fourcc.equals(audioFourcc)) {
+                    audioTrack = track;
+                }
+            }
+        }
+        if ((videoFourcc != null && videoTrack == null) || (audioFourcc != null && audioTrack == null)) {
+            log.warn("Stream does not match the tracks of {}, unmatched media is skipped", path);
+        }
+    }
+
+    private Track addAudioTrack() {
+        if ("Opus".equals(audioFourcc)) {
+            int channels = 2, preSkip = 0, inputRate = FragmentedMP4Muxer.OPUS_TIMESCALE;
+            byte[] config = audioConfig;
+            if (config.length >= 19 && "OpusHead".equals(new String(config, 0, 8, StandardCharsets.US_ASCII))) {
+                // identification header, little endian
+                channels = config[9];
+                preSkip = (config[10] & 0xff) | ((config[11] & 0xff) << 8);
+                inputRate = (config[12] & 0xff) | ((config[13] & 0xff) << 8) | ((config[14] & 0xff) << 16) | ((config[15] & 0xff) << 24);
+            } else if (config.length >= 2) {
+                // sample rate index and channels
+                channels = config[1];
+            }
+            return muxer.addOpusTrack(Math.max(1, Math.min(channels, 2)), preSkip, inputRate);
+        }
+        return muxer.addAudioTrack(audioConfig);
+    }
+
+    /**
+     * Returns the number of 48 kHz samples in an Opus packet, from its table of contents byte.
+     */
+    private static int getOpusSamples(byte[] packet) {
+        int toc = packet[0] & 0xff;
+        int config = toc >> 3;
+        // frame size in 1/10 ms
+        int frameSize;
+        if (config < 12) {
+            frameSize = new int[] { 100, 200, 400, 600 }[config & 3];
+        } else if (config < 16) {
+            frameSize = (config & 1) == 0 ? 100 : 200;
+        } else {
+            frameSize = new int[] { 25, 50, 100, 200 }[config & 3];
+        }
+        int frames;
+        switch (toc & 3) {
+            case 0:
+                frames = 1;
+                break;
+            case 3:
+                frames = packet.length > 1 ? Math.max(packet[1] & 0x3f, 1) : 1;
+                break;
+            default:
+                frames = 2;
+        }
+        return frames * frameSize * 48 / 10;
+    }
+
+    private void writeFragment() throws IOException {
+        byte[] fragment = muxer.flushFragment();
+        if (fragment != null) {
+            write(fragment);
+        }
+        fragmentStart = -1;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long position = bytesWritten;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        bytesWritten = position;
+    }
+
+    /**
+     * Forces the written fragments to the storage device. Fragments are written as soon as they are complete, so nothing is held back
+     * besides the fragment being built.
+     */
+    @Override
+    public synchronized void flush(boolean sync) throws IOException {
+        if (sync && channel != null) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Writes the last fragment and closes the file.
+     */
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (muxer == null && !held.isEmpty() && (videoConfig != null || audioConfig != null)) {
+                // a short recording, or one with a single track
+                createTracks();
+                List<ITag> replay = new ArrayList<>(held);
+                held.clear();
+                for (ITag heldTag : replay) {
+                    writeTag(heldTag);
+                }
+            }
+            if (muxer != null) {
+                if (pendingVideo != null) {
+                    addPendingVideo(lastVideoDuration);
+                }
+                writeFragment();
+            }
+            if (syncOnClose) {
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            log.warn("Exception writing the last fragment of {}", path, e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Exception closing {}", path, e);
+            }
+            channel = null;
+        }
+        log.debug("Recording closed: {} duration: {} bytes: {}", path, duration, bytesWritten);
+        if (postProcessors != null) {
+            for (IPostProcessor postProcessor : postProcessors) {
+                try {
+                    postProcessor.init(path.toString());
+                    postProcessor.run();
+                } catch (Throwable t) {
+                    log.warn("Exception during post process on: {}", path, t);
+                }
+            }
+            postProcessors.clear();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void addPostProcessor(IPostProcessor postProcessor) {
+        if (postProcessors == null) {
+            postProcessors = new LinkedList<>();
+        }
+        postProcessors.add(postProcessor);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IStreamableFile getFile() {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getOffset() {
+        return 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the duration of the media written so far.
+     *
+     * @return duration in milliseconds
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+    /**
+     * Sets the duration a fragment should reach before it is cut at the next video keyframe.
+     *
+     * @param fragmentDuration
+     *            duration in milliseconds
+     */
+    public void setFragmentDuration(int fragmentDuration) {
+        this.fragmentDuration = fragmentDuration;
+    }
+
+    /**
+     * Sets whether or not the file is forced to the storage device when it is closed.
+     *
+     * @param syncOnClose
+     *            true to sync on close
+     */
+    public void setSyncOnClose(boolean syncOnClose) {
+        this.syncOnClose = syncOnClose;
+    }
+
+    private static ITag copy(ITag tag) {
+        IoBuffer body = IoBuffer.wrap(copy(tag.getBody(), 0));
+        return new Tag(tag.getDataType(), tag.getTimestamp(), body.limit(), body, 0);
+    }
+
+    private static byte[] copy(IoBuffer data, int offset) {
+        int length = Math.max(data.limit() - offset, 0);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = data.get(offset + i);
+        }
+        return bytes;
+    }
+
+}
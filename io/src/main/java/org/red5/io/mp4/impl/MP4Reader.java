@@ -9,6 +9,8 @@ package org.red5.io.mp4.impl;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
@@ -64,6 +66,7 @@ import org.red5.io.IoConstants;
 import org.red5.io.amf.Output;
 import org.red5.io.flv.IKeyFrameDataAnalyzer;
 import org.red5.io.flv.impl.Tag;
+import org.red5.io.isobmff.FragmentedMP4Parser;
 import org.red5.io.isobmff.atom.ShortEsdsBox;
 import org.red5.io.mp4.MP4Frame;
 import org.red5.io.utils.HexDump;
@@ -232,6 +235,10 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
             parseMovie(dataSource);
             // analyze the samples/chunks and build the keyframe meta data
             analyzeFrames();
+            if (frames.isEmpty()) {
+                // a fragmented file keeps its samples in the movie fragments
+                analyzeFragments(f);
+            }
             // add meta data
             firstTags.add(createFileMeta());
             // create / add the pre-streaming (decoder config) tags
@@ -477,7 +484,10 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                                                     TimeToSampleEntry rec = records[0];
                                                     log.debug("Samples: {} duration: {} segment duration: {}", rec.getSampleCount(), rec.getSampleDuration(), rec.getSegmentDuration());
                                                 }
-                                                if (isAudio.get()) {
+                                                if (records.length == 0) {
+                                                    // fragmented, the samples are described by the movie fragments
+                                                    log.debug("No time to sample records");
+                                                } else if (isAudio.get()) {
                                                     log.debug("Audio time to samples: {}", records.length);
                                                     // if we have 1 record it means all samples have the same duration
                                                     audioSampleDuration = records[0].getSampleDuration();
@@ -699,6 +709,13 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                     log.debug("Process {} level: {} nal len: {} profile: {} compat: {}", avcC.getFourcc(), avcLevel, avcC.getNalLengthSize(), avcProfile, avcC.getProfileCompat());
                     avcC.getSpsList().forEach(sps -> log.debug("SPS: {}", sps));
                     avcC.getPpsList().forEach(pps -> log.debug("PPS: {}", pps));
+                    // the decoder configuration record is sent as is
+                    ByteBuffer record = ByteBuffer.allocate(avcC.estimateSize());
+                    avcC.doWrite(record);
+                    record.flip();
+                    videoDecoderBytes = new byte[record.remaining()];
+                    record.get(videoDecoderBytes);
+                    log.debug("Video config bytes: {}", HexDump.byteArrayToHexString(videoDecoderBytes));
                     break;
                 case "hvcC": // videoCodecId = "hvc1"
                     // hvc1 size 682 offset 581
@@ -1284,6 +1301,82 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         }
     }
 
+    /**
+     * Builds the frames of a fragmented file from its movie fragments. Only complete fragments are used, so a recording which is still being
+     * written plays up to its last complete fragment.
+     *
+     * @param f
+     *            file
+     */
+    private void analyzeFragments(File f) {
+        timePosMap = new HashMap<>();
+        // end of the last sample in milliseconds
+        long[] end = new long[1];
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            FragmentedMP4Parser.parse(channel, new FragmentedMP4Parser.Listener() {
+
+                int videoTrackId, audioTrackId;
+
+                double videoScale, audioScale;
+
+                @Override
+                public void track(int trackId, String handler, String fourcc, int timescale) {
+                    if ("vide".equals(handler) && videoTrackId == 0) {
+                        videoTrackId = trackId;
+                        videoScale = timescale;
+                    } else if ("soun".equals(handler) && audioTrackId == 0) {
+                        audioTrackId = trackId;
+                        audioScale = timescale;
+                    }
+                }
+
+                @Override
+                public void sample(int trackId, long offset, int size, long decodeTime, int sampleDuration, int compositionOffset, boolean sync) {
+                    double scale = trackId == videoTrackId ? videoScale : audioScale;
+                    if ((trackId != videoTrackId && trackId != audioTrackId) || scale <= 0) {
+                        return;
+                    }
+                    double ts = decodeTime / scale;
+                    MP4Frame frame = new MP4Frame();
+                    frame.setOffset(offset);
+                    frame.setSize(size);
+                    frame.setTime(ts);
+                    if (trackId == videoTrackId) {
+                        frame.setType(TYPE_VIDEO);
+                        frame.setKeyFrame(sync);
+                        frame.setTimeOffset(compositionOffset);
+                        if (sync) {
+                            if (seekPoints == null) {
+                                seekPoints = new LinkedList<>();
+                            }
+                            int frameTs = (int) Math.round(ts * 1000.0);
+                            seekPoints.add(frameTs);
+                            timePosMap.put(frameTs, offset);
+                        }
+                        videoSampleCount++;
+                    } else {
+                        frame.setType(TYPE_AUDIO);
+                    }
+                    frames.add(frame);
+                    end[0] = Math.max(end[0], Math.round((decodeTime + sampleDuration) * 1000.0 / scale));
+                }
+
+            });
+        } catch (IOException e) {
+            log.warn("Exception reading movie fragments", e);
+        }
+        Collections.sort(frames);
+        log.debug("Fragmented frames count: {} duration: {} ms", frames.size(), end[0]);
+        // the movie header of a fragmented file carries no duration
+        if (duration == 0 && end[0] > 0) {
+            if (timeScale == 0) {
+                timeScale = 1000;
+            }
+            duration = end[0] * timeScale / 1000;
+            fps = videoSampleCount * 1000.0 / end[0];
+        }
+    }
+
     /**
      * Put the current position to pos. The caller must ensure the pos is a valid one.
      *
@@ -0,0 +1,246 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.tls;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds a single SSLContext for a keystore and truststore pair, so that every connection accepted by a listener shares its key material and
+ * server session cache. The store files are checked for changes at most once per check interval and the context is rebuilt when either of
+ * them is replaced; connections established before a reload keep the context they were created with. If a reload fails the previous context
+ * stays in use.
+ * <p>
+ * Handshake counts are kept as well; a handshake is taken as resumed when its TLS session was created before the connection was opened.
+ *
+ * @author The Red5 Project
+ */
+public class ReloadableTLSContext {
+
+    private static final Logger log = LoggerFactory.getLogger(ReloadableTLSContext.class);
+
+    /**
+     * Length of the window over which the handshake rate is measured, in milliseconds
+     */
+    private static final long RATE_WINDOW = 10000L;
+
+    private final String storeType;
+
+    private final String keystorePassword, keystorePath;
+
+    private final String truststorePassword, truststorePath;
+
+    private volatile SSLContext context;
+
+    /**
+     * Modification stamps of the store files the current context was built from
+     */
+    private volatile long keystoreStamp, truststoreStamp;
+
+    private volatile long nextCheck;
+
+    private final AtomicBoolean reloading = new AtomicBoolean();
+
+    private int sessionCacheSize = 20000;
+
+    private int sessionTimeout = 86400;
+
+    private long checkInterval = 10000L;
+
+    private final AtomicLong handshakes = new AtomicLong(), resumed = new AtomicLong(), reloads = new AtomicLong();
+
+    private long rateWindowStart = System.currentTimeMillis(), rateWindowCount;
+
+    private volatile double handshakeRate;
+
+    /**
+     * Creates a context holder for the given stores; nothing is loaded until the context is first requested.
+     *
+     * @param storeType
+     *            JKS or PKCS12
+     * @param keystorePassword
+     *            keystore password
+     * @param keystorePath
+     *            keystore file
+     * @param truststorePassword
+     *            truststore password
+     * @param truststorePath
+     *            truststore file
+     */
+    public ReloadableTLSContext(String storeType, String keystorePassword, String keystorePath, String truststorePassword, String truststorePath) {
+        this.storeType = storeType;
+        this.keystorePassword = keystorePassword;
+        this.keystorePath = keystorePath;
+        this.truststorePassword = truststorePassword;
+        this.truststorePath = truststorePath;
+    }
+
+    /**
+     * Returns the current context, loading it on first use and reloading it if the store files changed since the last check.
+     *
+     * @return SSLContext
+     * @throws Exception
+     *             if no context could be loaded at all
+     */
+    public SSLContext getContext() throws Exception {
+        SSLContext current = context;
+        if (current == null) {
+            synchronized (this) {
+                if (context == null) {
+                    load();
+                }
+                return context;
+            }
+        }
+        long now = System.currentTimeMillis();
+        if (now >= nextCheck && reloading.compareAndSet(false, true)) {
+            try {
+                nextCheck = now + checkInterval;
+                if (stamp(keystorePath) != keystoreStamp || stamp(truststorePath) != truststoreStamp) {
+                    log.info("Keystore or truststore changed, reloading SSL context for {}", keystorePath);
+                    try {
+                        load();
+                        current = context;
+                    } catch (Exception e) {
+                        log.warn("Failed to reload SSL context for {}, keeping the current one", keystorePath, e);
+                    }
+                }
+            } finally {
+                reloading.set(false);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Loads the stores and replaces the current context.
+     *
+     * @throws Exception
+     *             if the stores could not be loaded
+     */
+    public void load() throws Exception {
+        // stamp before reading, a change made while loading is picked up by the next check
+        long ksStamp = stamp(keystorePath);
+        long tsStamp = stamp(truststorePath);
+        SSLContext sslContext = TLSFactory.getTLSContext(storeType, keystorePassword, keystorePath, truststorePassword, truststorePath);
+        SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+            sessionContext.setSessionTimeout(sessionTimeout);
+        }
+        log.debug("SSL provider is: {} session cache size: {} timeout: {}s", sslContext.getProvider(), sessionCacheSize, sessionTimeout);
+        keystoreStamp = ksStamp;
+        truststoreStamp = tsStamp;
+        if (context != null) {
+            reloads.incrementAndGet();
+        }
+        context = sslContext;
+        nextCheck = System.currentTimeMillis() + checkInterval;
+    }
+
+    /**
+     * Records a completed handshake.
+     *
+     * @param session
+     *            negotiated TLS session
+     * @param connected
+     *            time the connection was opened, in milliseconds
+     */
+    public void handshakeCompleted(SSLSession session, long connected) {
+        handshakes.incrementAndGet();
+        if (session != null && session.getCreationTime() < connected) {
+            resumed.incrementAndGet();
+        }
+        long now = System.currentTimeMillis();
+        synchronized (handshakes) {
+            rateWindowCount++;
+            long elapsed = now - rateWindowStart;
+            if (elapsed >= RATE_WINDOW) {
+                handshakeRate = rateWindowCount * 1000d / elapsed;
+                rateWindowCount = 0;
+                rateWindowStart = now;
+            }
+        }
+    }
+
+    private static long stamp(String path) {
+        File file = new File(path);
+        // the size catches a replacement within the timestamp resolution of the file system
+        return file.lastModified() * 31 + file.length();
+    }
+
+    /**
+     * Sets the number of TLS sessions kept for resumption.
+     *
+     * @param sessionCacheSize
+     *            number of sessions, 0 for no limit
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
+    /**
+     * Sets how long TLS sessions may be resumed.
+     *
+     * @param sessionTimeout
+     *            timeout in seconds, 0 for no limit
+     */
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * Sets how often the store files are checked for changes.
+     *
+     * @param checkInterval
+     *            interval in milliseconds
+     */
+    public void setCheckInterval(long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    public long getHandshakes() {
+        return handshakes.get();
+    }
+
+    public long getResumedHandshakes() {
+        return resumed.get();
+    }
+
+    /**
+     * Returns the share of handshakes which resumed an earlier session.
+     *
+     * @return ratio between 0 and 1
+     */
+    public double getResumptionRatio() {
+        long total = handshakes.get();
+        return total > 0 ? (double) resumed.get() / total : 0d;
+    }
+
+    /**
+     * Returns the handshakes per second measured over the last complete window.
+     *
+     * @return handshake rate
+     */
+    public double getHandshakeRate() {
+        return handshakeRate;
+    }
+
+    public long getReloads() {
+        return reloads.get();
+    }
+
+}
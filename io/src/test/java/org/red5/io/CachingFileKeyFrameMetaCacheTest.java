@@ -0,0 +1,112 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package org.red5.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+
+public class CachingFileKeyFrameMetaCacheTest {
+
+    private static KeyFrameMeta meta(int keyframes) {
+        KeyFrameMeta meta = new KeyFrameMeta();
+        meta.positions = new long[keyframes];
+        meta.timestamps = new int[keyframes];
+        for (int i = 0; i < keyframes; i++) {
+            meta.positions[i] = 13 + i * 1000;
+            meta.timestamps[i] = i * 2000;
+        }
+        meta.duration = keyframes * 2000;
+        return meta;
+    }
+
+    private static File tempFile() throws IOException {
+        File f = File.createTempFile("red5", "CachingMetaCacheTest");
+        f.deleteOnExit();
+        new File(f.getAbsolutePath() + ".meta").deleteOnExit();
+        return f;
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        CachingFileKeyFrameMetaCache cache = new CachingFileKeyFrameMetaCache();
+        File f = tempFile();
+        AtomicInteger analyzed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<KeyFrameMeta>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.loadKeyFrameMeta(f, file -> {
+                        analyzed.incrementAndGet();
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return meta(10);
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<KeyFrameMeta> result : results) {
+                Assert.assertEquals(10, result.get(5, TimeUnit.SECONDS).positions.length);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, analyzed.get());
+        Files.deleteIfExists(new File(f.getAbsolutePath() + ".meta").toPath());
+    }
+
+    @Test
+    public void testInvalidateOnModification() throws Exception {
+        CachingFileKeyFrameMetaCache cache = new CachingFileKeyFrameMetaCache();
+        File f = tempFile();
+        cache.saveKeyFrameMeta(f, meta(5));
+        Assert.assertEquals(5, cache.loadKeyFrameMeta(f).positions.length);
+        Files.write(f.toPath(), new byte[] { 1, 2, 3 });
+        f.setLastModified(f.lastModified() + 5000);
+        // both the memory entry and the meta file are stale now
+        Assert.assertNull(cache.loadKeyFrameMeta(f));
+        Assert.assertEquals(0, cache.getCacheSize());
+        Assert.assertEquals(7, cache.loadKeyFrameMeta(f, file -> meta(7)).positions.length);
+        Files.deleteIfExists(new File(f.getAbsolutePath() + ".meta").toPath());
+    }
+
+    @Test
+    public void testWeightEviction() throws Exception {
+        CachingFileKeyFrameMetaCache cache = new CachingFileKeyFrameMetaCache();
+        // room for roughly two indexes of 1000 keyframes
+        cache.setMaxCacheWeight(25000);
+        File[] files = new File[4];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = tempFile();
+            cache.saveKeyFrameMeta(files[i], meta(1000));
+            Assert.assertTrue(cache.getCacheWeight() <= 25000);
+        }
+        Assert.assertEquals(2, cache.getCacheSize());
+        for (File f : files) {
+            Files.deleteIfExists(new File(f.getAbsolutePath() + ".meta").toPath());
+        }
+    }
+
+}
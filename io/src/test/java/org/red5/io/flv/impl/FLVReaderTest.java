@@ -9,6 +9,7 @@ import java.nio.file.Paths;
 
 import org.junit.Test;
 import org.red5.io.ITag;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -129,4 +130,69 @@ public class FLVReaderTest {
         }
     }
 
+    @Test
+    public void testLazyKeyFrameAnalysis() throws IOException {
+        log.info("\n testLazyKeyFrameAnalysis");
+        File file = Paths.get("target/test-classes/fixtures/h264_aac.flv").toFile();
+        if (!file.exists()) {
+            log.info("File couldn't be accessed or doesnt exist: {}", file.getName());
+            return;
+        }
+        // analyze on open
+        FLVReader.setLazyKeyFrameAnalysis(false);
+        FLVReader reader = new FLVReader(file, true);
+        assertTrue(reader.isKeyFrameAnalysisComplete());
+        KeyFrameMeta expected = reader.analyzeKeyFrames();
+        reader.close();
+        // analyze in the background, tags are available right away
+        FLVReader.setLazyKeyFrameAnalysis(true);
+        reader = new FLVReader(file, true);
+        ITag tag = reader.readTag();
+        assertNotNull(tag);
+        assertEquals(ITag.TYPE_METADATA, tag.getDataType());
+        // partial metadata must cover the requested timestamp
+        int last = expected.timestamps[expected.timestamps.length - 1];
+        KeyFrameMeta partial = reader.analyzeKeyFrames(last);
+        assertTrue(partial.timestamps[partial.timestamps.length - 1] >= last);
+        KeyFrameMeta meta = reader.analyzeKeyFrames();
+        assertTrue(reader.isKeyFrameAnalysisComplete());
+        assertEquals(expected.duration, meta.duration);
+        assertEquals(expected.videoCodecId, meta.videoCodecId);
+        assertEquals(expected.audioCodecId, meta.audioCodecId);
+        assertArrayEquals(expected.positions, meta.positions);
+        assertArrayEquals(expected.timestamps, meta.timestamps);
+        reader.close();
+    }
+
+    @Test
+    public void testMappedBodies() throws IOException {
+        log.info("\n testMappedBodies");
+        File file = Paths.get("target/test-classes/fixtures/h264_aac.flv").toFile();
+        if (!file.exists()) {
+            log.info("File couldn't be accessed or doesnt exist: {}", file.getName());
+            return;
+        }
+        // generated metadata depends on the key frame analysis, so both readers analyze on open
+        FLVReader.setLazyKeyFrameAnalysis(false);
+        FLVReader.setMappedBodies(false);
+        FLVReader copied = new FLVReader(file, true);
+        FLVReader.setMappedBodies(true);
+        FLVReader mapped = new FLVReader(file, true);
+        FLVReader.setMappedBodies(false);
+        int tags = 0;
+        while (copied.hasMoreTags()) {
+            assertTrue(mapped.hasMoreTags());
+            ITag expected = copied.readTag();
+            ITag tag = mapped.readTag();
+            assertEquals(expected.getDataType(), tag.getDataType());
+            assertEquals(expected.getTimestamp(), tag.getTimestamp());
+            assertEquals(expected.getBody(), tag.getBody());
+            tags++;
+        }
+        assertFalse(mapped.hasMoreTags());
+        assertTrue(tags > 0);
+        copied.close();
+        mapped.close();
+    }
+
 }
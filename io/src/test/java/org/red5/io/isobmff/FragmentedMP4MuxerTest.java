@@ -0,0 +1,85 @@
+package org.red5.io.isobmff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.io.ITag;
+import org.red5.io.IoConstants;
+import org.red5.io.flv.impl.FLVReader;
+import org.red5.io.isobmff.FragmentedMP4Muxer.Track;
+
+public class FragmentedMP4MuxerTest {
+
+    private static byte[] body(ITag tag, int offset) {
+        IoBuffer data = tag.getBody();
+        byte[] bytes = new byte[data.limit() - offset];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(offset + i);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the types of the boxes at the top level of the given data, checking that their sizes add up.
+     */
+    private static List<String> boxes(byte[] data) {
+        List<String> types = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.remaining() >= 8) {
+            int size = buf.getInt();
+            byte[] type = new byte[4];
+            buf.get(type);
+            types.add(new String(type, StandardCharsets.US_ASCII));
+            assertTrue(size >= 8 && size - 8 <= buf.remaining());
+            buf.position(buf.position() + size - 8);
+        }
+        assertEquals(0, buf.remaining());
+        return types;
+    }
+
+    @Test
+    public void testFromFLV() throws Exception {
+        FLVReader reader = new FLVReader(new File("target/test-classes/fixtures/h264_aac.flv"));
+        FragmentedMP4Muxer muxer = new FragmentedMP4Muxer();
+        Track video = null;
+        Track audio = null;
+        int samples = 0;
+        while (reader.hasMoreTags() && samples < 100) {
+            ITag tag = reader.readTag();
+            IoBuffer body = tag.getBody();
+            if (tag.getDataType() == IoConstants.TYPE_VIDEO && body.get(1) == 0 && video == null) {
+                video = muxer.addVideoTrack("avc1", body(tag, 5), 0, 0);
+            } else if (tag.getDataType() == IoConstants.TYPE_AUDIO && body.get(1) == 0 && audio == null) {
+                audio = muxer.addAudioTrack(body(tag, 2));
+            } else if (video != null && audio != null) {
+                if (tag.getDataType() == IoConstants.TYPE_VIDEO && body.get(1) == 1) {
+                    muxer.addSample(video, body(tag, 5), tag.getTimestamp() * 90L, 3000, 0, (body.get(0) & 0xf0) == 0x10);
+                    samples++;
+                } else if (tag.getDataType() == IoConstants.TYPE_AUDIO && body.get(1) == 1) {
+                    muxer.addSample(audio, body(tag, 2), tag.getTimestamp() * audio.getTimescale() / 1000L, 1024, 0, true);
+                    samples++;
+                }
+            }
+        }
+        reader.close();
+        assertNotNull(video);
+        assertNotNull(audio);
+        assertTrue(video.getWidth() > 0 && video.getHeight() > 0);
+        assertTrue(audio.getTimescale() > 0 && audio.getChannels() > 0);
+        assertEquals(List.of("ftyp", "moov"), boxes(muxer.getInitSegment()));
+        byte[] fragment = muxer.flushFragment();
+        assertEquals(List.of("moof", "mdat"), boxes(fragment));
+        assertNull(muxer.flushFragment());
+    }
+
+}
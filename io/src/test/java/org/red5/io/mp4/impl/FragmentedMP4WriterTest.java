@@ -0,0 +1,115 @@
+package org.red5.io.mp4.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+import org.red5.io.ITag;
+import org.red5.io.IoConstants;
+import org.red5.io.flv.impl.FLVReader;
+import org.red5.io.isobmff.FragmentedMP4Parser;
+
+public class FragmentedMP4WriterTest {
+
+    private Path path;
+
+    @After
+    public void tearDown() throws Exception {
+        if (path != null) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Writes the first tags of the fixture, returning the number of media tags written.
+     */
+    private static int record(FragmentedMP4Writer writer, int maxTimestamp) throws Exception {
+        FLVReader reader = new FLVReader(new File("target/test-classes/fixtures/h264_aac.flv"));
+        int media = 0;
+        while (reader.hasMoreTags()) {
+            ITag tag = reader.readTag();
+            if (tag.getTimestamp() > maxTimestamp) {
+                break;
+            }
+            writer.writeTag(tag);
+            if (tag.getDataType() != IoConstants.TYPE_METADATA && tag.getBody().get(1) == 1) {
+                media++;
+            }
+        }
+        reader.close();
+        return media;
+    }
+
+    private static int countSamples(Path path, AtomicLong end) throws Exception {
+        AtomicInteger samples = new AtomicInteger();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            end.set(FragmentedMP4Parser.parse(channel, (trackId, offset, size, decodeTime, duration, compositionOffset, sync) -> samples.incrementAndGet()));
+        }
+        return samples.get();
+    }
+
+    @Test
+    public void testPlayableWhileGrowing() throws Exception {
+        path = Files.createTempFile("fmp4", ".mp4");
+        FragmentedMP4Writer writer = new FragmentedMP4Writer(path, false);
+        int media = record(writer, 10000);
+        // complete fragments are on disk before the writer is closed
+        long growing = Files.size(path);
+        assertTrue(growing > 0);
+        AtomicLong end = new AtomicLong();
+        int written = countSamples(path, end);
+        assertTrue(written > 0 && written < media);
+        assertEquals(growing, end.get());
+        MP4Reader reader = new MP4Reader(path.toFile());
+        assertTrue(reader.hasVideo());
+        assertTrue(reader.getDuration() > 0);
+        int tags = 0;
+        while (reader.hasMoreTags()) {
+            if (reader.readTag() != null) {
+                tags++;
+            }
+        }
+        reader.close();
+        // metadata and both decoder configurations come first
+        assertEquals(written + 3, tags);
+        writer.close();
+        assertEquals(media, countSamples(path, end));
+    }
+
+    @Test
+    public void testCrashAndAppend() throws Exception {
+        path = Files.createTempFile("fmp4", ".mp4");
+        FragmentedMP4Writer writer = new FragmentedMP4Writer(path, false);
+        record(writer, 5000);
+        writer.close();
+        AtomicLong end = new AtomicLong();
+        int samples = countSamples(path, end);
+        // a fragment cut off by a crash is ignored
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer partial = ByteBuffer.allocate(64);
+            partial.putInt(4096).put("moof".getBytes()).rewind();
+            channel.write(partial);
+        }
+        assertEquals(samples, countSamples(path, new AtomicLong()));
+        // appending continues after the last complete fragment
+        writer = new FragmentedMP4Writer(path, true);
+        assertEquals(end.get(), writer.getBytesWritten());
+        int duration = writer.getDuration();
+        assertTrue(duration >= 5000);
+        int media = record(writer, 5000);
+        writer.close();
+        assertEquals(samples + media, countSamples(path, new AtomicLong()));
+        assertTrue(writer.getDuration() >= duration + 5000);
+    }
+
+}
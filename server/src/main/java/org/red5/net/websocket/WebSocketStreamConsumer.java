@@ -0,0 +1,524 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.net.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.codec.IAudioStreamCodec;
+import org.red5.codec.IStreamCodecInfo;
+import org.red5.codec.IVideoStreamCodec;
+import org.red5.codec.StreamCodecInfo;
+import org.red5.io.IoConstants;
+import org.red5.server.api.scope.IBroadcastScope;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.service.IStreamSecurityService;
+import org.red5.server.api.stream.IBroadcastStream;
+import org.red5.server.api.stream.IStreamPlaybackSecurity;
+import org.red5.server.messaging.IMessage;
+import org.red5.server.messaging.IMessageComponent;
+import org.red5.server.messaging.IPipe;
+import org.red5.server.messaging.IPipeConnectionListener;
+import org.red5.server.messaging.IPushableConsumer;
+import org.red5.server.messaging.OOBControlMessage;
+import org.red5.server.messaging.PipeConnectionEvent;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.event.VideoData.FrameType;
+import org.red5.server.stream.message.RTMPMessage;
+import org.red5.server.util.ScopeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consumer of a live broadcast which sends the stream as FLV to WebSocket viewers, one tag per binary message, for players such as flv.js.
+ * <p>
+ * There is one consumer per broadcast, subscribed while it has viewers. Each tag is framed once into a buffer which is shared by all
+ * viewers. Viewers have their own send queue with a single send in flight; when a queue backs up video is dropped up to the next keyframe,
+ * and a keyframe arriving at a backed up queue replaces the media still waiting in it. New viewers get the FLV header, the metadata and
+ * the decoder configurations, then the media from the next keyframe. Media tags keep the broadcast timestamps, so they are sent from the
+ * shared buffers as they are; the metadata and configurations a viewer starts with are stamped with the timestamp of its first media.
+ *
+ * @author The Red5 Project
+ */
+public class WebSocketStreamConsumer implements IPushableConsumer, IPipeConnectionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(WebSocketStreamConsumer.class);
+
+    /**
+     * Active consumers by scope path and stream name
+     */
+    private static final ConcurrentMap<String, WebSocketStreamConsumer> consumers = new ConcurrentHashMap<>();
+
+    /**
+     * FLV header for a file with audio and video, followed by the first previous tag size
+     */
+    private static final byte[] FLV_HEADER = { 'F', 'L', 'V', 1, 5, 0, 0, 0, 9, 0, 0, 0, 0 };
+
+    private final String key;
+
+    private final IBroadcastScope broadcastScope;
+
+    private final Set<Viewer> viewers = new CopyOnWriteArraySet<>();
+
+    private volatile Frame metaData, videoConfig, audioConfig;
+
+    /**
+     * Whether the broadcast carries video, in which case viewers start at a keyframe
+     */
+    private volatile boolean video;
+
+    private WebSocketStreamConsumer(String key, IBroadcastScope broadcastScope) {
+        this.key = key;
+        this.broadcastScope = broadcastScope;
+    }
+
+    /**
+     * Starts sending a live broadcast to a WebSocket connection.
+     *
+     * @param scope
+     *            scope of the broadcast
+     * @param name
+     *            stream name
+     * @param conn
+     *            WebSocket connection
+     * @param maxQueuedBytes
+     *            size of the viewer's send queue above which media is dropped
+     * @return true if the broadcast exists, playback is allowed and the connection was added
+     */
+    public static boolean attach(IScope scope, String name, WebSocketConnection conn, long maxQueuedBytes) {
+        IStreamSecurityService security = (IStreamSecurityService) ScopeUtils.getScopeService(scope, IStreamSecurityService.class);
+        if (security != null) {
+            for (IStreamPlaybackSecurity handler : security.getStreamPlaybackSecurity()) {
+                // live only, from the current position
+                if (!handler.isPlaybackAllowed(scope, name, -1, -1, false)) {
+                    log.warn("Playback of {} is not allowed for {}", name, conn);
+                    return false;
+                }
+            }
+        }
+        String key = String.format("%s/%s", scope.getContextPath(), name);
+        Viewer viewer = new Viewer(conn, maxQueuedBytes);
+        WebSocketStreamConsumer consumer = consumers.compute(key, (k, existing) -> {
+            if (existing == null) {
+                IBroadcastScope broadcastScope = scope.getBroadcastScope(name);
+                if (broadcastScope == null) {
+                    return null;
+                }
+                existing = new WebSocketStreamConsumer(k, broadcastScope);
+                existing.loadConfigurations();
+                if (!broadcastScope.subscribe(existing, null)) {
+                    log.warn("Subscribe to {} failed", k);
+                    return null;
+                }
+                log.debug("Subscribed to {}", k);
+            }
+            existing.start(viewer);
+            return existing;
+        });
+        if (consumer != null) {
+            conn.setAttribute(WebSocketStreamConsumer.class.getName(), consumer);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stops sending to a WebSocket connection, unsubscribing from the broadcast when it was the last viewer.
+     *
+     * @param conn
+     *            WebSocket connection
+     */
+    public static void detach(WebSocketConnection conn) {
+        Object attr = conn.getAttribute(WebSocketStreamConsumer.class.getName());
+        if (attr instanceof WebSocketStreamConsumer) {
+            WebSocketStreamConsumer consumer = (WebSocketStreamConsumer) attr;
+            consumers.computeIfPresent(consumer.key, (k, existing) -> {
+                existing.viewers.removeIf(viewer -> viewer.conn == conn);
+                if (existing.viewers.isEmpty()) {
+                    existing.broadcastScope.unsubscribe(existing);
+                    log.debug("Unsubscribed from {}", k);
+                    return null;
+                }
+                return existing;
+            });
+        }
+    }
+
+    /**
+     * Reads the metadata and decoder configurations the broadcast has already seen.
+     */
+    private void loadConfigurations() {
+        IBroadcastStream stream = broadcastScope.getClientBroadcastStream();
+        if (stream != null) {
+            Notify notify = stream.getMetaData();
+            if (notify != null && notify.getData() != null) {
+                metaData = new Frame(IoConstants.TYPE_METADATA, 0, notify.getData(), Frame.CONFIG);
+            }
+            IStreamCodecInfo codecInfo = stream.getCodecInfo();
+            if (codecInfo instanceof StreamCodecInfo) {
+                IVideoStreamCodec videoCodec = ((StreamCodecInfo) codecInfo).getVideoCodec();
+                if (videoCodec != null && videoCodec.getDecoderConfiguration() != null) {
+                    video = true;
+                    videoConfig = new Frame(IoConstants.TYPE_VIDEO, 0, videoCodec.getDecoderConfiguration(), Frame.CONFIG);
+                }
+                IAudioStreamCodec audioCodec = ((StreamCodecInfo) codecInfo).getAudioCodec();
+                if (audioCodec != null && audioCodec.getDecoderConfiguration() != null) {
+                    audioConfig = new Frame(IoConstants.TYPE_AUDIO, 0, audioCodec.getDecoderConfiguration(), Frame.CONFIG);
+                }
+            }
+        }
+    }
+
+    private void start(Viewer viewer) {
+        viewer.offer(new Frame(ByteBuffer.wrap(FLV_HEADER).asReadOnlyBuffer(), Frame.CONFIG), video);
+        for (Frame config : new Frame[] { metaData, videoConfig, audioConfig }) {
+            if (config != null) {
+                viewer.offer(config, video);
+            }
+        }
+        viewers.add(viewer);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void pushMessage(IPipe pipe, IMessage message) {
+        if (message instanceof RTMPMessage) {
+            IRTMPEvent event = ((RTMPMessage) message).getBody();
+            Frame frame = null;
+            if (event instanceof VideoData) {
+                this.video = true;
+                VideoData video = (VideoData) event;
+                if (video.isConfig()) {
+                    frame = videoConfig = new Frame(IoConstants.TYPE_VIDEO, video.getTimestamp(), video.getData(), Frame.CONFIG);
+                } else {
+                    frame = new Frame(IoConstants.TYPE_VIDEO, video.getTimestamp(), video.getData(), video.getFrameType() == FrameType.KEYFRAME ? Frame.KEYFRAME : Frame.INTERFRAME);
+                }
+            } else if (event instanceof AudioData) {
+                AudioData audio = (AudioData) event;
+                if (audio.isConfig()) {
+                    frame = audioConfig = new Frame(IoConstants.TYPE_AUDIO, audio.getTimestamp(), audio.getData(), Frame.CONFIG);
+                } else {
+                    frame = new Frame(IoConstants.TYPE_AUDIO, audio.getTimestamp(), audio.getData(), Frame.AUDIO);
+                }
+            } else if (event instanceof Notify && event.getDataType() == IoConstants.TYPE_METADATA) {
+                frame = metaData = new Frame(IoConstants.TYPE_METADATA, event.getTimestamp(), ((Notify) event).getData(), Frame.CONFIG);
+            }
+            if (frame != null && frame.data.limit() > Frame.HEADER_SIZE + 4) {
+                for (Viewer viewer : viewers) {
+                    viewer.offer(frame, video);
+                }
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onPipeConnectionEvent(PipeConnectionEvent event) {
+        if (event.getType() == PipeConnectionEvent.EventType.PROVIDER_DISCONNECT) {
+            log.debug("Provider disconnected from {}", key);
+            for (Viewer viewer : viewers) {
+                viewer.conn.close(CloseCodes.NORMAL_CLOSURE, "Stream unpublished");
+                detach(viewer.conn);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onOOBControlMessage(IMessageComponent source, IPipe pipe, OOBControlMessage oobCtrlMsg) {
+    }
+
+    /**
+     * Returns the number of connections the broadcast is sent to.
+     *
+     * @return viewer count
+     */
+    public int getViewerCount() {
+        return viewers.size();
+    }
+
+    /**
+     * Returns the consumer of a broadcast, if it has viewers.
+     *
+     * @param scope
+     *            scope of the broadcast
+     * @param name
+     *            stream name
+     * @return consumer or null
+     */
+    public static WebSocketStreamConsumer getConsumer(IScope scope, String name) {
+        return consumers.get(String.format("%s/%s", scope.getContextPath(), name));
+    }
+
+    /**
+     * FLV tag framed once for all viewers.
+     */
+    static final class Frame {
+
+        static final int CONFIG = 0, KEYFRAME = 1, INTERFRAME = 2, AUDIO = 3;
+
+        /**
+         * Size of the tag header, the tag ends with the 4 byte size of the header and body
+         */
+        static final int HEADER_SIZE = 11;
+
+        final ByteBuffer data;
+
+        final int kind;
+
+        /**
+         * Timestamp of the tag, -1 for data which is not a tag
+         */
+        final int timestamp;
+
+        Frame(ByteBuffer data, int kind) {
+            this.data = data;
+            this.kind = kind;
+            this.timestamp = -1;
+        }
+
+        Frame(byte type, int timestamp, IoBuffer body, int kind) {
+            int size = body.limit();
+            ByteBuffer tag = ByteBuffer.allocate(HEADER_SIZE + size + 4);
+            tag.put(type);
+            tag.put((byte) (size >>> 16)).put((byte) (size >>> 8)).put((byte) size);
+            tag.put((byte) (timestamp >>> 16)).put((byte) (timestamp >>> 8)).put((byte) timestamp).put((byte) (timestamp >>> 24));
+            // stream id
+            tag.put((byte) 0).put((byte) 0).put((byte) 0);
+            tag.put(body.buf().duplicate().rewind());
+            tag.putInt(HEADER_SIZE + size);
+            this.data = tag.flip().asReadOnlyBuffer();
+            this.kind = kind;
+            this.timestamp = timestamp;
+        }
+
+        private Frame(ByteBuffer data, int kind, int timestamp) {
+            this.data = data;
+            this.kind = kind;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * Returns the tag with another timestamp, a copy unless it already has that timestamp.
+         *
+         * @param ts
+         *            timestamp
+         * @return frame
+         */
+        Frame at(int ts) {
+            if (timestamp < 0 || ts == timestamp) {
+                return this;
+            }
+            ByteBuffer tag = ByteBuffer.allocate(data.limit()).put(data.duplicate().rewind());
+            tag.put(4, (byte) (ts >>> 16)).put(5, (byte) (ts >>> 8)).put(6, (byte) ts).put(7, (byte) (ts >>> 24));
+            return new Frame(tag.flip().asReadOnlyBuffer(), kind, ts);
+        }
+
+    }
+
+    /**
+     * Send queue of one WebSocket connection.
+     */
+    static class Viewer implements SendHandler {
+
+        final WebSocketConnection conn;
+
+        final long maxQueuedBytes;
+
+        final ArrayDeque<Frame> queue = new ArrayDeque<>();
+
+        /**
+         * Metadata and configurations waiting for the first media, whose timestamp they are sent with
+         */
+        final List<Frame> held = new ArrayList<>(3);
+
+        long queuedBytes;
+
+        boolean waitKeyframe = true, started, sending, draining, closed;
+
+        long dropped;
+
+        Viewer(WebSocketConnection conn, long maxQueuedBytes) {
+            this.conn = conn;
+            this.maxQueuedBytes = maxQueuedBytes;
+        }
+
+        /**
+         * Queues a frame for sending, or drops it when the queue is backed up. The viewer is closed if sending fails.
+         *
+         * @param frame
+         *            frame
+         * @param video
+         *            whether the broadcast carries video, in which case the viewer starts at a keyframe
+         */
+        void offer(Frame frame, boolean video) {
+            if (!queue(frame, video)) {
+                close();
+            }
+        }
+
+        /**
+         * Queues a frame and starts sending it.
+         *
+         * @return false if sending failed
+         */
+        private synchronized boolean queue(Frame frame, boolean video) {
+            if (closed) {
+                return true;
+            }
+            switch (frame.kind) {
+                case Frame.KEYFRAME:
+                    if (queuedBytes > maxQueuedBytes) {
+                        // the keyframe makes everything waiting in the queue obsolete
+                        for (Iterator<Frame> it = queue.iterator(); it.hasNext();) {
+                            Frame queued = it.next();
+                            if (queued.kind != Frame.CONFIG) {
+                                it.remove();
+                                queuedBytes -= queued.data.limit();
+                                dropped++;
+                            }
+                        }
+                    }
+                    waitKeyframe = false;
+                    break;
+                case Frame.INTERFRAME:
+                    if (!waitKeyframe && queuedBytes > maxQueuedBytes) {
+                        log.debug("Send queue of {} is backed up, dropping video to the next keyframe", conn);
+                        waitKeyframe = true;
+                    }
+                    if (waitKeyframe) {
+                        dropped++;
+                        return true;
+                    }
+                    break;
+                case Frame.AUDIO:
+                    if ((video && !started) || queuedBytes > 2 * maxQueuedBytes) {
+                        dropped++;
+                        return true;
+                    }
+                    break;
+                default:
+                    if (!started && frame.timestamp >= 0) {
+                        held.add(frame);
+                        return true;
+                    }
+            }
+            if (!started && frame.kind != Frame.CONFIG) {
+                started = true;
+                for (Frame config : held) {
+                    enqueue(config.at(frame.timestamp));
+                }
+                held.clear();
+            }
+            enqueue(frame);
+            return drain();
+        }
+
+        private void enqueue(Frame frame) {
+            queue.offer(frame);
+            queuedBytes += frame.data.limit();
+        }
+
+        /**
+         * Sends queued frames until one is in flight.
+         *
+         * @return false if sending failed
+         */
+        private boolean drain() {
+            if (draining) {
+                return true;
+            }
+            draining = true;
+            try {
+                Frame frame;
+                while (!sending && (frame = queue.poll()) != null) {
+                    queuedBytes -= frame.data.limit();
+                    sending = true;
+                    send(frame.data.duplicate());
+                }
+                return true;
+            } catch (Exception e) {
+                log.debug("Send to {} failed, {} frames dropped", conn, dropped, e);
+                return fail();
+            } finally {
+                draining = false;
+            }
+        }
+
+        /**
+         * Stops sending after a failed send.
+         *
+         * @return false if the viewer was still open
+         */
+        private boolean fail() {
+            sending = false;
+            queue.clear();
+            queuedBytes = 0;
+            held.clear();
+            if (closed) {
+                return true;
+            }
+            closed = true;
+            return false;
+        }
+
+        /**
+         * Starts sending a frame; {@link #onResult(SendResult)} is called once it has been sent.
+         *
+         * @param data
+         *            frame data
+         */
+        void send(ByteBuffer data) {
+            conn.updateWriteBytes(data.remaining());
+            conn.getWsSession().getAsyncRemote().sendBinary(data, this);
+        }
+
+        /**
+         * Closes the connection after a failed send and stops sending the broadcast to it.
+         */
+        void close() {
+            conn.close(CloseCodes.UNEXPECTED_CONDITION, "Send failed");
+            detach(conn);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onResult(SendResult result) {
+            boolean ok;
+            synchronized (this) {
+                sending = false;
+                if (result.isOK()) {
+                    ok = drain();
+                } else {
+                    log.debug("Send to {} failed, {} frames dropped", conn, dropped, result.getException());
+                    ok = fail();
+                }
+            }
+            if (!ok) {
+                close();
+            }
+        }
+
+    }
+
+}
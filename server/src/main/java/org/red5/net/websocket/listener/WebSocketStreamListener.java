@@ -0,0 +1,85 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.net.websocket.listener;
+
+import javax.websocket.CloseReason.CloseCodes;
+
+import org.red5.net.websocket.WebSocketConnection;
+import org.red5.net.websocket.WebSocketScope;
+import org.red5.net.websocket.WebSocketStreamConsumer;
+import org.red5.net.websocket.model.WSMessage;
+import org.red5.server.api.scope.IScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WebSocket data listener which plays live streams. Connections name the stream in the "stream" query string parameter, for example
+ * <code>ws://host:5080/live/?stream=stream1</code>, and receive it as FLV, see {@link WebSocketStreamConsumer}. Connections which
+ * negotiated a subprotocol other than this listener's protocol ("flv" by default) are left alone. Viewer connections should not be used to
+ * send other messages.
+ *
+ * @author The Red5 Project
+ */
+public class WebSocketStreamListener extends WebSocketDataListener {
+
+    private static final Logger log = LoggerFactory.getLogger(WebSocketStreamListener.class);
+
+    /**
+     * Size of a viewer's send queue above which media is dropped
+     */
+    private long maxQueuedBytes = 1024 * 1024;
+
+    public WebSocketStreamListener() {
+        protocol = "flv";
+    }
+
+    @Override
+    public void onWSConnect(WebSocketConnection conn) {
+        String subprotocol = conn.hasProtocol() ? conn.getProtocol() : conn.getWsSession().getNegotiatedSubprotocol();
+        Object name = conn.getQuerystringParameters().get("stream");
+        if (name == null || (subprotocol != null && !subprotocol.isEmpty() && !protocol.equals(subprotocol))) {
+            // not a viewer
+            return;
+        }
+        WebSocketScope wsScope = conn.getScope();
+        IScope scope = wsScope != null ? wsScope.getScope() : null;
+        if (scope == null) {
+            log.debug("No scope for {}", conn);
+            conn.close(CloseCodes.CANNOT_ACCEPT, "No scope");
+        } else if (!WebSocketStreamConsumer.attach(scope, name.toString(), conn, maxQueuedBytes)) {
+            log.debug("Stream {} not found or not allowed for {}", name, conn);
+            conn.close(CloseCodes.CANNOT_ACCEPT, "Stream not available");
+        } else {
+            log.debug("Playing {} to {}", name, conn);
+        }
+    }
+
+    @Override
+    public void onWSDisconnect(WebSocketConnection conn) {
+        WebSocketStreamConsumer.detach(conn);
+    }
+
+    @Override
+    public void onWSMessage(WSMessage message) {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    /**
+     * Sets the size of a viewer's send queue above which video is dropped up to the next keyframe; audio is dropped above twice that.
+     *
+     * @param maxQueuedBytes
+     *            size in bytes
+     */
+    public void setMaxQueuedBytes(long maxQueuedBytes) {
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+}
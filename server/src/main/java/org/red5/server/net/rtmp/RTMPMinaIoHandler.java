@@ -206,6 +206,11 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
                     case RTMP.STATE_CONNECTED:
                         if (message instanceof Packet) {
                             handler.messageSent(conn, (Packet) message);
+                        } else if (message instanceof Packet[]) {
+                            // coalesced write
+                            for (Packet packet : (Packet[]) message) {
+                                handler.messageSent(conn, packet);
+                            }
                         } else if (isDebug) {
                             log.debug("Message was not of Packet type; its type: {}", message != null ? message.getClass().getName() : "null");
                         }
@@ -8,19 +8,24 @@
 package org.red5.server.net.rtmps;
 
 import java.io.NotActiveException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.Provider;
 import java.security.Security;
 import java.util.Arrays;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
 
 import org.apache.mina.core.filterchain.IoFilterChain;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.ssl.SslFilter;
-import org.red5.io.tls.TLSFactory;
+import org.red5.io.tls.ReloadableTLSContext;
+import org.red5.server.jmx.mxbeans.RTMPSMinaIoHandlerMXBean;
 import org.red5.server.net.rtmp.InboundHandshake;
 import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.RTMPHandler;
@@ -28,6 +33,8 @@ import org.red5.server.net.rtmp.RTMPMinaConnection;
 import org.red5.server.net.rtmp.RTMPMinaIoHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 
 /**
  * Handles Native RTMPS protocol events fired by the MINA framework.
@@ -48,7 +55,7 @@ import org.slf4j.LoggerFactory;
  * @author Kevin Green (kevygreen@gmail.com)
  * @author Paul Gregoire (mondain@gmail.com)
  */
-public class RTMPSMinaIoHandler extends RTMPMinaIoHandler {
+public class RTMPSMinaIoHandler extends RTMPMinaIoHandler implements RTMPSMinaIoHandlerMXBean, InitializingBean, DisposableBean {
 
     private static Logger log = LoggerFactory.getLogger(RTMPSMinaIoHandler.class);
 
@@ -88,6 +95,28 @@ public class RTMPSMinaIoHandler extends RTMPMinaIoHandler {
      */
     private boolean wantClientAuth;
 
+    /**
+     * Number of TLS sessions kept for resumption.
+     */
+    private int sessionCacheSize = 20000;
+
+    /**
+     * Lifetime of TLS sessions kept for resumption, in seconds.
+     */
+    private int sessionTimeout = 86400;
+
+    /**
+     * Interval at which the keystore and truststore are checked for changes, in milliseconds.
+     */
+    private long keystoreCheckInterval = 10000L;
+
+    /**
+     * SSL context shared by the sessions of this handler.
+     */
+    private volatile ReloadableTLSContext tlsContext;
+
+    private ObjectName objectName;
+
     static {
         if (log.isTraceEnabled()) {
             Provider[] providers = Security.getProviders();
@@ -97,41 +126,80 @@ public class RTMPSMinaIoHandler extends RTMPMinaIoHandler {
         }
     }
 
+    /**
+     * Creates the shared SSL context and registers the handshake statistics.
+     */
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        try {
+            getTLSContext().getContext();
+        } catch (Exception e) {
+            log.warn("SSL context could not be created, RTMPS connections will be refused until it is", e);
+        }
+        String name = keystorePath != null ? Paths.get(keystorePath).getFileName().toString() : "default";
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(String.format("org.red5.server:type=RTMPSMinaIoHandler,name=%s,id=%d", ObjectName.quote(name), System.identityHashCode(this)));
+            mbs.registerMBean(new StandardMBean(this, RTMPSMinaIoHandlerMXBean.class, true), objectName);
+        } catch (Exception e) {
+            log.warn("Error on jmx registration", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void destroy() throws Exception {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                log.warn("Error on jmx unregistration", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the context holder shared by all sessions of this handler, creating it on first use.
+     */
+    private ReloadableTLSContext getTLSContext() throws NotActiveException {
+        ReloadableTLSContext ctx = tlsContext;
+        if (ctx == null) {
+            synchronized (this) {
+                if ((ctx = tlsContext) == null) {
+                    if (keystorePath == null || truststorePath == null) {
+                        throw new NotActiveException("Keystore or truststore are null");
+                    }
+                    // determine the keystore type by the file extension
+                    String keyStoreType = keystorePath.lastIndexOf(".p12") > 0 ? "PKCS12" : "JKS";
+                    ctx = new ReloadableTLSContext(keyStoreType, keystorePassword, keystorePath, truststorePassword, truststorePath);
+                    ctx.setSessionCacheSize(sessionCacheSize);
+                    ctx.setSessionTimeout(sessionTimeout);
+                    ctx.setCheckInterval(keystoreCheckInterval);
+                    tlsContext = ctx;
+                }
+            }
+        }
+        return ctx;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void sessionCreated(IoSession session) throws Exception {
         log.debug("Session created: RTMPS");
-        if (keystorePath == null || truststorePath == null) {
-            throw new NotActiveException("Keystore or truststore are null");
-        }
-        // determine the keystore type by the file extension
-        String keyStoreType = keystorePath.lastIndexOf(".p12") > 0 ? "PKCS12" : "JKS";
-        // create the ssl context
+        // the context is shared, keystores are only read again when they change
         SSLContext sslContext = null;
         try {
-            sslContext = TLSFactory.getTLSContext(keyStoreType, keystorePassword, keystorePath, truststorePassword, truststorePath);
-            log.debug("SSL provider is: {}", sslContext.getProvider());
-            // get ssl context parameters
-            SSLParameters params = sslContext.getDefaultSSLParameters();
-            //params.setApplicationProtocols(protocols);
-            if (log.isDebugEnabled()) {
-                Arrays.asList(params.getCipherSuites()).forEach(cipher -> log.debug("Supported cipher suite: {}", cipher));
-            }
-            params.setCipherSuites(cipherSuites);
-            // set the endpoint identification algorithm
-            //params.setEndpointIdentificationAlgorithm("RTMPS");
-            //params.setProtocols(protocols);
-            // choose to honor the client's preference rather than its own preference
-            params.setUseCipherSuitesOrder(false);
-            if (log.isDebugEnabled()) {
-                log.debug("SSL context params - need client auth: {} want client auth: {} endpoint id algorithm: {}", params.getNeedClientAuth(), params.getWantClientAuth(), params.getEndpointIdentificationAlgorithm());
-                String[] supportedProtocols = params.getProtocols();
-                for (String protocol : supportedProtocols) {
-                    log.debug("SSL context supported protocol: {}", protocol);
-                }
+            sslContext = getTLSContext().getContext();
+            if (log.isTraceEnabled()) {
+                SSLParameters params = sslContext.getDefaultSSLParameters();
+                Arrays.asList(params.getCipherSuites()).forEach(cipher -> log.trace("Supported cipher suite: {}", cipher));
+                Arrays.asList(params.getProtocols()).forEach(protocol -> log.trace("SSL context supported protocol: {}", protocol));
             }
+        } catch (NotActiveException ex) {
+            throw ex;
         } catch (Exception ex) {
             log.error("Exception getting SSL context", ex);
+            throw new NotActiveException("SSL context is not available");
         }
         // create the ssl filter using server mode
         SslFilter sslFilter = new SslFilter(sslContext);
@@ -172,6 +240,54 @@ public class RTMPSMinaIoHandler extends RTMPMinaIoHandler {
         session.setAttribute(RTMPConnection.RTMP_HANDSHAKE, handshake);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void messageReceived(IoSession session, Object message) throws Exception {
+        if (message == SslFilter.SESSION_SECURED) {
+            SslFilter sslFilter = (SslFilter) session.getFilterChain().get("sslFilter");
+            if (sslFilter != null && tlsContext != null) {
+                tlsContext.handshakeCompleted(sslFilter.getSslSession(session), session.getCreationTime());
+            }
+        }
+        super.messageReceived(session, message);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getHandshakes() {
+        return tlsContext != null ? tlsContext.getHandshakes() : 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getResumedHandshakes() {
+        return tlsContext != null ? tlsContext.getResumedHandshakes() : 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getResumptionRatio() {
+        return tlsContext != null ? tlsContext.getResumptionRatio() : 0d;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getHandshakeRate() {
+        return tlsContext != null ? tlsContext.getHandshakeRate() : 0d;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getContextReloads() {
+        return tlsContext != null ? tlsContext.getReloads() : 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reloadContext() throws Exception {
+        getTLSContext().load();
+    }
+
     /**
      * Password used to access the keystore file.
      *
@@ -250,4 +366,31 @@ public class RTMPSMinaIoHandler extends RTMPMinaIoHandler {
         this.wantClientAuth = wantClientAuth;
     }
 
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public void setKeystoreCheckInterval(long keystoreCheckInterval) {
+        this.keystoreCheckInterval = keystoreCheckInterval;
+    }
+
+    /**
+     * Enables stateless resumption through TLS session tickets, so resumption does not depend on the server session cache. This is a JVM
+     * wide setting (jdk.tls.server.enableSessionTicketExtension) which applies to every TLS endpoint of the process, not only to RTMPS
+     * listeners, so it is set once at startup rather than per handler. The JDK reads it once, it only takes effect when set before the
+     * first TLS connection of the process; an explicit system property wins.
+     *
+     * @param sessionTickets
+     *            true to issue session tickets
+     */
+    public static void setSessionTickets(boolean sessionTickets) {
+        if (System.getProperty("jdk.tls.server.enableSessionTicketExtension") == null) {
+            System.setProperty("jdk.tls.server.enableSessionTicketExtension", String.valueOf(sessionTickets));
+        }
+    }
+
 }
@@ -222,6 +222,7 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
                     } catch (InterruptedException ex) {
                         log.warn("Offering packet to out queue failed", ex);
                     }
+                    messagesPending();
                 } else {
                     log.warn("Response buffer was null after encoding");
                 }
@@ -255,6 +256,13 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
         } catch (InterruptedException ex) {
             log.warn("Offering io buffer to out queue failed", ex);
         }
+        messagesPending();
+    }
+
+    /**
+     * Called after outgoing data was queued.
+     */
+    protected void messagesPending() {
     }
 
     protected IoBuffer foldPendingMessages(int targetSize) {
@@ -8,6 +8,7 @@
 package org.red5.server.net.rtmpt;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -58,6 +59,16 @@ public class RTMPTConnection extends BaseRTMPTConnection {
      */
     private volatile long noPendingMessages;
 
+    /**
+     * Whether idle requests are held until data is pending, in which case the polling delay stays at its minimum
+     */
+    private volatile boolean longPolling;
+
+    /**
+     * Callback of the idle request waiting for data
+     */
+    private final AtomicReference<Runnable> pendingWaiter = new AtomicReference<>();
+
     /**
      * Servlet that created this connection.
      */
@@ -116,6 +127,8 @@ public class RTMPTConnection extends BaseRTMPTConnection {
             }
             // now close
             super.close();
+            // answer a waiting idle request with the close notification
+            messagesPending();
             if (servlet != null) {
                 servlet = null;
             }
@@ -243,7 +256,7 @@ public class RTMPTConnection extends BaseRTMPTConnection {
         if (log.isTraceEnabled()) {
             log.trace("Pending messages out: {}", pendingOutMessages.size());
         }
-        if (!pendingOutMessages.isEmpty()) {
+        if (!pendingOutMessages.isEmpty() || longPolling) {
             pollingDelay = INITIAL_POLLING_DELAY;
             noPendingMessages = 0;
         } else {
@@ -262,6 +275,57 @@ public class RTMPTConnection extends BaseRTMPTConnection {
         return foldPendingMessages(targetSize);
     }
 
+    /**
+     * Registers the callback of an idle request which waits for outgoing data. It runs once when data is queued or the connection closes,
+     * on the thread doing so; a previously registered callback runs right away.
+     *
+     * @param callback
+     *            callback
+     * @return false if data is pending already and the callback will not run, true otherwise
+     */
+    public boolean awaitPendingMessages(Runnable callback) {
+        Runnable previous = pendingWaiter.getAndSet(callback);
+        if (previous != null) {
+            previous.run();
+        }
+        // data queued before the callback was registered
+        if (!pendingOutMessages.isEmpty() || isClosing()) {
+            return !pendingWaiter.compareAndSet(callback, null);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the callback of an idle request, if it did not run yet.
+     *
+     * @param callback
+     *            callback
+     */
+    public void cancelAwait(Runnable callback) {
+        pendingWaiter.compareAndSet(callback, null);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void messagesPending() {
+        if (pendingWaiter.get() != null) {
+            Runnable waiter = pendingWaiter.getAndSet(null);
+            if (waiter != null) {
+                waiter.run();
+            }
+        }
+    }
+
+    /**
+     * Sets whether idle requests are held until data is pending.
+     *
+     * @param longPolling
+     *            long polling
+     */
+    public void setLongPolling(boolean longPolling) {
+        this.longPolling = longPolling;
+    }
+
     /**
      * Register timestamp that data was received
      */
@@ -10,9 +10,14 @@ package org.red5.server.net.rtmpt;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -75,6 +80,17 @@ public class RTMPTServlet extends HttpServlet {
      */
     private static int targetResponseSize = Short.MAX_VALUE + 1;
 
+    /**
+     * Name of the init parameter holding the long poll timeout.
+     */
+    public static final String LONG_POLL_TIMEOUT_PARAM = "longPollTimeout";
+
+    /**
+     * Time in milliseconds an idle request without pending data is held before it is answered, 0 answers each one right away and lets the
+     * client back off with the polling delay instead.
+     */
+    private long longPollTimeout;
+
     /**
      * Reference to RTMPT handler;
      */
@@ -322,6 +338,7 @@ public class RTMPTServlet extends HttpServlet {
             // set properties
             conn.setServlet(this);
             conn.setServletRequest(req);
+            conn.setLongPolling(longPollTimeout > 0 && req.isAsyncSupported());
             // set handler
             conn.setHandler(handler);
             conn.setDecoder(handler.getCodecFactory().getRTMPDecoder());
@@ -501,13 +518,99 @@ public class RTMPTServlet extends HttpServlet {
         if (conn != null) {
             conn.dataReceived();
             conn.updateReadBytes(req.getContentLength());
-            // return pending
-            returnPendingMessages(conn, resp);
+            if (longPollTimeout > 0 && req.isAsyncSupported()) {
+                // hold the request until there is something to return
+                awaitPendingMessages(req, resp, conn);
+            } else {
+                // return pending
+                returnPendingMessages(conn, resp);
+            }
         } else {
             handleBadRequest(String.format("Idle: unknown client session: %s", requestInfo.get().getSessionId()), resp);
         }
     }
 
+    /**
+     * Returns the pending messages now if there are any, or else once data is queued on the connection or the long poll times out. All data
+     * queued by then is returned in one response.
+     *
+     * @param req
+     *            Servlet request
+     * @param resp
+     *            Servlet response
+     * @param conn
+     *            RTMP connection
+     */
+    protected void awaitPendingMessages(HttpServletRequest req, HttpServletResponse resp, RTMPTConnection conn) {
+        // start asynchronous processing first, data may be queued as soon as we register
+        AsyncContext ctx = req.startAsync();
+        ctx.setTimeout(longPollTimeout);
+        AtomicBoolean done = new AtomicBoolean();
+        Runnable callback = () -> {
+            if (done.compareAndSet(false, true)) {
+                // don't write on the thread queueing the data
+                ctx.start(() -> complete(ctx, conn));
+            }
+        };
+        ctx.addListener(new AsyncListener() {
+
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                conn.cancelAwait(callback);
+                if (done.compareAndSet(false, true)) {
+                    complete(ctx, conn);
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) throws IOException {
+                conn.cancelAwait(callback);
+                done.set(true);
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) throws IOException {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) throws IOException {
+            }
+
+        });
+        if (!conn.awaitPendingMessages(callback) && done.compareAndSet(false, true)) {
+            complete(ctx, conn);
+        }
+    }
+
+    private void complete(AsyncContext ctx, RTMPTConnection conn) {
+        Red5.setConnectionLocal(conn);
+        try {
+            returnPendingMessages(conn, (HttpServletResponse) ctx.getResponse());
+        } finally {
+            ctx.complete();
+            Red5.setConnectionLocal(null);
+        }
+    }
+
+    /**
+     * Reads the long poll timeout from the init parameters of the servlet, see {@link #LONG_POLL_TIMEOUT_PARAM}.
+     *
+     * @throws ServletException
+     *             servlet exception
+     */
+    @Override
+    public void init() throws ServletException {
+        String timeout = getInitParameter(LONG_POLL_TIMEOUT_PARAM);
+        if (timeout != null) {
+            try {
+                longPollTimeout = Long.parseLong(timeout.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid long poll timeout: {}, long polling stays at {} ms", timeout, longPollTimeout);
+            }
+        }
+        log.debug("Long poll timeout: {} ms", longPollTimeout);
+    }
+
     /**
      * Main entry point for the servlet.
      *
@@ -694,6 +797,20 @@ public class RTMPTServlet extends HttpServlet {
         RTMPTServlet.targetResponseSize = targetResponseSize;
     }
 
+    /**
+     * Sets the time idle requests without pending data are held, see {@link #awaitPendingMessages(HttpServletRequest, HttpServletResponse, RTMPTConnection)}.
+     *
+     * @param longPollTimeout
+     *            timeout in milliseconds, 0 to disable long polling
+     */
+    public void setLongPollTimeout(long longPollTimeout) {
+        this.longPollTimeout = longPollTimeout;
+    }
+
+    public long getLongPollTimeout() {
+        return longPollTimeout;
+    }
+
     /**
      * @return the enforceContentTypeCheck
      */
@@ -265,6 +265,10 @@ public class BroadcastScope extends BasicScope implements IBroadcastScope, IPipe
             }
         }
         this.clientBroadcastStream = clientBroadcastStream;
+        // make the scope known by the aliases of the stream
+        if (clientBroadcastStream != null && hasParent() && getParent() instanceof Scope) {
+            ((Scope) getParent()).indexBroadcastAliases(this);
+        }
     }
 
     /*
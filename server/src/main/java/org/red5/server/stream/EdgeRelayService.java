@@ -0,0 +1,442 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.lang3.StringUtils;
+import org.red5.client.net.rtmp.INetStreamEventHandler;
+import org.red5.client.net.rtmp.RTMPClient;
+import org.red5.io.utils.ObjectMap;
+import org.red5.logging.Red5LoggerFactory;
+import org.red5.server.api.IConnection;
+import org.red5.server.api.Red5;
+import org.red5.server.api.event.IEvent;
+import org.red5.server.api.event.IEventDispatcher;
+import org.red5.server.api.scope.IBroadcastScope;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.scope.ScopeType;
+import org.red5.server.api.service.IServiceCall;
+import org.red5.server.messaging.IPipeConnectionListener;
+import org.red5.server.messaging.PipeConnectionEvent;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.status.StatusCodes;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Edge side of origin-edge clustering. When a live stream is played which is not published locally, the stream is pulled once from the
+ * origin and registered as a local broadcast, so any number of local subscribers share a single upstream stream.
+ * <p>
+ * All streams of an application are pulled over one connection to the same application on the origin, each on its own stream id. A pulled
+ * stream is dropped once it has had no subscribers for the idle timeout, or when the origin stops sending it; the connection to the origin
+ * is closed with its last stream. The service is disabled unless an origin host is set.
+ * </p>
+ *
+ * @author The Red5 Project
+ */
+public class EdgeRelayService implements DisposableBean {
+
+    private static final Logger log = Red5LoggerFactory.getLogger(EdgeRelayService.class);
+
+    private String originHost;
+
+    private int originPort = 1935;
+
+    /**
+     * Time in milliseconds a pulled stream is kept without subscribers.
+     */
+    private long idleTimeout = 5000L;
+
+    /**
+     * Connections to the origin, by application path.
+     */
+    private final Map<String, OriginConnection> origins = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    private synchronized ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            CustomizableThreadFactory factory = new CustomizableThreadFactory("EdgeRelay-");
+            factory.setDaemon(true);
+            executor = Executors.newScheduledThreadPool(2, factory);
+        }
+        return executor;
+    }
+
+    /**
+     * Returns whether streams which are not published locally are pulled from an origin.
+     *
+     * @return true if an origin is configured
+     */
+    public boolean isEnabled() {
+        return StringUtils.isNotBlank(originHost);
+    }
+
+    /**
+     * Pulls a live stream from the origin, unless it is already available in the scope.
+     *
+     * @param scope
+     *            scope the stream is played in
+     * @param name
+     *            stream name
+     * @return true if the stream is registered as a broadcast in the scope, data arrives once the origin starts sending it
+     */
+    public synchronized boolean relay(IScope scope, String name) {
+        if (!isEnabled()) {
+            return false;
+        }
+        if (scope.getBasicScope(ScopeType.BROADCAST, name) != null) {
+            return true;
+        }
+        IProviderService providerService = (IProviderService) scope.getContext().getBean(IProviderService.BEAN_NAME);
+        // a prototype, so recording and hls settings apply as they do to published streams
+        ClientBroadcastStream stream = (ClientBroadcastStream) scope.getContext().getBean("clientBroadcastStream");
+        stream.setScope(scope);
+        stream.setName(name);
+        stream.setStreamId(0);
+        stream.setPublishedName(name);
+        if (!providerService.registerBroadcastStream(scope, name, stream)) {
+            log.warn("Relayed stream {} could not be registered in {}", name, scope.getName());
+            stream.close();
+            return false;
+        }
+        IBroadcastScope broadcastScope = scope.getBroadcastScope(name);
+        stream.start();
+        // the thread belongs to the first subscriber, which is not the publisher of this stream
+        IConnection conn = Red5.getConnectionLocal();
+        Red5.setConnectionLocal(null);
+        try {
+            stream.startPublishing();
+        } finally {
+            Red5.setConnectionLocal(conn);
+        }
+        String app = getApplicationPath(scope);
+        RelayedStream relayed = new RelayedStream(name, stream, broadcastScope);
+        log.info("Relaying {} from {}:{}/{}", name, originHost, originPort, app);
+        OriginConnection origin = origins.get(app);
+        if (origin == null || !origin.add(relayed)) {
+            origin = new OriginConnection(app);
+            origins.put(app, origin);
+            origin.add(relayed);
+            origin.connect();
+        }
+        broadcastScope.addPipeConnectionListener(relayed);
+        // the subscriber requesting the stream may fail before subscribing
+        relayed.scheduleIdleCheck();
+        return true;
+    }
+
+    /**
+     * Returns the number of streams pulled from origins.
+     *
+     * @return stream count
+     */
+    public int getRelayedStreamCount() {
+        return origins.values().stream().mapToInt(origin -> origin.streams.size()).sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void destroy() throws Exception {
+        origins.values().forEach(OriginConnection::close);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the client for a connection to the origin.
+     *
+     * @return client
+     */
+    protected RTMPClient createClient() {
+        return new RTMPClient();
+    }
+
+    // path of the scope below the global scope, which is the application path on the origin as well
+    private static String getApplicationPath(IScope scope) {
+        StringBuilder path = new StringBuilder(scope.getName());
+        for (IScope parent = scope.getParent(); parent != null && parent.getType() != ScopeType.GLOBAL; parent = parent.getParent()) {
+            path.insert(0, '/').insert(0, parent.getName());
+        }
+        return path.toString();
+    }
+
+    public String getOriginHost() {
+        return originHost;
+    }
+
+    public void setOriginHost(String originHost) {
+        this.originHost = originHost;
+    }
+
+    public int getOriginPort() {
+        return originPort;
+    }
+
+    public void setOriginPort(int originPort) {
+        this.originPort = originPort;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Connection to an application on the origin, shared by all streams pulled for the application.
+     * <p>
+     * Its monitor only guards its own state: streams are closed and the executor is used after it has been released, since a stream
+     * closing removes itself from the origin and relay() adds streams while holding the service monitor.
+     * </p>
+     */
+    private final class OriginConnection implements INetStreamEventHandler, IEventDispatcher {
+
+        private final String app;
+
+        private final RTMPClient client = createClient();
+
+        private final Set<RelayedStream> streams = ConcurrentHashMap.newKeySet();
+
+        private final Map<Integer, RelayedStream> streamsById = new ConcurrentHashMap<>();
+
+        private volatile boolean connected;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        OriginConnection(String app) {
+            this.app = app;
+            client.setExecutor(getExecutor());
+            client.setStreamEventHandler(this);
+            client.setStreamEventDispatcher(this);
+            client.setExceptionHandler(throwable -> {
+                log.warn("Exception on connection to origin {}:{}/{}", originHost, originPort, app, throwable);
+                close();
+            });
+            client.setConnectionClosedHandler(() -> {
+                log.info("Connection to origin {}:{}/{} closed", originHost, originPort, app);
+                close();
+            });
+        }
+
+        void connect() {
+            client.connect(originHost, originPort, app, call -> {
+                Object result = call.getResult();
+                String code = result instanceof ObjectMap ? (String) ((ObjectMap<?, ?>) result).get("code") : null;
+                if (StatusCodes.NC_CONNECT_SUCCESS.equals(code)) {
+                    log.debug("Connected to origin {}:{}/{}", originHost, originPort, app);
+                    connected();
+                } else {
+                    log.warn("Connect to origin {}:{}/{} failed: {}", originHost, originPort, app, result);
+                    close();
+                }
+            });
+        }
+
+        synchronized boolean add(RelayedStream stream) {
+            if (closed.get()) {
+                return false;
+            }
+            stream.origin = this;
+            streams.add(stream);
+            if (connected) {
+                createStream(stream);
+            }
+            return true;
+        }
+
+        private synchronized void connected() {
+            connected = true;
+            streams.forEach(this::createStream);
+        }
+
+        private void createStream(RelayedStream stream) {
+            client.createStream(call -> {
+                Object result = call.getResult();
+                if (result instanceof Number) {
+                    Number streamId = (Number) result;
+                    if (stream.closed.get()) {
+                        client.deleteStream(streamId);
+                    } else {
+                        stream.upstreamId = streamId;
+                        streamsById.put(streamId.intValue(), stream);
+                        // live only, so a name which is not published on the origin either is not found
+                        client.play(streamId, stream.name, -1, -1);
+                    }
+                } else {
+                    log.warn("Stream for {} could not be created on the origin", stream.name);
+                    stream.close();
+                }
+            });
+        }
+
+        void remove(RelayedStream stream) {
+            Number streamId = stream.upstreamId;
+            boolean last;
+            synchronized (this) {
+                streams.remove(stream);
+                if (streamId != null) {
+                    streamsById.remove(streamId.intValue());
+                }
+                // closed here, so no stream is added to a connection about to go away
+                last = streams.isEmpty() && closed.compareAndSet(false, true);
+            }
+            if (last) {
+                shutdown(Collections.emptyList());
+            } else if (streamId != null && !closed.get()) {
+                client.deleteStream(streamId);
+            }
+        }
+
+        void close() {
+            List<RelayedStream> open;
+            synchronized (this) {
+                if (!closed.compareAndSet(false, true)) {
+                    return;
+                }
+                open = new ArrayList<>(streams);
+            }
+            shutdown(open);
+        }
+
+        private void shutdown(List<RelayedStream> open) {
+            // streams are unregistered before the origin is dropped, so no broadcast is left while the relayed count reads 0
+            open.forEach(RelayedStream::close);
+            origins.remove(app, this);
+            // disconnecting waits for the session to close, which must not happen on the i/o thread of the connection
+            getExecutor().execute(client::disconnect);
+        }
+
+        @Override
+        public void dispatchEvent(IEvent event) {
+            if (event instanceof IRTMPEvent) {
+                IRTMPEvent rtmpEvent = (IRTMPEvent) event;
+                RelayedStream stream = rtmpEvent.getHeader() != null ? streamsById.get(rtmpEvent.getHeader().getStreamId().intValue()) : null;
+                if (stream != null) {
+                    stream.stream.dispatchEvent(rtmpEvent);
+                }
+            }
+        }
+
+        @Override
+        public void onStreamEvent(Notify notify) {
+            IServiceCall call = notify.getCall();
+            if (notify.getHeader() != null && call.getArguments().length > 0 && call.getArguments()[0] instanceof ObjectMap) {
+                String code = (String) ((ObjectMap<?, ?>) call.getArguments()[0]).get("code");
+                RelayedStream stream = streamsById.get(notify.getHeader().getStreamId().intValue());
+                log.debug("Status from origin for {}: {}", stream != null ? stream.name : notify.getHeader().getStreamId(), code);
+                if (stream != null && code != null) {
+                    switch (code) {
+                        case StatusCodes.NS_PLAY_STREAMNOTFOUND:
+                        case StatusCodes.NS_PLAY_FAILED:
+                        case StatusCodes.NS_PLAY_UNPUBLISHNOTIFY:
+                        case StatusCodes.NS_PLAY_STOP:
+                        case StatusCodes.NS_FAILED:
+                            log.info("Origin ended {}: {}", stream.name, code);
+                            stream.close();
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Stream pulled from the origin, published locally through a broadcast stream without a client connection.
+     */
+    private final class RelayedStream implements IPipeConnectionListener {
+
+        private final String name;
+
+        private final ClientBroadcastStream stream;
+
+        private final IBroadcastScope broadcastScope;
+
+        private volatile OriginConnection origin;
+
+        private volatile Number upstreamId;
+
+        private volatile ScheduledFuture<?> idleCheck;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        RelayedStream(String name, ClientBroadcastStream stream, IBroadcastScope broadcastScope) {
+            this.name = name;
+            this.stream = stream;
+            this.broadcastScope = broadcastScope;
+        }
+
+        @Override
+        public void onPipeConnectionEvent(PipeConnectionEvent event) {
+            switch (event.getType()) {
+                case CONSUMER_CONNECT_PUSH:
+                    ScheduledFuture<?> check = idleCheck;
+                    if (check != null) {
+                        check.cancel(false);
+                    }
+                    break;
+                case CONSUMER_DISCONNECT:
+                    scheduleIdleCheck();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void scheduleIdleCheck() {
+            if (!closed.get()) {
+                idleCheck = getExecutor().schedule(() -> {
+                    if (broadcastScope.getConsumers().isEmpty()) {
+                        log.info("No subscribers left for relayed stream {}", name);
+                        close();
+                    }
+                }, idleTimeout, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        // not synchronized, the flag makes sure this runs once and the origin is entered without holding a lock
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                ScheduledFuture<?> check = idleCheck;
+                if (check != null) {
+                    check.cancel(false);
+                }
+                broadcastScope.removePipeConnectionListener(this);
+                // unsubscribes the stream and drops the broadcast scope, so the next play pulls from the origin again
+                stream.stop();
+                IScope scope = stream.getScope();
+                IProviderService providerService = (IProviderService) scope.getContext().getBean(IProviderService.BEAN_NAME);
+                providerService.unregisterBroadcastStream(scope, name, stream);
+                if (origin != null) {
+                    origin.remove(this);
+                }
+            }
+        }
+
+    }
+
+}
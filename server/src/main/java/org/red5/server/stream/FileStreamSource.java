@@ -99,26 +99,32 @@ public class FileStreamSource implements ISeekableStreamSource, Constants {
     /** {@inheritDoc} */
     public int seek(int ts) {
         log.trace("Seek ts: {}", ts);
-        if (keyFrameMeta == null) {
+        KeyFrameMeta meta = keyFrameMeta;
+        if (meta == null) {
             if (!(reader instanceof IKeyFrameDataAnalyzer)) {
                 // Seeking not supported
                 return ts;
             }
-            keyFrameMeta = ((IKeyFrameDataAnalyzer) reader).analyzeKeyFrames();
+            IKeyFrameDataAnalyzer analyzer = (IKeyFrameDataAnalyzer) reader;
+            // only waits if the keyframe index hasn't reached the requested timestamp yet
+            meta = analyzer.analyzeKeyFrames(ts);
+            if (analyzer.isKeyFrameAnalysisComplete()) {
+                keyFrameMeta = meta;
+            }
         }
-        if (keyFrameMeta.positions.length == 0) {
+        if (meta == null || meta.positions.length == 0) {
             // no video keyframe metainfo, it's an audio-only FLV we skip the seek for now.
             // TODO add audio-seek capability
             return ts;
         }
         int frame = 0;
-        for (int i = 0; i < keyFrameMeta.positions.length; i++) {
-            if (keyFrameMeta.timestamps[i] > ts) {
+        for (int i = 0; i < meta.positions.length; i++) {
+            if (meta.timestamps[i] > ts) {
                 break;
             }
             frame = i;
         }
-        reader.position(keyFrameMeta.positions[frame]);
-        return keyFrameMeta.timestamps[frame];
+        reader.position(meta.positions[frame]);
+        return meta.timestamps[frame];
     }
 }
@@ -10,7 +10,9 @@ package org.red5.server.stream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Set;
 
 import org.red5.logging.Red5LoggerFactory;
@@ -29,6 +31,8 @@ import org.red5.server.messaging.InMemoryPullPullPipe;
 import org.red5.server.scope.BasicScope;
 import org.red5.server.scope.BroadcastScope;
 import org.red5.server.scope.Scope;
+import org.red5.server.stream.consumer.DVRBuffer;
+import org.red5.server.stream.provider.DVRProvider;
 import org.red5.server.stream.provider.FileProvider;
 import org.red5.server.util.ScopeUtils;
 import org.slf4j.Logger;
@@ -40,6 +44,12 @@ public class ProviderService implements IProviderService {
     // whether or not to support FCS/FMS/AMS live-wait (default to off)
     private boolean liveWaitSupport;
 
+    // pulls live streams which are not published locally from an origin
+    private EdgeRelayService edgeRelay;
+
+    // remembers which file a stream name resolves to, if set
+    private StreamFileCache streamFileCache;
+
     /** {@inheritDoc} */
     public INPUT_TYPE lookupProviderInput(IScope scope, String name, int type) {
         INPUT_TYPE result = INPUT_TYPE.NOT_FOUND;
@@ -48,7 +58,12 @@ public class ProviderService implements IProviderService {
             result = INPUT_TYPE.LIVE;
         } else {
             File file = getStreamFile(scope, name);
-            if (file == null) {
+            // a live play (-1) is pulled from the origin, a live or vod play (-2) only when there is no local file
+            boolean live = type == -1 || (type < 0 && file == null);
+            if (live && edgeRelay != null && edgeRelay.relay(scope, name)) {
+                // pulled from the origin and now published locally
+                result = INPUT_TYPE.LIVE;
+            } else if (file == null) {
                 if (type == -2 && liveWaitSupport) {
                     result = INPUT_TYPE.LIVE_WAIT;
                 }
@@ -100,13 +115,27 @@ public class ProviderService implements IProviderService {
         return pipe;
     }
 
+    /** {@inheritDoc} */
+    public IMessageInput getDVRProviderInput(IScope scope, String name) {
+        log.debug("getDVRProviderInput - scope: {} name: {}", scope, name);
+        IBroadcastScope broadcastScope = scope.getBroadcastScope(name);
+        IClientBroadcastStream stream = broadcastScope != null ? broadcastScope.getClientBroadcastStream() : null;
+        DVRBuffer buffer = stream instanceof ClientBroadcastStream ? ((ClientBroadcastStream) stream).getDVRBuffer() : null;
+        if (buffer == null) {
+            return null;
+        }
+        IPipe pipe = new InMemoryPullPullPipe();
+        pipe.subscribe(new DVRProvider(buffer), null);
+        return pipe;
+    }
+
     /** {@inheritDoc} */
     public File getVODProviderFile(IScope scope, String name) {
         if (log.isDebugEnabled()) {
             log.debug("getVODProviderFile - scope: {} name: {}", scope, name);
         }
         File file = getStreamFile(scope, name);
-        if (file == null || !file.exists()) {
+        if (file == null) {
             //if there is no file extension this is most likely a live stream
             if (name.indexOf('.') > 0) {
                 log.info("File was null or did not exist: {}", name);
@@ -177,11 +206,21 @@ public class ProviderService implements IProviderService {
         return scope.getBasicScope(ScopeType.BROADCAST, name) == null;
     }
 
-    @SuppressWarnings("null")
     private File getStreamFile(IScope scope, String name) {
         if (log.isDebugEnabled()) {
             log.debug("getStreamFile - name: {}", name);
         }
+        if (streamFileCache != null) {
+            return streamFileCache.resolve(scope.getContextPath() + '\0' + name, locations -> resolveStreamFile(scope, name, locations));
+        }
+        return resolveStreamFile(scope, name, null);
+    }
+
+    /**
+     * Looks up the file of a stream, adding each location looked at to the given list if there is one.
+     */
+    @SuppressWarnings("null")
+    private File resolveStreamFile(IScope scope, String name, List<Path> locations) {
         IStreamableFileFactory factory = (IStreamableFileFactory) ScopeUtils.getScopeService(scope, IStreamableFileFactory.class);
         if (name.indexOf(':') == -1 && name.indexOf('.') == -1) {
             // Default to .flv files if no prefix and no extension is given.
@@ -208,15 +247,26 @@ public class ProviderService implements IProviderService {
         File file = null;
         try {
             // get ahead of the game with the direct check first
-            File tmp = Paths.get(filename).toFile();
+            Path path = Paths.get(filename);
+            File tmp = path.toFile();
+            if (locations != null) {
+                locations.add(path);
+            }
             // most likely case first
             if (tmp.exists()) {
                 file = tmp;
             } else if (!filenameGenerator.resolvesToAbsolutePath()) {
                 try {
                     file = scope.getContext().getResource(filename).getFile();
+                    if (locations != null) {
+                        locations.add(file.toPath());
+                    }
                 } catch (FileNotFoundException e) {
                     log.debug("File {} not found, nulling it", filename);
+                    if (locations != null) {
+                        // not on the file system, so not cached
+                        locations.clear();
+                    }
                 }
             }
             // check file existence
@@ -225,6 +275,9 @@ public class ProviderService implements IProviderService {
                 file = null;
             }
         } catch (IOException e) {
+            if (locations != null) {
+                locations.clear();
+            }
             log.info("Exception attempting to lookup file: {}", e.getMessage());
             if (log.isDebugEnabled()) {
                 log.warn("Exception attempting to lookup file: {}", name, e);
@@ -243,4 +296,20 @@ public class ProviderService implements IProviderService {
         this.liveWaitSupport = liveWaitSupport;
     }
 
+    public EdgeRelayService getEdgeRelay() {
+        return edgeRelay;
+    }
+
+    public void setEdgeRelay(EdgeRelayService edgeRelay) {
+        this.edgeRelay = edgeRelay;
+    }
+
+    public StreamFileCache getStreamFileCache() {
+        return streamFileCache;
+    }
+
+    public void setStreamFileCache(StreamFileCache streamFileCache) {
+        this.streamFileCache = streamFileCache;
+    }
+
 }
@@ -0,0 +1,237 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.red5.logging.Red5LoggerFactory;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Cache of stream name to file resolutions, found and not found alike, so that playing a stream does not go to the file system each time.
+ * <p>
+ * Every location looked at during a resolution is recorded with its entry, and the directories holding them are watched for files being
+ * created or deleted; such an event drops the entries which looked at that file. A resolution is only cached once its directories are
+ * watched, so the first lookup in a new directory always goes to the file system.
+ * </p>
+ *
+ * @author The Red5 Project
+ */
+public class StreamFileCache implements DisposableBean {
+
+    private static final Logger log = Red5LoggerFactory.getLogger(StreamFileCache.class);
+
+    /**
+     * Upper bound for the number of watched directories, names pointing elsewhere are resolved without caching.
+     */
+    private static final int MAX_DIRECTORIES = 1024;
+
+    private int maxEntries = 10000;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Path, WatchKey> directories = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each change, a resolution which overlaps a change is not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private WatchService watcher;
+
+    private boolean unavailable;
+
+    /**
+     * Returns the file for a key, resolving it on a miss. The resolver adds each location it looks at to the given list and returns the
+     * file found or null; a resolution with no locations is not cached.
+     *
+     * @param key
+     *            key of the stream name, unique over all scopes
+     * @param resolver
+     *            resolves the file
+     * @return file or null if not found
+     */
+    public File resolve(String key, Function<List<Path>, File> resolver) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry.file;
+        }
+        long expected = generation.get();
+        List<Path> locations = new ArrayList<>(2);
+        File file = resolver.apply(locations);
+        if (maxEntries > 0 && !locations.isEmpty() && watch(locations) && generation.get() == expected) {
+            if (entries.size() >= maxEntries) {
+                // drop any one entry
+                Iterator<String> keys = entries.keySet().iterator();
+                if (keys.hasNext()) {
+                    keys.next();
+                    keys.remove();
+                }
+            }
+            entries.put(key, new Entry(file, locations));
+        }
+        return file;
+    }
+
+    /**
+     * Drops all entries.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Watches the directories of the locations, returns true if all of them were watched already.
+     */
+    private boolean watch(List<Path> locations) {
+        boolean watched = true;
+        for (int i = 0; i < locations.size(); i++) {
+            Path location = locations.get(i).toAbsolutePath().normalize();
+            locations.set(i, location);
+            Path dir = location.getParent();
+            if (dir == null || directories.containsKey(dir)) {
+                watched &= dir != null;
+                continue;
+            }
+            watched = false;
+            if (directories.size() < MAX_DIRECTORIES && Files.isDirectory(dir)) {
+                WatchService service = getWatcher();
+                if (service != null) {
+                    try {
+                        directories.computeIfAbsent(dir, key -> {
+                            try {
+                                return key.register(service, ENTRY_CREATE, ENTRY_DELETE);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        });
+                        log.debug("Watching stream directory: {}", dir);
+                    } catch (UncheckedIOException | ClosedWatchServiceException e) {
+                        log.debug("Stream directory {} could not be watched", dir, e);
+                    }
+                }
+            }
+        }
+        return watched;
+    }
+
+    private synchronized WatchService getWatcher() {
+        if (watcher == null && !unavailable) {
+            try {
+                watcher = FileSystems.getDefault().newWatchService();
+                Thread thread = new Thread(this::run, "StreamFileCache");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                log.warn("File system watch is not available, stream file resolutions are not cached", e);
+                unavailable = true;
+            }
+        }
+        return watcher;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        log.debug("Events lost for {}, dropping all entries", dir);
+                        clear();
+                    } else {
+                        Path changed = dir.resolve((Path) event.context());
+                        log.trace("Stream file {}: {}", event.kind().name(), changed);
+                        generation.incrementAndGet();
+                        entries.values().removeIf(entry -> entry.locations.contains(changed));
+                    }
+                }
+                if (!key.reset()) {
+                    // the directory is gone
+                    directories.remove(dir, key);
+                    generation.incrementAndGet();
+                    entries.values().removeIf(entry -> entry.locations.stream().anyMatch(location -> dir.equals(location.getParent())));
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("Stream directory watch stopped");
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void destroy() throws Exception {
+        synchronized (this) {
+            unavailable = true;
+            if (watcher != null) {
+                watcher.close();
+            }
+        }
+        directories.clear();
+        clear();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of cached resolutions, 0 disables the cache.
+     *
+     * @param maxEntries
+     *            max entries
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    private static final class Entry {
+
+        final File file;
+
+        final List<Path> locations;
+
+        Entry(File file, List<Path> locations) {
+            this.file = file;
+            this.locations = locations;
+        }
+
+    }
+
+}
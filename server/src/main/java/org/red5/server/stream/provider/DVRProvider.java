@@ -0,0 +1,203 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.provider;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.messaging.IMessage;
+import org.red5.server.messaging.IMessageComponent;
+import org.red5.server.messaging.IPassive;
+import org.red5.server.messaging.IPipe;
+import org.red5.server.messaging.IPipeConnectionListener;
+import org.red5.server.messaging.IPullableProvider;
+import org.red5.server.messaging.OOBControlMessage;
+import org.red5.server.messaging.PipeConnectionEvent;
+import org.red5.server.net.rtmp.event.Aggregate;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.stream.ISeekableProvider;
+import org.red5.server.stream.IStreamTypeAwareProvider;
+import org.red5.server.stream.consumer.DVRBuffer;
+import org.red5.server.stream.message.RTMPMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pullable provider for the DVR window of a live stream. Nothing is returned once the reader caught up with the live end of the window, the
+ * consumer keeps pulling as long as the stream is live.
+ *
+ * @author The Red5 Project
+ */
+public class DVRProvider implements IPassive, ISeekableProvider, IPullableProvider, IPipeConnectionListener, IStreamTypeAwareProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(DVRProvider.class);
+
+    /**
+     * Source window
+     */
+    private final DVRBuffer buffer;
+
+    /**
+     * Consumer pipe
+     */
+    private IPipe pipe;
+
+    /**
+     * Window reader
+     */
+    private DVRBuffer.Reader reader;
+
+    /**
+     * Configurations and the tag following them
+     */
+    private final ArrayDeque<IRTMPEvent> pending = new ArrayDeque<>(4);
+
+    /**
+     * Create provider for the given window
+     *
+     * @param buffer
+     *            DVR window
+     */
+    public DVRProvider(DVRBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /** {@inheritDoc} */
+    public boolean hasVideo() {
+        return buffer.hasVideo();
+    }
+
+    /** {@inheritDoc} */
+    public synchronized IMessage pullMessage(IPipe pipe) throws IOException {
+        if (this.pipe == pipe) {
+            if (reader == null) {
+                reader = buffer.newReader();
+            }
+            if (pending.isEmpty()) {
+                DVRBuffer.Tag tag = reader.next();
+                if (tag == null) {
+                    return null;
+                }
+                int timestamp = tag.getTimestamp();
+                // a start or seek sends the configurations current at that point first
+                IoBuffer[] configs = reader.getConfigs();
+                if (configs != null) {
+                    if (configs[2] != null) {
+                        pending.add(event(new Notify(configs[2]), timestamp));
+                    }
+                    if (configs[0] != null) {
+                        pending.add(event(new VideoData(configs[0]), timestamp));
+                    }
+                    if (configs[1] != null) {
+                        pending.add(event(new AudioData(configs[1]), timestamp));
+                    }
+                }
+                switch (tag.getDataType()) {
+                    case Constants.TYPE_AUDIO_DATA:
+                        pending.add(event(new AudioData(tag.getBody()), timestamp));
+                        break;
+                    case Constants.TYPE_VIDEO_DATA:
+                        pending.add(event(new VideoData(tag.getBody()), timestamp));
+                        break;
+                    case Constants.TYPE_NOTIFY:
+                        pending.add(event(new Notify(tag.getBody()), timestamp));
+                        break;
+                    case Constants.TYPE_AGGREGATE:
+                        pending.add(event(new Aggregate(tag.getBody()), timestamp));
+                        break;
+                    default:
+                        log.debug("Unexpected type: {}", tag.getDataType());
+                }
+            }
+            IRTMPEvent event = pending.poll();
+            if (event != null) {
+                return RTMPMessage.build(event);
+            }
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public IMessage pullMessage(IPipe pipe, long wait) throws IOException {
+        return pullMessage(pipe);
+    }
+
+    private static IRTMPEvent event(IRTMPEvent event, int timestamp) {
+        event.setTimestamp(timestamp);
+        return event;
+    }
+
+    /** {@inheritDoc} */
+    public void onPipeConnectionEvent(PipeConnectionEvent event) {
+        switch (event.getType()) {
+            case PROVIDER_CONNECT_PULL:
+                if (pipe == null) {
+                    pipe = (IPipe) event.getSource();
+                }
+                break;
+            case PROVIDER_DISCONNECT:
+                if (pipe == event.getSource()) {
+                    pipe = null;
+                    uninit();
+                }
+                break;
+            case CONSUMER_DISCONNECT:
+                if (pipe == event.getSource()) {
+                    uninit();
+                }
+            default:
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void onOOBControlMessage(IMessageComponent source, IPipe pipe, OOBControlMessage oobCtrlMsg) {
+        String serviceName = oobCtrlMsg.getServiceName();
+        String target = oobCtrlMsg.getTarget();
+        log.debug("onOOBControlMessage - service name: {} target: {}", serviceName, target);
+        if (serviceName != null) {
+            if (ISeekableProvider.KEY.equals(target)) {
+                if ("seek".equals(serviceName)) {
+                    Integer position = (Integer) oobCtrlMsg.getServiceParamMap().get("position");
+                    oobCtrlMsg.setResult(seek(position.intValue()));
+                }
+            } else if (IStreamTypeAwareProvider.KEY.equals(target)) {
+                if ("hasVideo".equals(serviceName)) {
+                    oobCtrlMsg.setResult(hasVideo());
+                }
+            }
+        }
+    }
+
+    private synchronized void uninit() {
+        reader = null;
+        pending.clear();
+    }
+
+    /**
+     * Moves to the keyframe at or before the given timestamp, or to the start of the window if it is older.
+     *
+     * @param ts
+     *            stream timestamp
+     * @return timestamp moved to, the given one if the window is empty
+     */
+    public synchronized int seek(int ts) {
+        log.trace("Seek ts: {}", ts);
+        if (reader == null) {
+            reader = buffer.newReader();
+        }
+        pending.clear();
+        int position = reader.seek(ts);
+        return position != -1 ? position : ts;
+    }
+
+}
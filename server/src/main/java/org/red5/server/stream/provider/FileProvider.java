@@ -245,37 +245,45 @@ public class FileProvider implements IPassive, ISeekableProvider, IPullableProvi
     /** {@inheritDoc} */
     public int seek(int ts) {
         log.trace("Seek ts: {}", ts);
-        if (keyFrameMeta == null) {
+        KeyFrameMeta meta = keyFrameMeta;
+        boolean complete = true;
+        if (meta == null) {
             if (!(reader instanceof IKeyFrameDataAnalyzer)) {
                 // Seeking not supported
                 return ts;
             }
-            keyFrameMeta = ((IKeyFrameDataAnalyzer) reader).analyzeKeyFrames();
+            IKeyFrameDataAnalyzer analyzer = (IKeyFrameDataAnalyzer) reader;
+            // only waits if the keyframe index hasn't reached the requested timestamp yet
+            meta = analyzer.analyzeKeyFrames(ts);
+            complete = analyzer.isKeyFrameAnalysisComplete();
+            if (complete) {
+                keyFrameMeta = meta;
+            }
         }
-        if (keyFrameMeta.positions.length == 0) {
+        if (meta == null || meta.positions.length == 0) {
             // no video keyframe metainfo, it's an audio-only FLV we skip the seek for now.
             // TODO add audio-seek capability
             return ts;
         }
-        if (ts >= keyFrameMeta.duration) {
+        if (complete && ts >= meta.duration) {
             // Seek at or beyond EOF
             reader.position(Long.MAX_VALUE);
-            return (int) keyFrameMeta.duration;
+            return (int) meta.duration;
         }
         int frame = -1;
-        for (int i = 0; i < keyFrameMeta.positions.length; i++) {
-            if (keyFrameMeta.timestamps[i] >= ts) {
+        for (int i = 0; i < meta.positions.length; i++) {
+            if (meta.timestamps[i] >= ts) {
                 frame = i;
                 break;
             }
         }
         if (frame > -1) {
-            reader.position(keyFrameMeta.positions[frame]);
-            return keyFrameMeta.timestamps[frame];
+            reader.position(meta.positions[frame]);
+            return meta.timestamps[frame];
         } else {
             // Seek at or beyond EOF
             reader.position(Long.MAX_VALUE);
-            return (int) keyFrameMeta.duration;
+            return (int) meta.duration;
         }
     }
 }
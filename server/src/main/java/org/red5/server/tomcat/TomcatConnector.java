@@ -11,9 +11,14 @@ import java.net.InetSocketAddress;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
+import org.apache.catalina.Lifecycle;
 import org.apache.catalina.connector.Connector;
 import org.apache.catalina.core.AprLifecycleListener;
+import org.apache.coyote.AbstractProtocol;
 import org.apache.coyote.ProtocolHandler;
 import org.apache.coyote.http11.Http11Nio2Protocol;
 import org.apache.coyote.http11.Http11NioProtocol;
@@ -48,6 +53,13 @@ public class TomcatConnector {
 
     private boolean secure;
 
+    private boolean useVirtualThreads;
+
+    /**
+     * Executor of the virtual threads, which tomcat does not shut down since it did not create it.
+     */
+    private ExecutorService virtualThreadExecutor;
+
     private boolean initialized;
 
     public void init() {
@@ -92,6 +104,20 @@ public class TomcatConnector {
             } else if (handler instanceof Http11NioProtocol) {
                 ((Http11NioProtocol) handler).setAddress(address.getAddress());
             }
+            // process requests on virtual threads instead of the connector thread pool
+            if (useVirtualThreads && handler instanceof AbstractProtocol) {
+                virtualThreadExecutor = newVirtualThreadExecutor(String.format("http-vt-%d-", address.getPort()));
+                if (virtualThreadExecutor != null) {
+                    ((AbstractProtocol<?>) handler).setExecutor(virtualThreadExecutor);
+                    // requests still running are completed, no new ones are accepted by a stopped connector
+                    connector.addLifecycleListener(event -> {
+                        if (Lifecycle.AFTER_STOP_EVENT.equals(event.getType())) {
+                            virtualThreadExecutor.shutdown();
+                        }
+                    });
+                    log.info("Connector on port {} uses virtual threads", address.getPort());
+                }
+            }
             // set initialized flag
             initialized = true;
         } catch (Throwable t) {
@@ -109,6 +135,27 @@ public class TomcatConnector {
         return new InetSocketAddress("127.0.0.1", port);
     }
 
+    /**
+     * Returns an executor starting a virtual thread per task, or null if the runtime does not support virtual threads (prior to Java 21).
+     *
+     * @param prefix
+     *            thread name prefix
+     * @return executor or null
+     */
+    private static ExecutorService newVirtualThreadExecutor(String prefix) {
+        try {
+            // resolved reflectively since we are built for java 11
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads are not available on Java {}, using the connector thread pool", System.getProperty("java.version"));
+        }
+        return null;
+    }
+
     /**
      * @return the connector
      */
@@ -225,6 +272,24 @@ public class TomcatConnector {
         this.redirectPort = redirectPort;
     }
 
+    /**
+     * @return true if requests are processed on virtual threads
+     */
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Process requests on virtual threads, one per task, instead of the connector thread pool; maxThreads no longer applies while
+     * maxConnections still does. Requires Java 21, ignored with a warning on older runtimes.
+     *
+     * @param useVirtualThreads
+     *            the useVirtualThreads to set
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
     /**
      * @return the secure
      */
@@ -25,6 +25,7 @@ import org.apache.catalina.core.StandardWrapper;
 import org.apache.catalina.loader.WebappLoader;
 import org.red5.logging.Red5LoggerFactory;
 import org.red5.server.api.IServer;
+import org.red5.server.net.rtmpt.RTMPTServlet;
 import org.red5.server.tomcat.TomcatConnector;
 import org.red5.server.tomcat.TomcatLoader;
 import org.red5.server.util.FileUtil;
@@ -61,6 +62,11 @@ public class RTMPTLoader extends TomcatLoader {
      */
     protected Map<String, String> servletMappings = new HashMap<String, String>();
 
+    /**
+     * Time in milliseconds idle requests are held while there is no data to return, 0 disables long polling
+     */
+    protected long longPollTimeout;
+
     /**
      * Setter for server
      *
@@ -122,6 +128,9 @@ public class RTMPTLoader extends TomcatLoader {
         StandardWrapper wrapper = (StandardWrapper) ctx.createWrapper();
         wrapper.setServletName("RTMPTServlet");
         wrapper.setServletClass("org.red5.server.net.rtmpt.RTMPTServlet");
+        // idle requests may be held until data is pending
+        wrapper.setAsyncSupported(true);
+        wrapper.addInitParameter(RTMPTServlet.LONG_POLL_TIMEOUT_PARAM, String.valueOf(longPollTimeout));
         ctx.addChild(wrapper);
 
         // add servlet mappings
@@ -157,6 +166,16 @@ public class RTMPTLoader extends TomcatLoader {
 
     }
 
+    /**
+     * Sets the time idle requests are held while there is no data to return.
+     *
+     * @param longPollTimeout
+     *            timeout in milliseconds, 0 to disable long polling
+     */
+    public void setLongPollTimeout(long longPollTimeout) {
+        this.longPollTimeout = longPollTimeout;
+    }
+
     /**
      * Set servlet mappings
      *
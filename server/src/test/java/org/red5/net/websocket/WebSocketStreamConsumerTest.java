@@ -0,0 +1,167 @@
+package org.red5.net.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.websocket.SendResult;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.io.IoConstants;
+import org.red5.net.websocket.WebSocketStreamConsumer.Frame;
+import org.red5.net.websocket.WebSocketStreamConsumer.Viewer;
+
+public class WebSocketStreamConsumerTest {
+
+    /**
+     * Viewer which records what it sends; sends complete when the test says so.
+     */
+    private static class TestViewer extends Viewer {
+
+        final List<ByteBuffer> sent = new ArrayList<>();
+
+        boolean failSend, disconnected;
+
+        TestViewer(long maxQueuedBytes) {
+            super(null, maxQueuedBytes);
+        }
+
+        @Override
+        void send(ByteBuffer data) {
+            if (failSend) {
+                throw new IllegalStateException("Session closed");
+            }
+            sent.add(data);
+        }
+
+        @Override
+        void close() {
+            disconnected = true;
+        }
+
+        void complete() {
+            onResult(new SendResult());
+        }
+
+    }
+
+    private static Frame frame(byte type, int timestamp, int size, int kind) {
+        return new Frame(type, timestamp, IoBuffer.wrap(new byte[size]), kind);
+    }
+
+    private static int timestamp(ByteBuffer tag) {
+        return ((tag.get(4) & 0xff) << 16) | ((tag.get(5) & 0xff) << 8) | (tag.get(6) & 0xff) | ((tag.get(7) & 0xff) << 24);
+    }
+
+    @Test
+    public void testStartsAtKeyframe() {
+        TestViewer viewer = new TestViewer(1024);
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 0, 10, Frame.CONFIG), true);
+        // media before the first keyframe is not sent
+        viewer.offer(frame(IoConstants.TYPE_AUDIO, 1000, 10, Frame.AUDIO), true);
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 1010, 10, Frame.INTERFRAME), true);
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 1040, 10, Frame.KEYFRAME), true);
+        viewer.offer(frame(IoConstants.TYPE_AUDIO, 1050, 10, Frame.AUDIO), true);
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 1080, 10, Frame.INTERFRAME), true);
+        for (int i = 0; i < 4; i++) {
+            viewer.complete();
+        }
+        assertEquals(4, viewer.sent.size());
+        // the configuration goes out with the timestamp of the keyframe
+        int[] expected = { 1040, 1040, 1050, 1080 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], timestamp(viewer.sent.get(i)));
+        }
+        assertEquals(2, viewer.dropped);
+    }
+
+    @Test
+    public void testAudioOnlyStartsAtFirstPacket() {
+        TestViewer viewer = new TestViewer(1024);
+        viewer.offer(frame(IoConstants.TYPE_AUDIO, 500, 10, Frame.AUDIO), false);
+        viewer.offer(frame(IoConstants.TYPE_AUDIO, 523, 10, Frame.AUDIO), false);
+        viewer.complete();
+        assertEquals(2, viewer.sent.size());
+        assertEquals(500, timestamp(viewer.sent.get(0)));
+        assertEquals(523, timestamp(viewer.sent.get(1)));
+    }
+
+    @Test
+    public void testBackedUpQueueDropsToKeyframe() {
+        // each tag is 65 bytes
+        TestViewer viewer = new TestViewer(100);
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 0, 50, Frame.KEYFRAME), true);
+        // the keyframe is in flight, these wait in the queue
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 40, 50, Frame.INTERFRAME), true);
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 80, 50, Frame.INTERFRAME), true);
+        assertEquals(130, viewer.queuedBytes);
+        // over the limit, video is dropped up to the next keyframe
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 120, 50, Frame.INTERFRAME), true);
+        assertEquals(1, viewer.dropped);
+        // audio is kept up to twice the limit
+        viewer.offer(frame(IoConstants.TYPE_AUDIO, 130, 50, Frame.AUDIO), true);
+        viewer.offer(frame(IoConstants.TYPE_AUDIO, 150, 50, Frame.AUDIO), true);
+        assertEquals(1, viewer.dropped);
+        assertEquals(260, viewer.queuedBytes);
+        viewer.offer(frame(IoConstants.TYPE_AUDIO, 170, 50, Frame.AUDIO), true);
+        assertEquals(2, viewer.dropped);
+        // the keyframe replaces everything still waiting
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 200, 50, Frame.KEYFRAME), true);
+        assertEquals(6, viewer.dropped);
+        assertEquals(65, viewer.queuedBytes);
+        viewer.complete();
+        viewer.complete();
+        assertEquals(2, viewer.sent.size());
+        assertEquals(200, timestamp(viewer.sent.get(1)));
+        assertEquals(0, viewer.queuedBytes);
+    }
+
+    @Test
+    public void testMediaTagsAreNotCopied() {
+        Frame keyframe = frame(IoConstants.TYPE_VIDEO, 1040, 10, Frame.KEYFRAME);
+        assertSame(keyframe, keyframe.at(1040));
+        Frame config = frame(IoConstants.TYPE_VIDEO, 0, 10, Frame.CONFIG);
+        Frame stamped = config.at(1040);
+        assertEquals(1040, timestamp(stamped.data));
+        assertEquals(0, timestamp(config.data));
+        TestViewer viewer = new TestViewer(1024);
+        viewer.offer(keyframe, true);
+        assertEquals(keyframe.data, viewer.sent.get(0));
+    }
+
+    @Test
+    public void testFailedSendClosesViewer() {
+        TestViewer viewer = new TestViewer(1024);
+        viewer.failSend = true;
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 0, 10, Frame.KEYFRAME), true);
+        assertTrue(viewer.disconnected);
+        assertFalse(viewer.sending);
+        assertEquals(0, viewer.queuedBytes);
+        // nothing is queued once closed
+        viewer.disconnected = false;
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 40, 10, Frame.INTERFRAME), true);
+        assertFalse(viewer.disconnected);
+        assertEquals(0, viewer.queue.size());
+    }
+
+    @Test
+    public void testFailedResultClosesViewer() {
+        TestViewer viewer = new TestViewer(1024);
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 0, 10, Frame.KEYFRAME), true);
+        viewer.offer(frame(IoConstants.TYPE_VIDEO, 40, 10, Frame.INTERFRAME), true);
+        viewer.onResult(new SendResult(new IOException("Broken pipe")));
+        assertTrue(viewer.disconnected);
+        assertFalse(viewer.sending);
+        assertEquals(0, viewer.queue.size());
+        assertEquals(1, viewer.sent.size());
+    }
+
+}
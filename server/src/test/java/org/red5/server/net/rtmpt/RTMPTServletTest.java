@@ -0,0 +1,124 @@
+package org.red5.server.net.rtmpt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+
+public class RTMPTServletTest {
+
+    /**
+     * Request whose asynchronous context writes to the response of the request.
+     */
+    private static class AsyncRequest extends MockHttpServletRequest {
+
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        AsyncRequest() {
+            super("POST", "/idle/1/1");
+            setAsyncSupported(true);
+        }
+
+        @Override
+        public AsyncContext startAsync() {
+            return startAsync(this, response);
+        }
+
+    }
+
+    /**
+     * Connection whose pending data is set by the test.
+     */
+    private static class TestConnection extends RTMPTConnection {
+
+        volatile IoBuffer pending;
+
+        @Override
+        public IoBuffer getPendingMessages(int targetSize) {
+            IoBuffer data = pending;
+            pending = null;
+            return data;
+        }
+
+    }
+
+    @Test
+    public void testLongPollTimeoutFromInitParameter() throws Exception {
+        RTMPTServlet servlet = new RTMPTServlet();
+        MockServletConfig config = new MockServletConfig();
+        config.addInitParameter(RTMPTServlet.LONG_POLL_TIMEOUT_PARAM, "5000");
+        servlet.init(config);
+        assertEquals(5000L, servlet.getLongPollTimeout());
+        // an invalid value leaves long polling as it was
+        config.addInitParameter(RTMPTServlet.LONG_POLL_TIMEOUT_PARAM, "soon");
+        servlet.init(config);
+        assertEquals(5000L, servlet.getLongPollTimeout());
+    }
+
+    @Test
+    public void testIdleRequestHeldUntilDataIsQueued() throws Exception {
+        RTMPTServlet servlet = new RTMPTServlet();
+        servlet.setLongPollTimeout(5000L);
+        AsyncRequest req = new AsyncRequest();
+        TestConnection conn = new TestConnection();
+        servlet.awaitPendingMessages(req, req.response, conn);
+        MockAsyncContext ctx = (MockAsyncContext) req.getAsyncContext();
+        assertEquals(5000L, ctx.getTimeout());
+        // nothing is returned while there is no data
+        assertEquals(0, req.response.getContentAsByteArray().length);
+        conn.pending = IoBuffer.wrap(new byte[] { 1, 2, 3 });
+        conn.messagesPending();
+        // the polling delay, followed by the data
+        assertArrayEquals(new byte[] { conn.getPollingDelay(), 1, 2, 3 }, req.response.getContentAsByteArray());
+        // the request is answered once
+        conn.messagesPending();
+        assertEquals(4, req.response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void testIdleRequestAnsweredAtTimeout() throws Exception {
+        RTMPTServlet servlet = new RTMPTServlet();
+        servlet.setLongPollTimeout(5000L);
+        AsyncRequest req = new AsyncRequest();
+        TestConnection conn = new TestConnection();
+        servlet.awaitPendingMessages(req, req.response, conn);
+        MockAsyncContext ctx = (MockAsyncContext) req.getAsyncContext();
+        for (AsyncListener listener : ctx.getListeners()) {
+            listener.onTimeout(new AsyncEvent(ctx));
+        }
+        // just the polling delay
+        assertArrayEquals(new byte[] { conn.getPollingDelay() }, req.response.getContentAsByteArray());
+        // data queued later is left for the next request
+        conn.pending = IoBuffer.wrap(new byte[] { 1 });
+        conn.messagesPending();
+        assertEquals(1, req.response.getContentAsByteArray().length);
+        assertNotNull(conn.pending);
+    }
+
+    @Test
+    public void testWaitingRequestReleasedByTheNextOne() throws Exception {
+        RTMPTServlet servlet = new RTMPTServlet();
+        servlet.setLongPollTimeout(5000L);
+        TestConnection conn = new TestConnection();
+        AsyncRequest first = new AsyncRequest();
+        servlet.awaitPendingMessages(first, first.response, conn);
+        AsyncRequest second = new AsyncRequest();
+        servlet.awaitPendingMessages(second, second.response, conn);
+        // only one request waits per connection, the earlier one is answered
+        assertEquals(1, first.response.getContentAsByteArray().length);
+        assertEquals(0, second.response.getContentAsByteArray().length);
+        assertNull(conn.pending);
+    }
+
+}
@@ -2,6 +2,7 @@ package org.red5.server.scope;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -20,9 +21,14 @@ import org.junit.Before;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
+import org.red5.server.Client;
+import org.red5.server.api.IClient;
+import org.red5.server.api.event.IEvent;
 import org.red5.server.api.scope.IBasicScope;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.scope.ScopeType;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.event.Notify;
 import org.red5.server.persistence.RamPersistence;
 import org.red5.server.so.SharedObjectScope;
 import org.red5.server.stream.ClientBroadcastStream;
@@ -101,6 +107,13 @@ public class ScopeTest extends AbstractJUnit4SpringContextTests {
         // check again after stream added alias
         stream1Scope = appScope.getBasicScope(ScopeType.BROADCAST, "streamA");
         log.debug(">>>>>>>>>>>> Stream#1: {}", stream1Scope);
+        assertEquals(stream1, stream1Scope);
+        assertEquals(stream1, appScope.getBroadcastScope("stream1"));
+        assertNull(appScope.getBroadcastScope("streamB"));
+        // neither the name nor the alias resolve once the scope is removed
+        appScope.removeChildScope(stream1);
+        assertNull(appScope.getBroadcastScope("stream1"));
+        assertNull(appScope.getBroadcastScope("streamA"));
         // XXX to test adding rooms etc, uncomment this section
         /*
         // test runnables represent worker threads creating scopes
@@ -255,6 +268,50 @@ public class ScopeTest extends AbstractJUnit4SpringContextTests {
         log.info("testScopeCreationTypes-end");
     }
 
+    @Test
+    public void testEventsReachEveryConnectionOfAClient() {
+        log.info("testEventsReachEveryConnectionOfAClient");
+        Scope room = new Scope(null, ScopeType.ROOM, "events", false);
+        // a room without a parent has no scheduler to remove it when empty
+        room.keepOnDisconnect = true;
+        IClient client = new Client("events", null);
+        EventConnection conn1 = new EventConnection(client);
+        EventConnection conn2 = new EventConnection(client);
+        assertTrue(room.connect(conn1));
+        room.connect(conn2);
+        room.dispatchEvent(new Notify());
+        assertEquals(1, conn1.events.get());
+        assertEquals(1, conn2.events.get());
+        // the remaining connection of the client still gets events
+        room.disconnect(conn1);
+        room.dispatchEvent(new Notify());
+        assertEquals(1, conn1.events.get());
+        assertEquals(2, conn2.events.get());
+    }
+
+    /**
+     * Connection which is always connected and counts the events dispatched to it.
+     */
+    private class EventConnection extends RTMPMinaConnection {
+
+        final AtomicInteger events = new AtomicInteger();
+
+        EventConnection(IClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void dispatchEvent(IEvent event) {
+            events.incrementAndGet();
+        }
+
+    }
+
     @SuppressWarnings("unused")
     private class Worker implements Callable<Integer> {
 
@@ -0,0 +1,88 @@
+package org.red5.server.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+import org.red5.client.net.rtmp.RTMPClient;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.service.IPendingServiceCallback;
+import org.red5.server.api.scope.ScopeType;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.AbstractJUnit4SpringContextTests;
+
+@ContextConfiguration("file:src/test/resources/org/red5/server/stream/EdgeRelayServiceTest.xml")
+public class EdgeRelayServiceTest extends AbstractJUnit4SpringContextTests {
+
+    static {
+        System.setProperty("red5.deployment.type", "junit");
+    }
+
+    /**
+     * Relay whose clients never reach an origin, the test decides how their connections end.
+     */
+    public static class StubEdgeRelayService extends EdgeRelayService {
+
+        final List<RTMPClient> clients = new CopyOnWriteArrayList<>();
+
+        @Override
+        protected RTMPClient createClient() {
+            RTMPClient client = new RTMPClient() {
+
+                @Override
+                public void connect(String server, int port, String application, IPendingServiceCallback connectCallback) {
+                }
+
+                @Override
+                public void disconnect() {
+                }
+
+            };
+            clients.add(client);
+            return client;
+        }
+
+    }
+
+    @Test
+    public void testDisabledWithoutOrigin() {
+        IScope scope = (IScope) applicationContext.getBean("web.scope");
+        EdgeRelayService relay = new EdgeRelayService();
+        assertFalse(relay.isEnabled());
+        assertFalse(relay.relay(scope, "disabled"));
+        assertNull(scope.getBasicScope(ScopeType.BROADCAST, "disabled"));
+    }
+
+    @Test
+    public void testLivePlayPulledFromOrigin() throws Exception {
+        IScope scope = (IScope) applicationContext.getBean("web.scope");
+        IProviderService providerService = (IProviderService) applicationContext.getBean(IProviderService.BEAN_NAME);
+        StubEdgeRelayService relay = (StubEdgeRelayService) applicationContext.getBean("edgeRelayService");
+        // a vod play never goes to the origin
+        assertEquals(IProviderService.INPUT_TYPE.NOT_FOUND, providerService.lookupProviderInput(scope, "edge", 0));
+        assertNull(scope.getBasicScope(ScopeType.BROADCAST, "edge"));
+        // the stream is published locally at once, before the origin has been reached
+        assertEquals(IProviderService.INPUT_TYPE.LIVE, providerService.lookupProviderInput(scope, "edge", -2));
+        assertNotNull(scope.getBasicScope(ScopeType.BROADCAST, "edge"));
+        assertTrue(relay.relay(scope, "edge"));
+        assertEquals(1, relay.getRelayedStreamCount());
+        assertEquals(1, relay.clients.size());
+        // the origin refuses the connection, which drops the stream again
+        relay.clients.get(0).handleException(new IOException("Connection refused"));
+        assertEquals(0, relay.getRelayedStreamCount());
+        assertNull(scope.getBasicScope(ScopeType.BROADCAST, "edge"));
+        // the next play opens a new connection
+        assertEquals(IProviderService.INPUT_TYPE.LIVE, providerService.lookupProviderInput(scope, "edge", -2));
+        assertEquals(2, relay.clients.size());
+        relay.clients.get(1).handleException(new IOException("Connection refused"));
+        assertEquals(0, relay.getRelayedStreamCount());
+    }
+
+}
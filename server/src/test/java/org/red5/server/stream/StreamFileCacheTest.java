@@ -0,0 +1,58 @@
+package org.red5.server.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class StreamFileCacheTest {
+
+    @Test
+    public void testInvalidatedByWatch() throws Exception {
+        Path dir = Files.createTempDirectory("streams");
+        Path path = dir.resolve("test.flv");
+        AtomicInteger lookups = new AtomicInteger();
+        StreamFileCache cache = new StreamFileCache();
+        try {
+            // same as the provider service, the location is recorded and the file is returned if it exists
+            Function<List<Path>, File> resolver = locations -> {
+                lookups.incrementAndGet();
+                locations.add(path);
+                return Files.exists(path) ? path.toFile() : null;
+            };
+            // the first lookup in a directory starts watching it, the second is cached
+            assertNull(cache.resolve("test", resolver));
+            assertNull(cache.resolve("test", resolver));
+            assertNull(cache.resolve("test", resolver));
+            assertEquals(2, lookups.get());
+            assertEquals(1, cache.size());
+            // creating the file drops the negative entry
+            Files.createFile(path);
+            for (int i = 0; i < 100 && cache.size() > 0; i++) {
+                Thread.sleep(50L);
+            }
+            assertEquals(path.toFile(), cache.resolve("test", resolver));
+            assertEquals(path.toFile(), cache.resolve("test", resolver));
+            assertEquals(3, lookups.get());
+            // so does deleting it
+            Files.delete(path);
+            for (int i = 0; i < 100 && cache.size() > 0; i++) {
+                Thread.sleep(50L);
+            }
+            assertNull(cache.resolve("test", resolver));
+            assertEquals(4, lookups.get());
+        } finally {
+            cache.destroy();
+            Files.deleteIfExists(path);
+            Files.delete(dir);
+        }
+    }
+
+}
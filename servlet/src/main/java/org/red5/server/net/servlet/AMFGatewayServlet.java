@@ -8,6 +8,17 @@
 package org.red5.server.net.servlet;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -18,6 +29,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.logging.Red5LoggerFactory;
+import org.red5.server.api.IConnection;
 import org.red5.server.api.IContext;
 import org.red5.server.api.IServer;
 import org.red5.server.api.Red5;
@@ -30,11 +42,18 @@ import org.red5.server.net.remoting.codec.RemotingCodecFactory;
 import org.red5.server.net.remoting.message.RemotingCall;
 import org.red5.server.net.remoting.message.RemotingPacket;
 import org.slf4j.Logger;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 
 /**
  * Servlet that handles remoting requests.
+ * <p>
+ * The calls of a request are made one after another unless the <code>parallelCalls</code> init parameter is true, in which case they are
+ * made concurrently by up to <code>parallelCallThreads</code> threads and their results are returned in the order of the request. Services
+ * or methods listed in the <code>sequentialCalls</code> init parameter, for example <code>cart, user.login</code>, are order dependent: they
+ * are made once all calls before them have completed and before any call after them is started. Request bodies larger than
+ * <code>maxRequestSize</code> bytes are rejected.
  *
  * @author The Red5 Project
  * @author Luke Hubbard (luke@codegent.com)
@@ -74,9 +93,58 @@ public class AMFGatewayServlet extends HttpServlet {
      */
     private static final String CONNECTION = "red5.remotingConnection";
 
+    /**
+     * Largest request body accepted, in bytes
+     */
+    protected int maxRequestSize = 16 * 1024 * 1024;
+
+    /**
+     * Executor making the calls of a request concurrently, null when calls are made one after another
+     */
+    protected transient ExecutorService callExecutor;
+
+    /**
+     * Services and service methods whose calls are made in order with the other calls of a request
+     */
+    protected Set<String> sequentialCalls = Collections.emptySet();
+
     /** {@inheritDoc} */
     @Override
     public void init() throws ServletException {
+        String value = getInitParameter("maxRequestSize");
+        if (value != null) {
+            maxRequestSize = Integer.parseInt(value.trim());
+        }
+        if (Boolean.parseBoolean(getInitParameter("parallelCalls"))) {
+            value = getInitParameter("parallelCallThreads");
+            int threads = value != null ? Integer.parseInt(value.trim()) : Runtime.getRuntime().availableProcessors();
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("RemotingCall-");
+            threadFactory.setDaemon(true);
+            // calls which find no free thread or queue slot are made on the servlet thread
+            callExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(threads * 16), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+            ((ThreadPoolExecutor) callExecutor).allowCoreThreadTimeOut(true);
+            value = getInitParameter("sequentialCalls");
+            if (value != null) {
+                Set<String> names = new HashSet<>();
+                for (String name : value.split(",")) {
+                    if (!name.isBlank()) {
+                        names.add(name.trim());
+                    }
+                }
+                sequentialCalls = names;
+            }
+            log.debug("Remoting calls are made by up to {} threads, sequential: {}", threads, sequentialCalls);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void destroy() {
+        if (callExecutor != null) {
+            callExecutor.shutdownNow();
+            callExecutor = null;
+        }
+        super.destroy();
     }
 
     /** {@inheritDoc} */
@@ -202,9 +270,7 @@ public class AMFGatewayServlet extends HttpServlet {
      */
     protected RemotingPacket decodeRequest(HttpServletRequest req) throws Exception {
         log.debug("Decoding request");
-        IoBuffer reqBuffer = IoBuffer.allocate(req.getContentLength());
-        ServletUtils.copy(req, reqBuffer.asOutputStream());
-        reqBuffer.flip();
+        IoBuffer reqBuffer = ServletUtils.read(req, maxRequestSize);
         RemotingPacket packet = (RemotingPacket) codecFactory.getRemotingDecoder().decode(reqBuffer);
         String path = req.getContextPath();
         if (path == null) {
@@ -248,9 +314,13 @@ public class AMFGatewayServlet extends HttpServlet {
      */
     protected boolean handleRemotingPacket(HttpServletRequest req, IContext context, IScope scope, RemotingPacket message) {
         log.debug("Handling remoting packet");
-        boolean result = true;
         final IServiceInvoker invoker = context.getServiceInvoker();
-        for (RemotingCall call : message.getCalls()) {
+        final List<RemotingCall> calls = message.getCalls();
+        if (callExecutor != null && calls.size() > 1) {
+            return handleRemotingCalls(invoker, scope, calls);
+        }
+        boolean result = true;
+        for (RemotingCall call : calls) {
             result = invoker.invoke(call, scope);
             //if we encounter a failure break out
             if (!result) {
@@ -260,6 +330,102 @@ public class AMFGatewayServlet extends HttpServlet {
         return result;
     }
 
+    /**
+     * Makes the calls concurrently, except for sequential calls which wait for all calls before them. Each call stores its own result, so
+     * the response lists the results in the order of the calls. As with calls made one after another, no call is started once a call
+     * has been seen to fail, but calls which were already running are completed.
+     *
+     * @param invoker
+     *            service invoker
+     * @param scope
+     *            scope
+     * @param calls
+     *            calls of the request
+     * @return true if all calls succeeded
+     */
+    protected boolean handleRemotingCalls(IServiceInvoker invoker, IScope scope, List<RemotingCall> calls) {
+        final IConnection conn = Red5.getConnectionLocal();
+        List<Future<Boolean>> running = new ArrayList<>(calls.size());
+        boolean result = true;
+        for (RemotingCall call : calls) {
+            if (hasFailed(running)) {
+                result = false;
+                break;
+            }
+            if (isSequential(call)) {
+                result = awaitCalls(running);
+                if (result) {
+                    result = invoker.invoke(call, scope);
+                }
+            } else {
+                running.add(callExecutor.submit(() -> {
+                    // the servlet thread makes the call itself when the executor is saturated
+                    IConnection previous = Red5.getConnectionLocal();
+                    Red5.setConnectionLocal(conn);
+                    try {
+                        return invoker.invoke(call, scope);
+                    } finally {
+                        Red5.setConnectionLocal(previous);
+                    }
+                }));
+            }
+            if (!result) {
+                break;
+            }
+        }
+        return awaitCalls(running) && result;
+    }
+
+    /**
+     * Returns whether any of the calls which have already completed failed, without waiting for the others.
+     */
+    private boolean hasFailed(List<Future<Boolean>> running) {
+        for (Future<Boolean> future : running) {
+            if (future.isDone()) {
+                try {
+                    if (!future.get()) {
+                        return true;
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean awaitCalls(List<Future<Boolean>> running) {
+        boolean result = true;
+        for (Future<Boolean> future : running) {
+            try {
+                result &= future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result = false;
+            } catch (ExecutionException e) {
+                log.warn("Exception making remoting call", e.getCause());
+                result = false;
+            }
+        }
+        running.clear();
+        return result;
+    }
+
+    /**
+     * Returns whether the call has to be made in order with the other calls of its request.
+     *
+     * @param call
+     *            remoting call
+     * @return true if the service or the method is listed as sequential
+     */
+    protected boolean isSequential(RemotingCall call) {
+        if (sequentialCalls.isEmpty()) {
+            return false;
+        }
+        String serviceName = call.getServiceName();
+        return sequentialCalls.contains(serviceName) || sequentialCalls.contains(serviceName + '.' + call.getServiceMethodName());
+    }
+
     /**
      * Sends response to client
      *
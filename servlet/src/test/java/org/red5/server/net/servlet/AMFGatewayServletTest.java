@@ -0,0 +1,152 @@
+package org.red5.server.net.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.service.IServiceCall;
+import org.red5.server.api.service.IServiceInvoker;
+import org.red5.server.net.remoting.message.RemotingCall;
+
+public class AMFGatewayServletTest {
+
+    private AMFGatewayServlet servlet = new AMFGatewayServlet();
+
+    @After
+    public void tearDown() throws Exception {
+        servlet.destroy();
+    }
+
+    private static RemotingCall call(String service, String method) {
+        return new RemotingCall(service, method, new Object[0], "/1", false, false);
+    }
+
+    @Test
+    public void testSequentialCallWaitsForEarlierCalls() throws Exception {
+        servlet.callExecutor = Executors.newFixedThreadPool(2);
+        servlet.sequentialCalls = Collections.singleton("cart");
+        Set<String> completed = ConcurrentHashMap.newKeySet();
+        List<String> seenByCart = new CopyOnWriteArrayList<>();
+        List<String> seenByLast = new CopyOnWriteArrayList<>();
+        IServiceInvoker invoker = new TestInvoker() {
+
+            @Override
+            public boolean invoke(IServiceCall call, IScope scope) {
+                String name = call.getServiceMethodName();
+                if ("checkout".equals(name)) {
+                    seenByCart.addAll(completed);
+                } else if ("c".equals(name)) {
+                    seenByLast.addAll(completed);
+                }
+                completed.add(name);
+                return true;
+            }
+
+        };
+        List<RemotingCall> calls = Arrays.asList(call("catalog", "a"), call("catalog", "b"), call("cart", "checkout"), call("catalog", "c"));
+        assertTrue(servlet.handleRemotingCalls(invoker, null, calls));
+        assertEquals(4, completed.size());
+        assertEquals(2, seenByCart.size());
+        assertTrue(seenByCart.containsAll(Arrays.asList("a", "b")));
+        // the call after the sequential one is only started once it has completed
+        assertTrue(seenByLast.contains("checkout"));
+    }
+
+    @Test
+    public void testNoCallStartedAfterFailure() throws Exception {
+        // runs each call as it is submitted, so the failure is complete before the next call
+        servlet.callExecutor = new DirectExecutorService();
+        List<String> invoked = new CopyOnWriteArrayList<>();
+        IServiceInvoker invoker = new TestInvoker() {
+
+            @Override
+            public boolean invoke(IServiceCall call, IScope scope) {
+                invoked.add(call.getServiceMethodName());
+                return !"fail".equals(call.getServiceMethodName());
+            }
+
+        };
+        List<RemotingCall> calls = Arrays.asList(call("catalog", "a"), call("catalog", "fail"), call("catalog", "b"));
+        assertFalse(servlet.handleRemotingCalls(invoker, null, calls));
+        assertEquals(Arrays.asList("a", "fail"), invoked);
+    }
+
+    @Test
+    public void testNoCallStartedAfterFailedSequentialCall() throws Exception {
+        servlet.callExecutor = Executors.newFixedThreadPool(2);
+        servlet.sequentialCalls = Collections.singleton("cart.checkout");
+        List<String> invoked = new CopyOnWriteArrayList<>();
+        IServiceInvoker invoker = new TestInvoker() {
+
+            @Override
+            public boolean invoke(IServiceCall call, IScope scope) {
+                invoked.add(call.getServiceMethodName());
+                return !"checkout".equals(call.getServiceMethodName());
+            }
+
+        };
+        List<RemotingCall> calls = Arrays.asList(call("catalog", "a"), call("cart", "checkout"), call("catalog", "b"));
+        assertFalse(servlet.handleRemotingCalls(invoker, null, calls));
+        assertEquals(Arrays.asList("a", "checkout"), invoked);
+    }
+
+    private static abstract class TestInvoker implements IServiceInvoker {
+
+        @Override
+        public boolean invoke(IServiceCall call, Object service) {
+            return false;
+        }
+
+    }
+
+    private static class DirectExecutorService extends AbstractExecutorService {
+
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+
+    }
+
+}